@@ -0,0 +1,197 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.byktol.jcr.qb.benchmarks;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Regression gate for the benchmarks. Compares two JMH result files written
+ * with <code>-rf csv</code> and exits with a non-zero status whenever the
+ * throughput drops, or the normalized allocation rate (bytes per operation)
+ * grows, by more than the given tolerance, or whenever a benchmark of the
+ * baseline is missing from the current run. Only the primary score and the
+ * normalized allocation rate are gated; the other secondary metrics, e.g.
+ * the GC counts and times, are too noisy and are ignored.
+ * <p>
+ * Usage: <code>BenchmarkGate baseline.csv current.csv [tolerance]</code>,
+ * where tolerance is a ratio and defaults to 0.1 (10%).
+ *
+ * @since 1.0
+ * @author Victor Alvarez
+ */
+public final class BenchmarkGate
+{
+
+  /** The secondary metric reported by <code>-prof gc</code>. */
+  private static final String ALLOC_NORM = "gc.alloc.rate.norm";
+
+  /** Separates a benchmark from its secondary metric in JMH results. */
+  private static final char SECONDARY = ':';
+
+  /** Default tolerance when none is given. */
+  private static final double DEFAULT_TOLERANCE = 0.1;
+
+  /** Utility class. Private constructor. */
+  private BenchmarkGate()
+  {
+    // nothing here
+  }
+
+  /**
+   * @param args
+   *          The baseline file, the current file and the optional tolerance
+   * @throws IOException
+   *           If any of the files cannot be read
+   */
+  public static void main(final String[] args)
+    throws IOException
+  {
+    if (args.length < 2)
+    {
+      System.err.println(
+        "Usage: BenchmarkGate baseline.csv current.csv [tolerance]");
+      System.exit(2);
+    }
+
+    final double tolerance =
+      args.length > 2 ? Double.parseDouble(args[2]) : DEFAULT_TOLERANCE;
+    final Map<String, Double> baseline = read(args[0]);
+    final Map<String, Double> current = read(args[1]);
+
+    int failures = 0;
+    for (Map.Entry<String, Double> entry : baseline.entrySet())
+    {
+      final Double now = current.get(entry.getKey());
+      if (null == now)
+      {
+        System.out.println("FAIL " + entry.getKey() + ": missing");
+        failures++;
+        continue;
+      }
+
+      final double before = entry.getValue();
+      final boolean regressed;
+      if (entry.getKey().contains(ALLOC_NORM))
+      {
+        regressed = now > before * (1 + tolerance);
+      } else
+      {
+        regressed = now < before * (1 - tolerance);
+      }
+
+      System.out.println(String.format("%s %s: %.2f -> %.2f",
+        regressed ? "FAIL" : "ok  ", entry.getKey(), before, now));
+      if (regressed)
+      {
+        failures++;
+      }
+    }
+
+    if (failures > 0)
+    {
+      System.exit(1);
+    }
+  }
+
+  /**
+   * Reads the gated scores of a JMH CSV result file: the primary ones and the
+   * normalized allocation rates. The key of each score is made of the
+   * benchmark name plus the value of its parameters.
+   *
+   * @param file
+   *          The path of the CSV file
+   * @return The scores by benchmark (and parameters)
+   * @throws IOException
+   *           If the file cannot be read
+   */
+  private static Map<String, Double> read(final String file)
+    throws IOException
+  {
+    final Map<String, Double> scores = new LinkedHashMap<String, Double>();
+    final BufferedReader reader = new BufferedReader(
+      new InputStreamReader(new FileInputStream(file), "UTF-8"));
+
+    try
+    {
+      final List<String> header = split(reader.readLine());
+      final int score = header.indexOf("Score");
+
+      String line;
+      while (null != (line = reader.readLine()))
+      {
+        final List<String> row = split(line);
+        if (row.get(0).indexOf(SECONDARY) >= 0
+          && !row.get(0).endsWith(ALLOC_NORM))
+        {
+          continue;
+        }
+
+        final StringBuilder key = new StringBuilder(row.get(0));
+        for (int i = 0; i < header.size(); i++)
+        {
+          if (header.get(i).startsWith("Param: "))
+          {
+            key.append(' ').append(row.get(i));
+          }
+        }
+        scores.put(key.toString(), Double.valueOf(row.get(score)));
+      }
+    } finally
+    {
+      reader.close();
+    }
+
+    return scores;
+  }
+
+  /**
+   * Splits a CSV line, removing the quotes JMH puts around every field.
+   *
+   * @param line
+   *          The CSV line
+   * @return The fields of the line
+   */
+  private static List<String> split(final String line)
+  {
+    final List<String> fields = new ArrayList<String>();
+    final StringBuilder field = new StringBuilder();
+    boolean quoted = false;
+
+    for (int i = 0; i < line.length(); i++)
+    {
+      final char c = line.charAt(i);
+      if ('"' == c)
+      {
+        quoted = !quoted;
+      } else if (',' == c && !quoted)
+      {
+        fields.add(field.toString());
+        field.setLength(0);
+      } else
+      {
+        field.append(c);
+      }
+    }
+    fields.add(field.toString());
+
+    return fields;
+  }
+}
@@ -0,0 +1,170 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.byktol.jcr.qb.benchmarks;
+
+import java.util.Calendar;
+import java.util.LinkedList;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.byktol.jcr.qb.criteria.Criteria;
+import com.byktol.jcr.qb.criteria.Criterion;
+import com.byktol.jcr.qb.criteria.Order;
+import com.byktol.jcr.qb.criteria.Restrictions;
+import com.byktol.jcr.qb.criteria.impl.XPathCriteria;
+
+/**
+ * Measures {@link Criteria#buildQuery()} for the XPath implementation. The
+ * criteria are created once per trial, so only the rendering is measured. Run
+ * it with <code>-prof gc</code> to get the bytes allocated per build.
+ *
+ * @since 1.0
+ * @author Victor Alvarez
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class BuildQueryBenchmark
+{
+
+  /**
+   * The criterion trees being measured, from the smallest to the widest.
+   *
+   * @since 1.0
+   * @author Victor Alvarez
+   */
+  public enum Shape
+  {
+    /** A single equality, the most common query there is. */
+    SIMPLE
+    {
+      @Override
+      void populate(final Criteria criteria)
+      {
+        criteria.add(Restrictions.eq("sling:resourceType", "site/article"));
+      }
+    },
+
+    /** What a regular page component asks for: every criterion type. */
+    TYPICAL
+    {
+      @Override
+      void populate(final Criteria criteria)
+      {
+        final Calendar from = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        from.clear();
+        from.set(2012, Calendar.JANUARY, 1);
+        final Calendar to = (Calendar) from.clone();
+        to.add(Calendar.MONTH, 1);
+
+        criteria.setPath("/content/site/2012");
+        criteria.setNodeType("cq:PageContent");
+        criteria.add(Restrictions.eq("sling:resourceType", "site/article"));
+        criteria.add(Restrictions.ge("published", from));
+        criteria.add(Restrictions.lt("published", to));
+        criteria.add(Restrictions.exists("jcr:title"));
+        criteria.add(Restrictions.not(Restrictions.eq("hidden", true)));
+        criteria.add(Restrictions.or(
+          Restrictions.contains("jcr:title", "JCR"),
+          Restrictions.contains("jcr:description", "query builder"),
+          Restrictions.like("author", "Vic%")
+        ));
+        criteria.add(Restrictions.and(
+          Restrictions.gt("rating", 3L),
+          Restrictions.notEq("status", "It's \"archived\"")
+        ));
+        criteria.addOrder(Order.desc("published"));
+        criteria.addOrder(Order.asc("jcr:title"));
+        criteria.addOrder(Order.asc("jcr:content/@rank"));
+      }
+    },
+
+    /** A faceted search: a few hundred leaves grouped in disjunctions. */
+    WIDE
+    {
+      @Override
+      void populate(final Criteria criteria)
+      {
+        final int facets = 10;
+        final int values = 20;
+
+        criteria.setPath("/content/catalog");
+        criteria.setNodeType("nt:unstructured");
+        for (int f = 0; f < facets; f++)
+        {
+          final Criterion[] or = new Criterion[values];
+          for (int v = 0; v < values; v++)
+          {
+            or[v] = Restrictions.eq("facet" + f, "value" + v);
+          }
+          criteria.add(Restrictions.or(or));
+        }
+        criteria.add(Restrictions.not(Restrictions.exists("deleted")));
+        criteria.addOrder(Order.desc("jcr:score"));
+        criteria.addOrder(Order.asc("price"));
+      }
+    };
+
+    /**
+     * Adds the restrictions and orders of this shape.
+     *
+     * @param criteria
+     *          The (empty) criteria to populate
+     */
+    abstract void populate(final Criteria criteria);
+  }
+
+  /** The shape being measured. */
+  @Param
+  private Shape shape;
+
+  /** The criteria built for the current shape. */
+  private Criteria criteria;
+
+  /**
+   * Creates the criteria once per trial.
+   */
+  @Setup
+  public final void setUp()
+  {
+    criteria = new XPathCriteria(new LinkedList<Criterion>(),
+      new LinkedList<Order>());
+    shape.populate(criteria);
+  }
+
+  /**
+   * @return The rendered query, returned so it isn't optimized away
+   */
+  @Benchmark
+  public final String buildQuery()
+  {
+    return criteria.buildQuery();
+  }
+
+}
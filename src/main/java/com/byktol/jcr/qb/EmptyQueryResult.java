@@ -0,0 +1,59 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.byktol.jcr.qb;
+
+import java.util.Collections;
+
+import javax.jcr.NodeIterator;
+import javax.jcr.query.QueryResult;
+import javax.jcr.query.RowIterator;
+
+import org.apache.jackrabbit.commons.iterator.NodeIteratorAdapter;
+import org.apache.jackrabbit.commons.iterator.RowIteratorAdapter;
+
+/**
+ * The result of a query known to match nothing, without asking the
+ * repository.
+ *
+ * @since 1.0
+ * @author Victor Alvarez
+ */
+final class EmptyQueryResult
+  implements QueryResult
+{
+
+  @Override
+  public String[] getColumnNames()
+  {
+    return new String[0];
+  }
+
+  @Override
+  public RowIterator getRows()
+  {
+    return new RowIteratorAdapter(Collections.emptyList());
+  }
+
+  @Override
+  public NodeIterator getNodes()
+  {
+    return new NodeIteratorAdapter(Collections.emptyList());
+  }
+
+  @Override
+  public String[] getSelectorNames()
+  {
+    return new String[0];
+  }
+}
@@ -0,0 +1,330 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.byktol.jcr.qb;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.query.QueryResult;
+import javax.jcr.query.Row;
+import javax.jcr.query.RowIterator;
+
+import org.apache.jackrabbit.util.ISO9075;
+
+import com.byktol.jcr.qb.criteria.Criteria;
+import com.byktol.jcr.qb.criteria.Criterion;
+import com.byktol.jcr.qb.criteria.Order;
+import com.byktol.jcr.qb.criteria.Prop;
+import com.byktol.jcr.qb.criteria.Restrictions;
+import com.byktol.jcr.qb.criteria.predicate.CriterionPredicate;
+import com.google.common.base.Objects;
+
+/**
+ * Coalesces criteria that only differ in their restrictions into a single
+ * query, and routes its rows back to each criteria by evaluating the
+ * restrictions of the latter, compiled into a {@link CriterionPredicate},
+ * against the nodes.
+ *
+ * @see QueryBuilder#executeAll(List)
+ * @since 1.0
+ * @author Victor Alvarez
+ */
+final class QueryBatch
+{
+
+  /** Private constructor, use the static methods. */
+  private QueryBatch()
+  {
+    // nothing here
+  }
+
+  /**
+   * Executes the criteria, coalescing those that can be.
+   *
+   * @param builder
+   *          The builder executing the queries
+   * @param criteria
+   *          The criteria being queried
+   * @return The result of every criteria, in the same order
+   * @throws RepositoryException
+   *           If a query cannot be created or executed
+   */
+  static List<QueryResult> execute(
+    final QueryBuilder builder,
+    final List<? extends Criteria> criteria)
+    throws RepositoryException
+  {
+    final QueryResult[] results = new QueryResult[criteria.size()];
+
+    final Map<Shape, List<Integer>> groups =
+      new LinkedHashMap<Shape, List<Integer>>();
+    for (int i = 0; i < results.length; i++)
+    {
+      final Criteria c = criteria.get(i);
+      if (isCoalescable(c))
+      {
+        final Shape shape = new Shape((Prop) c);
+        List<Integer> group = groups.get(shape);
+        if (null == group)
+        {
+          group = new ArrayList<Integer>();
+          groups.put(shape, group);
+        }
+        group.add(i);
+      } else
+      {
+        results[i] = builder.execute(c);
+      }
+    }
+
+    for (List<Integer> group : groups.values())
+    {
+      if (1 == group.size())
+      {
+        final int i = group.get(0);
+        results[i] = builder.execute(criteria.get(i));
+      } else
+      {
+        final List<Criteria> members = new ArrayList<Criteria>(group.size());
+        for (int i : group)
+        {
+          members.add(criteria.get(i));
+        }
+
+        final List<RoutedQueryResult> routed = route(builder, members);
+        for (int j = 0; j < group.size(); j++)
+        {
+          results[group.get(j)] = routed.get(j);
+        }
+      }
+    }
+
+    return Arrays.asList(results);
+  }
+
+  /**
+   * A criteria with a limit isn't coalesced, since the coalesced query
+   * cannot push the limit down, and might read far more rows than the
+   * criteria returns.
+   *
+   * @param criteria
+   *          A criteria
+   * @return Whether its query can be coalesced with others
+   */
+  private static boolean isCoalescable(final Criteria criteria)
+  {
+    return criteria instanceof Prop
+      && criteria.getLimit() <= 0
+      && !QueryBuilder.isContradiction(criteria)
+      && CriterionPredicate.isSupported(((Prop) criteria).getCriterion());
+  }
+
+  /**
+   * Executes the coalesced query of criteria of the same shape and without a
+   * limit, and routes its rows. The offset of every criteria is applied
+   * while routing.
+   *
+   * @param builder
+   *          The builder executing the query
+   * @param members
+   *          The criteria, of the same shape
+   * @return The result of every criteria, in the same order
+   * @throws RepositoryException
+   *           If the query cannot be created or executed, or the nodes
+   *           cannot be read
+   */
+  private static List<RoutedQueryResult> route(
+    final QueryBuilder builder,
+    final List<Criteria> members)
+    throws RepositoryException
+  {
+    final int size = members.size();
+    final List<List<Criterion>> restrictions =
+      new ArrayList<List<Criterion>>(size);
+    final CriterionPredicate[] predicates = new CriterionPredicate[size];
+    final long[] skip = new long[size];
+    for (int i = 0; i < size; i++)
+    {
+      final Criteria c = members.get(i);
+      restrictions.add(((Prop) c).getCriterion());
+      predicates[i] = CriterionPredicate.compile(restrictions.get(i));
+      skip[i] = c.getOffset();
+    }
+
+    final QueryResult result =
+      builder.execute(coalesce(builder, restrictions, (Prop) members.get(0)));
+
+    final String[] columns = result.getColumnNames();
+    final String[] selectors = result.getSelectorNames();
+    final List<RoutedQueryResult> routed =
+      new ArrayList<RoutedQueryResult>(size);
+    for (int i = 0; i < size; i++)
+    {
+      routed.add(new RoutedQueryResult(columns, selectors));
+    }
+
+    final RowIterator rows = result.getRows();
+    while (rows.hasNext())
+    {
+      final Row row = rows.nextRow();
+      final Node node = row.getNode();
+      for (int i = 0; i < size; i++)
+      {
+        if (!predicates[i].apply(node))
+        {
+          continue;
+        }
+
+        if (skip[i] > 0)
+        {
+          skip[i]--;
+        } else
+        {
+          routed.get(i).add(row, node);
+        }
+      }
+    }
+
+    return routed;
+  }
+
+  /**
+   * Creates the criteria matching any of the restrictions of criteria of the
+   * same shape, without offset or limit.
+   *
+   * @param builder
+   *          The builder creating the criteria
+   * @param restrictions
+   *          The restrictions of every criteria
+   * @param shape
+   *          Any of the criteria, for its path, node type, node name,
+   *          columns and orders
+   * @return The coalesced criteria
+   */
+  private static Criteria coalesce(
+    final QueryBuilder builder,
+    final List<List<Criterion>> restrictions,
+    final Prop shape)
+  {
+    final Criteria coalesced = builder.createCriteria();
+
+    // the path of a criteria is encoded already, it mustn't be twice
+    String path = shape.getPath();
+    if (QueryLanguage.XPATH == builder.getLanguage())
+    {
+      path = ISO9075.decode(path);
+    }
+    coalesced.setPath(path);
+    coalesced.setNodeType(shape.getNodeType());
+    coalesced.setNodeName(shape.getNodeName());
+    coalesced.setColumns(shape.getColumns().toArray(
+      new String[shape.getColumns().size()]));
+    for (Order o : shape.getOrders())
+    {
+      coalesced.addOrder(o);
+    }
+
+    final Criterion[] any = new Criterion[restrictions.size()];
+    for (int i = 0; i < any.length; i++)
+    {
+      final List<Criterion> all = restrictions.get(i);
+      if (all.isEmpty())
+      {
+        // one of them matches everything, so does the query
+        return coalesced;
+      }
+
+      any[i] = 1 == all.size() ? all.get(0)
+        : Restrictions.and(all.toArray(new Criterion[all.size()]));
+    }
+
+    return coalesced.add(Restrictions.or(any));
+  }
+
+  /**
+   * What criteria must share to be coalesced: path, node type, node name,
+   * columns and orders.
+   *
+   * @since 1.0
+   * @author Victor Alvarez
+   */
+  private static final class Shape
+  {
+
+    /** The path. */
+    private final String path;
+
+    /** The node type. */
+    private final String nodeType;
+
+    /** The node name. */
+    private final String nodeName;
+
+    /** The columns. */
+    private final List<String> columns;
+
+    /** The orders, as text. */
+    private final List<String> orders;
+
+    /**
+     * Constructor.
+     *
+     * @param prop
+     *          The properties of a criteria
+     */
+    Shape(final Prop prop)
+    {
+      this.path = prop.getPath();
+      this.nodeType = prop.getNodeType();
+      this.nodeName = prop.getNodeName();
+      this.columns = prop.getColumns();
+      this.orders = new ArrayList<String>(prop.getOrders().size());
+      for (Order o : prop.getOrders())
+      {
+        orders.add(o.toString());
+      }
+    }
+
+    @Override
+    public boolean equals(final Object obj)
+    {
+      if (!(obj instanceof Shape))
+      {
+        return false;
+      }
+
+      final Shape other = (Shape) obj;
+
+      return Objects.equal(path, other.path)
+        && Objects.equal(nodeType, other.nodeType)
+        && Objects.equal(nodeName, other.nodeName)
+        && columns.equals(other.columns)
+        && orders.equals(other.orders);
+    }
+
+    @Override
+    public int hashCode()
+    {
+      return Objects.hashCode(path, nodeType, nodeName, columns,
+        orders);
+    }
+
+  }
+
+}
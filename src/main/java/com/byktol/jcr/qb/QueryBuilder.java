@@ -0,0 +1,568 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.byktol.jcr.qb;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.query.Query;
+import javax.jcr.query.QueryManager;
+import javax.jcr.query.QueryResult;
+
+import com.byktol.jcr.qb.cache.ResultCache;
+import com.byktol.jcr.qb.cache.ResultKey;
+import com.byktol.jcr.qb.criteria.Criteria;
+import com.byktol.jcr.qb.criteria.Prop;
+import com.byktol.jcr.qb.criteria.impl.ExecutableCriteria;
+import com.byktol.jcr.qb.criteria.impl.Sql2Statement;
+import com.byktol.jcr.qb.metrics.PlanCapture;
+import com.byktol.jcr.qb.metrics.QueryListener;
+import com.byktol.jcr.qb.metrics.QueryMetrics;
+import com.byktol.jcr.qb.metrics.SlowQuery;
+import com.byktol.jcr.qb.metrics.SlowQueryLog;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Entry point of the library: creates the {@link Criteria} for a query
+ * language and executes them against the session. Since the repository
+ * parses the query when it's created, the {@link Query} objects prepared by
+ * {@link #execute(Criteria)} are cached by statement, limit and offset, and
+ * reused for as long as this builder (and thus its session) lives; they're
+ * bound and executed straight away, never handed out. Like the session, a
+ * builder is not meant to be shared between threads.
+ *
+ * @since 1.0
+ * @author Victor Alvarez
+ */
+public abstract class QueryBuilder
+{
+
+  /** The number of prepared queries cached by default. */
+  public static final int DEFAULT_STATEMENT_CACHE_SIZE = 64;
+
+  /** The session the queries are executed with. */
+  private final Session session;
+
+  /** The language of the queries. */
+  private final QueryLanguage language;
+
+  /** The prepared queries. */
+  private final Cache<StatementKey, Query> statements;
+
+  /** The cache of results, null if they aren't cached. */
+  private ResultCache resultCache;
+
+  /** The log of slow queries, null if they aren't logged. */
+  private SlowQueryLog slowQueryLog;
+
+  /**
+   * Constructor.
+   *
+   * @param session
+   *          The session the queries are executed with
+   * @param language
+   *          The language of the queries
+   */
+  protected QueryBuilder(final Session session, final QueryLanguage language)
+  {
+    this(session, language, DEFAULT_STATEMENT_CACHE_SIZE);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param session
+   *          The session the queries are executed with
+   * @param language
+   *          The language of the queries
+   * @param statementCacheSize
+   *          The number of prepared queries to cache, zero disables it
+   */
+  protected QueryBuilder(
+    final Session session,
+    final QueryLanguage language,
+    final int statementCacheSize)
+  {
+    if (null == session)
+    {
+      throw new IllegalArgumentException("session cannot be null");
+    }
+
+    if (null == language)
+    {
+      throw new IllegalArgumentException("language cannot be null");
+    }
+
+    this.session = session;
+    this.language = language;
+    this.statements = CacheBuilder.newBuilder()
+      .maximumSize(statementCacheSize)
+      .build();
+  }
+
+  /**
+   * @return A new, empty criteria for the language of this builder
+   */
+  public abstract Criteria createCriteria();
+
+  /**
+   * Creates a new {@link Query} for the criteria, which belongs to the caller
+   * alone, e.g. to bind its {@link com.byktol.jcr.qb.criteria.Param}s. The
+   * limit and offset of the criteria are pushed down to the repository, and
+   * the values of a JCR-SQL2 statement are bound.
+   *
+   * @param criteria
+   *          The criteria being queried
+   * @return The query, ready to be executed
+   * @throws RepositoryException
+   *           If the query cannot be created
+   */
+  public Query createQuery(final Criteria criteria)
+    throws RepositoryException
+  {
+    final Sql2Statement sql2 = buildStatement(criteria);
+    final String statement =
+      null == sql2 ? criteria.buildQuery() : sql2.getStatement();
+    final Query query = prepare(
+      new StatementKey(statement, criteria.getLimit(), criteria.getOffset()));
+
+    if (null != sql2)
+    {
+      sql2.bind(query, session.getValueFactory());
+    }
+
+    return query;
+  }
+
+  /**
+   * Executes a rendered statement with the {@link Query} prepared for the
+   * same statement, limit and offset, if any. Every variable of a JCR-SQL2
+   * statement is bound again, since the query was bound to the values of
+   * another criteria the last time.
+   *
+   * @param criteria
+   *          The criteria being queried
+   * @param statement
+   *          The statement rendered from the criteria
+   * @param sql2
+   *          The JCR-SQL2 statement with its bind variables, or null
+   * @return The result of the query
+   * @throws RepositoryException
+   *           If the query cannot be created or executed
+   */
+  private QueryResult executePrepared(
+    final Criteria criteria,
+    final String statement,
+    final Sql2Statement sql2)
+    throws RepositoryException
+  {
+    final StatementKey key =
+      new StatementKey(statement, criteria.getLimit(), criteria.getOffset());
+    Query query = statements.getIfPresent(key);
+
+    if (null == query)
+    {
+      query = prepare(key);
+      statements.put(key, query);
+    }
+
+    if (null != sql2)
+    {
+      sql2.bind(query, session.getValueFactory());
+    }
+
+    return query.execute();
+  }
+
+  /**
+   * Executes the criteria. An optimized criteria whose restrictions
+   * contradict each other isn't sent to the repository, an empty result is
+   * returned straight away. When a result cache is set, the paths of the
+   * result are cached. When a {@link QueryListener} is set, the execution,
+   * including the preparation of the query, and the fetching of the rows
+   * are measured. When a {@link SlowQueryLog} is set, the queries slower
+   * than its threshold are recorded.
+   *
+   * @see #createQuery(Criteria)
+   * @see #setResultCache(ResultCache)
+   * @see #setSlowQueryLog(SlowQueryLog)
+   * @see Criteria#setOptimized(boolean)
+   * @param criteria
+   *          The criteria being queried
+   * @return The result of the query
+   * @throws RepositoryException
+   *           If the query cannot be created or executed
+   */
+  public QueryResult execute(final Criteria criteria)
+    throws RepositoryException
+  {
+    if (isContradiction(criteria))
+    {
+      return new EmptyQueryResult();
+    }
+
+    final QueryListener listener = QueryMetrics.getListener();
+    final SlowQueryLog slow = slowQueryLog;
+    if (null == listener && null == slow)
+    {
+      return run(criteria);
+    }
+
+    final long start = System.nanoTime();
+    QueryResult result = run(criteria);
+    final long nanos = System.nanoTime() - start;
+
+    final String fingerprint = fingerprint(criteria);
+
+    if (null != slow && slow.isSlow(nanos))
+    {
+      result = slow.track(result, record(slow, criteria, fingerprint, nanos));
+    }
+
+    if (null == listener)
+    {
+      return result;
+    }
+
+    listener.onExecute(fingerprint, nanos);
+
+    return QueryMetrics.instrument(result, listener, fingerprint, start);
+  }
+
+  /**
+   * @param criteria
+   *          The criteria being queried
+   * @return The JCR-SQL2 statement with its bind variables, or null if the
+   *         criteria doesn't build JCR-SQL2
+   */
+  private static Sql2Statement buildStatement(final Criteria criteria)
+  {
+    return criteria instanceof ExecutableCriteria
+      ? ((ExecutableCriteria) criteria).buildStatement() : null;
+  }
+
+  /**
+   * @param criteria
+   *          The criteria being queried
+   * @return Whether the criteria is optimized and its restrictions
+   *         contradict each other
+   */
+  static boolean isContradiction(final Criteria criteria)
+  {
+    return criteria instanceof ExecutableCriteria
+      && ((ExecutableCriteria) criteria).isContradiction();
+  }
+
+  /**
+   * @param criteria
+   *          The criteria being queried
+   * @return The shape of the query
+   */
+  private static String fingerprint(final Criteria criteria)
+  {
+    return criteria instanceof ExecutableCriteria
+      ? ((ExecutableCriteria) criteria).getShape()
+      : criteria.getClass().getName();
+  }
+
+  /**
+   * Records a slow query, and its plan if the log captures it. The plan is
+   * captured here since the session cannot be used by another thread.
+   *
+   * @param slow
+   *          The log of slow queries
+   * @param criteria
+   *          The criteria being queried
+   * @param fingerprint
+   *          The shape of the query
+   * @param nanos
+   *          How long the execution took, in nanoseconds
+   * @return The record of the query
+   */
+  private SlowQuery record(
+    final SlowQueryLog slow,
+    final Criteria criteria,
+    final String fingerprint,
+    final long nanos)
+  {
+    // the statement alone has no values for the variables of JCR-SQL2
+    final Sql2Statement sql2 = buildStatement(criteria);
+    final String statement =
+      null == sql2 ? criteria.buildQuery() : sql2.getStatement();
+    final Map<String, Object> bindVariables = null == sql2
+      ? Collections.<String, Object>emptyMap() : sql2.getBindVariables();
+    final PlanCapture capture = slow.getPlanCapture();
+    final String plan = null == capture ? null
+      : capture.capture(session, statement, bindVariables,
+        language.toString());
+    String description = criteria.toString();
+    if (criteria instanceof Prop)
+    {
+      final Prop prop = (Prop) criteria;
+      description = prop.getOrders().isEmpty()
+        ? prop.getCriterion().toString()
+        : prop.getCriterion() + " order by " + prop.getOrders();
+    }
+
+    return slow.record(statement, bindVariables, fingerprint, description,
+      nanos, plan);
+  }
+
+  /**
+   * Executes the criteria, through the result cache if any.
+   *
+   * @param criteria
+   *          The criteria being queried
+   * @return The result of the query
+   * @throws RepositoryException
+   *           If the query cannot be created or executed
+   */
+  private QueryResult run(final Criteria criteria)
+    throws RepositoryException
+  {
+    final Sql2Statement sql2 = buildStatement(criteria);
+    final String statement =
+      null == sql2 ? criteria.buildQuery() : sql2.getStatement();
+
+    if (null == resultCache || !(criteria instanceof Prop))
+    {
+      return executePrepared(criteria, statement, sql2);
+    }
+
+    final ResultKey key = new ResultKey(session.getWorkspace().getName(),
+      session.getUserID(), statement,
+      null == sql2 ? null : sql2.getBindVariables(),
+      criteria.getLimit(), criteria.getOffset());
+
+    return resultCache.execute(session, key, (Prop) criteria, language,
+      new Callable<QueryResult>()
+      {
+        @Override
+        public QueryResult call()
+          throws RepositoryException
+        {
+          return executePrepared(criteria, statement, sql2);
+        }
+      });
+  }
+
+  /**
+   * Executes the criteria and wraps the result in lazy views, for walking
+   * large results without collecting them.
+   *
+   * @see #execute(Criteria)
+   * @param criteria
+   *          The criteria being queried
+   * @return The lazy views of the result
+   * @throws RepositoryException
+   *           If the query cannot be created or executed
+   */
+  public Results find(final Criteria criteria)
+    throws RepositoryException
+  {
+    return new Results(execute(criteria));
+  }
+
+  /**
+   * Executes many criteria at once, e.g. those of the components of a page,
+   * in as few round trips as possible. The criteria on the same path, node
+   * type and node name, and with the same orders, are coalesced into a
+   * single query for any of their restrictions; its rows are then routed
+   * back to every criteria by evaluating the restrictions of the latter
+   * against the nodes, offset included. The restrictions are compiled with
+   * {@link com.byktol.jcr.qb.criteria.predicate.CriterionPredicate}.
+   * <p>
+   * A criteria is executed on its own if there's nothing to coalesce it with,
+   * if it has a limit, since the coalesced query would have to read every
+   * row rather than push the limit down, or if its restrictions cannot be
+   * evaluated in memory: full-text searches,
+   * {@link com.byktol.jcr.qb.criteria.Param}s, restrictions unknown to this
+   * library, or properties other than plain relative paths. The routed
+   * results hold their rows in memory, and their rows have the scores of
+   * the coalesced query.
+   *
+   * @see #execute(Criteria)
+   * @param criteria
+   *          The criteria being queried
+   * @return The result of every criteria, in the same order
+   * @throws RepositoryException
+   *           If a query cannot be created or executed, or the nodes cannot
+   *           be read
+   */
+  public List<QueryResult> executeAll(final List<? extends Criteria> criteria)
+    throws RepositoryException
+  {
+    if (null == criteria)
+    {
+      throw new IllegalArgumentException("criteria cannot be null");
+    }
+
+    return QueryBatch.execute(this, criteria);
+  }
+
+  /**
+   * Creates a new query, which is parsed by the repository.
+   *
+   * @param key
+   *          The statement, limit and offset of the query
+   * @return The query
+   * @throws RepositoryException
+   *           If the query cannot be created
+   */
+  private Query prepare(final StatementKey key)
+    throws RepositoryException
+  {
+    final QueryManager manager = session.getWorkspace().getQueryManager();
+    final Query query =
+      manager.createQuery(key.statement, language.toString());
+
+    if (key.limit > 0)
+    {
+      query.setLimit(key.limit);
+    }
+
+    if (key.offset > 0)
+    {
+      query.setOffset(key.offset);
+    }
+
+    return query;
+  }
+
+  /**
+   * @return The session the queries are executed with
+   */
+  public Session getSession()
+  {
+    return session;
+  }
+
+  /**
+   * @return The language of the queries
+   */
+  public QueryLanguage getLanguage()
+  {
+    return language;
+  }
+
+  /**
+   * @return The cache of results, null if they aren't cached
+   */
+  public ResultCache getResultCache()
+  {
+    return resultCache;
+  }
+
+  /**
+   * Caches the results of the queries with a limit. The cache may be shared
+   * between several builders, i.e. sessions, of its workspace.
+   *
+   * @param resultCache
+   *          The cache of results, null to stop caching them
+   */
+  public void setResultCache(final ResultCache resultCache)
+  {
+    this.resultCache = resultCache;
+  }
+
+  /**
+   * @return The log of slow queries, null if they aren't logged
+   */
+  public SlowQueryLog getSlowQueryLog()
+  {
+    return slowQueryLog;
+  }
+
+  /**
+   * Records the queries slower than the threshold of the log. The log may be
+   * shared between several builders.
+   *
+   * @param slowQueryLog
+   *          The log of slow queries, null to stop logging them
+   */
+  public void setSlowQueryLog(final SlowQueryLog slowQueryLog)
+  {
+    this.slowQueryLog = slowQueryLog;
+  }
+
+  /**
+   * Discards every prepared query, e.g. after the session is refreshed.
+   */
+  public void clearStatementCache()
+  {
+    statements.invalidateAll();
+  }
+
+  /**
+   * The key of a prepared query. The limit and offset are part of it since
+   * they cannot be unset once applied to a query.
+   *
+   * @since 1.0
+   * @author Victor Alvarez
+   */
+  private static final class StatementKey
+  {
+
+    /** The query statement. */
+    private final String statement;
+
+    /** The limit applied to the query. */
+    private final long limit;
+
+    /** The offset applied to the query. */
+    private final long offset;
+
+    /**
+     * Constructor.
+     *
+     * @param statement
+     *          The query statement
+     * @param limit
+     *          The limit applied to the query
+     * @param offset
+     *          The offset applied to the query
+     */
+    StatementKey(final String statement, final long limit, final long offset)
+    {
+      this.statement = statement;
+      this.limit = limit;
+      this.offset = offset;
+    }
+
+    @Override
+    public boolean equals(final Object obj)
+    {
+      if (!(obj instanceof StatementKey))
+      {
+        return false;
+      }
+
+      final StatementKey other = (StatementKey) obj;
+
+      return limit == other.limit && offset == other.offset
+        && statement.equals(other.statement);
+    }
+
+    @Override
+    public int hashCode()
+    {
+      return 31 * (31 * statement.hashCode() + (int) limit) + (int) offset;
+    }
+  }
+}
@@ -0,0 +1,225 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.byktol.jcr.qb;
+
+import java.util.Iterator;
+
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.RepositoryException;
+import javax.jcr.Value;
+import javax.jcr.query.QueryResult;
+import javax.jcr.query.Row;
+import javax.jcr.query.RowIterator;
+
+import com.google.common.collect.AbstractIterator;
+
+/**
+ * Lazy views over a {@link QueryResult}. Nothing is collected: every view
+ * pulls from the repository's own iterators one element at a time, so only
+ * what the repository fetches in a batch is ever held in memory. Paths and
+ * projected columns are read from the rows, without loading the nodes.
+ * <p>
+ * Each view asks the result for new iterators, which some repositories allow
+ * only once per result, so iterate over a single view a single time. Since
+ * {@link Iterator} cannot throw checked exceptions, a
+ * {@link RepositoryException} thrown while iterating is rethrown as an
+ * {@link IllegalStateException}.
+ *
+ * @since 1.0
+ * @author Victor Alvarez
+ */
+public final class Results
+{
+
+  /** The result being iterated over. */
+  private final QueryResult result;
+
+  /**
+   * Constructor.
+   *
+   * @param result
+   *          The result being iterated over
+   */
+  public Results(final QueryResult result)
+  {
+    if (null == result)
+    {
+      throw new IllegalArgumentException("result cannot be null");
+    }
+
+    this.result = result;
+  }
+
+  /**
+   * @return The nodes of the result, loaded as they are iterated over
+   */
+  public Iterable<Node> nodes()
+  {
+    return new Iterable<Node>()
+    {
+      @Override
+      public Iterator<Node> iterator()
+      {
+        final NodeIterator nodes;
+        try
+        {
+          nodes = result.getNodes();
+        } catch (RepositoryException e)
+        {
+          throw new IllegalStateException(e);
+        }
+
+        return new AbstractIterator<Node>()
+        {
+          @Override
+          protected Node computeNext()
+          {
+            return nodes.hasNext() ? nodes.nextNode() : endOfData();
+          }
+        };
+      }
+    };
+  }
+
+  /**
+   * @return The paths of the result, without loading the nodes
+   */
+  public Iterable<String> paths()
+  {
+    return new RowIterable<String>()
+    {
+      @Override
+      protected String project(final Row row)
+        throws RepositoryException
+      {
+        return row.getPath();
+      }
+    };
+  }
+
+  /**
+   * Projects the given columns of every row, e.g. properties of the node, or
+   * pseudo-columns such as jcr:path and jcr:score, without loading the nodes.
+   * <p>
+   * The columns are read from the rows, so properties should be selected in
+   * the query with
+   * {@link com.byktol.jcr.qb.criteria.Criteria#setColumns(String...)}, since
+   * a JCR-SQL2 query selecting every column has none for residual
+   * properties. Whether a column left out of the rows reads as null or fails
+   * with a {@link RepositoryException}, rethrown as an
+   * {@link IllegalStateException}, depends on the repository.
+   *
+   * @param columns
+   *          The names of the columns
+   * @return The values of the columns, in the same order, per row; a value is
+   *         null if the node has no such property
+   */
+  public Iterable<Value[]> project(final String... columns)
+  {
+    final String[] names = columns.clone();
+
+    return new RowIterable<Value[]>()
+    {
+      @Override
+      protected Value[] project(final Row row)
+        throws RepositoryException
+      {
+        final Value[] values = new Value[names.length];
+        for (int i = 0; i < names.length; i++)
+        {
+          values[i] = row.getValue(names[i]);
+        }
+
+        return values;
+      }
+    };
+  }
+
+  /**
+   * @return The names of the columns of the result
+   * @throws RepositoryException
+   *           If the columns cannot be read
+   */
+  public String[] getColumnNames()
+    throws RepositoryException
+  {
+    return result.getColumnNames();
+  }
+
+  /**
+   * @return The underlying result
+   */
+  public QueryResult getQueryResult()
+  {
+    return result;
+  }
+
+  /**
+   * Lazily projects every row of the result into something else.
+   *
+   * @param <T>
+   *          The type of the projection
+   *
+   * @since 1.0
+   * @author Victor Alvarez
+   */
+  private abstract class RowIterable<T>
+    implements Iterable<T>
+  {
+
+    /**
+     * @param row
+     *          The current row
+     * @return The projection of the row
+     * @throws RepositoryException
+     *           If the row cannot be read
+     */
+    protected abstract T project(final Row row)
+      throws RepositoryException;
+
+    @Override
+    public final Iterator<T> iterator()
+    {
+      final RowIterator rows;
+      try
+      {
+        rows = result.getRows();
+      } catch (RepositoryException e)
+      {
+        throw new IllegalStateException(e);
+      }
+
+      return new AbstractIterator<T>()
+      {
+        @Override
+        protected T computeNext()
+        {
+          if (!rows.hasNext())
+          {
+            return endOfData();
+          }
+
+          try
+          {
+            return project(rows.nextRow());
+          } catch (RepositoryException e)
+          {
+            throw new IllegalStateException(e);
+          }
+        }
+      };
+    }
+  }
+}
@@ -0,0 +1,102 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.byktol.jcr.qb;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.query.QueryResult;
+import javax.jcr.query.Row;
+import javax.jcr.query.RowIterator;
+
+import org.apache.jackrabbit.commons.iterator.NodeIteratorAdapter;
+import org.apache.jackrabbit.commons.iterator.RowIteratorAdapter;
+
+/**
+ * The rows of a coalesced query that were routed to one of the criteria
+ * coalesced, in the order of the query.
+ *
+ * @see QueryBuilder#executeAll(List)
+ * @since 1.0
+ * @author Victor Alvarez
+ */
+final class RoutedQueryResult
+  implements QueryResult
+{
+
+  /** The column names of the coalesced query. */
+  private final String[] columnNames;
+
+  /** The selector names of the coalesced query. */
+  private final String[] selectorNames;
+
+  /** The rows routed here. */
+  private final List<Row> rows = new ArrayList<Row>();
+
+  /** The nodes of the rows. */
+  private final List<Node> nodes = new ArrayList<Node>();
+
+  /**
+   * Constructor.
+   *
+   * @param columnNames
+   *          The column names of the coalesced query
+   * @param selectorNames
+   *          The selector names of the coalesced query
+   */
+  RoutedQueryResult(final String[] columnNames, final String[] selectorNames)
+  {
+    this.columnNames = columnNames;
+    this.selectorNames = selectorNames;
+  }
+
+  /**
+   * @param row
+   *          A row of the coalesced query
+   * @param node
+   *          The node of the row
+   */
+  void add(final Row row, final Node node)
+  {
+    rows.add(row);
+    nodes.add(node);
+  }
+
+  @Override
+  public String[] getColumnNames()
+  {
+    return columnNames.clone();
+  }
+
+  @Override
+  public RowIterator getRows()
+  {
+    return new RowIteratorAdapter(rows);
+  }
+
+  @Override
+  public NodeIterator getNodes()
+  {
+    return new NodeIteratorAdapter(nodes);
+  }
+
+  @Override
+  public String[] getSelectorNames()
+  {
+    return selectorNames.clone();
+  }
+
+}
@@ -0,0 +1,225 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.byktol.jcr.qb.cache;
+
+import java.util.Iterator;
+
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.PropertyType;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.Value;
+import javax.jcr.query.QueryResult;
+import javax.jcr.query.Row;
+import javax.jcr.query.RowIterator;
+
+import org.apache.jackrabbit.commons.iterator.NodeIteratorAdapter;
+import org.apache.jackrabbit.commons.iterator.RowIteratorAdapter;
+
+import com.byktol.jcr.qb.cache.ResultCache.CachedResult;
+import com.google.common.base.Function;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterators;
+
+/**
+ * A {@link QueryResult} read from the cache. The nodes are read lazily with
+ * the session of the caller, skipping those it cannot access any more; the
+ * values of the rows are read from the nodes too.
+ *
+ * @since 1.0
+ * @author Victor Alvarez
+ */
+final class CachedQueryResult
+  implements QueryResult
+{
+
+  /** The session reading the nodes. */
+  private final Session session;
+
+  /** The cached result. */
+  private final CachedResult result;
+
+  /**
+   * Constructor.
+   *
+   * @param session
+   *          The session reading the nodes
+   * @param result
+   *          The cached result
+   */
+  CachedQueryResult(final Session session, final CachedResult result)
+  {
+    this.session = session;
+    this.result = result;
+  }
+
+  @Override
+  public String[] getColumnNames()
+  {
+    return result.getColumnNames();
+  }
+
+  @Override
+  public RowIterator getRows()
+  {
+    return new RowIteratorAdapter(Iterators.transform(nodes(),
+      new Function<Node, Row>()
+      {
+        @Override
+        public Row apply(final Node node)
+        {
+          return new NodeRow(node);
+        }
+      }));
+  }
+
+  @Override
+  public NodeIterator getNodes()
+  {
+    return new NodeIteratorAdapter(nodes());
+  }
+
+  @Override
+  public String[] getSelectorNames()
+  {
+    return new String[0];
+  }
+
+  /**
+   * @return The nodes the session can read, lazily
+   */
+  private Iterator<Node> nodes()
+  {
+    final Iterator<String> paths = result.getPaths().iterator();
+
+    return new AbstractIterator<Node>()
+    {
+      @Override
+      protected Node computeNext()
+      {
+        try
+        {
+          while (paths.hasNext())
+          {
+            final String path = paths.next();
+            if (session.nodeExists(path))
+            {
+              return session.getNode(path);
+            }
+          }
+        } catch (RepositoryException e)
+        {
+          throw new IllegalStateException(e);
+        }
+
+        return endOfData();
+      }
+    };
+  }
+
+  /**
+   * A row whose values are read from its node.
+   *
+   * @since 1.0
+   * @author Victor Alvarez
+   */
+  private final class NodeRow
+    implements Row
+  {
+
+    /** The node of the row. */
+    private final Node node;
+
+    /**
+     * Constructor.
+     *
+     * @param node
+     *          The node of the row
+     */
+    NodeRow(final Node node)
+    {
+      this.node = node;
+    }
+
+    @Override
+    public Value[] getValues()
+      throws RepositoryException
+    {
+      final String[] names = result.getColumnNames();
+      final Value[] values = new Value[names.length];
+
+      for (int i = 0; i < names.length; i++)
+      {
+        values[i] = getValue(names[i]);
+      }
+
+      return values;
+    }
+
+    @Override
+    public Value getValue(final String columnName)
+      throws RepositoryException
+    {
+      if (node.hasProperty(columnName))
+      {
+        return node.getProperty(columnName).getValue();
+      } else if ("jcr:path".equals(columnName))
+      {
+        return session.getValueFactory().createValue(node.getPath(),
+          PropertyType.PATH);
+      }
+
+      return null;
+    }
+
+    @Override
+    public Node getNode()
+    {
+      return node;
+    }
+
+    @Override
+    public Node getNode(final String selectorName)
+    {
+      return node;
+    }
+
+    @Override
+    public String getPath()
+      throws RepositoryException
+    {
+      return node.getPath();
+    }
+
+    @Override
+    public String getPath(final String selectorName)
+      throws RepositoryException
+    {
+      return node.getPath();
+    }
+
+    @Override
+    public double getScore()
+    {
+      return 0;
+    }
+
+    @Override
+    public double getScore(final String selectorName)
+    {
+      return 0;
+    }
+  }
+}
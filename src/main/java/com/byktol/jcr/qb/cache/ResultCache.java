@@ -0,0 +1,570 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.byktol.jcr.qb.cache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.observation.Event;
+import javax.jcr.observation.EventIterator;
+import javax.jcr.observation.EventListener;
+import javax.jcr.observation.ObservationManager;
+import javax.jcr.query.QueryResult;
+import javax.jcr.query.RowIterator;
+
+import com.byktol.jcr.qb.QueryLanguage;
+import com.byktol.jcr.qb.criteria.Prop;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+/**
+ * Caches the paths of the nodes returned by the queries, so identical
+ * queries, even from different sessions of the same user, don't hit the
+ * repository again.
+ * The entries are evicted when the cache is full, the least recently used
+ * first, and when they expire. Besides, they're invalidated as soon as
+ * something changes under the path of their query, which is observed with a
+ * long-lived session of its own; for property changes, only the nodes of the
+ * query's node type are observed when possible. A scope stops being observed
+ * once none of its results is cached any longer.
+ * <p>
+ * Only the queries with a limit, up to the maximum number of rows of the
+ * cache, are cached. The nodes are read with the session of each caller, so
+ * the nodes it cannot access are skipped and a page may be shorter than the
+ * limit. A cache serves a single workspace, the one of its session, and is
+ * safe to share between threads.
+ *
+ * @see com.byktol.jcr.qb.QueryBuilder#setResultCache(ResultCache)
+ * @since 1.0
+ * @author Victor Alvarez
+ */
+public class ResultCache
+{
+
+  /** The maximum number of rows of a result cached by default. */
+  public static final int DEFAULT_MAXIMUM_ROWS = 1000;
+
+  /** The node events that may change the result of a query. */
+  private static final int NODE_EVENTS =
+    Event.NODE_ADDED | Event.NODE_REMOVED | Event.NODE_MOVED;
+
+  /** The property events that may change the result of a query. */
+  private static final int PROPERTY_EVENTS =
+    Event.PROPERTY_ADDED | Event.PROPERTY_CHANGED | Event.PROPERTY_REMOVED;
+
+  /** The session observing the repository. */
+  private final Session observer;
+
+  /** The workspace of the observer. */
+  private final String workspace;
+
+  /** The maximum number of rows of a cached result. */
+  private final int maximumRows;
+
+  /** The cached results. */
+  private final Cache<ResultKey, CachedResult> results;
+
+  /** The state of every observed scope. */
+  private final ConcurrentMap<Scope, ScopeState> scopes =
+    new ConcurrentHashMap<Scope, ScopeState>();
+
+  /**
+   * The scopes no longer observed whose listeners are still to be removed,
+   * which is done by the callers rather than within the events.
+   */
+  private final Queue<ScopeState> released =
+    new ConcurrentLinkedQueue<ScopeState>();
+
+  /**
+   * Constructor.
+   *
+   * @param observer
+   *          A session kept open as long as the cache lives, for observing
+   *          the repository
+   * @param maximumSize
+   *          The maximum number of results
+   * @param ttl
+   *          How long a result lives
+   * @param unit
+   *          The unit of the ttl
+   */
+  public ResultCache(
+    final Session observer,
+    final int maximumSize,
+    final long ttl,
+    final TimeUnit unit)
+  {
+    this(observer, maximumSize, ttl, unit, DEFAULT_MAXIMUM_ROWS);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param observer
+   *          A session kept open as long as the cache lives, for observing
+   *          the repository
+   * @param maximumSize
+   *          The maximum number of results
+   * @param ttl
+   *          How long a result lives
+   * @param unit
+   *          The unit of the ttl
+   * @param maximumRows
+   *          The maximum number of rows of a cached result
+   */
+  public ResultCache(
+    final Session observer,
+    final int maximumSize,
+    final long ttl,
+    final TimeUnit unit,
+    final int maximumRows)
+  {
+    if (null == observer)
+    {
+      throw new IllegalArgumentException("observer cannot be null");
+    }
+
+    this.observer = observer;
+    this.workspace = observer.getWorkspace().getName();
+    this.maximumRows = maximumRows;
+    this.results = CacheBuilder.newBuilder()
+      .maximumSize(maximumSize)
+      .expireAfterWrite(ttl, unit)
+      .removalListener(new RemovalListener<ResultKey, CachedResult>()
+      {
+        @Override
+        public void onRemoval(
+          final RemovalNotification<ResultKey, CachedResult> notification)
+        {
+          if (RemovalCause.REPLACED != notification.getCause()
+            && null != notification.getValue())
+          {
+            final ScopeState state = notification.getValue().getState();
+            state.keys.remove(notification.getKey());
+            release(state);
+          }
+        }
+      })
+      .build();
+  }
+
+  /**
+   * Executes a query through the cache. Concurrent misses of the same query
+   * execute it only once.
+   *
+   * @param session
+   *          The session of the caller, which reads the nodes
+   * @param key
+   *          The key of the query
+   * @param prop
+   *          The properties of the query, for its scope
+   * @param language
+   *          The language of the query, for the path of its scope
+   * @param query
+   *          Executes the query on a miss
+   * @return The result of the query
+   * @throws RepositoryException
+   *           If the query cannot be executed
+   */
+  public QueryResult execute(
+    final Session session,
+    final ResultKey key,
+    final Prop prop,
+    final QueryLanguage language,
+    final Callable<QueryResult> query)
+    throws RepositoryException
+  {
+    if (key.getLimit() <= 0 || key.getLimit() > maximumRows
+      || !workspace.equals(key.getWorkspace()))
+    {
+      return call(query);
+    }
+
+    purge();
+    final ScopeState state = observe(Scope.of(prop, language));
+    final long generation = state.generation.get();
+
+    final CachedResult result;
+    try
+    {
+      result = results.get(key, new Callable<CachedResult>()
+      {
+        @Override
+        public CachedResult call()
+          throws RepositoryException
+        {
+          return load(state, query);
+        }
+      });
+    } catch (ExecutionException e)
+    {
+      release(state);
+      throw unwrap(e.getCause());
+    } catch (UncheckedExecutionException e)
+    {
+      release(state);
+      throw unwrap(e.getCause());
+    }
+
+    state.keys.add(key);
+    if (generation != state.generation.get()
+      || state != scopes.get(state.scope))
+    {
+      // something changed meanwhile, or the scope stopped being observed,
+      // the result may be stale already
+      results.invalidate(key);
+    }
+
+    return new CachedQueryResult(session, result);
+  }
+
+  /**
+   * Discards every result.
+   */
+  public void invalidateAll()
+  {
+    results.invalidateAll();
+  }
+
+  /**
+   * Stops observing the repository and discards every result. The observer
+   * session isn't logged out.
+   *
+   * @throws RepositoryException
+   *           If a listener cannot be removed
+   */
+  public synchronized void close()
+    throws RepositoryException
+  {
+    results.invalidateAll();
+    released.addAll(scopes.values());
+    scopes.clear();
+    purge();
+  }
+
+  /**
+   * Stops observing a scope once none of its results is cached. Its
+   * listeners are removed later on, by {@link #purge()}.
+   *
+   * @param state
+   *          The state of the scope
+   */
+  private void release(final ScopeState state)
+  {
+    if (state.keys.isEmpty() && scopes.remove(state.scope, state))
+    {
+      released.add(state);
+      // a key added meanwhile wouldn't be invalidated by anything else
+      results.invalidateAll(new ArrayList<ResultKey>(state.keys));
+    }
+  }
+
+  /**
+   * Removes the listeners of the scopes no longer observed.
+   *
+   * @throws RepositoryException
+   *           If a listener cannot be removed
+   */
+  private void purge()
+    throws RepositoryException
+  {
+    if (released.isEmpty())
+    {
+      return;
+    }
+
+    final ObservationManager manager =
+      observer.getWorkspace().getObservationManager();
+
+    for (ScopeState state = released.poll(); null != state;
+      state = released.poll())
+    {
+      for (EventListener listener : state.listeners)
+      {
+        manager.removeEventListener(listener);
+      }
+    }
+  }
+
+  /**
+   * Starts observing a scope, unless it's already observed.
+   *
+   * @param scope
+   *          The scope of a query
+   * @return The state of the scope
+   * @throws RepositoryException
+   *           If the listeners cannot be added
+   */
+  private ScopeState observe(final Scope scope)
+    throws RepositoryException
+  {
+    final ScopeState state = scopes.get(scope);
+    if (null != state)
+    {
+      return state;
+    }
+
+    synchronized (this)
+    {
+      if (scopes.containsKey(scope))
+      {
+        return scopes.get(scope);
+      }
+
+      final ScopeState added = new ScopeState(scope);
+      final ObservationManager manager =
+        observer.getWorkspace().getObservationManager();
+
+      if (null == scope.getNodeType())
+      {
+        add(manager, added, NODE_EVENTS | PROPERTY_EVENTS, scope, null);
+      } else
+      {
+        add(manager, added, NODE_EVENTS, scope, null);
+        add(manager, added, PROPERTY_EVENTS, scope,
+          new String[] {scope.getNodeType()});
+      }
+
+      scopes.put(scope, added);
+      return added;
+    }
+  }
+
+  /**
+   * Adds a listener invalidating the results of a scope.
+   *
+   * @param manager
+   *          The observation manager of the observer
+   * @param state
+   *          The state of the scope
+   * @param events
+   *          The types of the events listened to
+   * @param scope
+   *          The scope being observed
+   * @param nodeTypes
+   *          The node types of the parent nodes of the events, null for any
+   * @throws RepositoryException
+   *           If the listener cannot be added
+   */
+  private void add(
+    final ObservationManager manager,
+    final ScopeState state,
+    final int events,
+    final Scope scope,
+    final String[] nodeTypes)
+    throws RepositoryException
+  {
+    final EventListener listener = new EventListener()
+    {
+      @Override
+      public void onEvent(final EventIterator iterator)
+      {
+        state.generation.incrementAndGet();
+        results.invalidateAll(new ArrayList<ResultKey>(state.keys));
+      }
+    };
+
+    manager.addEventListener(listener, events, scope.getPath(), true, null,
+      nodeTypes, false);
+    state.listeners.add(listener);
+  }
+
+  /**
+   * Executes a query and reads the paths of its rows.
+   *
+   * @param state
+   *          The state of the query's scope
+   * @param query
+   *          Executes the query
+   * @return The paths of the result
+   * @throws RepositoryException
+   *           If the query cannot be executed
+   */
+  private CachedResult load(
+    final ScopeState state,
+    final Callable<QueryResult> query)
+    throws RepositoryException
+  {
+    final QueryResult result = call(query);
+    final List<String> paths = new ArrayList<String>();
+
+    for (RowIterator rows = result.getRows(); rows.hasNext();)
+    {
+      paths.add(rows.nextRow().getPath());
+    }
+
+    return new CachedResult(result.getColumnNames(),
+      Collections.unmodifiableList(paths), state);
+  }
+
+  /**
+   * @param query
+   *          Executes the query
+   * @return The result of the query
+   * @throws RepositoryException
+   *           If the query cannot be executed
+   */
+  private static QueryResult call(final Callable<QueryResult> query)
+    throws RepositoryException
+  {
+    try
+    {
+      return query.call();
+    } catch (RepositoryException e)
+    {
+      throw e;
+    } catch (RuntimeException e)
+    {
+      throw e;
+    } catch (Exception e)
+    {
+      throw new RepositoryException(e);
+    }
+  }
+
+  /**
+   * @param cause
+   *          The cause of a failed load
+   * @return The repository exception to throw
+   */
+  private static RepositoryException unwrap(final Throwable cause)
+  {
+    if (cause instanceof RepositoryException)
+    {
+      return (RepositoryException) cause;
+    } else if (cause instanceof RuntimeException)
+    {
+      throw (RuntimeException) cause;
+    } else if (cause instanceof Error)
+    {
+      throw (Error) cause;
+    }
+
+    return new RepositoryException(cause);
+  }
+
+  /**
+   * The state of an observed scope.
+   *
+   * @since 1.0
+   * @author Victor Alvarez
+   */
+  static final class ScopeState
+  {
+
+    /** The scope. */
+    private final Scope scope;
+
+    /** Incremented on every change, to detect those during a load. */
+    private final AtomicLong generation = new AtomicLong();
+
+    /** The keys of the cached results of the scope. */
+    private final Set<ResultKey> keys =
+      Collections.newSetFromMap(new ConcurrentHashMap<ResultKey, Boolean>());
+
+    /** The listeners observing the scope. */
+    private final List<EventListener> listeners =
+      new ArrayList<EventListener>(2);
+
+    /**
+     * Constructor.
+     *
+     * @param scope
+     *          The scope
+     */
+    ScopeState(final Scope scope)
+    {
+      this.scope = scope;
+    }
+  }
+
+  /**
+   * A cached result.
+   *
+   * @since 1.0
+   * @author Victor Alvarez
+   */
+  static final class CachedResult
+  {
+
+    /** The column names of the result. */
+    private final String[] columnNames;
+
+    /** The paths of the nodes. */
+    private final List<String> paths;
+
+    /** The state of the query's scope. */
+    private final ScopeState state;
+
+    /**
+     * Constructor.
+     *
+     * @param columnNames
+     *          The column names of the result
+     * @param paths
+     *          The paths of the nodes
+     * @param state
+     *          The state of the query's scope
+     */
+    CachedResult(
+      final String[] columnNames,
+      final List<String> paths,
+      final ScopeState state)
+    {
+      this.columnNames = columnNames;
+      this.paths = paths;
+      this.state = state;
+    }
+
+    /**
+     * @return The column names of the result
+     */
+    String[] getColumnNames()
+    {
+      return columnNames.clone();
+    }
+
+    /**
+     * @return The paths of the nodes
+     */
+    List<String> getPaths()
+    {
+      return paths;
+    }
+
+    /**
+     * @return The state of the query's scope
+     */
+    ScopeState getState()
+    {
+      return state;
+    }
+  }
+}
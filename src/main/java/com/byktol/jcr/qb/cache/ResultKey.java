@@ -0,0 +1,138 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.byktol.jcr.qb.cache;
+
+import java.util.Collections;
+import java.util.Map;
+
+import com.google.common.base.Objects;
+
+/**
+ * Identifies a cached result: the rendered statement along with the values
+ * of its bind variables, the limit and offset, the workspace, and the user,
+ * since what a query returns depends on what the user may read.
+ *
+ * @since 1.0
+ * @author Victor Alvarez
+ */
+public final class ResultKey
+{
+
+  /** The workspace the query runs on. */
+  private final String workspace;
+
+  /** The user running the query. */
+  private final String userID;
+
+  /** The rendered statement. */
+  private final String statement;
+
+  /** The values of the bind variables of the statement. */
+  private final Map<String, Object> bindVariables;
+
+  /** The limit of the query. */
+  private final long limit;
+
+  /** The offset of the query. */
+  private final long offset;
+
+  /** The hash code, computed once. */
+  private final int hash;
+
+  /**
+   * Constructor.
+   *
+   * @param workspace
+   *          The workspace the query runs on
+   * @param userID
+   *          The user running the query
+   * @param statement
+   *          The rendered statement
+   * @param bindVariables
+   *          The values of the bind variables, possibly null
+   * @param limit
+   *          The limit of the query
+   * @param offset
+   *          The offset of the query
+   */
+  public ResultKey(
+    final String workspace,
+    final String userID,
+    final String statement,
+    final Map<String, Object> bindVariables,
+    final long limit,
+    final long offset)
+  {
+    if (null == statement)
+    {
+      throw new IllegalArgumentException("statement cannot be null");
+    }
+
+    this.workspace = workspace;
+    this.userID = userID;
+    this.statement = statement;
+    this.bindVariables = null == bindVariables
+      ? Collections.<String, Object>emptyMap() : bindVariables;
+    this.limit = limit;
+    this.offset = offset;
+    this.hash = Objects.hashCode(workspace, userID, statement,
+      this.bindVariables, limit, offset);
+  }
+
+  /**
+   * @return The workspace the query runs on
+   */
+  public String getWorkspace()
+  {
+    return workspace;
+  }
+
+  /**
+   * @return The limit of the query
+   */
+  public long getLimit()
+  {
+    return limit;
+  }
+
+  @Override
+  public boolean equals(final Object obj)
+  {
+    if (!(obj instanceof ResultKey))
+    {
+      return false;
+    }
+
+    final ResultKey other = (ResultKey) obj;
+
+    return hash == other.hash && limit == other.limit
+      && offset == other.offset && statement.equals(other.statement)
+      && Objects.equal(workspace, other.workspace)
+      && Objects.equal(userID, other.userID)
+      && bindVariables.equals(other.bindVariables);
+  }
+
+  @Override
+  public int hashCode()
+  {
+    return hash;
+  }
+
+  @Override
+  public String toString()
+  {
+    return statement + " " + bindVariables + " [" + offset + ", " + limit
+      + "] " + userID + "@" + workspace;
+  }
+}
@@ -0,0 +1,216 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.byktol.jcr.qb.cache;
+
+import java.util.List;
+
+import org.apache.jackrabbit.util.ISO9075;
+
+import com.byktol.jcr.qb.QueryLanguage;
+import com.byktol.jcr.qb.criteria.Criterion;
+import com.byktol.jcr.qb.criteria.Order;
+import com.byktol.jcr.qb.criteria.Prop;
+import com.byktol.jcr.qb.criteria.expressions.ContradictionExpression;
+import com.byktol.jcr.qb.criteria.expressions.ExistExpression;
+import com.byktol.jcr.qb.criteria.expressions.Junction;
+import com.byktol.jcr.qb.criteria.expressions.LogicalExpression;
+import com.byktol.jcr.qb.criteria.expressions.NotExpression;
+import com.byktol.jcr.qb.criteria.expressions.PropertyValueExpression;
+import com.byktol.jcr.qb.criteria.expressions.SimpleExpression;
+import com.google.common.base.Objects;
+import com.google.common.base.Strings;
+
+/**
+ * The part of the repository a query depends on: the subtree under its path
+ * and, for property changes, the nodes of its node type. The node type only
+ * narrows the property changes down when every restriction and order is on
+ * a property of the node itself, otherwise a change to a descendant could
+ * go unnoticed.
+ *
+ * @since 1.0
+ * @author Victor Alvarez
+ */
+final class Scope
+{
+
+  /** The absolute path of the subtree. */
+  private final String path;
+
+  /** The node type of the property changes, null for any. */
+  private final String nodeType;
+
+  /**
+   * Constructor.
+   *
+   * @param path
+   *          The absolute path of the subtree
+   * @param nodeType
+   *          The node type of the property changes, null for any
+   */
+  Scope(final String path, final String nodeType)
+  {
+    this.path = path;
+    this.nodeType = nodeType;
+  }
+
+  /**
+   * @param prop
+   *          The properties of a query
+   * @param language
+   *          The language of the query, since XPath encodes the path
+   * @return The scope of the query
+   */
+  static Scope of(final Prop prop, final QueryLanguage language)
+  {
+    String path = Strings.isNullOrEmpty(prop.getPath()) ? "/" : prop.getPath();
+    if (QueryLanguage.XPATH == language)
+    {
+      path = ISO9075.decode(path);
+    }
+
+    String nodeType = Strings.emptyToNull(prop.getNodeType());
+    if (null != nodeType && !isDirect(prop))
+    {
+      nodeType = null;
+    }
+
+    return new Scope(path, nodeType);
+  }
+
+  /**
+   * @return The absolute path of the subtree
+   */
+  String getPath()
+  {
+    return path;
+  }
+
+  /**
+   * @return The node type of the property changes, null for any
+   */
+  String getNodeType()
+  {
+    return nodeType;
+  }
+
+  @Override
+  public boolean equals(final Object obj)
+  {
+    if (!(obj instanceof Scope))
+    {
+      return false;
+    }
+
+    final Scope other = (Scope) obj;
+
+    return path.equals(other.path) && Objects.equal(nodeType, other.nodeType);
+  }
+
+  @Override
+  public int hashCode()
+  {
+    return Objects.hashCode(path, nodeType);
+  }
+
+  @Override
+  public String toString()
+  {
+    return null == nodeType ? path : path + " (" + nodeType + ")";
+  }
+
+  /**
+   * @param prop
+   *          The properties of a query
+   * @return Whether every restriction and order is on a property of the node
+   *         itself
+   */
+  private static boolean isDirect(final Prop prop)
+  {
+    for (Order o : prop.getOrders())
+    {
+      if (!isDirect(o.getPropertyName()))
+      {
+        return false;
+      }
+    }
+
+    return isDirect(prop.getCriterion());
+  }
+
+  /**
+   * @param criterion
+   *          Some restrictions
+   * @return Whether every restriction is on a property of the node itself
+   */
+  private static boolean isDirect(final List<Criterion> criterion)
+  {
+    for (Criterion c : criterion)
+    {
+      if (!isDirect(c))
+      {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * @param c
+   *          A restriction
+   * @return Whether the restriction is on a property of the node itself,
+   *         false for unknown restrictions
+   */
+  private static boolean isDirect(final Criterion c)
+  {
+    if (c instanceof SimpleExpression)
+    {
+      return isDirect(((SimpleExpression) c).getPropertyName());
+    } else if (c instanceof PropertyValueExpression)
+    {
+      return isDirect(((PropertyValueExpression) c).getPropertyName());
+    } else if (c instanceof ExistExpression)
+    {
+      return isDirect(((ExistExpression) c).getPropertyName());
+    } else if (c instanceof NotExpression)
+    {
+      return isDirect(((NotExpression) c).getCriterion());
+    } else if (c instanceof Junction)
+    {
+      return isDirect(((Junction) c).getCriterionList());
+    } else if (c instanceof LogicalExpression)
+    {
+      for (Criterion child : ((LogicalExpression) c).getCriterionList())
+      {
+        if (!isDirect(child))
+        {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    return c instanceof ContradictionExpression;
+  }
+
+  /**
+   * @param propertyName
+   *          The name of a property
+   * @return Whether it's not a relative path, e.g. jcr:content/title
+   */
+  private static boolean isDirect(final String propertyName)
+  {
+    return propertyName.indexOf('/') < 0;
+  }
+}
@@ -13,6 +13,8 @@
  */
 package com.byktol.jcr.qb.criteria;
 
+import java.io.IOException;
+
 /**
  * Defines the parameters and filters to narrow a query down, i.e. what goes
  * into a query. Its purpose is to build the query, but not execute it.
@@ -65,6 +67,44 @@ public interface Criteria
    */
   Criteria setNodeType(final String nodeType);
 
+  /**
+   * Selects only the given columns in the query, e.g. properties of the node,
+   * instead of every column, so the repository returns just those in the
+   * rows. By default, or when none is given, every column is selected.
+   *
+   * @see com.byktol.jcr.qb.Results#project(String...)
+   * @param columns
+   *          The names of the columns selected
+   * @return The current {@link Criteria} to enable chaining
+   */
+  Criteria setColumns(final String... columns);
+
+  /**
+   * Runs the restrictions through an optimizer before building the query,
+   * which flattens nested groups, removes duplicates and double negations.
+   * It's off by default, so the query is built verbatim. Beware the optimizer
+   * assumes the restricted properties are single-valued, so the results may
+   * differ from those of the verbatim query on multi-valued properties.
+   *
+   * @see com.byktol.jcr.qb.criteria.optimizer.CriterionOptimizer
+   * @param optimized
+   *          Whether the restrictions are optimized
+   * @return The current {@link Criteria} to enable chaining
+   */
+  Criteria setOptimized(final boolean optimized);
+
+  /**
+   * Brings the restrictions into a canonical form before building the query,
+   * so logically equal criteria build the same query regardless of the
+   * order their restrictions were added in. It's off by default.
+   *
+   * @see com.byktol.jcr.qb.criteria.optimizer.Canonicalizer
+   * @param canonical
+   *          Whether the restrictions are canonicalized
+   * @return The current {@link Criteria} to enable chaining
+   */
+  Criteria setCanonical(final boolean canonical);
+
   /**
    * Builds the query based on {@link Restrictions} and {@link Order}.
    *
@@ -72,6 +112,41 @@ public interface Criteria
    */
   String buildQuery();
 
+  /**
+   * Builds the query based on {@link Restrictions} and {@link Order}, writing
+   * it straight into the given {@link Appendable} instead of materializing a
+   * string, e.g. into a reusable StringBuilder, a CharBuffer or a Writer.
+   *
+   * @param <A>
+   *          The type of the {@link Appendable}
+   * @param query
+   *          Where the query is written to
+   * @return The same {@link Appendable} to enable chaining
+   * @throws IOException
+   *           If the query cannot be appended to
+   */
+  <A extends Appendable> A buildQuery(final A query)
+    throws IOException;
+
+  /**
+   * Compiles the query into an immutable template, where every {@link Param}
+   * used as a restriction value becomes a hole bound later on. Any further
+   * change to this criteria doesn't affect the template.
+   *
+   * @return The compiled template, safe to share between threads
+   */
+  QueryTemplate compile();
+
+  /**
+   * Takes an immutable snapshot of this criteria, whose query is built once
+   * and reused. Any further change to this criteria doesn't affect the
+   * snapshot, whose own mutators throw an
+   * {@link UnsupportedOperationException}.
+   *
+   * @return The frozen criteria, safe to share between threads
+   */
+  Criteria freeze();
+
   /**
    * @param limit
    *          The number of results to return for the query
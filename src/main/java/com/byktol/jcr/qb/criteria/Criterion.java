@@ -20,4 +20,27 @@ package com.byktol.jcr.qb.criteria;
 public interface Criterion
 {
 
+  /**
+   * Calls the method of the visitor for the type of this criterion. A
+   * criterion defined outside this library calls
+   * {@link CriterionVisitor#visitOther(Criterion, Object)}.
+   *
+   * @param <R>
+   *          The type of the result of the visit
+   * @param <P>
+   *          The type of the argument of the visit
+   * @param <X>
+   *          The type of the exception the visit may throw
+   * @param visitor
+   *          The visitor
+   * @param arg
+   *          The argument of the visit
+   * @return The result of the visit
+   * @throws X
+   *           If the visit fails
+   */
+  <R, P, X extends Exception> R accept(
+    CriterionVisitor<R, P, X> visitor,
+    P arg)
+    throws X;
 }
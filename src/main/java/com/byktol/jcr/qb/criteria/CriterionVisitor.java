@@ -0,0 +1,152 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.byktol.jcr.qb.criteria;
+
+import com.byktol.jcr.qb.criteria.expressions.ContainsExpression;
+import com.byktol.jcr.qb.criteria.expressions.ContradictionExpression;
+import com.byktol.jcr.qb.criteria.expressions.ExistExpression;
+import com.byktol.jcr.qb.criteria.expressions.Junction;
+import com.byktol.jcr.qb.criteria.expressions.LikeExpression;
+import com.byktol.jcr.qb.criteria.expressions.LogicalExpression;
+import com.byktol.jcr.qb.criteria.expressions.NotExpression;
+import com.byktol.jcr.qb.criteria.expressions.SimpleExpression;
+
+/**
+ * Visits a {@link Criterion} through {@link Criterion#accept}, so what's done
+ * for every type of restriction is chosen by a virtual call rather than by a
+ * lookup or a chain of instanceof. Criteria unknown to this library are
+ * visited by {@link #visitOther(Criterion, Object)}.
+ *
+ * @param <R>
+ *          The type of the result of a visit
+ * @param <P>
+ *          The type of the argument of a visit
+ * @param <X>
+ *          The type of the exception a visit may throw
+ * @since 1.0
+ * @author Victor Alvarez
+ */
+public interface CriterionVisitor<R, P, X extends Exception>
+{
+
+  /**
+   * @param criterion
+   *          The restriction being visited
+   * @param arg
+   *          The argument of the visit
+   * @return The result of the visit
+   * @throws X
+   *           If the visit fails
+   */
+  R visitSimple(SimpleExpression criterion, P arg)
+    throws X;
+
+  /**
+   * @param criterion
+   *          The restriction being visited
+   * @param arg
+   *          The argument of the visit
+   * @return The result of the visit
+   * @throws X
+   *           If the visit fails
+   */
+  R visitLogical(LogicalExpression criterion, P arg)
+    throws X;
+
+  /**
+   * @param criterion
+   *          The restriction being visited
+   * @param arg
+   *          The argument of the visit
+   * @return The result of the visit
+   * @throws X
+   *           If the visit fails
+   */
+  R visitJunction(Junction criterion, P arg)
+    throws X;
+
+  /**
+   * @param criterion
+   *          The restriction being visited
+   * @param arg
+   *          The argument of the visit
+   * @return The result of the visit
+   * @throws X
+   *           If the visit fails
+   */
+  R visitNot(NotExpression criterion, P arg)
+    throws X;
+
+  /**
+   * @param criterion
+   *          The restriction being visited
+   * @param arg
+   *          The argument of the visit
+   * @return The result of the visit
+   * @throws X
+   *           If the visit fails
+   */
+  R visitContains(ContainsExpression criterion, P arg)
+    throws X;
+
+  /**
+   * @param criterion
+   *          The restriction being visited
+   * @param arg
+   *          The argument of the visit
+   * @return The result of the visit
+   * @throws X
+   *           If the visit fails
+   */
+  R visitLike(LikeExpression criterion, P arg)
+    throws X;
+
+  /**
+   * @param criterion
+   *          The restriction being visited
+   * @param arg
+   *          The argument of the visit
+   * @return The result of the visit
+   * @throws X
+   *           If the visit fails
+   */
+  R visitExist(ExistExpression criterion, P arg)
+    throws X;
+
+  /**
+   * @param criterion
+   *          The restriction being visited
+   * @param arg
+   *          The argument of the visit
+   * @return The result of the visit
+   * @throws X
+   *           If the visit fails
+   */
+  R visitContradiction(ContradictionExpression criterion, P arg)
+    throws X;
+
+  /**
+   * Visits a criterion this library doesn't know about.
+   *
+   * @param criterion
+   *          The restriction being visited
+   * @param arg
+   *          The argument of the visit
+   * @return The result of the visit
+   * @throws X
+   *           If the visit fails
+   */
+  R visitOther(Criterion criterion, P arg)
+    throws X;
+}
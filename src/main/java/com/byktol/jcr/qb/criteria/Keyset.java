@@ -0,0 +1,499 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.byktol.jcr.qb.criteria;
+
+import java.io.UnsupportedEncodingException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+
+import javax.jcr.Node;
+import javax.jcr.Property;
+import javax.jcr.PropertyType;
+import javax.jcr.RepositoryException;
+import javax.jcr.Value;
+
+import org.apache.jackrabbit.util.ISO8601;
+
+/**
+ * Keyset, a.k.a. seek, pagination. Instead of skipping the rows of the
+ * previous pages with an offset, which the repository has to read and
+ * discard, the next page starts right after the last row of the previous one
+ * according to the {@link Order}s of the criteria. Every page thus costs the
+ * same, no matter how deep.
+ * <p>
+ * The orders must identify a row uniquely, so a tie-breaker order on
+ * {@link #PATH} is added by {@link #seek(Criteria, String)}. The repository
+ * must be able to order and compare by jcr:path (e.g. Apache Jackrabbit Oak);
+ * otherwise use another unique property such as jcr:uuid with
+ * {@link #seek(Criteria, String, String)}. The orders must be on
+ * single-valued properties, of the node or of a descendant, e.g.
+ * <code>jcr:content/@published</code>; jcr:score cannot be paginated on,
+ * since it cannot be restricted.
+ * <p>
+ * The position is handed over in an opaque, URL-safe continuation token, so
+ * clients can resume the pagination statelessly:
+ *
+ * <pre>
+ * criteria.addOrder(Order.desc("published"));
+ * Keyset.seek(criteria, token); // a null token is the first page
+ * ... // execute it and keep the last node of the page
+ * String next = Keyset.token(criteria, lastNode);
+ * </pre>
+ *
+ * @since 1.0
+ * @author Victor Alvarez
+ */
+public final class Keyset
+{
+
+  /** The default tie-breaker, unique for every node. */
+  public static final String PATH = "jcr:path";
+
+  /** The score of a row, which cannot be restricted. */
+  private static final String SCORE = "jcr:score";
+
+  /** The version of the token format. */
+  private static final char VERSION = '1';
+
+  /** Tag of a String in the token. */
+  private static final char STRING = 'S';
+  /** Tag of a Long in the token. */
+  private static final char LONG = 'L';
+  /** Tag of a Double in the token. */
+  private static final char DOUBLE = 'D';
+  /** Tag of a BigDecimal in the token. */
+  private static final char DECIMAL = 'M';
+  /** Tag of a Boolean in the token. */
+  private static final char BOOLEAN = 'Z';
+  /** Tag of a Calendar in the token. */
+  private static final char DATE = 'C';
+
+  /** Hexadecimal digits. */
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+  /** Utility class. Private constructor. */
+  private Keyset()
+  {
+    // nothing here
+  }
+
+  /**
+   * Moves the criteria to the page after the given token, adding the
+   * tie-breaker order on {@link #PATH} when it's missing.
+   *
+   * @param criteria
+   *          The criteria with its orders set
+   * @param token
+   *          The token of the previous page, or null for the first page
+   * @return The same criteria to enable chaining
+   */
+  public static Criteria seek(final Criteria criteria, final String token)
+  {
+    return seek(criteria, token, PATH);
+  }
+
+  /**
+   * Moves the criteria to the page after the given token, adding an
+   * ascending tie-breaker order when it's missing. The offset is reset.
+   * An {@link IllegalArgumentException} is thrown if an order cannot be
+   * paginated on, i.e. jcr:score.
+   *
+   * @param criteria
+   *          The criteria with its orders set
+   * @param token
+   *          The token of the previous page, or null for the first page
+   * @param tieBreaker
+   *          A property unique for every node
+   * @return The same criteria to enable chaining
+   */
+  public static Criteria seek(
+    final Criteria criteria,
+    final String token,
+    final String tieBreaker)
+  {
+    final String relative = PropertyName.of(tieBreaker).getRelative();
+    boolean found = false;
+    for (Order o : orders(criteria))
+    {
+      found |= relative(o).equals(relative);
+    }
+    if (!found)
+    {
+      criteria.addOrder(Order.asc(tieBreaker));
+    }
+
+    criteria.setOffset(0);
+
+    if (null != token)
+    {
+      final List<Order> orders = orders(criteria);
+      criteria.add(after(orders, decode(orders, token)));
+    }
+
+    return criteria;
+  }
+
+  /**
+   * Creates the restriction selecting the rows after the given one, i.e. for
+   * orders (a, b) it's <code>a &gt; x or (a = x and b &gt; y)</code>, where
+   * &gt; becomes &lt; for descending orders.
+   *
+   * @param orders
+   *          The orders of the criteria
+   * @param values
+   *          The value of every order's property in the last row
+   * @return The restriction for the next page
+   */
+  public static Criterion after(
+    final List<Order> orders,
+    final Object... values)
+  {
+    if (orders.isEmpty() || orders.size() != values.length)
+    {
+      throw new IllegalArgumentException(
+        "there must be a value for every order");
+    }
+
+    final Criterion[] or = new Criterion[orders.size()];
+    for (int i = 0; i < or.length; i++)
+    {
+      final Criterion[] and = new Criterion[i + 1];
+      for (int j = 0; j < i; j++)
+      {
+        and[j] = Restrictions.eq(orders.get(j).getPropertyName(), values[j]);
+      }
+
+      final Order o = orders.get(i);
+      and[i] = o.isAscending()
+        ? Restrictions.gt(o.getPropertyName(), values[i])
+        : Restrictions.lt(o.getPropertyName(), values[i]);
+
+      or[i] = 1 == and.length ? and[0] : Restrictions.and(and);
+    }
+
+    return 1 == or.length ? or[0] : Restrictions.or(or);
+  }
+
+  /**
+   * Creates the continuation token from the last node of a page.
+   *
+   * @param criteria
+   *          The criteria of the page
+   * @param last
+   *          The last node of the page
+   * @return The token for the next page
+   * @throws RepositoryException
+   *           If a property cannot be read
+   */
+  public static String token(final Criteria criteria, final Node last)
+    throws RepositoryException
+  {
+    final List<Order> orders = orders(criteria);
+    final Object[] values = new Object[orders.size()];
+
+    for (int i = 0; i < values.length; i++)
+    {
+      final String name = relative(orders.get(i));
+      if (PATH.equals(name))
+      {
+        values[i] = last.getPath();
+      } else if (last.hasProperty(name))
+      {
+        final Property property = last.getProperty(name);
+        if (property.isMultiple())
+        {
+          throw new IllegalArgumentException(
+            "cannot page on the multi-valued property " + name);
+        }
+        values[i] = toObject(property.getValue());
+      } else
+      {
+        throw new IllegalArgumentException(
+          "the last node has no value for " + name);
+      }
+    }
+
+    return token(orders, values);
+  }
+
+  /**
+   * Creates the continuation token from the values of the last row of a
+   * page.
+   *
+   * @param orders
+   *          The orders of the criteria
+   * @param values
+   *          The value of every order's property in the last row
+   * @return The token for the next page
+   */
+  public static String token(final List<Order> orders, final Object... values)
+  {
+    if (orders.size() != values.length)
+    {
+      throw new IllegalArgumentException(
+        "there must be a value for every order");
+    }
+
+    final StringBuilder sb = new StringBuilder();
+    sb.append(VERSION).append(shape(orders)).append(':');
+
+    for (Object value : values)
+    {
+      final String string;
+      final char tag;
+      if (value instanceof String)
+      {
+        tag = STRING;
+        string = (String) value;
+      } else if (value instanceof Long || value instanceof Integer)
+      {
+        tag = LONG;
+        string = value.toString();
+      } else if (value instanceof Double || value instanceof Float)
+      {
+        tag = DOUBLE;
+        string = value.toString();
+      } else if (value instanceof BigDecimal)
+      {
+        tag = DECIMAL;
+        string = value.toString();
+      } else if (value instanceof Boolean)
+      {
+        tag = BOOLEAN;
+        string = value.toString();
+      } else if (value instanceof Calendar)
+      {
+        tag = DATE;
+        string = ISO8601.format((Calendar) value);
+      } else
+      {
+        throw new IllegalArgumentException("cannot page on a "
+          + (null == value ? "null" : value.getClass().getName()));
+      }
+      sb.append(tag).append(string.length()).append(':').append(string);
+    }
+
+    return hex(sb.toString());
+  }
+
+  /**
+   * Reads the values out of a token.
+   *
+   * @param orders
+   *          The orders of the criteria, which must be those of the token
+   * @param token
+   *          The continuation token
+   * @return The value of every order's property in the last row
+   */
+  private static Object[] decode(final List<Order> orders, final String token)
+  {
+    final String s = unhex(token);
+    final String header = VERSION + shape(orders) + ":";
+
+    if (!s.startsWith(header))
+    {
+      throw new IllegalArgumentException(
+        "the token doesn't belong to these orders");
+    }
+
+    final List<Object> values = new ArrayList<Object>(orders.size());
+    try
+    {
+      int i = header.length();
+      while (i < s.length())
+      {
+        final char tag = s.charAt(i);
+        final int colon = s.indexOf(':', i);
+        final int start = colon + 1;
+        final int end = start + Integer.parseInt(s.substring(i + 1, colon));
+        final String string = s.substring(start, end);
+        i = end;
+
+        switch (tag)
+        {
+          case STRING:
+            values.add(string);
+            break;
+          case LONG:
+            values.add(Long.valueOf(string));
+            break;
+          case DOUBLE:
+            values.add(Double.valueOf(string));
+            break;
+          case DECIMAL:
+            values.add(new BigDecimal(string));
+            break;
+          case BOOLEAN:
+            values.add(Boolean.valueOf(string));
+            break;
+          case DATE:
+            values.add(ISO8601.parse(string));
+            break;
+          default:
+            throw new IllegalArgumentException("malformed token");
+        }
+      }
+    } catch (RuntimeException e)
+    {
+      throw new IllegalArgumentException("malformed token", e);
+    }
+
+    if (values.size() != orders.size())
+    {
+      throw new IllegalArgumentException("malformed token");
+    }
+
+    return values.toArray();
+  }
+
+  /**
+   * @param orders
+   *          The orders of the criteria
+   * @return A short hash identifying the orders, so a token isn't used with
+   *         others by mistake
+   */
+  private static String shape(final List<Order> orders)
+  {
+    int hash = 1;
+    for (Order o : orders)
+    {
+      hash = 31 * hash + o.toString().hashCode();
+    }
+
+    return Integer.toHexString(hash);
+  }
+
+  /**
+   * @param criteria
+   *          A criteria exposing its properties
+   * @return The orders of the criteria
+   */
+  private static List<Order> orders(final Criteria criteria)
+  {
+    if (!(criteria instanceof Prop))
+    {
+      throw new IllegalArgumentException("the criteria must expose its orders");
+    }
+
+    final List<Order> orders = ((Prop) criteria).getOrders();
+    for (Order o : orders)
+    {
+      if (SCORE.equals(relative(o)))
+      {
+        throw new IllegalArgumentException("cannot page on " + SCORE
+          + ", it cannot be restricted");
+      }
+    }
+
+    return orders;
+  }
+
+  /**
+   * @param order
+   *          An order
+   * @return The relative path of its property, e.g. jcr:content/published
+   */
+  private static String relative(final Order order)
+  {
+    return order.getProperty().getRelative();
+  }
+
+  /**
+   * @param value
+   *          A JCR value
+   * @return The equivalent Java object
+   * @throws RepositoryException
+   *           If the value cannot be read
+   */
+  private static Object toObject(final Value value)
+    throws RepositoryException
+  {
+    switch (value.getType())
+    {
+      case PropertyType.LONG:
+        return value.getLong();
+      case PropertyType.DOUBLE:
+        return value.getDouble();
+      case PropertyType.DECIMAL:
+        return value.getDecimal();
+      case PropertyType.BOOLEAN:
+        return value.getBoolean();
+      case PropertyType.DATE:
+        return value.getDate();
+      default:
+        return value.getString();
+    }
+  }
+
+  /**
+   * @param s
+   *          Any string
+   * @return The hexadecimal form of its UTF-8 bytes
+   */
+  private static String hex(final String s)
+  {
+    final byte[] bytes;
+    try
+    {
+      bytes = s.getBytes("UTF-8");
+    } catch (UnsupportedEncodingException e)
+    {
+      throw new IllegalStateException(e);
+    }
+
+    final char[] chars = new char[bytes.length * 2];
+    for (int i = 0; i < bytes.length; i++)
+    {
+      chars[2 * i] = HEX[(bytes[i] >> 4) & 0xf];
+      chars[2 * i + 1] = HEX[bytes[i] & 0xf];
+    }
+
+    return new String(chars);
+  }
+
+  /**
+   * @param hex
+   *          The hexadecimal form of UTF-8 bytes
+   * @return The string
+   */
+  private static String unhex(final String hex)
+  {
+    if (0 != hex.length() % 2)
+    {
+      throw new IllegalArgumentException("malformed token");
+    }
+
+    final byte[] bytes = new byte[hex.length() / 2];
+    for (int i = 0; i < bytes.length; i++)
+    {
+      final int high = Character.digit(hex.charAt(2 * i), 16);
+      final int low = Character.digit(hex.charAt(2 * i + 1), 16);
+      if (high < 0 || low < 0)
+      {
+        throw new IllegalArgumentException("malformed token");
+      }
+      bytes[i] = (byte) (high << 4 | low);
+    }
+
+    try
+    {
+      return new String(bytes, "UTF-8");
+    } catch (UnsupportedEncodingException e)
+    {
+      throw new IllegalStateException(e);
+    }
+  }
+}
@@ -53,6 +53,7 @@ public final class Order
   private Order(final String propName, final OrderDirection dir)
   {
     this.propertyName = propName;
+    this.property = PropertyName.of(propName);
     this.direction = dir;
   }
 
@@ -60,6 +61,8 @@ public final class Order
   private final OrderDirection direction;
   /** The name of the property used to order the results. */
   private final String propertyName;
+  /** The same name, resolved for every query language. */
+  private final PropertyName property;
 
   /**
    * Creates an ascending {@link Order} for the given property.
@@ -97,6 +100,15 @@ public final class Order
     return this.propertyName;
   }
 
+  /**
+   * @return the property used to set the ordering, resolved for every query
+   *         language
+   */
+  public PropertyName getProperty()
+  {
+    return this.property;
+  }
+
   /**
    * @return the direction of the ordering (either ascending or descending)
    */
@@ -105,6 +117,14 @@ public final class Order
     return this.direction.toString();
   }
 
+  /**
+   * @return whether the results are ordered in ascending direction
+   */
+  public boolean isAscending()
+  {
+    return OrderDirection.ASCENDING == this.direction;
+  }
+
   @Override
   public String toString()
   {
@@ -0,0 +1,108 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.byktol.jcr.qb.criteria;
+
+import com.google.common.base.Strings;
+
+/**
+ * A named placeholder for a value that is only known when the query is about
+ * to be executed. Use it as the value of a restriction and
+ * {@link Criteria#compile()} the criteria into a {@link QueryTemplate}, e.g.
+ * <code>Restrictions.eq("sling:resourceType", Restrictions.param("type"))
+ * </code>.
+ *
+ * @see QueryTemplate For binding the values.
+ *
+ * @since 1.0
+ * @author Victor Alvarez
+ */
+public final class Param
+{
+
+  /** The name used to bind the value. */
+  private final String name;
+
+  /** The type every bound value must be an instance of. */
+  private final Class<?> type;
+
+  /**
+   * Constructor.
+   *
+   * @param name
+   *          The name used to bind the value
+   * @param type
+   *          The type every bound value must be an instance of
+   */
+  public Param(final String name, final Class<?> type)
+  {
+    if (Strings.isNullOrEmpty(name))
+    {
+      throw new IllegalArgumentException("name cannot be empty");
+    }
+
+    if (null == type)
+    {
+      throw new IllegalArgumentException("type cannot be null");
+    }
+
+    this.name = name;
+    this.type = type;
+  }
+
+  /**
+   * @return The name used to bind the value
+   */
+  public String getName()
+  {
+    return name;
+  }
+
+  /**
+   * @return The type every bound value must be an instance of
+   */
+  public Class<?> getType()
+  {
+    return type;
+  }
+
+  @Override
+  public boolean equals(final Object obj)
+  {
+    if (this == obj)
+    {
+      return true;
+    }
+
+    if (!(obj instanceof Param))
+    {
+      return false;
+    }
+
+    final Param other = (Param) obj;
+
+    return name.equals(other.name) && type.equals(other.type);
+  }
+
+  @Override
+  public int hashCode()
+  {
+    return 31 * name.hashCode() + type.hashCode();
+  }
+
+  @Override
+  public String toString()
+  {
+    return ":" + name;
+  }
+}
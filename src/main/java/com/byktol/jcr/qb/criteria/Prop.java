@@ -46,4 +46,10 @@ public interface Prop
    * @return The path used to narrow the search or an empty string
    */
   String getPath();
+
+  /**
+   * @return The names of the columns selected by the query, or an empty list
+   *         to select every column
+   */
+  List<String> getColumns();
 }
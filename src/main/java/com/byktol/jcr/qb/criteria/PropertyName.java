@@ -0,0 +1,156 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.byktol.jcr.qb.criteria;
+
+import com.byktol.jcr.qb.criteria.builder.utils.Sql2Utils;
+import com.byktol.jcr.qb.criteria.builder.utils.XPathUtils;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * The name of a property along with the way every query language writes it,
+ * e.g. "jcr:content/@jcr:title" for XPath and "s.[jcr:content/jcr:title]"
+ * for JCR-SQL2. Restrictions and orders hold one instead of a plain name, so
+ * rendering a property is a matter of appending a string, not checking and
+ * concatenating it over and over again.
+ * <p>
+ * Names are resolved through a symbol table, so a name used across many
+ * restrictions is resolved once. The table is bounded, since the names
+ * could come from the outside; a name that was evicted is simply resolved
+ * again.
+ *
+ * @since 1.0
+ * @author Victor Alvarez
+ */
+public final class PropertyName
+{
+
+  /** The number of names kept in the table. */
+  private static final int MAXIMUM_SIZE = 4096;
+
+  /** The symbol table. */
+  private static final Cache<String, PropertyName> NAMES = CacheBuilder
+    .newBuilder()
+    .maximumSize(MAXIMUM_SIZE)
+    .build();
+
+  /** The name as given. */
+  private final String name;
+
+  /** The name as written in XPath. */
+  private final String xpath;
+
+  /** The name as a relative path, without XPath symbols. */
+  private final String relative;
+
+  /** The name as a property of the JCR-SQL2 selector. */
+  private final String sql2;
+
+  /**
+   * Not publicly instantiable.
+   *
+   * @param name
+   *          The name as given
+   */
+  private PropertyName(final String name)
+  {
+    this.name = name;
+    this.xpath = XPathUtils.prependSymbol(name);
+    this.relative = Sql2Utils.relativeProperty(name);
+    this.sql2 = Sql2Utils.SELECTOR + ".[" + relative + ']';
+  }
+
+  /**
+   * Resolves a name through the symbol table.
+   *
+   * @param name
+   *          The name of the property
+   * @return The resolved name
+   */
+  public static PropertyName of(final String name)
+  {
+    if (null == name)
+    {
+      throw new IllegalArgumentException("name cannot be null");
+    }
+
+    PropertyName property = NAMES.getIfPresent(name);
+    if (null == property)
+    {
+      // racing threads resolve equal names, whichever is kept will do
+      property = new PropertyName(name);
+      NAMES.put(name, property);
+    }
+
+    return property;
+  }
+
+  /**
+   * @return The name as given
+   */
+  public String getName()
+  {
+    return name;
+  }
+
+  /**
+   * @see XPathUtils#prependSymbol(String)
+   * @return The name as written in XPath, e.g. "@jcr:title"
+   */
+  public String getXPath()
+  {
+    return xpath;
+  }
+
+  /**
+   * @see Sql2Utils#relativeProperty(String)
+   * @return The name as a relative path, e.g. "jcr:content/jcr:title"
+   */
+  public String getRelative()
+  {
+    return relative;
+  }
+
+  /**
+   * @return The name as a property of the JCR-SQL2 selector, e.g.
+   *         "s.[jcr:title]"
+   */
+  public String getSql2()
+  {
+    return sql2;
+  }
+
+  /**
+   * @return Whether the other one has the same name
+   */
+  @Override
+  public boolean equals(final Object obj)
+  {
+    return this == obj || obj instanceof PropertyName
+      && name.equals(((PropertyName) obj).name);
+  }
+
+  @Override
+  public int hashCode()
+  {
+    return name.hashCode();
+  }
+
+  @Override
+  public String toString()
+  {
+    return name;
+  }
+
+}
@@ -0,0 +1,190 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.byktol.jcr.qb.criteria;
+
+import java.io.IOException;
+import java.util.Map;
+
+import com.byktol.jcr.qb.criteria.builder.Context;
+import com.byktol.jcr.qb.criteria.builder.utils.StringUtils;
+
+/**
+ * An immutable, compiled {@link Criteria}. The query is rendered once into
+ * constant fragments with a typed hole for every {@link Param}, so binding the
+ * values only encodes the holes and copies the fragments. Templates are
+ * thread-safe and meant to be shared.
+ *
+ * @see Criteria#compile()
+ *
+ * @since 1.0
+ * @author Victor Alvarez
+ */
+public final class QueryTemplate
+{
+
+  /** The constant parts of the query, one more than there are holes. */
+  private final String[] fragments;
+
+  /** The parameters for the holes between the fragments. */
+  private final Param[] params;
+
+  /** The context encoding the bound values. */
+  private final Context context;
+
+  /** The length of all the fragments together. */
+  private final int length;
+
+  /**
+   * Constructor.
+   *
+   * @param fragments
+   *          The constant parts of the query, one more than there are params
+   * @param params
+   *          The parameters for the holes between the fragments
+   * @param context
+   *          The (stateless) context used to encode the bound values
+   */
+  public QueryTemplate(
+    final String[] fragments,
+    final Param[] params,
+    final Context context)
+  {
+    if (fragments.length != params.length + 1)
+    {
+      throw new IllegalArgumentException(
+        "there must be one fragment more than params");
+    }
+
+    if (null == context)
+    {
+      throw new IllegalArgumentException("context cannot be null");
+    }
+
+    this.fragments = fragments.clone();
+    this.params = params.clone();
+    this.context = context;
+
+    int total = 0;
+    for (String fragment : this.fragments)
+    {
+      total += fragment.length();
+    }
+    this.length = total;
+  }
+
+  /**
+   * Binds the values and renders the query.
+   *
+   * @param values
+   *          The values by parameter name
+   * @return The query with every hole filled
+   */
+  public String bind(final Map<String, ?> values)
+  {
+    final StringBuilder query = new StringBuilder(length + 32 * params.length);
+
+    try
+    {
+      bind(values, query);
+    } catch (IOException e)
+    {
+      throw StringUtils.unexpected(e);
+    }
+
+    return query.toString();
+  }
+
+  /**
+   * Binds the values and writes the query into the given {@link Appendable}.
+   *
+   * @param <A>
+   *          The type of the {@link Appendable}
+   * @param values
+   *          The values by parameter name
+   * @param query
+   *          Where the query is written to
+   * @return The same {@link Appendable} to enable chaining
+   * @throws IOException
+   *           If the query cannot be appended to
+   */
+  public <A extends Appendable> A bind(
+    final Map<String, ?> values,
+    final A query)
+    throws IOException
+  {
+    query.append(fragments[0]);
+
+    for (int i = 0; i < params.length; i++)
+    {
+      context.buildValue(valueOf(params[i], values), query);
+      query.append(fragments[i + 1]);
+    }
+
+    return query;
+  }
+
+  /**
+   * @return The parameters of the template, in order of appearance
+   */
+  public Param[] getParams()
+  {
+    return params.clone();
+  }
+
+  /**
+   * Looks a parameter's value up and verifies its type.
+   *
+   * @param param
+   *          The parameter being bound
+   * @param values
+   *          The values by parameter name
+   * @return The value of the parameter
+   */
+  private static Object valueOf(final Param param, final Map<String, ?> values)
+  {
+    final Object value = values.get(param.getName());
+
+    if (null == value)
+    {
+      throw new IllegalArgumentException(
+        "no value bound for " + param.getName());
+    }
+
+    if (!param.getType().isInstance(value))
+    {
+      throw new IllegalArgumentException(String.format(
+        "%s must be a %s, not a %s", param.getName(),
+        param.getType().getName(), value.getClass().getName()));
+    }
+
+    return value;
+  }
+
+  /**
+   * @return The template with the holes marked with their parameter names
+   */
+  @Override
+  public String toString()
+  {
+    final StringBuilder sb = new StringBuilder(length + 8 * params.length);
+    sb.append(fragments[0]);
+
+    for (int i = 0; i < params.length; i++)
+    {
+      sb.append(params[i]).append(fragments[i + 1]);
+    }
+
+    return sb.toString();
+  }
+}
@@ -13,25 +13,49 @@
  */
 package com.byktol.jcr.qb.criteria;
 
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
 import com.byktol.jcr.qb.criteria.expressions.ContainsExpression;
+import com.byktol.jcr.qb.criteria.expressions.ContradictionExpression;
 import com.byktol.jcr.qb.criteria.expressions.ExistExpression;
 import com.byktol.jcr.qb.criteria.expressions.Junction;
 import com.byktol.jcr.qb.criteria.expressions.LikeExpression;
 import com.byktol.jcr.qb.criteria.expressions.LogicalExpression;
 import com.byktol.jcr.qb.criteria.expressions.NotExpression;
+import com.byktol.jcr.qb.criteria.expressions.PropertyValueExpression;
 import com.byktol.jcr.qb.criteria.expressions.SimpleExpression;
 import com.byktol.jcr.qb.criteria.operators.ComparisonOperator;
 import com.byktol.jcr.qb.criteria.operators.LogicalOperator;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
 
 /**
  * Utility class for adding restrictions/constraints to a {@link Criteria}.
+ * <p>
+ * Optionally, the restrictions can be interned: every immutable restriction
+ * is then replaced with a canonical instance, equal restrictions being the
+ * same object, so long-lived criteria share them and they can be compared
+ * by reference. The canonical instances are weakly referenced, and
+ * collected once no longer used.
  *
+ * @see #setInterning(boolean)
  * @since 1.0
  * @author Victor Alvarez
  */
 public final class Restrictions
 {
 
+  /** The types of values that cannot be modified. */
+  private static final ImmutableSet<Class<?>> IMMUTABLE_VALUES =
+    ImmutableSet.<Class<?>>of(String.class, Boolean.class, Character.class,
+      Byte.class, Short.class, Integer.class, Long.class, Float.class,
+      Double.class, BigInteger.class, BigDecimal.class, Param.class);
+
+  /** The canonical restrictions, null when they aren't interned. */
+  private static volatile Interner<Criterion> interner;
+
   /** Utility class. Private constructor. */
   private Restrictions()
   {
@@ -47,7 +71,7 @@ public final class Restrictions
    */
   public static Criterion exists(final String property)
   {
-    return new ExistExpression(property);
+    return intern(new ExistExpression(property));
   }
 
   /**
@@ -59,7 +83,7 @@ public final class Restrictions
    */
   public static Criterion not(final Criterion criterion)
   {
-    return new NotExpression(criterion);
+    return intern(new NotExpression(criterion));
   }
 
   /**
@@ -73,7 +97,7 @@ public final class Restrictions
    */
   public static Criterion and(final Criterion... criteria)
   {
-    return new LogicalExpression(criteria, LogicalOperator.AND);
+    return intern(criteria, LogicalOperator.AND);
   }
 
   /**
@@ -87,7 +111,7 @@ public final class Restrictions
    */
   public static Criterion or(final Criterion... criteria)
   {
-    return new LogicalExpression(criteria, LogicalOperator.OR);
+    return intern(criteria, LogicalOperator.OR);
   }
 
   /**
@@ -103,7 +127,8 @@ public final class Restrictions
    */
   public static Criterion eq(final String property, final Object value)
   {
-    return new SimpleExpression(property, value, ComparisonOperator.EQUALS);
+    return intern(new SimpleExpression(property, value,
+      ComparisonOperator.EQUALS));
   }
 
   /**
@@ -119,8 +144,8 @@ public final class Restrictions
    */
   public static Criterion gt(final String property, final Object value)
   {
-    return new SimpleExpression(property, value,
-      ComparisonOperator.GREATER_THAN);
+    return intern(new SimpleExpression(property, value,
+      ComparisonOperator.GREATER_THAN));
   }
 
   /**
@@ -137,8 +162,8 @@ public final class Restrictions
    */
   public static Criterion ge(final String property, final Object value)
   {
-    return new SimpleExpression(property, value,
-      ComparisonOperator.GREATER_THAN_OR_EQUALS);
+    return intern(new SimpleExpression(property, value,
+      ComparisonOperator.GREATER_THAN_OR_EQUALS));
   }
 
   /**
@@ -154,7 +179,8 @@ public final class Restrictions
    */
   public static Criterion lt(final String property, final Object value)
   {
-    return new SimpleExpression(property, value, ComparisonOperator.LESS_THAN);
+    return intern(new SimpleExpression(property, value,
+      ComparisonOperator.LESS_THAN));
   }
 
   /**
@@ -170,8 +196,8 @@ public final class Restrictions
    */
   public static Criterion le(final String property, final Object value)
   {
-    return new SimpleExpression(property, value,
-      ComparisonOperator.LESS_THAN_OR_EQUALS);
+    return intern(new SimpleExpression(property, value,
+      ComparisonOperator.LESS_THAN_OR_EQUALS));
   }
 
   /**
@@ -187,7 +213,8 @@ public final class Restrictions
    */
   public static Criterion notEq(final String property, final Object value)
   {
-    return new SimpleExpression(property, value, ComparisonOperator.NOT_EQUALS);
+    return intern(new SimpleExpression(property, value,
+      ComparisonOperator.NOT_EQUALS));
   }
 
   /**
@@ -203,7 +230,7 @@ public final class Restrictions
    */
   public static Criterion contains(final String property, final String value)
   {
-    return new ContainsExpression(property, value);
+    return intern(new ContainsExpression(property, value));
   }
 
   /**
@@ -219,7 +246,37 @@ public final class Restrictions
    */
   public static Criterion like(final String property, final String value)
   {
-    return new LikeExpression(property, value);
+    return intern(new LikeExpression(property, value));
+  }
+
+  /**
+   * Creates a placeholder for a value that is bound once the criteria is
+   * compiled, accepting any type of value.
+   *
+   * @see Criteria#compile()
+   * @param name
+   *          The name used to bind the value
+   * @return A new {@link Param} to be used as a restriction value
+   */
+  public static Param param(final String name)
+  {
+    return new Param(name, Object.class);
+  }
+
+  /**
+   * Creates a placeholder for a value of the given type that is bound once
+   * the criteria is compiled.
+   *
+   * @see Criteria#compile()
+   * @param name
+   *          The name used to bind the value
+   * @param type
+   *          The type every bound value must be an instance of
+   * @return A new {@link Param} to be used as a restriction value
+   */
+  public static Param param(final String name, final Class<?> type)
+  {
+    return new Param(name, type);
   }
 
   /**
@@ -243,4 +300,98 @@ public final class Restrictions
   {
     return new Junction(LogicalOperator.OR);
   }
+
+  /**
+   * Interns the restrictions created from now on, or stops doing so. It's
+   * off by default. Groups that can still be added to, i.e. {@link Junction}
+   * and whatever contains one, and restrictions on a mutable value, e.g. a
+   * Calendar, aren't interned.
+   *
+   * @param interning
+   *          Whether the restrictions are interned
+   */
+  public static synchronized void setInterning(final boolean interning)
+  {
+    if (!interning)
+    {
+      interner = null;
+    } else if (null == interner)
+    {
+      interner = Interners.newWeakInterner();
+    }
+  }
+
+  /**
+   * @return Whether the restrictions are interned
+   */
+  public static boolean isInterning()
+  {
+    return null != interner;
+  }
+
+  /**
+   * @param criterion
+   *          Any restriction
+   * @return Whether the restriction, its children and its value cannot be
+   *         modified, so it may be shared and used as a key
+   */
+  public static boolean isImmutable(final Criterion criterion)
+  {
+    if (criterion instanceof SimpleExpression)
+    {
+      final Object value = ((SimpleExpression) criterion).getValue();
+      return null == value || IMMUTABLE_VALUES.contains(value.getClass())
+        || value instanceof Enum;
+    } else if (criterion instanceof LogicalExpression)
+    {
+      for (Criterion c : ((LogicalExpression) criterion).getCriterionList())
+      {
+        if (!isImmutable(c))
+        {
+          return false;
+        }
+      }
+      return true;
+    } else if (criterion instanceof NotExpression)
+    {
+      return isImmutable(((NotExpression) criterion).getCriterion());
+    }
+
+    return criterion instanceof PropertyValueExpression
+      || criterion instanceof ExistExpression
+      || criterion instanceof ContradictionExpression;
+  }
+
+  /**
+   * @param criterion
+   *          A new restriction
+   * @return Its canonical instance, or itself if it isn't interned
+   */
+  private static Criterion intern(final Criterion criterion)
+  {
+    final Interner<Criterion> i = interner;
+
+    return null == i || !isImmutable(criterion)
+      ? criterion : i.intern(criterion);
+  }
+
+  /**
+   * @param criteria
+   *          The criteria being bound by the logical operator
+   * @param op
+   *          The logical operator
+   * @return The canonical instance of the group, which never shares the
+   *         array of the caller
+   */
+  private static Criterion intern(
+    final Criterion[] criteria,
+    final LogicalOperator op)
+  {
+    if (null == interner)
+    {
+      return new LogicalExpression(criteria, op);
+    }
+
+    return intern(new LogicalExpression(criteria, op));
+  }
 }
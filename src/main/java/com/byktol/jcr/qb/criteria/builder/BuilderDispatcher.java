@@ -0,0 +1,196 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.byktol.jcr.qb.criteria.builder;
+
+import com.byktol.jcr.qb.criteria.Criterion;
+import com.byktol.jcr.qb.criteria.CriterionVisitor;
+import com.byktol.jcr.qb.criteria.expressions.ContainsExpression;
+import com.byktol.jcr.qb.criteria.expressions.ContradictionExpression;
+import com.byktol.jcr.qb.criteria.expressions.ExistExpression;
+import com.byktol.jcr.qb.criteria.expressions.Junction;
+import com.byktol.jcr.qb.criteria.expressions.LikeExpression;
+import com.byktol.jcr.qb.criteria.expressions.LogicalExpression;
+import com.byktol.jcr.qb.criteria.expressions.NotExpression;
+import com.byktol.jcr.qb.criteria.expressions.SimpleExpression;
+
+/**
+ * Hands every criterion to its builder in a {@link BuilderRegistry} by
+ * visiting it: the expressions of this library reach their builder through
+ * a virtual call and an array read, while their subclasses and the criteria
+ * defined elsewhere are looked up in the registry as usual.
+ *
+ * @param <B>
+ *          The type of the builders
+ * @param <R>
+ *          The type of the result of a build
+ * @param <P>
+ *          The type of the argument of a build, e.g. the query being built
+ * @param <X>
+ *          The type of the exception a build may throw
+ * @since 1.0
+ * @author Victor Alvarez
+ */
+public abstract class BuilderDispatcher<B, R, P, X extends Exception>
+  implements CriterionVisitor<R, P, X>
+{
+
+  /** The builders being dispatched to. */
+  private final BuilderRegistry<B> registry;
+
+  /**
+   * Constructor.
+   *
+   * @param registry
+   *          The builders being dispatched to
+   */
+  protected BuilderDispatcher(final BuilderRegistry<B> registry)
+  {
+    this.registry = registry;
+  }
+
+  /**
+   * Invokes the builder.
+   *
+   * @param builder
+   *          The builder of the criterion
+   * @param criterion
+   *          The criterion being built
+   * @param arg
+   *          The argument of the build
+   * @return The result of the build
+   * @throws X
+   *           If the build fails
+   */
+  protected abstract R build(B builder, Criterion criterion, P arg)
+    throws X;
+
+  /**
+   * @param criterion
+   *          A criterion without builder
+   * @param arg
+   *          The argument of the build
+   * @return The result of building nothing
+   * @throws X
+   *           If unsupported criteria aren't allowed
+   */
+  protected abstract R unsupported(Criterion criterion, P arg)
+    throws X;
+
+  @Override
+  public final R visitSimple(final SimpleExpression criterion, final P arg)
+    throws X
+  {
+    return dispatch(0, criterion, arg);
+  }
+
+  @Override
+  public final R visitLogical(final LogicalExpression criterion, final P arg)
+    throws X
+  {
+    return dispatch(1, criterion, arg);
+  }
+
+  @Override
+  public final R visitJunction(final Junction criterion, final P arg)
+    throws X
+  {
+    return dispatch(2, criterion, arg);
+  }
+
+  @Override
+  public final R visitNot(final NotExpression criterion, final P arg)
+    throws X
+  {
+    return dispatch(3, criterion, arg);
+  }
+
+  @Override
+  public final R visitContains(
+    final ContainsExpression criterion,
+    final P arg)
+    throws X
+  {
+    return dispatch(4, criterion, arg);
+  }
+
+  @Override
+  public final R visitLike(final LikeExpression criterion, final P arg)
+    throws X
+  {
+    return dispatch(5, criterion, arg);
+  }
+
+  @Override
+  public final R visitExist(final ExistExpression criterion, final P arg)
+    throws X
+  {
+    return dispatch(6, criterion, arg);
+  }
+
+  @Override
+  public final R visitContradiction(
+    final ContradictionExpression criterion,
+    final P arg)
+    throws X
+  {
+    return dispatch(7, criterion, arg);
+  }
+
+  @Override
+  public final R visitOther(final Criterion criterion, final P arg)
+    throws X
+  {
+    return invoke(registry.get(criterion.getClass()), criterion, arg);
+  }
+
+  /**
+   * Builds an expression of this library, or of one of its subclasses.
+   *
+   * @param index
+   *          The index of the expression in {@link BuilderRegistry#BUILT_IN}
+   * @param criterion
+   *          The criterion being built
+   * @param arg
+   *          The argument of the build
+   * @return The result of the build
+   * @throws X
+   *           If the build fails
+   */
+  private R dispatch(final int index, final Criterion criterion, final P arg)
+    throws X
+  {
+    final Class<?> type = criterion.getClass();
+
+    return invoke(BuilderRegistry.BUILT_IN.get(index) == type
+      ? registry.getBuiltIn(index) : registry.get(type), criterion, arg);
+  }
+
+  /**
+   * @param builder
+   *          The builder of the criterion, null if there's none
+   * @param criterion
+   *          The criterion being built
+   * @param arg
+   *          The argument of the build
+   * @return The result of the build
+   * @throws X
+   *           If the build fails
+   */
+  private R invoke(final B builder, final Criterion criterion, final P arg)
+    throws X
+  {
+    return null == builder
+      ? unsupported(criterion, arg) : build(builder, criterion, arg);
+  }
+}
@@ -0,0 +1,34 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.byktol.jcr.qb.criteria.builder;
+
+/**
+ * Registers builders for custom criteria, or faster builders for the
+ * existing ones, into the registries of the query languages, e.g.
+ * <code>JackrabbitContext.getRegistry()</code>.
+ * Providers are found through the {@link java.util.ServiceLoader} mechanism
+ * and must have a public no-argument constructor.
+ *
+ * @see BuilderRegistry#loadProviders()
+ * @since 1.0
+ * @author Victor Alvarez
+ */
+public interface BuilderProvider
+{
+
+  /**
+   * Registers the builders of this provider.
+   */
+  void registerBuilders();
+}
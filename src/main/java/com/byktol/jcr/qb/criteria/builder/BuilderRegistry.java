@@ -0,0 +1,194 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.byktol.jcr.qb.criteria.builder;
+
+import java.util.ServiceLoader;
+
+import com.byktol.jcr.qb.criteria.Criterion;
+import com.byktol.jcr.qb.criteria.builder.utils.TypeRegistry;
+import com.byktol.jcr.qb.criteria.expressions.ContainsExpression;
+import com.byktol.jcr.qb.criteria.expressions.ContradictionExpression;
+import com.byktol.jcr.qb.criteria.expressions.ExistExpression;
+import com.byktol.jcr.qb.criteria.expressions.Junction;
+import com.byktol.jcr.qb.criteria.expressions.LikeExpression;
+import com.byktol.jcr.qb.criteria.expressions.LogicalExpression;
+import com.byktol.jcr.qb.criteria.expressions.NotExpression;
+import com.byktol.jcr.qb.criteria.expressions.SimpleExpression;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * The builders of a query language by {@link Criterion} type. A criterion is
+ * built by the builder registered for its class or, failing that, for its
+ * closest superclass or, failing that, for one of its interfaces, as kept
+ * by a {@link TypeRegistry}. Builders are meant to be registered at
+ * start-up, either directly, e.g. from an OSGi component, or through a
+ * {@link BuilderProvider} found by {@link #loadProviders()}.
+ *
+ * @param <B>
+ *          The type of the builders
+ * @since 1.0
+ * @author Victor Alvarez
+ */
+public final class BuilderRegistry<B>
+{
+
+  /** The expressions of this library, in the order of their index. */
+  static final ImmutableList<Class<? extends Criterion>> BUILT_IN =
+    ImmutableList.of(SimpleExpression.class, LogicalExpression.class,
+      Junction.class, NotExpression.class, ContainsExpression.class,
+      LikeExpression.class, ExistExpression.class,
+      ContradictionExpression.class);
+
+  /** The registered builders. */
+  private final TypeRegistry<B> builders = new TypeRegistry<B>();
+
+  /** The builders of the {@link #BUILT_IN} expressions, by index. */
+  private volatile Object[] builtIn = new Object[BUILT_IN.size()];
+
+  /**
+   * Registers the builder of a criterion type, replacing the previous one.
+   *
+   * @param type
+   *          The type of criterion, its subclasses included
+   * @param builder
+   *          The builder of the criterion
+   * @return This registry to enable chaining
+   */
+  public synchronized BuilderRegistry<B> register(
+    final Class<? extends Criterion> type,
+    final B builder)
+  {
+    if (null == type)
+    {
+      throw new IllegalArgumentException("type cannot be null");
+    }
+
+    if (null == builder)
+    {
+      throw new IllegalArgumentException("builder cannot be null");
+    }
+
+    builders.register(type, builder);
+    update();
+
+    return this;
+  }
+
+  /**
+   * Unregisters the builder of a criterion type, which is then built by the
+   * builder of its superclass, if any.
+   *
+   * @param type
+   *          The type of criterion
+   * @return The builder that was registered, or null
+   */
+  public synchronized B unregister(final Class<? extends Criterion> type)
+  {
+    final B builder = builders.unregister(type);
+    update();
+
+    return builder;
+  }
+
+  /** Resolves the builders of the {@link #BUILT_IN} expressions again. */
+  private void update()
+  {
+    final Object[] table = new Object[BUILT_IN.size()];
+    for (int i = 0; i < table.length; i++)
+    {
+      table[i] = builders.get(BUILT_IN.get(i));
+    }
+
+    builtIn = table;
+  }
+
+  /**
+   * Looks the builder of an expression of this library up without hashing,
+   * since they're resolved on every registration.
+   *
+   * @param index
+   *          The index of the expression in {@link #BUILT_IN}
+   * @return The builder of the expression, or null if there's none
+   */
+  @SuppressWarnings("unchecked")
+  B getBuiltIn(final int index)
+  {
+    return (B) builtIn[index];
+  }
+
+  /**
+   * @param type
+   *          The class of a criterion
+   * @return The builder of the criterion, or null if there's none
+   */
+  public B get(final Class<?> type)
+  {
+    return builders.get(type);
+  }
+
+  /**
+   * @see TypeRegistry#getVersion()
+   * @return The number of registrations so far, e.g. to tell whether what
+   *         was built beforehand was built by the same builders
+   */
+  public long getVersion()
+  {
+    return builders.getVersion();
+  }
+
+  /**
+   * @param type
+   *          The class of a criterion
+   * @return Whether there's a builder for the criterion
+   */
+  public boolean contains(final Class<?> type)
+  {
+    return null != get(type);
+  }
+
+  /**
+   * Lets every {@link BuilderProvider} declared through the
+   * {@link ServiceLoader} mechanism, i.e. in
+   * <code>META-INF/services/com.byktol.jcr.qb.criteria.builder.BuilderProvider</code>,
+   * register its builders.
+   *
+   * @return The number of providers found
+   */
+  public static int loadProviders()
+  {
+    return loadProviders(Thread.currentThread().getContextClassLoader());
+  }
+
+  /**
+   * Lets every {@link BuilderProvider} declared through the
+   * {@link ServiceLoader} mechanism register its builders.
+   *
+   * @param loader
+   *          The class loader the providers are looked up with
+   * @return The number of providers found
+   */
+  public static int loadProviders(final ClassLoader loader)
+  {
+    int count = 0;
+
+    for (BuilderProvider provider
+      : ServiceLoader.load(BuilderProvider.class, loader))
+    {
+      provider.registerBuilders();
+      count++;
+    }
+
+    return count;
+  }
+}
@@ -13,6 +13,8 @@
  */
 package com.byktol.jcr.qb.criteria.builder;
 
+import java.io.IOException;
+
 import com.byktol.jcr.qb.criteria.Criterion;
 
 /**
@@ -22,11 +24,38 @@ import com.byktol.jcr.qb.criteria.Criterion;
 public interface Context
 {
   /**
-   * Filters the appropriate restriction type and invokes the builder methods.
+   * Filters the appropriate restriction type and invokes the builder methods,
+   * which append the criterion to the query being built.
    *
    * @param criterion
    *          An object inheriting from {@link Criterion}
-   * @return The result of calling a builder method or an empty string
+   * @param query
+   *          The query being built, where nothing is appended if there's no
+   *          builder for the criterion
+   * @throws IOException
+   *           If the query cannot be appended to
+   */
+  void build(final Criterion criterion, final Appendable query)
+    throws IOException;
+
+  /**
+   * @param criterion
+   *          An object inheriting from {@link Criterion}
+   * @return Whether there's a builder for the criterion, i.e. whether building
+   *         it appends anything at all
+   */
+  boolean isSupported(final Criterion criterion);
+
+  /**
+   * Appends a literal value, encoded for the query language.
+   *
+   * @param value
+   *          The value of a restriction
+   * @param query
+   *          The query being built
+   * @throws IOException
+   *           If the query cannot be appended to
    */
-  String build(final Criterion criterion);
+  void buildValue(final Object value, final Appendable query)
+    throws IOException;
 }
@@ -0,0 +1,43 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.byktol.jcr.qb.criteria.builder;
+
+import javax.jcr.RepositoryException;
+import javax.jcr.query.qom.Constraint;
+
+import com.byktol.jcr.qb.criteria.Criterion;
+import com.byktol.jcr.qb.criteria.builder.jqom.JqomContext;
+
+/**
+ * @since 1.0
+ * @author Victor Alvarez
+ */
+public interface JqomCriterionBuilder
+{
+
+  /**
+   * Builds the JCR-JQOM constraint of the criterion, without going through
+   * any query string.
+   *
+   * @param criterion
+   *          The criterion being built
+   * @param context
+   *          The context used to build nested criteria and values
+   * @return The constraint, or null if there's nothing to constrain
+   * @throws RepositoryException
+   *           If the constraint cannot be created
+   */
+  Constraint buildJqom(Criterion criterion, JqomContext context)
+    throws RepositoryException;
+}
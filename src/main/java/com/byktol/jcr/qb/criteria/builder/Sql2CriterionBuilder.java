@@ -13,6 +13,8 @@
  */
 package com.byktol.jcr.qb.criteria.builder;
 
+import java.io.IOException;
+
 import com.byktol.jcr.qb.criteria.Criterion;
 
 /**
@@ -23,9 +25,19 @@ public interface Sql2CriterionBuilder
 {
 
   /**
+   * Appends the JCR-SQL2 constraint of the criterion to the query being
+   * built. Literal values are built through the context, which is expected
+   * to turn them into bind variables.
+   *
    * @param criterion
+   *          The criterion being built
    * @param context
-   * @return
+   *          The context used to build nested criteria and values
+   * @param sql2
+   *          The query being built
+   * @throws IOException
+   *           If the query cannot be appended to
    */
-  String buildSql2(Criterion criterion, Context context);
+  void buildSql2(Criterion criterion, Context context, Appendable sql2)
+    throws IOException;
 }
@@ -13,6 +13,8 @@
  */
 package com.byktol.jcr.qb.criteria.builder;
 
+import java.io.IOException;
+
 import com.byktol.jcr.qb.criteria.Criterion;
 
 /**
@@ -23,9 +25,19 @@ public interface XPathCriterionBuilder
 {
 
   /**
+   * Appends the XPath predicate of the criterion to the query being built.
+   * Nested criteria are appended through the context, so the whole tree is
+   * written in a single pass without intermediate strings.
+   *
    * @param criterion
+   *          The criterion being built
    * @param context
-   * @return
+   *          The context used to build nested criteria
+   * @param xpath
+   *          The query being built
+   * @throws IOException
+   *           If the query cannot be appended to
    */
-  String buildXPath(Criterion criterion, Context context);
+  void buildXPath(Criterion criterion, Context context, Appendable xpath)
+    throws IOException;
 }
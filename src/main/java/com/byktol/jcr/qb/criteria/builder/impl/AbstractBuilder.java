@@ -13,8 +13,11 @@
  */
 package com.byktol.jcr.qb.criteria.builder.impl;
 
+import java.io.IOException;
+
 import com.byktol.jcr.qb.criteria.Order;
 import com.byktol.jcr.qb.criteria.Restrictions;
+import com.byktol.jcr.qb.criteria.builder.utils.StringUtils;
 
 /**
  * This can class be considered the builder in the builder design pattern. There
@@ -36,6 +39,43 @@ public abstract class AbstractBuilder
    *
    * @return the query built for the specific implementation
    */
-  public abstract String buildQuery();
+  public String buildQuery()
+  {
+    final StringBuilder query = new StringBuilder(estimateLength());
+
+    try
+    {
+      buildQuery(query);
+    } catch (IOException e)
+    {
+      throw StringUtils.unexpected(e);
+    }
+
+    return query.toString();
+  }
+
+  /**
+   * Builds the query based on {@link Restrictions} and {@link Order}, writing
+   * it straight into the given {@link Appendable}.
+   *
+   * @param query
+   *          Where the query is written to, e.g. a reusable StringBuilder, a
+   *          CharBuffer or a Writer
+   * @throws IOException
+   *           If the query cannot be appended to
+   */
+  public abstract void buildQuery(Appendable query)
+    throws IOException;
+
+  /**
+   * A rough guess of the query length, so {@link #buildQuery()} seldom has to
+   * grow its buffer.
+   *
+   * @return The initial capacity of the buffer
+   */
+  protected int estimateLength()
+  {
+    return 16;
+  }
 
 }
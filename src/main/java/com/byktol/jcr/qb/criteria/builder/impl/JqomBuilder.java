@@ -0,0 +1,180 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.byktol.jcr.qb.criteria.builder.impl;
+
+import java.util.List;
+
+import javax.jcr.PropertyType;
+import javax.jcr.RepositoryException;
+import javax.jcr.query.qom.Column;
+import javax.jcr.query.qom.Constraint;
+import javax.jcr.query.qom.Ordering;
+import javax.jcr.query.qom.QueryObjectModel;
+import javax.jcr.query.qom.QueryObjectModelConstants;
+import javax.jcr.query.qom.QueryObjectModelFactory;
+
+import com.byktol.jcr.qb.criteria.Order;
+import com.byktol.jcr.qb.criteria.Prop;
+import com.byktol.jcr.qb.criteria.builder.jqom.JqomContext;
+import com.byktol.jcr.qb.criteria.builder.utils.Sql2Utils;
+import com.google.common.base.Strings;
+
+/**
+ * Specific builder creating a JCR-JQOM {@link QueryObjectModel} straight from
+ * the criteria. Unlike the other builders there's no query string involved,
+ * so the repository neither parses it nor do the values need escaping.
+ *
+ * @since 1.0
+ * @author Victor Alvarez
+ */
+public class JqomBuilder
+{
+
+  /** The node type queried when none is given. */
+  private static final String DEFAULT_NODE_TYPE = "nt:base";
+
+  private final Prop criteria;
+
+  private final JqomContext context;
+
+  /**
+   * Constructor.
+   *
+   * @param criteria
+   *          The properties of the query being built
+   * @param context
+   *          The context building every criterion and value
+   */
+  public JqomBuilder(final Prop criteria, final JqomContext context)
+  {
+    this.criteria = criteria;
+    this.context = context;
+  }
+
+  /**
+   * Builds the query object model with the same semantics as the JCR-SQL2
+   * query built by {@link Sql2Builder}. The limit and offset are left to the
+   * caller.
+   *
+   * @return The query object model
+   * @throws RepositoryException
+   *           If any part of the model cannot be created
+   */
+  public QueryObjectModel buildQueryObjectModel()
+    throws RepositoryException
+  {
+    final QueryObjectModelFactory qf = context.getFactory();
+
+    final String nodeType = Strings.isNullOrEmpty(criteria.getNodeType())
+      ? DEFAULT_NODE_TYPE : criteria.getNodeType();
+
+    Constraint constraint = null;
+
+    if (!Strings.isNullOrEmpty(criteria.getPath()))
+    {
+      constraint = and(constraint,
+        qf.descendantNode(Sql2Utils.SELECTOR, criteria.getPath()));
+    }
+
+    if (!Strings.isNullOrEmpty(criteria.getNodeName()))
+    {
+      constraint = and(constraint, qf.comparison(
+        qf.nodeName(Sql2Utils.SELECTOR),
+        QueryObjectModelConstants.JCR_OPERATOR_EQUAL_TO,
+        qf.literal(context.getValueFactory().createValue(
+          criteria.getNodeName(), PropertyType.NAME))
+      ));
+    }
+
+    constraint =
+      and(constraint, context.combine(criteria.getCriterion(), true));
+
+    return qf.createQuery(
+      qf.selector(nodeType, Sql2Utils.SELECTOR),
+      constraint,
+      buildOrderings(criteria.getOrders()),
+      buildColumns(criteria.getColumns())
+    );
+  }
+
+  /**
+   * @param columns
+   *          The names of the columns selected by the criteria
+   * @return The columns of the query object model, none for every column
+   * @throws RepositoryException
+   *           If a column cannot be created
+   */
+  private Column[] buildColumns(final List<String> columns)
+    throws RepositoryException
+  {
+    final QueryObjectModelFactory qf = context.getFactory();
+    final Column[] result = new Column[columns.size()];
+
+    int i = 0;
+    for (String c : columns)
+    {
+      final String property = Sql2Utils.relativeProperty(c);
+      result[i++] = qf.column(Sql2Utils.SELECTOR, property, property);
+    }
+
+    return result;
+  }
+
+  /**
+   * @param orders
+   *          The orders of the criteria
+   * @return The orderings of the query object model
+   * @throws RepositoryException
+   *           If an ordering cannot be created
+   */
+  private Ordering[] buildOrderings(final List<Order> orders)
+    throws RepositoryException
+  {
+    final QueryObjectModelFactory qf = context.getFactory();
+    final Ordering[] orderings = new Ordering[orders.size()];
+
+    int i = 0;
+    for (Order o : orders)
+    {
+      orderings[i++] = o.isAscending()
+        ? qf.ascending(context.property(o.getProperty()))
+        : qf.descending(context.property(o.getProperty()));
+    }
+
+    return orderings;
+  }
+
+  /**
+   * @param left
+   *          The constraint so far, if any
+   * @param right
+   *          The constraint being added, if any
+   * @return Both constraints combined with AND, or whichever isn't null
+   * @throws RepositoryException
+   *           If the constraint cannot be created
+   */
+  private Constraint and(final Constraint left, final Constraint right)
+    throws RepositoryException
+  {
+    if (null == left)
+    {
+      return right;
+    } else if (null == right)
+    {
+      return left;
+    }
+
+    return context.getFactory().and(left, right);
+  }
+}
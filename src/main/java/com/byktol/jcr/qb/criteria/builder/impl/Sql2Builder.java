@@ -0,0 +1,180 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.byktol.jcr.qb.criteria.builder.impl;
+
+import java.io.IOException;
+
+import com.byktol.jcr.qb.criteria.Criterion;
+import com.byktol.jcr.qb.criteria.Prop;
+import com.byktol.jcr.qb.criteria.Restrictions;
+import com.byktol.jcr.qb.criteria.builder.Context;
+import com.byktol.jcr.qb.criteria.builder.sql2.OrderBuilder;
+import com.byktol.jcr.qb.criteria.builder.utils.Sql2Utils;
+import com.google.common.base.Strings;
+
+/**
+ * Specific builder specializing on JCR-SQL2 queries.
+ *
+ * @since 1.0
+ * @author Victor Alvarez
+ */
+public class Sql2Builder
+  extends AbstractBuilder
+{
+
+  /** The node type queried when none is given. */
+  private static final String DEFAULT_NODE_TYPE = "nt:base";
+
+  /** Initial capacity for the query, enough for the SELECT. */
+  private static final int BASE_LENGTH = 64;
+
+  /** Expected length of every restriction and order in the query. */
+  private static final int PREDICATE_LENGTH = 32;
+
+  private final Prop criteria;
+
+  private final Context context;
+
+  private final OrderBuilder orderBuilder = new OrderBuilder();
+
+  /**
+   * Constructor.
+   *
+   * @param criteria
+   *          The properties of the query being built
+   * @param context
+   *          The context building every criterion and value
+   */
+  public Sql2Builder(final Prop criteria, final Context context)
+  {
+    this.criteria = criteria;
+    this.context = context;
+  }
+
+  /**
+   * Builds a JCR-SQL2 query based on the defined constraints, e.g.
+   * <code>SELECT * FROM ['nt:base'] AS s WHERE
+   * ISDESCENDANTNODE(s, ['/content']) AND s.[prop] = $v1
+   * ORDER BY s.[prop] ASC</code>.
+   *
+   * @see Restrictions
+   * @param sql2
+   *          Where the JCR-SQL2 query is written to.
+   * @throws IOException
+   *           If the query cannot be appended to
+   */
+  @Override
+  public void buildQuery(final Appendable sql2)
+    throws IOException
+  {
+    final String nodeType = Strings.isNullOrEmpty(criteria.getNodeType())
+      ? DEFAULT_NODE_TYPE : criteria.getNodeType();
+
+    sql2.append("SELECT ");
+    buildColumns(sql2);
+    sql2.append(" FROM ");
+    Sql2Utils.appendName(sql2, nodeType);
+    sql2.append(" AS ").append(Sql2Utils.SELECTOR);
+
+    boolean where = false;
+
+    if (!Strings.isNullOrEmpty(criteria.getPath()))
+    {
+      where = and(sql2, where);
+      sql2.append("ISDESCENDANTNODE(").append(Sql2Utils.SELECTOR)
+        .append(", ");
+      Sql2Utils.appendName(sql2, criteria.getPath());
+      sql2.append(')');
+    }
+
+    if (!Strings.isNullOrEmpty(criteria.getNodeName()))
+    {
+      where = and(sql2, where);
+      sql2.append("NAME(").append(Sql2Utils.SELECTOR).append(") = ");
+      context.buildValue(criteria.getNodeName(), sql2);
+    }
+
+    for (Criterion c : criteria.getCriterion())
+    {
+      if (context.isSupported(c))
+      {
+        where = and(sql2, where);
+        context.build(c, sql2);
+      }
+    }
+
+    if (criteria.getOrders().size() > 0)
+    {
+      sql2.append(" ORDER BY ");
+      orderBuilder.build(criteria.getOrders(), sql2);
+    }
+  }
+
+  /**
+   * Appends the columns selected, e.g. <code>s.[a], s.[b]</code>, or every
+   * column when none is.
+   *
+   * @param sql2
+   *          The query being built
+   * @throws IOException
+   *           If the query cannot be appended to
+   */
+  private void buildColumns(final Appendable sql2)
+    throws IOException
+  {
+    if (criteria.getColumns().isEmpty())
+    {
+      sql2.append('*');
+      return;
+    }
+
+    boolean comma = false;
+    for (String column : criteria.getColumns())
+    {
+      if (comma)
+      {
+        sql2.append(", ");
+      }
+      Sql2Utils.appendProperty(sql2, column);
+      comma = true;
+    }
+  }
+
+  /**
+   * Appends either WHERE, for the first constraint, or AND for the rest.
+   *
+   * @param sql2
+   *          The query being built
+   * @param where
+   *          Whether WHERE has been appended already
+   * @return true, since WHERE has been appended now
+   * @throws IOException
+   *           If the query cannot be appended to
+   */
+  private static boolean and(final Appendable sql2, final boolean where)
+    throws IOException
+  {
+    sql2.append(where ? " AND " : " WHERE ");
+
+    return true;
+  }
+
+  @Override
+  protected int estimateLength()
+  {
+    return BASE_LENGTH + criteria.getPath().length()
+      + PREDICATE_LENGTH
+      * (criteria.getCriterion().size() + criteria.getOrders().size());
+  }
+}
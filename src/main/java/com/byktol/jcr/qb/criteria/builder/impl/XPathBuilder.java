@@ -13,16 +13,16 @@
  */
 package com.byktol.jcr.qb.criteria.builder.impl;
 
-import java.util.Iterator;
+import java.io.IOException;
 
 import com.byktol.jcr.qb.criteria.Criterion;
 import com.byktol.jcr.qb.criteria.Prop;
 import com.byktol.jcr.qb.criteria.Restrictions;
 import com.byktol.jcr.qb.criteria.builder.Context;
+import com.byktol.jcr.qb.criteria.builder.utils.XPathUtils;
 import com.byktol.jcr.qb.criteria.builder.xpath.JackrabbitContext;
 import com.byktol.jcr.qb.criteria.builder.xpath.OrderBuilder;
 import com.byktol.jcr.qb.criteria.operators.LogicalOperator;
-import com.google.common.base.Joiner;
 import com.google.common.base.Strings;
 
 /**
@@ -35,68 +35,127 @@ public class XPathBuilder
   extends AbstractBuilder
 {
 
+  /** Initial capacity for the query, enough for the element test. */
+  private static final int BASE_LENGTH = 64;
+
+  /** Expected length of every restriction and order in the query. */
+  private static final int PREDICATE_LENGTH = 48;
+
   private Prop criteria;
 
+  private final Context context;
+
   public XPathBuilder(final Prop criteria)
+  {
+    this(criteria, new JackrabbitContext());
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param criteria
+   *          The properties of the query being built
+   * @param context
+   *          The context building every criterion
+   */
+  public XPathBuilder(final Prop criteria, final Context context)
   {
     this.criteria = criteria;
+    this.context = context;
   }
 
-  private Context context = new JackrabbitContext();
+  private final OrderBuilder orderBuilder = new OrderBuilder();
 
   /**
-   * Builds an XPath query string based on the defined constraints.
+   * Builds an XPath query string based on the defined constraints. The whole
+   * query is written into the given {@link Appendable} in one pass.
    *
    * @see Restrictions
-   * @return a valid XPath query string.
+   * @param xpath
+   *          Where the XPath query is written to.
+   * @throws IOException
+   *           If the query cannot be appended to
    */
   @Override
-  public String buildQuery()
+  public void buildQuery(final Appendable xpath)
+    throws IOException
   {
-    final StringBuilder xpath = new StringBuilder();
+    xpath.append("/jcr:root").append(criteria.getPath()).append("//element(");
+    buildElementTest(xpath);
+    xpath.append(')');
 
-    xpath.append(
-      String.format(
-        "/jcr:root%s//element(%s)",
-        criteria.getPath(),
-        buildElementTest()
-      )
-    );
-
-    if (criteria.getCriterion().size() > 0)
+    boolean predicate = false;
+    for (Criterion c : criteria.getCriterion())
     {
-
-      final StringBuilder sb = new StringBuilder();
-      final Iterator<Criterion> iterator = criteria.getCriterion().iterator();
-      sb.append(context.build(iterator.next()));
-      while (iterator.hasNext())
+      if (!context.isSupported(c))
       {
-        sb.append(' ');
-        sb.append(LogicalOperator.AND);
-        sb.append(' ');
-        sb.append(context.build(iterator.next()));
+        continue;
       }
 
-      if (sb.length() > 0)
+      if (predicate)
+      {
+        xpath.append(' ');
+        xpath.append(LogicalOperator.AND.toString());
+        xpath.append(' ');
+      } else
       {
         xpath.append('[');
-        xpath.append(sb);
-        xpath.append(']');
+        predicate = true;
       }
+      context.build(c, xpath);
+    }
 
-    } // end of if
+    if (predicate)
+    {
+      xpath.append(']');
+    }
+
+    buildColumns(xpath);
 
     if (criteria.getOrders().size() > 0)
     {
       xpath.append(" order by ");
-      xpath.append(
-        Joiner.on(", ").skipNulls().join(
-          new OrderBuilder().build(criteria.getOrders())
-        )
-      );
+      orderBuilder.build(criteria.getOrders(), xpath);
     }
+  }
 
-    return xpath.toString();
+  /**
+   * Appends the columns selected as a trailing step, e.g.
+   * <code>/(@a | @b)</code>, or nothing to select every column.
+   *
+   * @param xpath
+   *          The query being built
+   * @throws IOException
+   *           If the query cannot be appended to
+   */
+  private void buildColumns(final Appendable xpath)
+    throws IOException
+  {
+    if (criteria.getColumns().isEmpty())
+    {
+      return;
+    }
+
+    xpath.append("/(");
+    boolean union = false;
+    for (String column : criteria.getColumns())
+    {
+      if (union)
+      {
+        xpath.append(" | ");
+      }
+      XPathUtils.appendProperty(xpath, column);
+      union = true;
+    }
+    xpath.append(')');
+  }
+
+  @Override
+  protected int estimateLength()
+  {
+    return BASE_LENGTH + criteria.getPath().length()
+      + PREDICATE_LENGTH
+      * (criteria.getCriterion().size() + criteria.getOrders().size());
   }
 
   /**
@@ -109,23 +168,26 @@ public class XPathBuilder
    *  <li>nodeName and nodeType defined: element(nodeName,nodeType)</li>
    * </ol>
    *
-   * @return The XPath element test.
+   * @param xpath
+   *          The query the XPath element test is appended to.
+   * @throws IOException
+   *           If the query cannot be appended to
    */
-  protected final String buildElementTest()
+  protected final void buildElementTest(final Appendable xpath)
+    throws IOException
   {
-    String nt = criteria.getNodeName();
-
     if (Strings.isNullOrEmpty(criteria.getNodeName()))
     {
-      nt = "*";
+      xpath.append('*');
+    } else
+    {
+      xpath.append(criteria.getNodeName());
     }
 
     if (!Strings.isNullOrEmpty(criteria.getNodeType()))
     {
-      nt += "," + criteria.getNodeType();
+      xpath.append(',').append(criteria.getNodeType());
     }
-
-    return nt;
   }
 
 }
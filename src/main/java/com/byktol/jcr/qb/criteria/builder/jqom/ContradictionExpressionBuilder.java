@@ -0,0 +1,51 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.byktol.jcr.qb.criteria.builder.jqom;
+
+import javax.jcr.RepositoryException;
+import javax.jcr.query.qom.Constraint;
+import javax.jcr.query.qom.QueryObjectModelFactory;
+
+import com.byktol.jcr.qb.criteria.Criterion;
+import com.byktol.jcr.qb.criteria.builder.JqomCriterionBuilder;
+import com.byktol.jcr.qb.criteria.builder.utils.Sql2Utils;
+import com.byktol.jcr.qb.criteria.expressions.ContradictionExpression;
+
+/**
+ * Builds a single {@link ContradictionExpression} as a JCR-JQOM constraint.
+ *
+ * @since 1.0
+ * @author Victor Alvarez
+ */
+public class ContradictionExpressionBuilder
+  implements JqomCriterionBuilder
+{
+
+  /*
+   * (non-Javadoc)
+   * @see JqomCriterionBuilder#buildJqom(Criterion, JqomContext)
+   */
+  @Override
+  public final Constraint buildJqom(
+    final Criterion criterion,
+    final JqomContext context)
+    throws RepositoryException
+  {
+    final QueryObjectModelFactory qf = context.getFactory();
+
+    return qf.not(qf.propertyExistence(Sql2Utils.SELECTOR,
+      ContradictionExpression.PROPERTY));
+  }
+
+}
@@ -0,0 +1,234 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.byktol.jcr.qb.criteria.builder.jqom;
+
+import javax.jcr.RepositoryException;
+import javax.jcr.ValueFactory;
+import javax.jcr.query.qom.Constraint;
+import javax.jcr.query.qom.DynamicOperand;
+import javax.jcr.query.qom.QueryObjectModelFactory;
+import javax.jcr.query.qom.StaticOperand;
+
+import com.byktol.jcr.qb.criteria.Criterion;
+import com.byktol.jcr.qb.criteria.Param;
+import com.byktol.jcr.qb.criteria.PropertyName;
+import com.byktol.jcr.qb.criteria.builder.BuilderDispatcher;
+import com.byktol.jcr.qb.criteria.builder.BuilderRegistry;
+import com.byktol.jcr.qb.criteria.builder.JqomCriterionBuilder;
+import com.byktol.jcr.qb.criteria.builder.utils.Sql2Utils;
+import com.byktol.jcr.qb.criteria.expressions.ContainsExpression;
+import com.byktol.jcr.qb.criteria.expressions.ContradictionExpression;
+import com.byktol.jcr.qb.criteria.expressions.ExistExpression;
+import com.byktol.jcr.qb.criteria.expressions.Junction;
+import com.byktol.jcr.qb.criteria.expressions.LikeExpression;
+import com.byktol.jcr.qb.criteria.expressions.LogicalExpression;
+import com.byktol.jcr.qb.criteria.expressions.NotExpression;
+import com.byktol.jcr.qb.criteria.expressions.SimpleExpression;
+
+/**
+ * Builds JCR-JQOM constraints straight from the {@link Criterion} tree, using
+ * the factories of the session the query is created for.
+ *
+ * @since 1.0
+ * @author Victor Alvarez
+ */
+public class JqomContext
+{
+  /** The builders of the criteria, shared by every context. */
+  private static final BuilderRegistry<JqomCriterionBuilder> REGISTRY =
+    new BuilderRegistry<JqomCriterionBuilder>()
+      .register(SimpleExpression.class, new SimpleExpressionBuilder())
+      .register(LogicalExpression.class, new LogicalExpressionBuilder())
+      .register(Junction.class, new JunctionBuilder())
+      .register(ContainsExpression.class, new ContainsExpressionBuilder())
+      .register(NotExpression.class, new NotExpressionBuilder())
+      .register(LikeExpression.class, new LikeExpressionBuilder())
+      .register(ExistExpression.class, new ExistExpressionBuilder())
+      .register(ContradictionExpression.class,
+        new ContradictionExpressionBuilder());
+
+  /** The factory of the query object model. */
+  private final QueryObjectModelFactory factory;
+
+  /** The factory for the literal values. */
+  private final ValueFactory valueFactory;
+
+  /** Hands the criteria to their builders. */
+  private final BuilderDispatcher<JqomCriterionBuilder, Constraint, Void,
+    RepositoryException> dispatcher = new BuilderDispatcher<
+      JqomCriterionBuilder, Constraint, Void, RepositoryException>(REGISTRY)
+    {
+      @Override
+      protected Constraint build(
+        final JqomCriterionBuilder builder,
+        final Criterion criterion,
+        final Void arg)
+        throws RepositoryException
+      {
+        return builder.buildJqom(criterion, JqomContext.this);
+      }
+
+      @Override
+      protected Constraint unsupported(
+        final Criterion criterion,
+        final Void arg)
+      {
+        return null;
+      }
+    };
+
+  /**
+   * Constructor.
+   *
+   * @param factory
+   *          The factory of the query object model
+   * @param valueFactory
+   *          The factory for the literal values
+   */
+  public JqomContext(
+    final QueryObjectModelFactory factory,
+    final ValueFactory valueFactory)
+  {
+    this.factory = factory;
+    this.valueFactory = valueFactory;
+  }
+
+  /**
+   * Filters the appropriate restriction type and invokes the builder methods.
+   *
+   * @param criterion
+   *          An object inheriting from {@link Criterion}
+   * @return The constraint, or null if the criterion isn't supported
+   * @throws RepositoryException
+   *           If the constraint cannot be created
+   */
+  public final Constraint build(final Criterion criterion)
+    throws RepositoryException
+  {
+    return criterion.accept(dispatcher, null);
+  }
+
+  /**
+   * Combines the constraints of several criteria, skipping the unsupported
+   * ones.
+   *
+   * @param criteria
+   *          The criteria being combined
+   * @param and
+   *          Whether they are combined with AND or with OR
+   * @return The combined constraint, or null if none is supported
+   * @throws RepositoryException
+   *           If the constraint cannot be created
+   */
+  public final Constraint combine(
+    final Iterable<? extends Criterion> criteria,
+    final boolean and)
+    throws RepositoryException
+  {
+    Constraint combined = null;
+
+    for (Criterion c : criteria)
+    {
+      final Constraint constraint = build(c);
+      if (null == constraint)
+      {
+        continue;
+      } else if (null == combined)
+      {
+        combined = constraint;
+      } else if (and)
+      {
+        combined = factory.and(combined, constraint);
+      } else
+      {
+        combined = factory.or(combined, constraint);
+      }
+    }
+
+    return combined;
+  }
+
+  /**
+   * Creates the operand of a literal value, or a bind variable for a
+   * {@link Param}.
+   *
+   * @param value
+   *          The value of a restriction
+   * @return The static operand
+   * @throws RepositoryException
+   *           If the value cannot be created
+   */
+  public final StaticOperand value(final Object value)
+    throws RepositoryException
+  {
+    if (value instanceof Param)
+    {
+      return factory.bindVariable(((Param) value).getName());
+    }
+
+    return factory.literal(Sql2Utils.toValue(valueFactory, value));
+  }
+
+  /**
+   * @param propertyName
+   *          The name of the property
+   * @return The operand evaluating to the value of the property
+   * @throws RepositoryException
+   *           If the operand cannot be created
+   */
+  public final DynamicOperand property(final String propertyName)
+    throws RepositoryException
+  {
+    return factory.propertyValue(Sql2Utils.SELECTOR,
+      Sql2Utils.relativeProperty(propertyName));
+  }
+
+  /**
+   * @param property
+   *          The property, resolved beforehand
+   * @return The operand evaluating to the value of the property
+   * @throws RepositoryException
+   *           If the operand cannot be created
+   */
+  public final DynamicOperand property(final PropertyName property)
+    throws RepositoryException
+  {
+    return factory.propertyValue(Sql2Utils.SELECTOR, property.getRelative());
+  }
+
+  /**
+   * @return The factory of the query object model
+   */
+  public final QueryObjectModelFactory getFactory()
+  {
+    return factory;
+  }
+
+  /**
+   * @return The factory for the literal values
+   */
+  public final ValueFactory getValueFactory()
+  {
+    return valueFactory;
+  }
+
+  /**
+   * @return The builders of the criteria, where custom builders may be
+   *         registered
+   */
+  public static BuilderRegistry<JqomCriterionBuilder> getRegistry()
+  {
+    return REGISTRY;
+  }
+}
@@ -0,0 +1,80 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.byktol.jcr.qb.criteria.builder.jqom;
+
+import javax.jcr.RepositoryException;
+import javax.jcr.query.qom.Constraint;
+import javax.jcr.query.qom.QueryObjectModelConstants;
+
+import com.byktol.jcr.qb.criteria.Criterion;
+import com.byktol.jcr.qb.criteria.builder.JqomCriterionBuilder;
+import com.byktol.jcr.qb.criteria.expressions.SimpleExpression;
+import com.byktol.jcr.qb.criteria.operators.ComparisonOperator;
+
+/**
+ * Builds a single {@link SimpleExpression} as a JCR-JQOM constraint.
+ *
+ * @since 1.0
+ * @author Victor Alvarez
+ */
+public class SimpleExpressionBuilder
+  implements JqomCriterionBuilder
+{
+
+  /*
+   * (non-Javadoc)
+   * @see JqomCriterionBuilder#buildJqom(Criterion, JqomContext)
+   */
+  @Override
+  public final Constraint buildJqom(
+    final Criterion criterion,
+    final JqomContext context)
+    throws RepositoryException
+  {
+    final SimpleExpression se = (SimpleExpression) criterion;
+
+    return context.getFactory().comparison(
+      context.property(se.getProperty()),
+      operator(se.getOp()),
+      context.value(se.getValue())
+    );
+  }
+
+  /**
+   * @param op
+   *          The comparison operator of the expression
+   * @return The JCR-JQOM name of the operator
+   */
+  private static String operator(final ComparisonOperator op)
+  {
+    switch (op)
+    {
+      case EQUALS:
+        return QueryObjectModelConstants.JCR_OPERATOR_EQUAL_TO;
+      case GREATER_THAN:
+        return QueryObjectModelConstants.JCR_OPERATOR_GREATER_THAN;
+      case GREATER_THAN_OR_EQUALS:
+        return QueryObjectModelConstants.JCR_OPERATOR_GREATER_THAN_OR_EQUAL_TO;
+      case LESS_THAN:
+        return QueryObjectModelConstants.JCR_OPERATOR_LESS_THAN;
+      case LESS_THAN_OR_EQUALS:
+        return QueryObjectModelConstants.JCR_OPERATOR_LESS_THAN_OR_EQUAL_TO;
+      case NOT_EQUALS:
+        return QueryObjectModelConstants.JCR_OPERATOR_NOT_EQUAL_TO;
+      default:
+        throw new IllegalArgumentException("unknown operator " + op.name());
+    }
+  }
+
+}
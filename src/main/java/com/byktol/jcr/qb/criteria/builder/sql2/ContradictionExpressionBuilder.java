@@ -0,0 +1,49 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.byktol.jcr.qb.criteria.builder.sql2;
+
+import java.io.IOException;
+
+import com.byktol.jcr.qb.criteria.Criterion;
+import com.byktol.jcr.qb.criteria.builder.Context;
+import com.byktol.jcr.qb.criteria.builder.Sql2CriterionBuilder;
+import com.byktol.jcr.qb.criteria.builder.utils.Sql2Utils;
+import com.byktol.jcr.qb.criteria.expressions.ContradictionExpression;
+
+/**
+ * Builds a single {@link ContradictionExpression} in JCR-SQL2.
+ *
+ * @since 1.0
+ * @author Victor Alvarez
+ */
+public class ContradictionExpressionBuilder
+  implements Sql2CriterionBuilder
+{
+
+  /*
+   * (non-Javadoc)
+   * @see Sql2CriterionBuilder#buildSql2(Criterion, Context, Appendable)
+   */
+  @Override
+  public final void buildSql2(
+    final Criterion criterion,
+    final Context context,
+    final Appendable sql2)
+    throws IOException
+  {
+    Sql2Utils.appendProperty(sql2, ContradictionExpression.PROPERTY);
+    sql2.append(" IS NULL");
+  }
+
+}
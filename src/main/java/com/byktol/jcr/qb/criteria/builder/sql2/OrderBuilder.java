@@ -0,0 +1,57 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.byktol.jcr.qb.criteria.builder.sql2;
+
+import java.io.IOException;
+import java.util.List;
+
+import com.byktol.jcr.qb.criteria.Order;
+import com.byktol.jcr.qb.criteria.builder.utils.Sql2Utils;
+
+/**
+ * @since 1.0
+ * @author Victor Alvarez
+ */
+public class OrderBuilder
+{
+
+  /**
+   * Appends a {@link List} of {@link Order} to the query, separated by commas.
+   *
+   * @param orders
+   *          The {@link Order}s that are going to be appended to the query
+   * @param sql2
+   *          The query being built
+   * @throws IOException
+   *           If the query cannot be appended to
+   */
+  public final void build(final List<Order> orders, final Appendable sql2)
+    throws IOException
+  {
+    boolean first = true;
+
+    for (Order o : orders)
+    {
+
+      if (!first)
+      {
+        sql2.append(", ");
+      }
+      Sql2Utils.appendProperty(sql2, o.getProperty());
+      sql2.append(o.isAscending() ? " ASC" : " DESC");
+      first = false;
+
+    }
+  }
+}
@@ -0,0 +1,181 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.byktol.jcr.qb.criteria.builder.sql2;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import com.byktol.jcr.qb.criteria.Criterion;
+import com.byktol.jcr.qb.criteria.Param;
+import com.byktol.jcr.qb.criteria.builder.BuilderDispatcher;
+import com.byktol.jcr.qb.criteria.builder.BuilderRegistry;
+import com.byktol.jcr.qb.criteria.builder.Context;
+import com.byktol.jcr.qb.criteria.builder.Sql2CriterionBuilder;
+import com.byktol.jcr.qb.criteria.expressions.ContainsExpression;
+import com.byktol.jcr.qb.criteria.expressions.ContradictionExpression;
+import com.byktol.jcr.qb.criteria.expressions.ExistExpression;
+import com.byktol.jcr.qb.criteria.expressions.Junction;
+import com.byktol.jcr.qb.criteria.expressions.LikeExpression;
+import com.byktol.jcr.qb.criteria.expressions.LogicalExpression;
+import com.byktol.jcr.qb.criteria.expressions.NotExpression;
+import com.byktol.jcr.qb.criteria.expressions.SimpleExpression;
+
+/**
+ * Builds JCR-SQL2 constraints where every literal value becomes a bind
+ * variable, i.e. <code>$v1</code>, <code>$v2</code>, and so on, while a
+ * {@link Param} becomes a variable of its own name. The statement text thus
+ * stays the same regardless of the values, which lets the repository reuse
+ * the parsed query. This context is stateful and used only once.
+ *
+ * @since 1.0
+ * @author Victor Alvarez
+ */
+public class Sql2Context
+  implements Context
+{
+  /** The builders of the criteria, shared by every context. */
+  private static final BuilderRegistry<Sql2CriterionBuilder> REGISTRY =
+    new BuilderRegistry<Sql2CriterionBuilder>()
+      .register(SimpleExpression.class, new SimpleExpressionBuilder())
+      .register(LogicalExpression.class, new LogicalExpressionBuilder())
+      .register(Junction.class, new JunctionBuilder())
+      .register(ContainsExpression.class, new ContainsExpressionBuilder())
+      .register(NotExpression.class, new NotExpressionBuilder())
+      .register(LikeExpression.class, new LikeExpressionBuilder())
+      .register(ExistExpression.class, new ExistExpressionBuilder())
+      .register(ContradictionExpression.class,
+        new ContradictionExpressionBuilder());
+
+  /** The prefix of the variables holding literal values. */
+  private static final String VARIABLE_PREFIX = "v";
+
+  /** The literal values by variable name, in order of appearance. */
+  private final Map<String, Object> values = new LinkedHashMap<String, Object>();
+
+  /** The names of the parameters, in order of appearance. */
+  private final Set<String> params = new LinkedHashSet<String>();
+
+  /** The number of literal variables so far. */
+  private int count;
+
+  /** Hands the criteria to their builders. */
+  private final BuilderDispatcher<Sql2CriterionBuilder, Void, Appendable,
+    IOException> dispatcher = new BuilderDispatcher<Sql2CriterionBuilder,
+      Void, Appendable, IOException>(REGISTRY)
+    {
+      @Override
+      protected Void build(
+        final Sql2CriterionBuilder builder,
+        final Criterion criterion,
+        final Appendable sql2)
+        throws IOException
+      {
+        builder.buildSql2(criterion, Sql2Context.this, sql2);
+        return null;
+      }
+
+      @Override
+      protected Void unsupported(
+        final Criterion criterion,
+        final Appendable sql2)
+      {
+        return null;
+      }
+    };
+
+  @Override
+  public final void build(final Criterion criterion, final Appendable sql2)
+    throws IOException
+  {
+    criterion.accept(dispatcher, sql2);
+  }
+
+  @Override
+  public final boolean isSupported(final Criterion criterion)
+  {
+    return REGISTRY.contains(criterion.getClass());
+  }
+
+  /**
+   * Appends a bind variable for the value and remembers the value.
+   *
+   * @param value
+   *          The value of a restriction
+   * @param sql2
+   *          The query being built
+   * @throws IOException
+   *           If the query cannot be appended to
+   */
+  @Override
+  public void buildValue(final Object value, final Appendable sql2)
+    throws IOException
+  {
+    if (null == value)
+    {
+      throw new IllegalArgumentException("cannot bind a null value");
+    }
+
+    final String name;
+    if (value instanceof Param)
+    {
+      name = ((Param) value).getName();
+      if (values.containsKey(name))
+      {
+        throw new IllegalArgumentException(
+          name + " clashes with the variable of a literal value");
+      }
+      params.add(name);
+    } else
+    {
+      String candidate;
+      do
+      {
+        candidate = VARIABLE_PREFIX + (++count);
+      } while (params.contains(candidate));
+      name = candidate;
+      values.put(name, value);
+    }
+
+    sql2.append('$').append(name);
+  }
+
+  /**
+   * @return The literal values by variable name
+   */
+  public final Map<String, Object> getBindVariables()
+  {
+    return Collections.unmodifiableMap(values);
+  }
+
+  /**
+   * @return The names of the variables bound to a {@link Param}
+   */
+  public final Set<String> getParamNames()
+  {
+    return Collections.unmodifiableSet(params);
+  }
+
+  /**
+   * @return The builders of the criteria, where custom builders may be
+   *         registered
+   */
+  public static BuilderRegistry<Sql2CriterionBuilder> getRegistry()
+  {
+    return REGISTRY;
+  }
+}
@@ -0,0 +1,112 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.byktol.jcr.qb.criteria.builder.sql2;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.byktol.jcr.qb.criteria.Param;
+import com.byktol.jcr.qb.criteria.QueryTemplate;
+import com.byktol.jcr.qb.criteria.builder.utils.Sql2Utils;
+
+/**
+ * A {@link Sql2Context} compiling the statement into a {@link QueryTemplate}:
+ * literal values are inlined rather than bound to variables, and every
+ * {@link Param} becomes a hole bound with a literal later on, so the bound
+ * statement needs no bind variables at all. The query must be built into
+ * {@link #getTemplate()}, so the context knows where every hole falls. This
+ * context is stateful and used only once.
+ *
+ * @since 1.0
+ * @author Victor Alvarez
+ */
+public class Sql2TemplateContext
+  extends Sql2Context
+{
+
+  /** The statement being compiled. */
+  private final StringBuilder template = new StringBuilder();
+
+  /** The constant fragments found so far. */
+  private final List<String> fragments = new ArrayList<String>();
+
+  /** The parameters found so far. */
+  private final List<Param> params = new ArrayList<Param>();
+
+  /** Where the current fragment starts. */
+  private int start;
+
+  /**
+   * @return The buffer the statement must be built into
+   */
+  public final StringBuilder getTemplate()
+  {
+    return template;
+  }
+
+  /**
+   * Cuts a fragment when the value is a {@link Param}, and inlines it as a
+   * literal otherwise.
+   *
+   * @param value
+   *          The value of a restriction
+   * @param sql2
+   *          The statement being built, which must be {@link #getTemplate()}
+   *          for a {@link Param}
+   * @throws IOException
+   *           If the statement cannot be appended to
+   */
+  @Override
+  public final void buildValue(final Object value, final Appendable sql2)
+    throws IOException
+  {
+    if (null == value)
+    {
+      throw new IllegalArgumentException("cannot bind a null value");
+    }
+
+    if (!(value instanceof Param))
+    {
+      Sql2Utils.appendLiteral(sql2, value);
+      return;
+    }
+
+    if (sql2 != template)
+    {
+      throw new IllegalStateException(
+        "the statement must be built into the template");
+    }
+
+    fragments.add(template.substring(start));
+    params.add((Param) value);
+    start = template.length();
+  }
+
+  /**
+   * @return The template compiled from the statement built so far
+   */
+  public final QueryTemplate toQueryTemplate()
+  {
+    final List<String> all = new ArrayList<String>(fragments);
+    all.add(template.substring(start));
+
+    // binding only inlines values, which needs none of the state
+    return new QueryTemplate(
+      all.toArray(new String[all.size()]),
+      params.toArray(new Param[params.size()]),
+      new Sql2TemplateContext()
+    );
+  }
+}
@@ -0,0 +1,240 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.byktol.jcr.qb.criteria.builder.utils;
+
+import org.apache.jackrabbit.util.ISO9075;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Encodes the names of a path the way Jackrabbit's {@link ISO9075} does,
+ * without splitting the path or creating anything when no name needs it,
+ * which is the case of nearly every path.
+ * <p>
+ * The names are checked against the ASCII characters XML allows in names:
+ * they must start with a letter, an underscore or a colon, and go on with
+ * those, digits, dots or hyphens. An underscore starting an escape sequence,
+ * i.e. "_x0032_", is escaped too. The few paths with other characters are
+ * left to Jackrabbit, whose tables cover the whole of Unicode. Either way,
+ * the paths encoded are cached, since they come from a rather small set of
+ * roots.
+ *
+ * @since 1.0
+ * @author Victor Alvarez
+ */
+final class ISO9075Encoder
+{
+
+  /** The number of encoded paths kept. */
+  private static final int MAXIMUM_SIZE = 4096;
+
+  /** The encoded paths, by path. */
+  private static final Cache<String, String> ENCODED = CacheBuilder
+    .newBuilder()
+    .maximumSize(MAXIMUM_SIZE)
+    .build();
+
+  /** The result of {@link #scan(String)} when nothing needs encoding. */
+  private static final int VALID = 0;
+
+  /** The result of {@link #scan(String)} when an ASCII name needs it. */
+  private static final int ASCII = 1;
+
+  /** The result of {@link #scan(String)} when there's something else. */
+  private static final int OTHER = 2;
+
+  /** Private constructor to avoid instantiation. */
+  private ISO9075Encoder()
+  {
+    // nothing here
+  }
+
+  /**
+   * Encodes the names of a path that aren't valid XML names.
+   *
+   * @param path
+   *          The path, not null
+   * @return The encoded path, the same one if nothing needed encoding
+   */
+  static String encodePath(final String path)
+  {
+    final int scan = scan(path);
+    if (VALID == scan)
+    {
+      return path;
+    }
+
+    String encoded = ENCODED.getIfPresent(path);
+    if (null == encoded)
+    {
+      encoded = ASCII == scan ? encodeAscii(path) : ISO9075.encodePath(path);
+      ENCODED.put(path, encoded);
+    }
+
+    return encoded;
+  }
+
+  /**
+   * Checks every name of the path, i.e. what's between slashes up to the
+   * first bracket, in a single pass.
+   *
+   * @param path
+   *          The path
+   * @return {@link #VALID}, {@link #ASCII} or {@link #OTHER}
+   */
+  private static int scan(final String path)
+  {
+    final int length = path.length();
+
+    int result = VALID;
+    int start = 0;
+    boolean inName = true;
+    for (int i = 0; i < length; i++)
+    {
+      final char c = path.charAt(i);
+      if ('/' == c)
+      {
+        start = i + 1;
+        inName = true;
+      } else if (inName)
+      {
+        if ('[' == c)
+        {
+          inName = false;
+        } else if (c >= 0x80)
+        {
+          return OTHER;
+        } else if (needsEncoding(path, i, start))
+        {
+          result = ASCII;
+        }
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Encodes a path whose names are all ASCII.
+   *
+   * @param path
+   *          The path
+   * @return The encoded path
+   */
+  private static String encodeAscii(final String path)
+  {
+    final int length = path.length();
+    final StringBuilder sb = new StringBuilder(length + 16);
+
+    int start = 0;
+    boolean inName = true;
+    for (int i = 0; i < length; i++)
+    {
+      final char c = path.charAt(i);
+      if ('/' == c)
+      {
+        start = i + 1;
+        inName = true;
+        sb.append(c);
+      } else if (inName && '[' == c)
+      {
+        inName = false;
+        sb.append(c);
+      } else if (inName && needsEncoding(path, i, start))
+      {
+        sb.append("_x");
+        final String hex = Integer.toHexString(c);
+        for (int j = hex.length(); j < 4; j++)
+        {
+          sb.append('0');
+        }
+        sb.append(hex).append('_');
+      } else
+      {
+        sb.append(c);
+      }
+    }
+
+    return sb.toString();
+  }
+
+  /**
+   * @param path
+   *          The path
+   * @param i
+   *          The index of an ASCII character of a name
+   * @param start
+   *          The index of the first character of the name
+   * @return Whether the character must be encoded
+   */
+  private static boolean needsEncoding(
+    final String path,
+    final int i,
+    final int start)
+  {
+    final char c = path.charAt(i);
+    if ('_' == c)
+    {
+      return isEscape(path, i);
+    } else if (i == start)
+    {
+      return !isNameStart(c);
+    }
+
+    return !isNameStart(c) && !(c >= '0' && c <= '9') && '.' != c
+      && '-' != c;
+  }
+
+  /**
+   * @param c
+   *          An ASCII character
+   * @return Whether an XML name can start with it
+   */
+  private static boolean isNameStart(final char c)
+  {
+    return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || '_' == c
+      || ':' == c;
+  }
+
+  /**
+   * @param path
+   *          The path
+   * @param i
+   *          The index of an underscore
+   * @return Whether it starts an escape sequence, "_x" and four hexadecimal
+   *         digits, so it has to be escaped itself
+   */
+  private static boolean isEscape(final String path, final int i)
+  {
+    if (path.length() < i + 6 || 'x' != path.charAt(i + 1))
+    {
+      return false;
+    }
+
+    // a slash or a bracket ends the name, and isn't a digit either
+    for (int j = i + 2; j < i + 6; j++)
+    {
+      final char c = path.charAt(j);
+      if (!(c >= '0' && c <= '9') && !(c >= 'a' && c <= 'f')
+        && !(c >= 'A' && c <= 'F'))
+      {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+}
@@ -0,0 +1,299 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.byktol.jcr.qb.criteria.builder.utils;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Locale;
+
+import javax.jcr.PropertyType;
+import javax.jcr.RepositoryException;
+import javax.jcr.Value;
+import javax.jcr.ValueFactory;
+
+import org.apache.jackrabbit.util.ISO8601;
+
+import com.byktol.jcr.qb.criteria.PropertyName;
+
+/**
+ * Collection of JCR-SQL2-specific utility methods.
+ *
+ * @since 1.0
+ * @author Victor Alvarez
+ */
+public final class Sql2Utils
+{
+
+  /** The name of the only selector in the queries being built. */
+  public static final String SELECTOR = "s";
+
+  /** The symbol XPath uses for properties, which has no place in JCR-SQL2. */
+  private static final char xpathPropertySymbol = '@';
+
+  /** Private constructor to avoid instantiation. */
+  private Sql2Utils()
+  {
+    // nothing here
+  }
+
+  /**
+   * Appends a property of the selector, e.g. <code>s.[jcr:title]</code>.
+   *
+   * @see #relativeProperty(String)
+   * @param sql2
+   *          The query being built
+   * @param propertyName
+   *          The name of the property
+   * @throws IOException
+   *           If the query cannot be appended to
+   */
+  public static void appendProperty(
+    final Appendable sql2,
+    final String propertyName)
+    throws IOException
+  {
+    sql2.append(SELECTOR).append(".[").append(relativeProperty(propertyName))
+      .append(']');
+  }
+
+  /**
+   * Appends a property of the selector resolved beforehand, which involves no
+   * checking at all.
+   *
+   * @see PropertyName#getSql2()
+   * @param sql2
+   *          The query being built
+   * @param property
+   *          The property
+   * @throws IOException
+   *           If the query cannot be appended to
+   */
+  public static void appendProperty(
+    final Appendable sql2,
+    final PropertyName property)
+    throws IOException
+  {
+    sql2.append(property.getSql2());
+  }
+
+  /**
+   * Since the API accepts XPath-like relative properties such as
+   * "jcr:content/@jcr:title", any at (@) symbol is left out, giving the
+   * relative property "jcr:content/jcr:title".
+   *
+   * @param propertyName
+   *          The name of the property
+   * @return The same name when it has no at (@) symbol, which is most often
+   */
+  public static String relativeProperty(final String propertyName)
+  {
+    if (propertyName.indexOf(xpathPropertySymbol) < 0)
+    {
+      return propertyName;
+    }
+
+    return propertyName.replace(
+      String.valueOf(xpathPropertySymbol), "");
+  }
+
+  /**
+   * Appends a node type or a path as a quoted name, e.g.
+   * <code>['/content/a[2]']</code>, so brackets, e.g. of same-name siblings,
+   * don't end the name early.
+   *
+   * @param sql2
+   *          The query being built
+   * @param name
+   *          The node type or path
+   * @throws IOException
+   *           If the query cannot be appended to
+   */
+  public static void appendName(final Appendable sql2, final String name)
+    throws IOException
+  {
+    sql2.append('[');
+    appendString(sql2, name);
+    sql2.append(']');
+  }
+
+  /**
+   * Converts the value of a restriction into a JCR {@link Value}, so it can
+   * be bound to a query variable.
+   *
+   * @param factory
+   *          The factory of the session executing the query
+   * @param value
+   *          The value being converted
+   * @return The JCR value
+   * @throws RepositoryException
+   *           If the value cannot be created
+   */
+  public static Value toValue(final ValueFactory factory, final Object value)
+    throws RepositoryException
+  {
+    if (value instanceof Value)
+    {
+      return (Value) value;
+    } else if (value instanceof String)
+    {
+      return factory.createValue((String) value);
+    } else if (value instanceof Calendar)
+    {
+      return factory.createValue((Calendar) value);
+    } else if (value instanceof Date)
+    {
+      final Calendar cal = Calendar.getInstance();
+      cal.setTime((Date) value);
+      return factory.createValue(cal);
+    } else if (value instanceof BigDecimal)
+    {
+      return factory.createValue((BigDecimal) value);
+    } else if (value instanceof BigInteger)
+    {
+      // a long would lose what doesn't fit in it
+      return factory.createValue(new BigDecimal((BigInteger) value));
+    } else if (value instanceof Double || value instanceof Float)
+    {
+      return factory.createValue(((Number) value).doubleValue());
+    } else if (value instanceof Number)
+    {
+      return factory.createValue(((Number) value).longValue());
+    } else if (value instanceof Boolean)
+    {
+      return factory.createValue((Boolean) value);
+    }
+
+    return factory.createValue(value.toString());
+  }
+
+  /**
+   * Appends the value of a restriction as a JCR-SQL2 literal, typed the same
+   * way as {@link #toValue(ValueFactory, Object)} does, e.g.
+   * <code>'it''s'</code>, <code>5</code> or
+   * <code>CAST('2012-02-02T00:00:00.000Z' AS DATE)</code>.
+   *
+   * @param sql2
+   *          The query being built
+   * @param value
+   *          The value of the restriction
+   * @throws IOException
+   *           If the query cannot be appended to
+   */
+  public static void appendLiteral(final Appendable sql2, final Object value)
+    throws IOException
+  {
+    if (value instanceof Value)
+    {
+      final Value v = (Value) value;
+      try
+      {
+        appendCast(sql2, v.getString(), v.getType());
+      } catch (RepositoryException e)
+      {
+        throw new IllegalStateException(e);
+      }
+    } else if (value instanceof String)
+    {
+      appendString(sql2, (String) value);
+    } else if (value instanceof Calendar)
+    {
+      appendCast(sql2, ISO8601.format((Calendar) value), PropertyType.DATE);
+    } else if (value instanceof Date)
+    {
+      final Calendar cal = Calendar.getInstance();
+      cal.setTime((Date) value);
+      appendCast(sql2, ISO8601.format(cal), PropertyType.DATE);
+    } else if (value instanceof BigDecimal)
+    {
+      appendCast(sql2, ((BigDecimal) value).toPlainString(),
+        PropertyType.DECIMAL);
+    } else if (value instanceof BigInteger)
+    {
+      appendCast(sql2, value.toString(), PropertyType.DECIMAL);
+    } else if (value instanceof Double || value instanceof Float)
+    {
+      final double d = ((Number) value).doubleValue();
+      if (Double.isNaN(d) || Double.isInfinite(d))
+      {
+        throw new IllegalArgumentException(value + " has no literal");
+      }
+      appendCast(sql2, Double.toString(d), PropertyType.DOUBLE);
+    } else if (value instanceof Number)
+    {
+      sql2.append(Long.toString(((Number) value).longValue()));
+    } else if (value instanceof Boolean)
+    {
+      appendCast(sql2, value.toString(), PropertyType.BOOLEAN);
+    } else
+    {
+      appendString(sql2, value.toString());
+    }
+  }
+
+  /**
+   * @param sql2
+   *          The query being built
+   * @param string
+   *          The string being quoted, single quotes doubled
+   * @throws IOException
+   *           If the query cannot be appended to
+   */
+  private static void appendString(final Appendable sql2, final String string)
+    throws IOException
+  {
+    sql2.append('\'');
+    for (int i = 0; i < string.length(); i++)
+    {
+      final char c = string.charAt(i);
+      if ('\'' == c)
+      {
+        sql2.append('\'');
+      }
+      sql2.append(c);
+    }
+    sql2.append('\'');
+  }
+
+  /**
+   * @param sql2
+   *          The query being built
+   * @param string
+   *          The value as a string
+   * @param type
+   *          The {@link PropertyType} it's cast to
+   * @throws IOException
+   *           If the query cannot be appended to
+   */
+  private static void appendCast(
+    final Appendable sql2,
+    final String string,
+    final int type)
+    throws IOException
+  {
+    if (PropertyType.STRING == type)
+    {
+      appendString(sql2, string);
+      return;
+    }
+
+    sql2.append("CAST(");
+    appendString(sql2, string);
+    sql2.append(" AS ")
+      .append(PropertyType.nameFromValue(type).toUpperCase(Locale.ENGLISH))
+      .append(')');
+  }
+}
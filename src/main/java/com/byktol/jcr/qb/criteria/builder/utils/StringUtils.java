@@ -13,6 +13,8 @@
  */
 package com.byktol.jcr.qb.criteria.builder.utils;
 
+import java.io.IOException;
+
 /**
  * @since 1.0
  * @author Victor Alvarez
@@ -36,9 +38,61 @@ public final class StringUtils
    */
   public static String escapeString(final String string)
   {
-    return String.format(
-      "'%s'",
-      ((String) string).replaceAll("'", "''").replaceAll("\"", "\"\"")
-    );
+    final StringBuilder sb = new StringBuilder(string.length() + 2);
+    try
+    {
+      appendEscaped(sb, string);
+    } catch (IOException e)
+    {
+      throw unexpected(e);
+    }
+
+    return sb.toString();
+  }
+
+  /**
+   * Wraps the {@link IOException} thrown while appending to a
+   * {@link StringBuilder}, which never happens, so methods building strings
+   * don't have to declare it.
+   *
+   * @param e
+   *          The exception thrown
+   * @return The unchecked exception, for the caller to throw
+   */
+  public static IllegalStateException unexpected(final IOException e)
+  {
+    return new IllegalStateException("StringBuilder threw an IOException", e);
+  }
+
+  /**
+   * Appends the quoted and escaped string in a single pass.
+   *
+   * @see #escapeString(String)
+   * @param sb
+   *          Where the string is appended to
+   * @param string
+   *          The string being escaped
+   * @throws IOException
+   *           If the string cannot be appended
+   */
+  public static void appendEscaped(final Appendable sb, final String string)
+    throws IOException
+  {
+    final int length = string.length();
+    sb.append('\'');
+
+    int start = 0;
+    for (int i = 0; i < length; i++)
+    {
+      final char c = string.charAt(i);
+      if ('\'' == c || '"' == c)
+      {
+        // appending up to and including c, then c again doubles it
+        sb.append(string, start, i + 1).append(c);
+        start = i + 1;
+      }
+    }
+
+    sb.append(string, start, length).append('\'');
   }
 }
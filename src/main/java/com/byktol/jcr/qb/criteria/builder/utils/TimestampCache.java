@@ -0,0 +1,186 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.byktol.jcr.qb.criteria.builder.utils;
+
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.SimpleTimeZone;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.apache.jackrabbit.util.ISO8601;
+
+/**
+ * The ISO8601 timestamps formatted recently, by instant and offset. Queries
+ * tend to repeat the same few timestamps, e.g. "now" truncated to the
+ * minute, and formatting one creates a calendar, a buffer and a string.
+ * <p>
+ * The cache is direct-mapped: a timestamp takes the slot of its hash,
+ * replacing whatever was there, so it never grows and never locks.
+ *
+ * @since 1.0
+ * @author Victor Alvarez
+ */
+final class TimestampCache
+{
+
+  /** The number of slots, a power of two. */
+  private static final int SIZE = 64;
+
+  /** The timestamps, by the hash of their instant and offset. */
+  private final AtomicReferenceArray<Entry> entries =
+    new AtomicReferenceArray<Entry>(SIZE);
+
+  /**
+   * Formats the calendar, or reuses the timestamp of an earlier Gregorian
+   * calendar of the same instant and offset.
+   *
+   * @param calendar
+   *          The calendar being formatted
+   * @return The ISO8601 timestamp
+   */
+  String format(final Calendar calendar)
+  {
+    if (!(calendar instanceof GregorianCalendar))
+    {
+      // other calendars count their years differently
+      return ISO8601.format(calendar);
+    }
+
+    final long millis = calendar.getTimeInMillis();
+    final int offset = calendar.getTimeZone().getOffset(millis);
+
+    final String cached = get(millis, offset);
+    if (null != cached)
+    {
+      return cached;
+    }
+
+    return put(millis, offset, ISO8601.format(calendar));
+  }
+
+  /**
+   * Formats an instant at an offset from UTC.
+   *
+   * @param millis
+   *          The milliseconds since the epoch
+   * @param offset
+   *          The offset from UTC, in milliseconds
+   * @return The ISO8601 timestamp
+   */
+  String format(final long millis, final int offset)
+  {
+    final String cached = get(millis, offset);
+    if (null != cached)
+    {
+      return cached;
+    }
+
+    final Calendar calendar =
+      new GregorianCalendar(new SimpleTimeZone(offset, "UTC"));
+    calendar.setTimeInMillis(millis);
+
+    return put(millis, offset, ISO8601.format(calendar));
+  }
+
+  /**
+   * Looks a timestamp up.
+   *
+   * @param millis
+   *          The milliseconds since the epoch
+   * @param offset
+   *          The offset from UTC, in milliseconds
+   * @return The timestamp, or null if it isn't cached
+   */
+  private String get(final long millis, final int offset)
+  {
+    final Entry entry = entries.get(slot(millis, offset));
+    if (null != entry && entry.millis == millis && entry.offset == offset)
+    {
+      return entry.timestamp;
+    }
+
+    return null;
+  }
+
+  /**
+   * Caches a timestamp, evicting the one in its slot.
+   *
+   * @param millis
+   *          The milliseconds since the epoch
+   * @param offset
+   *          The offset from UTC, in milliseconds
+   * @param timestamp
+   *          The formatted timestamp
+   * @return The timestamp
+   */
+  private String put(
+    final long millis,
+    final int offset,
+    final String timestamp)
+  {
+    entries.lazySet(slot(millis, offset), new Entry(millis, offset, timestamp));
+
+    return timestamp;
+  }
+
+  /**
+   * Hashes an instant and offset into a slot.
+   *
+   * @param millis
+   *          The milliseconds since the epoch
+   * @param offset
+   *          The offset from UTC, in milliseconds
+   * @return The slot
+   */
+  private static int slot(final long millis, final int offset)
+  {
+    int h = (int) (millis ^ (millis >>> 32)) * 31 + offset;
+    h ^= h >>> 16;
+
+    return h & (SIZE - 1);
+  }
+
+  /** A formatted timestamp. */
+  private static final class Entry
+  {
+
+    /** The milliseconds since the epoch. */
+    private final long millis;
+
+    /** The offset from UTC, in milliseconds. */
+    private final int offset;
+
+    /** The ISO8601 timestamp. */
+    private final String timestamp;
+
+    /**
+     * Default constructor.
+     *
+     * @param millis
+     *          The milliseconds since the epoch
+     * @param offset
+     *          The offset from UTC, in milliseconds
+     * @param timestamp
+     *          The ISO8601 timestamp
+     */
+    Entry(final long millis, final int offset, final String timestamp)
+    {
+      this.millis = millis;
+      this.offset = offset;
+      this.timestamp = timestamp;
+    }
+
+  }
+
+}
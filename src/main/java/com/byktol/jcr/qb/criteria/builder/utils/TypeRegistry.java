@@ -0,0 +1,182 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.byktol.jcr.qb.criteria.builder.utils;
+
+import java.util.Map;
+
+import com.google.common.base.Optional;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+
+/**
+ * Values registered by type, e.g. the builders of the criteria or the encoders
+ * of the literals. A class gets the value registered for it or, failing that,
+ * for its closest superclass or, failing that, for one of its interfaces; the
+ * outcome is cached per class, weakly, so the class loader of a type, e.g. of
+ * an OSGi bundle, can still be unloaded. Lookups are lock-free, while
+ * registrations copy the values and clear the cache, so values are meant to
+ * be registered at start-up.
+ *
+ * @param <V>
+ *          The type of the values
+ * @since 1.0
+ * @author Victor Alvarez
+ */
+public final class TypeRegistry<V>
+{
+
+  /** The registered values, replaced on every registration. */
+  private volatile ImmutableMap<Class<?>, V> values = ImmutableMap.of();
+
+  /** The number of registrations so far. */
+  private volatile long version;
+
+  /** The value resolved for every class looked up so far. */
+  private final Cache<Class<?>, Optional<V>> resolved =
+    CacheBuilder.newBuilder().weakKeys().build();
+
+  /**
+   * Registers the value of a type, replacing the previous one.
+   *
+   * @param type
+   *          The type, its subclasses included
+   * @param value
+   *          The value of the type
+   * @return The value that was registered, or null
+   */
+  public synchronized V register(final Class<?> type, final V value)
+  {
+    if (null == type)
+    {
+      throw new IllegalArgumentException("type cannot be null");
+    }
+
+    if (null == value)
+    {
+      throw new IllegalArgumentException("value cannot be null");
+    }
+
+    final Map<Class<?>, V> copy = Maps.newLinkedHashMap(values);
+    final V previous = copy.put(type, value);
+    update(copy);
+
+    return previous;
+  }
+
+  /**
+   * Unregisters the value of a type, which then gets the value of its
+   * superclass, if any.
+   *
+   * @param type
+   *          The type
+   * @return The value that was registered, or null
+   */
+  public synchronized V unregister(final Class<?> type)
+  {
+    final Map<Class<?>, V> copy = Maps.newLinkedHashMap(values);
+    final V previous = copy.remove(type);
+    update(copy);
+
+    return previous;
+  }
+
+  /**
+   * Publishes the new values and forgets what was resolved with the old ones.
+   *
+   * @param copy
+   *          The new values
+   */
+  private void update(final Map<Class<?>, V> copy)
+  {
+    values = ImmutableMap.copyOf(copy);
+    resolved.invalidateAll();
+    version++;
+  }
+
+  /**
+   * @return The number of registrations so far, which changes whenever a
+   *         value is registered or unregistered
+   */
+  public long getVersion()
+  {
+    return version;
+  }
+
+  /**
+   * @param type
+   *          The class looked up
+   * @return The value of the class, or null if there's none
+   */
+  public V get(final Class<?> type)
+  {
+    Optional<V> value = resolved.getIfPresent(type);
+
+    if (null == value)
+    {
+      final Map<Class<?>, V> current = values;
+      value = Optional.fromNullable(resolve(current, type));
+      resolved.asMap().putIfAbsent(type, value);
+
+      // registered meanwhile, don't keep what was resolved with the old ones
+      if (current != values)
+      {
+        resolved.asMap().remove(type, value);
+      }
+    }
+
+    return value.orNull();
+  }
+
+  /**
+   * Looks the value of a class up, then of its superclasses, then of their
+   * interfaces.
+   *
+   * @param <V>
+   *          The type of the values
+   * @param values
+   *          The registered values
+   * @param type
+   *          The class looked up
+   * @return The value, or null if there's none
+   */
+  private static <V> V resolve(
+    final Map<Class<?>, V> values,
+    final Class<?> type)
+  {
+    for (Class<?> c = type; null != c; c = c.getSuperclass())
+    {
+      final V value = values.get(c);
+      if (null != value)
+      {
+        return value;
+      }
+    }
+
+    for (Class<?> c = type; null != c; c = c.getSuperclass())
+    {
+      for (Class<?> i : c.getInterfaces())
+      {
+        final V value = resolve(values, i);
+        if (null != value)
+        {
+          return value;
+        }
+      }
+    }
+
+    return null;
+  }
+}
@@ -0,0 +1,43 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.byktol.jcr.qb.criteria.builder.utils;
+
+import java.io.IOException;
+
+/**
+ * Writes a value as a literal of a query language. Encoders are registered
+ * by the type of value they write in {@link ValueEncoders}.
+ *
+ * @see XPathUtils#getValueEncoders()
+ * @since 1.0
+ * @author Victor Alvarez
+ */
+public interface ValueEncoder
+{
+
+  /**
+   * Appends the literal of the value to the query.
+   *
+   * @param query
+   *          The query being built
+   * @param value
+   *          The value, never null, of the type the encoder was registered
+   *          for
+   * @throws IOException
+   *           If the query cannot be appended to
+   */
+  void encode(Appendable query, Object value)
+    throws IOException;
+
+}
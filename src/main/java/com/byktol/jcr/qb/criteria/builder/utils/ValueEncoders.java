@@ -0,0 +1,122 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.byktol.jcr.qb.criteria.builder.utils;
+
+import java.io.IOException;
+
+/**
+ * The {@link ValueEncoder}s of a query language by type of value. A value is
+ * written by the encoder registered for its class or, failing that, for its
+ * closest superclass or, failing that, for one of its interfaces, as kept
+ * by a {@link TypeRegistry}. Values without an encoder are written as they
+ * are, using {@link Object#toString()}. Like the builders, encoders are meant
+ * to be registered at start-up.
+ *
+ * @since 1.0
+ * @author Victor Alvarez
+ */
+public final class ValueEncoders
+{
+
+  /** The registered encoders. */
+  private final TypeRegistry<ValueEncoder> encoders =
+    new TypeRegistry<ValueEncoder>();
+
+  /**
+   * Registers the encoder of a type of value, replacing the previous one.
+   *
+   * @param type
+   *          The type of value, its subclasses included
+   * @param encoder
+   *          The encoder of the values
+   * @return This registry to enable chaining
+   */
+  public ValueEncoders register(
+    final Class<?> type,
+    final ValueEncoder encoder)
+  {
+    if (null == type)
+    {
+      throw new IllegalArgumentException("type cannot be null");
+    }
+
+    if (null == encoder)
+    {
+      throw new IllegalArgumentException("encoder cannot be null");
+    }
+
+    encoders.register(type, encoder);
+
+    return this;
+  }
+
+  /**
+   * Unregisters the encoder of a type of value, which is then written by the
+   * encoder of its superclass, if any.
+   *
+   * @param type
+   *          The type of value
+   * @return The encoder that was registered, or null
+   */
+  public ValueEncoder unregister(final Class<?> type)
+  {
+    return encoders.unregister(type);
+  }
+
+  /**
+   * Looks the encoder of a type of value up.
+   *
+   * @param type
+   *          The type of value
+   * @return The encoder of the type, or null if there's none
+   */
+  public ValueEncoder get(final Class<?> type)
+  {
+    return encoders.get(type);
+  }
+
+  /**
+   * @see TypeRegistry#getVersion()
+   * @return The number of registrations so far, e.g. to tell whether what
+   *         was written beforehand was written by the same encoders
+   */
+  public long getVersion()
+  {
+    return encoders.getVersion();
+  }
+
+  /**
+   * Appends the literal of a value to the query.
+   *
+   * @param query
+   *          The query being built
+   * @param value
+   *          The value being written
+   * @throws IOException
+   *           If the query cannot be appended to
+   */
+  public void encode(final Appendable query, final Object value)
+    throws IOException
+  {
+    final ValueEncoder encoder = get(value.getClass());
+    if (null == encoder)
+    {
+      query.append(value.toString());
+    } else
+    {
+      encoder.encode(query, value);
+    }
+  }
+
+}
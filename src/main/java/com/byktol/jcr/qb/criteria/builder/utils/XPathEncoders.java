@@ -0,0 +1,429 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.byktol.jcr.qb.criteria.builder.utils;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.TimeZone;
+
+import javax.jcr.Node;
+import javax.jcr.PropertyType;
+import javax.jcr.RepositoryException;
+import javax.jcr.Value;
+
+/**
+ * The built-in {@link ValueEncoder}s of XPath.
+ * <ul>
+ * <li>Strings, names, paths and references are quoted and escaped.</li>
+ * <li>Numbers and booleans are written as they are, big decimals without an
+ * exponent. Infinite numbers aren't allowed.</li>
+ * <li>Calendars, dates and the java.time instants are written as
+ * xs:dateTime, the dates at the default time zone.</li>
+ * <li>JCR values are written according to their type.</li>
+ * <li>Nodes are written as a reference, i.e. their quoted identifier.</li>
+ * </ul>
+ * The java.time types are looked up by name, since this library still runs
+ * on Java 6, and only registered when they exist.
+ *
+ * @since 1.0
+ * @author Victor Alvarez
+ */
+public final class XPathEncoders
+{
+
+  /** The timestamps formatted recently. */
+  private static final TimestampCache TIMESTAMPS = new TimestampCache();
+
+  /** Private constructor to avoid instantiation. */
+  private XPathEncoders()
+  {
+    // nothing here
+  }
+
+  /**
+   * Creates a registry with the built-in encoders.
+   *
+   * @return A new registry
+   */
+  public static ValueEncoders create()
+  {
+    final ValueEncoders encoders = new ValueEncoders()
+      .register(String.class, new StringEncoder())
+      .register(Long.class, new IntegralEncoder())
+      .register(Integer.class, new IntegralEncoder())
+      .register(Short.class, new IntegralEncoder())
+      .register(Byte.class, new IntegralEncoder())
+      .register(Double.class, new FloatingEncoder())
+      .register(Float.class, new FloatingEncoder())
+      .register(BigDecimal.class, new DecimalEncoder())
+      .register(Boolean.class, new BooleanEncoder())
+      .register(Calendar.class, new CalendarEncoder())
+      .register(Date.class, new DateEncoder())
+      .register(Value.class, new JcrValueEncoder())
+      .register(Node.class, new ReferenceEncoder());
+
+    registerTemporal(encoders, "java.time.Instant", false);
+    registerTemporal(encoders, "java.time.OffsetDateTime", true);
+    registerTemporal(encoders, "java.time.ZonedDateTime", true);
+
+    return encoders;
+  }
+
+  /**
+   * Appends an ISO8601 timestamp as xs:dateTime.
+   *
+   * @param xpath
+   *          The query being built
+   * @param timestamp
+   *          The ISO8601 timestamp
+   * @throws IOException
+   *           If the query cannot be appended to
+   */
+  static void appendDateTime(final Appendable xpath, final String timestamp)
+    throws IOException
+  {
+    xpath.append("xs:dateTime('").append(timestamp).append("')");
+  }
+
+  /**
+   * Registers the encoder of a java.time type, if it exists.
+   *
+   * @param encoders
+   *          The registry
+   * @param type
+   *          The name of the type
+   * @param offset
+   *          Whether the type has an offset, or it's an instant at UTC
+   */
+  private static void registerTemporal(
+    final ValueEncoders encoders,
+    final String type,
+    final boolean offset)
+  {
+    try
+    {
+      final Class<?> temporal = Class.forName(type);
+      encoders.register(temporal, new TemporalEncoder(temporal, offset));
+    } catch (ClassNotFoundException e)
+    {
+      // before Java 8, there's nothing to encode
+    } catch (NoSuchMethodException e)
+    {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /** Quotes and escapes strings. */
+  private static final class StringEncoder
+    implements ValueEncoder
+  {
+
+    /*
+     * (non-Javadoc)
+     * @see ValueEncoder#encode(Appendable, Object)
+     */
+    @Override
+    public void encode(final Appendable query, final Object value)
+      throws IOException
+    {
+      StringUtils.appendEscaped(query, (String) value);
+    }
+
+  }
+
+  /** Writes integers without creating a string, where possible. */
+  private static final class IntegralEncoder
+    implements ValueEncoder
+  {
+
+    /*
+     * (non-Javadoc)
+     * @see ValueEncoder#encode(Appendable, Object)
+     */
+    @Override
+    public void encode(final Appendable query, final Object value)
+      throws IOException
+    {
+      if (query instanceof StringBuilder)
+      {
+        ((StringBuilder) query).append(((Number) value).longValue());
+      } else
+      {
+        query.append(value.toString());
+      }
+    }
+
+  }
+
+  /** Writes doubles and floats, which must be finite. */
+  private static final class FloatingEncoder
+    implements ValueEncoder
+  {
+
+    /*
+     * (non-Javadoc)
+     * @see ValueEncoder#encode(Appendable, Object)
+     */
+    @Override
+    public void encode(final Appendable query, final Object value)
+      throws IOException
+    {
+      final double d = ((Number) value).doubleValue();
+      if (Double.isNaN(d) || Double.isInfinite(d))
+      {
+        throw new IllegalArgumentException(value + " cannot be queried");
+      }
+
+      query.append(value.toString());
+    }
+
+  }
+
+  /** Writes big decimals without an exponent, which XPath doesn't parse. */
+  private static final class DecimalEncoder
+    implements ValueEncoder
+  {
+
+    /*
+     * (non-Javadoc)
+     * @see ValueEncoder#encode(Appendable, Object)
+     */
+    @Override
+    public void encode(final Appendable query, final Object value)
+      throws IOException
+    {
+      query.append(((BigDecimal) value).toPlainString());
+    }
+
+  }
+
+  /** Writes booleans. */
+  private static final class BooleanEncoder
+    implements ValueEncoder
+  {
+
+    /*
+     * (non-Javadoc)
+     * @see ValueEncoder#encode(Appendable, Object)
+     */
+    @Override
+    public void encode(final Appendable query, final Object value)
+      throws IOException
+    {
+      query.append(((Boolean) value).booleanValue() ? "true" : "false");
+    }
+
+  }
+
+  /** Writes calendars as xs:dateTime, at their own time zone. */
+  private static final class CalendarEncoder
+    implements ValueEncoder
+  {
+
+    /*
+     * (non-Javadoc)
+     * @see ValueEncoder#encode(Appendable, Object)
+     */
+    @Override
+    public void encode(final Appendable query, final Object value)
+      throws IOException
+    {
+      appendDateTime(query, TIMESTAMPS.format((Calendar) value));
+    }
+
+  }
+
+  /** Writes dates as xs:dateTime, at the default time zone. */
+  private static final class DateEncoder
+    implements ValueEncoder
+  {
+
+    /*
+     * (non-Javadoc)
+     * @see ValueEncoder#encode(Appendable, Object)
+     */
+    @Override
+    public void encode(final Appendable query, final Object value)
+      throws IOException
+    {
+      final long millis = ((Date) value).getTime();
+      appendDateTime(query, TIMESTAMPS.format(millis,
+        TimeZone.getDefault().getOffset(millis)));
+    }
+
+  }
+
+  /** Writes JCR values according to their type. */
+  private static final class JcrValueEncoder
+    implements ValueEncoder
+  {
+
+    /*
+     * (non-Javadoc)
+     * @see ValueEncoder#encode(Appendable, Object)
+     */
+    @Override
+    public void encode(final Appendable query, final Object value)
+      throws IOException
+    {
+      final Value v = (Value) value;
+      try
+      {
+        switch (v.getType())
+        {
+          case PropertyType.LONG:
+            query.append(String.valueOf(v.getLong()));
+            break;
+          case PropertyType.DOUBLE:
+            query.append(String.valueOf(v.getDouble()));
+            break;
+          case PropertyType.DECIMAL:
+            query.append(v.getDecimal().toPlainString());
+            break;
+          case PropertyType.BOOLEAN:
+            query.append(v.getBoolean() ? "true" : "false");
+            break;
+          case PropertyType.DATE:
+            appendDateTime(query, TIMESTAMPS.format(v.getDate()));
+            break;
+          case PropertyType.BINARY:
+            throw new IllegalArgumentException(
+              "binary values cannot be queried");
+          default:
+            // strings, names, paths, URIs and references
+            StringUtils.appendEscaped(query, v.getString());
+        }
+      } catch (RepositoryException e)
+      {
+        throw new IllegalStateException(e);
+      }
+    }
+
+  }
+
+  /** Writes nodes as a reference to them. */
+  private static final class ReferenceEncoder
+    implements ValueEncoder
+  {
+
+    /*
+     * (non-Javadoc)
+     * @see ValueEncoder#encode(Appendable, Object)
+     */
+    @Override
+    public void encode(final Appendable query, final Object value)
+      throws IOException
+    {
+      try
+      {
+        StringUtils.appendEscaped(query, ((Node) value).getIdentifier());
+      } catch (RepositoryException e)
+      {
+        throw new IllegalStateException(e);
+      }
+    }
+
+  }
+
+  /**
+   * Writes the java.time instants as xs:dateTime, at their own offset, by
+   * reflection.
+   */
+  private static final class TemporalEncoder
+    implements ValueEncoder
+  {
+
+    /** Instant.toEpochMilli(). */
+    private final Method toEpochMilli;
+
+    /** The toInstant() of the type, null for an instant. */
+    private final Method toInstant;
+
+    /** The getOffset() of the type, null for an instant. */
+    private final Method getOffset;
+
+    /** ZoneOffset.getTotalSeconds(), null for an instant. */
+    private final Method getTotalSeconds;
+
+    /**
+     * Default constructor.
+     *
+     * @param type
+     *          The java.time type
+     * @param offset
+     *          Whether the type has an offset, or it's an instant at UTC
+     * @throws ClassNotFoundException
+     *           If java.time doesn't exist
+     * @throws NoSuchMethodException
+     *           Never, unless java.time changes
+     */
+    TemporalEncoder(final Class<?> type, final boolean offset)
+      throws ClassNotFoundException, NoSuchMethodException
+    {
+      toEpochMilli = Class.forName("java.time.Instant").getMethod(
+        "toEpochMilli");
+      if (offset)
+      {
+        toInstant = type.getMethod("toInstant");
+        getOffset = type.getMethod("getOffset");
+        getTotalSeconds = Class.forName("java.time.ZoneOffset").getMethod(
+          "getTotalSeconds");
+      } else
+      {
+        toInstant = null;
+        getOffset = null;
+        getTotalSeconds = null;
+      }
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see ValueEncoder#encode(Appendable, Object)
+     */
+    @Override
+    public void encode(final Appendable query, final Object value)
+      throws IOException
+    {
+      final long millis;
+      final int offset;
+      try
+      {
+        if (null == toInstant)
+        {
+          millis = (Long) toEpochMilli.invoke(value);
+          offset = 0;
+        } else
+        {
+          millis = (Long) toEpochMilli.invoke(toInstant.invoke(value));
+          offset = 1000 * (Integer) getTotalSeconds.invoke(
+            getOffset.invoke(value));
+        }
+      } catch (IllegalAccessException e)
+      {
+        throw new IllegalStateException(e);
+      } catch (InvocationTargetException e)
+      {
+        throw new IllegalStateException(e.getCause());
+      }
+
+      appendDateTime(query, TIMESTAMPS.format(millis, offset));
+    }
+
+  }
+
+}
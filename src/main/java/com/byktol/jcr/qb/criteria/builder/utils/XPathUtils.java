@@ -13,11 +13,9 @@
  */
 package com.byktol.jcr.qb.criteria.builder.utils;
 
-import java.util.Calendar;
-
-import org.apache.jackrabbit.util.ISO8601;
-import org.apache.jackrabbit.util.ISO9075;
+import java.io.IOException;
 
+import com.byktol.jcr.qb.criteria.PropertyName;
 import com.google.common.base.Strings;
 
 /**
@@ -31,7 +29,10 @@ public final class XPathUtils
 {
 
   /** The symbol used by XPath to query properties/attributes from a node. */
-  private static final String xpathPropertySymbol = "@";
+  private static final char xpathPropertySymbol = '@';
+
+  /** The encoders of the values. */
+  private static final ValueEncoders ENCODERS = XPathEncoders.create();
 
   /** Private constructor to avoid instantiation. */
   private XPathUtils()
@@ -65,7 +66,7 @@ public final class XPathUtils
    */
   public static String prependSymbol(final String propertyName)
   {
-    if (propertyName.contains(xpathPropertySymbol))
+    if (propertyName.indexOf(xpathPropertySymbol) >= 0)
     {
 
       return propertyName;
@@ -77,6 +78,51 @@ public final class XPathUtils
     }
   }
 
+  /**
+   * Appends the property name with the at (@) symbol prepended, without
+   * creating a new string.
+   *
+   * @see #prependSymbol(String)
+   * @param xpath
+   *          The query being built
+   * @param propertyName
+   *          The name of the property that @ will be prepended to
+   * @throws IOException
+   *           If the query cannot be appended to
+   */
+  public static void appendProperty(
+    final Appendable xpath,
+    final String propertyName)
+    throws IOException
+  {
+    if (propertyName.indexOf(xpathPropertySymbol) < 0)
+    {
+      xpath.append(xpathPropertySymbol);
+    }
+
+    xpath.append(propertyName);
+  }
+
+  /**
+   * Appends a property resolved beforehand, which involves no checking at
+   * all.
+   *
+   * @see PropertyName#getXPath()
+   * @param xpath
+   *          The query being built
+   * @param property
+   *          The property
+   * @throws IOException
+   *           If the query cannot be appended to
+   */
+  public static void appendProperty(
+    final Appendable xpath,
+    final PropertyName property)
+    throws IOException
+  {
+    xpath.append(property.getXPath());
+  }
+
   /**
    * According to http://www.day.com/specs/jcr/1.0/6.6.4.9_Escaping.html we have
    * to escape quotation marks with another quotation mark and apostrophes with
@@ -92,21 +138,56 @@ public final class XPathUtils
    */
   public static String typedValue(final Object value)
   {
-    if (value instanceof String)
+    final StringBuilder sb = new StringBuilder();
+    try
     {
-
-      return StringUtils.escapeString((String) value);
-
-    } else if (value instanceof Calendar)
+      appendTypedValue(sb, value);
+    } catch (IOException e)
     {
+      throw StringUtils.unexpected(e);
+    }
 
-      return String.format("xs:dateTime('%s')",
-        ISO8601.format((Calendar) value)
-      );
+    return sb.toString();
+  }
 
+  /**
+   * Appends the XPath-equivalent value without intermediate strings, except
+   * for the numbers that aren't integers. Strings are escaped right away, the
+   * rest of values are written by their {@link ValueEncoder}.
+   *
+   * @see #typedValue(Object)
+   * @see #getValueEncoders()
+   * @param xpath
+   *          The query being built
+   * @param value
+   *          Any object whose value will be rendered
+   * @throws IOException
+   *           If the query cannot be appended to
+   */
+  public static void appendTypedValue(
+    final Appendable xpath,
+    final Object value)
+    throws IOException
+  {
+    if (value instanceof String)
+    {
+      StringUtils.appendEscaped(xpath, (String) value);
+    } else
+    {
+      ENCODERS.encode(xpath, value);
     }
+  }
 
-    return value.toString();
+  /**
+   * Returns the encoders of the XPath values, to register the encoders of
+   * other types of value.
+   *
+   * @see XPathEncoders
+   * @return The registry of the encoders
+   */
+  public static ValueEncoders getValueEncoders()
+  {
+    return ENCODERS;
   }
 
   /**
@@ -124,16 +205,18 @@ public final class XPathUtils
    * to see a pattern with these JackRabbit utilities.
    * <p>
    * Anyhow, the reason for this method is to not pollute the rest of the
-   * implementation with JackRabbit dependencies.
+   * implementation with JackRabbit dependencies. Nowadays the paths are
+   * checked in-house, which is faster, and only the few with non-ASCII names
+   * are handed over to JackRabbit.
    *
    * @param path
    *          The path (or node name) that is going to be encoded
    * @return An encoded path (or node name) if it starts (or has a node
-   *         starting) with a number
+   *         starting) with a number, otherwise the same path
    */
   public static String encodePath(final String path)
   {
-    return ISO9075.encodePath(Strings.nullToEmpty(path));
+    return ISO9075Encoder.encodePath(Strings.nullToEmpty(path));
   }
 
 }
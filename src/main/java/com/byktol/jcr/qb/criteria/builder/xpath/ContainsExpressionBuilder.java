@@ -13,6 +13,8 @@
  */
 package com.byktol.jcr.qb.criteria.builder.xpath;
 
+import java.io.IOException;
+
 import com.byktol.jcr.qb.criteria.Criterion;
 import com.byktol.jcr.qb.criteria.builder.Context;
 import com.byktol.jcr.qb.criteria.builder.XPathCriterionBuilder;
@@ -31,19 +33,20 @@ public class ContainsExpressionBuilder
 
   /*
    * (non-Javadoc)
-   * @see XPathCriterionBuilder#buildXPath(Criterion, Context)
+   * @see XPathCriterionBuilder#buildXPath(Criterion, Context, Appendable)
    */
   @Override
-  public final String buildXPath(
+  public final void buildXPath(
     final Criterion criterion,
-    final Context context)
+    final Context context,
+    final Appendable xpath)
+    throws IOException
   {
     final ContainsExpression ce = (ContainsExpression) criterion;
 
-    return String.format(
-      "jcr:contains(%s, '%s')",
-      XPathUtils.prependSymbol(ce.getPropertyName()), ce.getValue()
-    );
+    xpath.append("jcr:contains(");
+    XPathUtils.appendProperty(xpath, ce.getProperty());
+    xpath.append(", '").append(ce.getValue()).append("')");
   }
 
 }
@@ -0,0 +1,51 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.byktol.jcr.qb.criteria.builder.xpath;
+
+import java.io.IOException;
+
+import com.byktol.jcr.qb.criteria.Criterion;
+import com.byktol.jcr.qb.criteria.builder.Context;
+import com.byktol.jcr.qb.criteria.builder.XPathCriterionBuilder;
+import com.byktol.jcr.qb.criteria.builder.utils.XPathUtils;
+import com.byktol.jcr.qb.criteria.expressions.ContradictionExpression;
+
+/**
+ * Builds a single {@link ContradictionExpression} based on the specific query
+ * type.
+ *
+ * @since 1.0
+ * @author Victor Alvarez
+ */
+public class ContradictionExpressionBuilder
+  implements XPathCriterionBuilder
+{
+
+  /*
+   * (non-Javadoc)
+   * @see XPathCriterionBuilder#buildXPath(Criterion, Context, Appendable)
+   */
+  @Override
+  public final void buildXPath(
+    final Criterion criterion,
+    final Context context,
+    final Appendable xpath)
+    throws IOException
+  {
+    xpath.append("not(");
+    XPathUtils.appendProperty(xpath, ContradictionExpression.PROPERTY);
+    xpath.append(')');
+  }
+
+}
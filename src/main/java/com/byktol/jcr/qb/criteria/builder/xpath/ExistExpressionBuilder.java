@@ -13,6 +13,8 @@
  */
 package com.byktol.jcr.qb.criteria.builder.xpath;
 
+import java.io.IOException;
+
 import com.byktol.jcr.qb.criteria.Criterion;
 import com.byktol.jcr.qb.criteria.builder.Context;
 import com.byktol.jcr.qb.criteria.builder.XPathCriterionBuilder;
@@ -31,16 +33,18 @@ public class ExistExpressionBuilder
 
   /*
    * (non-Javadoc)
-   * @see XPathCriterionBuilder#buildXPath(Criterion, Context)
+   * @see XPathCriterionBuilder#buildXPath(Criterion, Context, Appendable)
    */
   @Override
-  public final String buildXPath(
+  public final void buildXPath(
     final Criterion criterion,
-    final Context context)
+    final Context context,
+    final Appendable xpath)
+    throws IOException
   {
     final ExistExpression ee = (ExistExpression) criterion;
 
-    return String.format("%s", XPathUtils.prependSymbol(ee.getPropertyName()));
+    XPathUtils.appendProperty(xpath, ee.getProperty());
   }
 
 }
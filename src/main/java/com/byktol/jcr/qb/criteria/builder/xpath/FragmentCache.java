@@ -0,0 +1,172 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.byktol.jcr.qb.criteria.builder.xpath;
+
+import com.byktol.jcr.qb.criteria.Criterion;
+import com.byktol.jcr.qb.criteria.Param;
+import com.byktol.jcr.qb.criteria.Restrictions;
+import com.byktol.jcr.qb.criteria.expressions.Junction;
+import com.byktol.jcr.qb.criteria.expressions.LogicalExpression;
+import com.byktol.jcr.qb.criteria.expressions.NotExpression;
+import com.byktol.jcr.qb.criteria.expressions.SimpleExpression;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * A bounded cache of the XPath rendered for a {@link Criterion}, keyed by its
+ * value, so a restriction reused across many queries, e.g. a shared
+ * "published and not hidden" group, is rendered once and copied thereafter.
+ * Only immutable restrictions are cached: nothing containing a
+ * {@link Junction}, which can still be added to, a mutable value, or a
+ * {@link Param}, which has no value to render. Every fragment is kept along
+ * with the version of the builders and encoders it was rendered with, and
+ * isn't served once either is registered anew. Thread-safe.
+ *
+ * @see JackrabbitContext#setFragmentCache(FragmentCache)
+ * @since 1.0
+ * @author Victor Alvarez
+ */
+public final class FragmentCache
+{
+
+  /** The rendered fragments. */
+  private final Cache<Criterion, Fragment> fragments;
+
+  /**
+   * Constructor.
+   *
+   * @param maximumSize
+   *          The number of fragments kept
+   */
+  public FragmentCache(final long maximumSize)
+  {
+    this.fragments = CacheBuilder.newBuilder()
+      .maximumSize(maximumSize)
+      .build();
+  }
+
+  /**
+   * @param criterion
+   *          A restriction
+   * @param version
+   *          The version of the builders and encoders rendering it
+   * @return Its rendered fragment, or null if not cached or rendered with
+   *         another version
+   */
+  public String get(final Criterion criterion, final long version)
+  {
+    final Fragment fragment = fragments.getIfPresent(criterion);
+
+    return null == fragment || version != fragment.version
+      ? null : fragment.xpath;
+  }
+
+  /**
+   * @param criterion
+   *          A restriction, which must be {@link #isCacheable(Criterion)}
+   * @param version
+   *          The version of the builders and encoders it was rendered with
+   * @param fragment
+   *          Its rendered fragment
+   */
+  public void put(
+    final Criterion criterion,
+    final long version,
+    final String fragment)
+  {
+    fragments.put(criterion, new Fragment(fragment, version));
+  }
+
+  /**
+   * @return The number of fragments kept
+   */
+  public long size()
+  {
+    return fragments.size();
+  }
+
+  /**
+   * Discards every fragment.
+   */
+  public void invalidateAll()
+  {
+    fragments.invalidateAll();
+  }
+
+  /**
+   * @see Restrictions#isImmutable(Criterion)
+   * @param criterion
+   *          A restriction
+   * @return Whether it cannot be modified, and has no {@link Param} to
+   *         render
+   */
+  public static boolean isCacheable(final Criterion criterion)
+  {
+    return Restrictions.isImmutable(criterion) && !hasParam(criterion);
+  }
+
+  /**
+   * @param criterion
+   *          An immutable restriction
+   * @return Whether it, or any of its children, has a {@link Param} value
+   */
+  private static boolean hasParam(final Criterion criterion)
+  {
+    if (criterion instanceof SimpleExpression)
+    {
+      return ((SimpleExpression) criterion).getValue() instanceof Param;
+    } else if (criterion instanceof LogicalExpression)
+    {
+      for (Criterion c : ((LogicalExpression) criterion).getCriterionList())
+      {
+        if (hasParam(c))
+        {
+          return true;
+        }
+      }
+    } else if (criterion instanceof NotExpression)
+    {
+      return hasParam(((NotExpression) criterion).getCriterion());
+    }
+
+    return false;
+  }
+
+  /**
+   * A fragment and the version it was rendered with.
+   */
+  private static final class Fragment
+  {
+
+    /** The rendered fragment. */
+    private final String xpath;
+
+    /** The version of the builders and encoders it was rendered with. */
+    private final long version;
+
+    /**
+     * Constructor.
+     *
+     * @param xpath
+     *          The rendered fragment
+     * @param version
+     *          The version of the builders and encoders
+     */
+    Fragment(final String xpath, final long version)
+    {
+      this.xpath = xpath;
+      this.version = version;
+    }
+  }
+}
@@ -13,14 +13,19 @@
  */
 package com.byktol.jcr.qb.criteria.builder.xpath;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.io.IOException;
 
 import com.byktol.jcr.qb.criteria.Criterion;
+import com.byktol.jcr.qb.criteria.Param;
+import com.byktol.jcr.qb.criteria.builder.BuilderDispatcher;
+import com.byktol.jcr.qb.criteria.builder.BuilderRegistry;
 import com.byktol.jcr.qb.criteria.builder.Context;
 import com.byktol.jcr.qb.criteria.builder.XPathCriterionBuilder;
+import com.byktol.jcr.qb.criteria.builder.utils.XPathUtils;
 import com.byktol.jcr.qb.criteria.expressions.ContainsExpression;
+import com.byktol.jcr.qb.criteria.expressions.ContradictionExpression;
 import com.byktol.jcr.qb.criteria.expressions.ExistExpression;
+import com.byktol.jcr.qb.criteria.expressions.Junction;
 import com.byktol.jcr.qb.criteria.expressions.LikeExpression;
 import com.byktol.jcr.qb.criteria.expressions.LogicalExpression;
 import com.byktol.jcr.qb.criteria.expressions.NotExpression;
@@ -33,35 +38,142 @@ import com.byktol.jcr.qb.criteria.expressions.SimpleExpression;
 public class JackrabbitContext
   implements Context
 {
-  private static final Map<Class<? extends Criterion>, XPathCriterionBuilder> map = new HashMap<Class<? extends Criterion>, XPathCriterionBuilder>() {
-    /** Context.java */
-    private static final long serialVersionUID = 1L;
+  /** The builders of the criteria, shared by every context. */
+  private static final BuilderRegistry<XPathCriterionBuilder> REGISTRY =
+    new BuilderRegistry<XPathCriterionBuilder>()
+      .register(SimpleExpression.class, new SimpleExpressionBuilder())
+      .register(LogicalExpression.class, new LogicalExpressionBuilder())
+      .register(Junction.class, new JunctionBuilder())
+      .register(ContainsExpression.class, new ContainsExpressionBuilder())
+      .register(NotExpression.class, new NotExpressionBuilder())
+      .register(LikeExpression.class, new LikeExpressionBuilder())
+      .register(ExistExpression.class, new ExistExpressionBuilder())
+      .register(ContradictionExpression.class,
+        new ContradictionExpressionBuilder());
+
+  /** The cache of rendered restrictions, null when disabled. */
+  private static volatile FragmentCache fragmentCache;
+
+  /** Hands the criteria to their builders. */
+  private final BuilderDispatcher<XPathCriterionBuilder, Void, Appendable,
+    IOException> dispatcher = new BuilderDispatcher<XPathCriterionBuilder,
+      Void, Appendable, IOException>(REGISTRY)
     {
-      put(SimpleExpression.class, new SimpleExpressionBuilder());
-      put(LogicalExpression.class, new LogicalExpressionBuilder());
-      put(ContainsExpression.class, new ContainsExpressionBuilder());
-      put(NotExpression.class, new NotExpressionBuilder());
-      put(LikeExpression.class, new LikeExpressionBuilder());
-      put(ExistExpression.class, new ExistExpressionBuilder());
-    }
-  };
+      @Override
+      protected Void build(
+        final XPathCriterionBuilder builder,
+        final Criterion criterion,
+        final Appendable xpath)
+        throws IOException
+      {
+        builder.buildXPath(criterion, JackrabbitContext.this, xpath);
+        return null;
+      }
+
+      @Override
+      protected Void unsupported(
+        final Criterion criterion,
+        final Appendable xpath)
+      {
+        return null;
+      }
+    };
 
   /**
    * Filters the appropriate restriction type and invokes the builder methods.
    *
    * @param criterion
    *          An object inheriting from {@link Criterion}
-   * @return The result of calling a builder method or an empty string
+   * @param xpath
+   *          The query being built, left untouched if the criterion isn't
+   *          supported
+   * @throws IOException
+   *           If the query cannot be appended to
    */
-  public final String build(final Criterion criterion)
+  public final void build(final Criterion criterion, final Appendable xpath)
+    throws IOException
   {
-    final XPathCriterionBuilder builder = map.get(criterion.getClass());
+    final FragmentCache cache = fragmentCache;
+    if (null == cache || !FragmentCache.isCacheable(criterion))
+    {
+      criterion.accept(dispatcher, xpath);
+      return;
+    }
 
-    if (null == builder)
+    // both only ever grow, so their sum changes with either of them
+    final long version = REGISTRY.getVersion()
+      + XPathUtils.getValueEncoders().getVersion();
+    String fragment = cache.get(criterion, version);
+    if (null == fragment)
     {
-      return "";
+      final StringBuilder sb = new StringBuilder();
+      criterion.accept(dispatcher, sb);
+      fragment = sb.toString();
+      cache.put(criterion, version, fragment);
     }
+    xpath.append(fragment);
+  }
 
-    return builder.buildXPath(criterion, this);
+  /**
+   * @return The cache of rendered restrictions, null if they aren't cached
+   */
+  public static FragmentCache getFragmentCache()
+  {
+    return fragmentCache;
+  }
+
+  /**
+   * Caches the XPath rendered for the restrictions, shared by every context.
+   * It's off by default, since it only pays off when the same restrictions
+   * are reused across queries. Registering a builder or a value encoder
+   * makes the fragments rendered beforehand stale.
+   *
+   * @param cache
+   *          The cache of rendered restrictions, null to stop caching them
+   */
+  public static void setFragmentCache(final FragmentCache cache)
+  {
+    fragmentCache = cache;
+  }
+
+  @Override
+  public final boolean isSupported(final Criterion criterion)
+  {
+    return REGISTRY.contains(criterion.getClass());
+  }
+
+  /**
+   * Appends the XPath-equivalent of a value. A {@link Param} cannot be built
+   * here, only compiled into a template.
+   *
+   * @see XPathUtils#typedValue(Object)
+   * @param value
+   *          The value of a restriction
+   * @param xpath
+   *          The query being built
+   * @throws IOException
+   *           If the query cannot be appended to
+   */
+  @Override
+  public void buildValue(final Object value, final Appendable xpath)
+    throws IOException
+  {
+    if (value instanceof Param)
+    {
+      throw new IllegalStateException(String.format(
+        "%s has no value, compile() the criteria and bind it instead",
+        value));
+    }
+
+    XPathUtils.appendTypedValue(xpath, value);
+  }
+
+  /**
+   * @return The builders of the criteria, where custom builders may be
+   *         registered
+   */
+  public static BuilderRegistry<XPathCriterionBuilder> getRegistry()
+  {
+    return REGISTRY;
   }
 }
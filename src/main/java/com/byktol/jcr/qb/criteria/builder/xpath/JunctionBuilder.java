@@ -13,14 +13,13 @@
  */
 package com.byktol.jcr.qb.criteria.builder.xpath;
 
-import java.util.ArrayList;
+import java.io.IOException;
 import java.util.List;
 
 import com.byktol.jcr.qb.criteria.Criterion;
 import com.byktol.jcr.qb.criteria.builder.Context;
 import com.byktol.jcr.qb.criteria.builder.XPathCriterionBuilder;
 import com.byktol.jcr.qb.criteria.expressions.Junction;
-import com.google.common.base.Joiner;
 
 /**
  * Builds a conjunction for XPath.
@@ -34,30 +33,33 @@ public class JunctionBuilder
 
   /*
    * (non-Javadoc)
-   * @see XPathCriterionBuilder#buildXPath(Criterion, Context)
+   * @see XPathCriterionBuilder#buildXPath(Criterion, Context, Appendable)
    */
   @Override
-  public final String buildXPath(
+  public final void buildXPath(
     final Criterion criterion,
-    final Context context)
+    final Context context,
+    final Appendable xpath)
+    throws IOException
   {
     final Junction junction = (Junction) criterion;
 
     final List<Criterion> criterionArray = junction.getCriterionList();
 
-    final List<String> builtrestrictions =
-      new ArrayList<String>(criterionArray.size());
-
-    final Joiner joiner = Joiner.on(
-      String.format(" %s ", junction.getOperator().toString())
-    ).skipNulls();
+    final String operator = junction.getOperator().toString();
 
+    xpath.append('(');
+    boolean first = true;
     for (Criterion c : criterionArray)
     {
-      builtrestrictions.add(context.build(c));
+      if (!first)
+      {
+        xpath.append(' ').append(operator).append(' ');
+      }
+      context.build(c, xpath);
+      first = false;
     } // end of for
-
-    return String.format("(%s)", joiner.join(builtrestrictions));
+    xpath.append(')');
   }
 
 }
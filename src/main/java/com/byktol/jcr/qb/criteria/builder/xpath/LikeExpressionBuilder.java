@@ -13,6 +13,8 @@
  */
 package com.byktol.jcr.qb.criteria.builder.xpath;
 
+import java.io.IOException;
+
 import com.byktol.jcr.qb.criteria.Criterion;
 import com.byktol.jcr.qb.criteria.builder.Context;
 import com.byktol.jcr.qb.criteria.builder.XPathCriterionBuilder;
@@ -30,14 +32,17 @@ public class LikeExpressionBuilder
 {
 
   @Override
-  public final String buildXPath(final Criterion criterion, final Context context)
+  public final void buildXPath(
+    final Criterion criterion,
+    final Context context,
+    final Appendable xpath)
+    throws IOException
   {
     final LikeExpression le = (LikeExpression) criterion;
 
-    return String.format(
-      "jcr:like(%s, '%s')",
-      XPathUtils.prependSymbol(le.getPropertyName()), le.getValue()
-    );
+    xpath.append("jcr:like(");
+    XPathUtils.appendProperty(xpath, le.getProperty());
+    xpath.append(", '").append(le.getValue()).append("')");
   }
 
 }
@@ -13,14 +13,13 @@
  */
 package com.byktol.jcr.qb.criteria.builder.xpath;
 
-import java.util.ArrayList;
+import java.io.IOException;
 import java.util.List;
 
 import com.byktol.jcr.qb.criteria.Criterion;
 import com.byktol.jcr.qb.criteria.builder.Context;
 import com.byktol.jcr.qb.criteria.builder.XPathCriterionBuilder;
 import com.byktol.jcr.qb.criteria.expressions.LogicalExpression;
-import com.google.common.base.Joiner;
 
 /**
  * Builds a single {@link LogicalExpression} based on the specific query type.
@@ -33,26 +32,29 @@ public class LogicalExpressionBuilder
 {
 
   @Override
-  public final String buildXPath(final Criterion criterion, final Context context)
+  public final void buildXPath(
+    final Criterion criterion,
+    final Context context,
+    final Appendable xpath)
+    throws IOException
   {
     final LogicalExpression le = (LogicalExpression) criterion;
 
-    final Criterion[] criterionArray = le.getCriterion();
+    final List<Criterion> criterionList = le.getCriterionList();
 
-    final List<String> builtrestrictions =
-      new ArrayList<String>(criterionArray.length);
+    final String operator = le.getOp().toString();
 
-    final Joiner joiner = Joiner.on(
-      String.format(" %s ", le.getOp().toString())
-    ).skipNulls();
-
-    for (int i = 0; i < criterionArray.length; i++)
+    xpath.append('(');
+    for (int i = 0; i < criterionList.size(); i++)
     {
 
-      builtrestrictions.add(context.build(criterionArray[i]));
+      if (i > 0)
+      {
+        xpath.append(' ').append(operator).append(' ');
+      }
+      context.build(criterionList.get(i), xpath);
 
     } // end of for
-
-    return String.format("(%s)", joiner.join(builtrestrictions));
+    xpath.append(')');
   }
 }
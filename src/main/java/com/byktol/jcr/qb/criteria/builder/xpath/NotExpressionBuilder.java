@@ -13,6 +13,8 @@
  */
 package com.byktol.jcr.qb.criteria.builder.xpath;
 
+import java.io.IOException;
+
 import com.byktol.jcr.qb.criteria.Criterion;
 import com.byktol.jcr.qb.criteria.builder.Context;
 import com.byktol.jcr.qb.criteria.builder.XPathCriterionBuilder;
@@ -30,18 +32,20 @@ public class NotExpressionBuilder
 
   /*
    * (non-Javadoc)
-   * @see XPathCriterionBuilder#buildXPath(Criterion, Context)
+   * @see XPathCriterionBuilder#buildXPath(Criterion, Context, Appendable)
    */
   @Override
-  public final String buildXPath(
+  public final void buildXPath(
     final Criterion criterion,
-    final Context context)
+    final Context context,
+    final Appendable xpath)
+    throws IOException
   {
     final NotExpression ne = (NotExpression) criterion;
-    return String.format(
-      "not(%s)",
-      context.build(ne.getCriterion())
-    );
+
+    xpath.append("not(");
+    context.build(ne.getCriterion(), xpath);
+    xpath.append(')');
   }
 
 }
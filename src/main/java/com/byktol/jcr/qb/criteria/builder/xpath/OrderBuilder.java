@@ -13,7 +13,7 @@
  */
 package com.byktol.jcr.qb.criteria.builder.xpath;
 
-import java.util.LinkedList;
+import java.io.IOException;
 import java.util.List;
 
 import com.byktol.jcr.qb.criteria.Order;
@@ -27,26 +27,31 @@ public class OrderBuilder
 {
 
   /**
-   * Builds a {@link List} of {@link Order} as a {@link List} of {@link String}
-   * in order for them to be appended together.
+   * Appends a {@link List} of {@link Order} to the query, separated by commas.
    *
    * @param orders
    *          The {@link Order}s that are going to be appended to the query
-   * @return A {@link List} of {@link String} to be appended to the query
+   * @param xpath
+   *          The query being built
+   * @throws IOException
+   *           If the query cannot be appended to
    */
-  public final List<String> build(final List<Order> orders)
+  public final void build(final List<Order> orders, final Appendable xpath)
+    throws IOException
   {
-    final List<String> list = new LinkedList<String>();
+    boolean first = true;
 
     for (Order o : orders)
     {
 
-      list.add(String.format("%s %s",
-        XPathUtils.prependSymbol(o.getPropertyName()), o.getDirection())
-      );
+      if (!first)
+      {
+        xpath.append(", ");
+      }
+      XPathUtils.appendProperty(xpath, o.getProperty());
+      xpath.append(' ').append(o.getDirection());
+      first = false;
 
     }
-
-    return list;
   }
 }
@@ -13,6 +13,8 @@
  */
 package com.byktol.jcr.qb.criteria.builder.xpath;
 
+import java.io.IOException;
+
 import com.byktol.jcr.qb.criteria.Criterion;
 import com.byktol.jcr.qb.criteria.builder.Context;
 import com.byktol.jcr.qb.criteria.builder.XPathCriterionBuilder;
@@ -30,16 +32,17 @@ public class SimpleExpressionBuilder
 {
 
   @Override
-  public final String buildXPath(final Criterion criterion, final Context context)
+  public final void buildXPath(
+    final Criterion criterion,
+    final Context context,
+    final Appendable xpath)
+    throws IOException
   {
     final SimpleExpression se = (SimpleExpression) criterion;
 
-    return String.format(
-      "%s %s %s",
-      XPathUtils.prependSymbol(se.getPropertyName()),
-      se.getOp().toXpath(),
-      XPathUtils.typedValue(se.getValue())
-    );
+    XPathUtils.appendProperty(xpath, se.getProperty());
+    xpath.append(' ').append(se.getOp().toXpath()).append(' ');
+    context.buildValue(se.getValue(), xpath);
   }
 
 }
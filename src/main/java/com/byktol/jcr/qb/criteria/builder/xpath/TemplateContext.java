@@ -0,0 +1,102 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.byktol.jcr.qb.criteria.builder.xpath;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.byktol.jcr.qb.criteria.Param;
+import com.byktol.jcr.qb.criteria.QueryTemplate;
+
+/**
+ * A {@link JackrabbitContext} compiling the query into a {@link QueryTemplate}
+ * instead of rendering every value. The query must be built into
+ * {@link #getTemplate()}, so the context knows where every {@link Param} hole
+ * falls. Unlike its parent, this context is stateful and used only once.
+ *
+ * @since 1.0
+ * @author Victor Alvarez
+ */
+public class TemplateContext
+  extends JackrabbitContext
+{
+
+  /** The query being compiled. */
+  private final StringBuilder template = new StringBuilder();
+
+  /** The constant fragments found so far. */
+  private final List<String> fragments = new ArrayList<String>();
+
+  /** The parameters found so far. */
+  private final List<Param> params = new ArrayList<Param>();
+
+  /** Where the current fragment starts. */
+  private int start;
+
+  /**
+   * @return The buffer the query must be built into
+   */
+  public final StringBuilder getTemplate()
+  {
+    return template;
+  }
+
+  /**
+   * Cuts a fragment when the value is a {@link Param}, and renders it as any
+   * other context would otherwise.
+   *
+   * @param value
+   *          The value of a restriction
+   * @param xpath
+   *          The query being built, which must be {@link #getTemplate()}
+   * @throws IOException
+   *           If the query cannot be appended to
+   */
+  @Override
+  public final void buildValue(final Object value, final Appendable xpath)
+    throws IOException
+  {
+    if (!(value instanceof Param))
+    {
+      super.buildValue(value, xpath);
+      return;
+    }
+
+    if (xpath != template)
+    {
+      throw new IllegalStateException(
+        "the query must be built into the template");
+    }
+
+    fragments.add(template.substring(start));
+    params.add((Param) value);
+    start = template.length();
+  }
+
+  /**
+   * @return The template compiled from the query built so far
+   */
+  public final QueryTemplate toQueryTemplate()
+  {
+    final List<String> all = new ArrayList<String>(fragments);
+    all.add(template.substring(start));
+
+    return new QueryTemplate(
+      all.toArray(new String[all.size()]),
+      params.toArray(new Param[params.size()]),
+      new JackrabbitContext()
+    );
+  }
+}
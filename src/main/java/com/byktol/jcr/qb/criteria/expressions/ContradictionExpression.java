@@ -0,0 +1,59 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.byktol.jcr.qb.criteria.expressions;
+
+import com.byktol.jcr.qb.criteria.Criterion;
+import com.byktol.jcr.qb.criteria.CriterionVisitor;
+
+/**
+ * A restriction no node satisfies, which the optimizer yields for
+ * contradictory restrictions such as <code>@a &gt; 5 and @a &lt; 3</code>.
+ * It's rendered as the lack of jcr:primaryType, a property every node has,
+ * although the query is usually not executed at all.
+ *
+ * @since 1.0
+ * @author Victor Alvarez
+ */
+public final class ContradictionExpression
+  implements Criterion
+{
+
+  /** The only instance, it's stateless. */
+  public static final ContradictionExpression INSTANCE =
+    new ContradictionExpression();
+
+  /** The property every node has. */
+  public static final String PROPERTY = "jcr:primaryType";
+
+  /** Use {@link #INSTANCE}. */
+  private ContradictionExpression()
+  {
+    // nothing here
+  }
+
+  @Override
+  public <R, P, X extends Exception> R accept(
+    final CriterionVisitor<R, P, X> visitor,
+    final P arg)
+    throws X
+  {
+    return visitor.visitContradiction(this, arg);
+  }
+
+  @Override
+  public String toString()
+  {
+    return "false";
+  }
+}
@@ -14,6 +14,8 @@
 package com.byktol.jcr.qb.criteria.expressions;
 
 import com.byktol.jcr.qb.criteria.Criterion;
+import com.byktol.jcr.qb.criteria.CriterionVisitor;
+import com.byktol.jcr.qb.criteria.PropertyName;
 import com.google.common.base.Strings;
 
 /**
@@ -29,6 +31,9 @@ public class ExistExpression
   /** The property whose existence is being verified. */
   private final String propertyName;
 
+  /** The same name, resolved for every query language. */
+  private final PropertyName property;
+
   /**
    * Constructor.
    *
@@ -43,6 +48,7 @@ public class ExistExpression
     }
 
     this.propertyName = propertyName;
+    this.property = PropertyName.of(propertyName);
   }
 
   /**
@@ -52,4 +58,49 @@ public class ExistExpression
   {
     return propertyName;
   }
+
+  /**
+   * @return the property being verified, resolved for every query language
+   */
+  public final PropertyName getProperty()
+  {
+    return property;
+  }
+
+  @Override
+  public <R, P, X extends Exception> R accept(
+    final CriterionVisitor<R, P, X> visitor,
+    final P arg)
+    throws X
+  {
+    return visitor.visitExist(this, arg);
+  }
+
+  @Override
+  public boolean equals(final Object obj)
+  {
+    if (this == obj)
+    {
+      return true;
+    }
+
+    if (null == obj || getClass() != obj.getClass())
+    {
+      return false;
+    }
+
+    return propertyName.equals(((ExistExpression) obj).propertyName);
+  }
+
+  @Override
+  public int hashCode()
+  {
+    return propertyName.hashCode();
+  }
+
+  @Override
+  public String toString()
+  {
+    return "@" + propertyName;
+  }
 }
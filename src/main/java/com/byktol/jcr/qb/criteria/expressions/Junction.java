@@ -13,10 +13,14 @@
  */
 package com.byktol.jcr.qb.criteria.expressions;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import com.byktol.jcr.qb.criteria.Criterion;
+import com.byktol.jcr.qb.criteria.CriterionVisitor;
 import com.byktol.jcr.qb.criteria.operators.LogicalOperator;
+import com.google.common.base.Joiner;
 
 /**
  * Groups several {@link Criterion} into a single predicate.
@@ -32,7 +36,7 @@ public class Junction
   private LogicalOperator operator;
 
   /** The list of statements/predicates being concatenated. */
-  private List<Criterion> criterionList;
+  private final List<Criterion> criterionList;
 
   /**
    * Constructor.
@@ -41,8 +45,43 @@ public class Junction
    *          The operator for the logical operation.
    */
   public Junction(final LogicalOperator op)
+  {
+    this(op, new ArrayList<Criterion>());
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param op
+   *          The operator for the logical operation.
+   * @param criterionList
+   *          The list of statements/predicates, used as it is.
+   */
+  private Junction(
+    final LogicalOperator op,
+    final List<Criterion> criterionList)
   {
     this.operator = op;
+    this.criterionList = criterionList;
+  }
+
+  /**
+   * Creates a junction that cannot be added to: both {@link #add(Criterion)}
+   * and the modifiers of its list throw an
+   * {@link UnsupportedOperationException}.
+   *
+   * @param op
+   *          The operator for the logical operation.
+   * @param criterion
+   *          The statements/predicates being concatenated, which are copied.
+   * @return The unmodifiable junction.
+   */
+  public static Junction unmodifiable(
+    final LogicalOperator op,
+    final List<Criterion> criterion)
+  {
+    return new Junction(op,
+      Collections.unmodifiableList(new ArrayList<Criterion>(criterion)));
   }
 
   /**
@@ -75,4 +114,52 @@ public class Junction
     return operator;
   }
 
+  @Override
+  public <R, P, X extends Exception> R accept(
+    final CriterionVisitor<R, P, X> visitor,
+    final P arg)
+    throws X
+  {
+    return visitor.visitJunction(this, arg);
+  }
+
+  /**
+   * Like any {@link List}, a junction is equal to another while they have the
+   * same operator and restrictions, which may change as they're added to.
+   * Don't use it as a key while it's still being added to.
+   *
+   * @param obj
+   *          The other junction
+   * @return Whether both have the same operator and restrictions
+   */
+  @Override
+  public boolean equals(final Object obj)
+  {
+    if (this == obj)
+    {
+      return true;
+    }
+
+    if (null == obj || getClass() != obj.getClass())
+    {
+      return false;
+    }
+
+    final Junction other = (Junction) obj;
+
+    return operator == other.operator
+      && criterionList.equals(other.criterionList);
+  }
+
+  @Override
+  public int hashCode()
+  {
+    return 31 * operator.hashCode() + criterionList.hashCode();
+  }
+
+  @Override
+  public String toString()
+  {
+    return "(" + Joiner.on(" " + operator + " ").join(criterionList) + ")";
+  }
 }
@@ -14,6 +14,7 @@
 package com.byktol.jcr.qb.criteria.expressions;
 
 import com.byktol.jcr.qb.criteria.Criterion;
+import com.byktol.jcr.qb.criteria.CriterionVisitor;
 
 
 /**
@@ -40,4 +41,18 @@ public class LikeExpression
     super(propertyName, value);
   }
 
+  @Override
+  public <R, P, X extends Exception> R accept(
+    final CriterionVisitor<R, P, X> visitor,
+    final P arg)
+    throws X
+  {
+    return visitor.visitLike(this, arg);
+  }
+
+  @Override
+  public String toString()
+  {
+    return "like(@" + getPropertyName() + ", '" + getValue() + "')";
+  }
 }
@@ -13,8 +13,14 @@
  */
 package com.byktol.jcr.qb.criteria.expressions;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
 import com.byktol.jcr.qb.criteria.Criterion;
+import com.byktol.jcr.qb.criteria.CriterionVisitor;
 import com.byktol.jcr.qb.criteria.operators.LogicalOperator;
+import com.google.common.base.Joiner;
 
 /**
  * Logically binds together different {@link Criterion} for building queries.
@@ -34,11 +40,15 @@ public class LogicalExpression
   /** The logical operator for evaluation the array of {@link Criterion}. */
   private LogicalOperator op;
 
+  /** An unmodifiable view of the array of {@link Criterion}. */
+  private List<Criterion> criterionList;
+
   /**
    * Constructor.
    *
    * @param criterion
-   *            Array of logically evaluated {@link Criterion}
+   *            Array of logically evaluated {@link Criterion}, which is
+   *            copied
    * @param op
    *            The logical operator for the evaluation
    */
@@ -57,16 +67,28 @@ public class LogicalExpression
       throw new IllegalArgumentException("op cannot be null.");
     }
 
-    this.criterion = criterion;
+    this.criterion = criterion.clone();
     this.op = op;
+    this.criterionList = Collections.unmodifiableList(
+      Arrays.asList(this.criterion));
   }
 
   /**
-   * @return The array criterion being logically evaluated.
+   * @return A copy of the array criterion being logically evaluated.
+   * @see #getCriterionList()
    */
   public final Criterion[] getCriterion()
   {
-    return criterion;
+    return criterion.clone();
+  }
+
+  /**
+   * @return The criterion being logically evaluated, which cannot be
+   *         modified.
+   */
+  public final List<Criterion> getCriterionList()
+  {
+    return criterionList;
   }
 
   /**
@@ -77,4 +99,42 @@ public class LogicalExpression
     return op;
   }
 
-}
\ No newline at end of file
+  @Override
+  public <R, P, X extends Exception> R accept(
+    final CriterionVisitor<R, P, X> visitor,
+    final P arg)
+    throws X
+  {
+    return visitor.visitLogical(this, arg);
+  }
+
+  @Override
+  public boolean equals(final Object obj)
+  {
+    if (this == obj)
+    {
+      return true;
+    }
+
+    if (null == obj || getClass() != obj.getClass())
+    {
+      return false;
+    }
+
+    final LogicalExpression other = (LogicalExpression) obj;
+
+    return op == other.op && Arrays.equals(criterion, other.criterion);
+  }
+
+  @Override
+  public int hashCode()
+  {
+    return 31 * op.hashCode() + Arrays.hashCode(criterion);
+  }
+
+  @Override
+  public String toString()
+  {
+    return "(" + Joiner.on(" " + op + " ").join(criterion) + ")";
+  }
+}
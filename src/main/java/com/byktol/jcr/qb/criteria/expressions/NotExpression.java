@@ -14,6 +14,7 @@
 package com.byktol.jcr.qb.criteria.expressions;
 
 import com.byktol.jcr.qb.criteria.Criterion;
+import com.byktol.jcr.qb.criteria.CriterionVisitor;
 
 /**
  * Negates another {@link Criterion}.
@@ -51,4 +52,41 @@ public class NotExpression
   {
     return criterion;
   }
+
+  @Override
+  public <R, P, X extends Exception> R accept(
+    final CriterionVisitor<R, P, X> visitor,
+    final P arg)
+    throws X
+  {
+    return visitor.visitNot(this, arg);
+  }
+
+  @Override
+  public boolean equals(final Object obj)
+  {
+    if (this == obj)
+    {
+      return true;
+    }
+
+    if (null == obj || getClass() != obj.getClass())
+    {
+      return false;
+    }
+
+    return criterion.equals(((NotExpression) obj).criterion);
+  }
+
+  @Override
+  public int hashCode()
+  {
+    return ~criterion.hashCode();
+  }
+
+  @Override
+  public String toString()
+  {
+    return "not(" + criterion + ")";
+  }
 }
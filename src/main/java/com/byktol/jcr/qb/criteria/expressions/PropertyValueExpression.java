@@ -14,6 +14,8 @@
 package com.byktol.jcr.qb.criteria.expressions;
 
 import com.byktol.jcr.qb.criteria.Criterion;
+import com.byktol.jcr.qb.criteria.PropertyName;
+import com.google.common.base.Objects;
 
 /**
  * @since 1.0
@@ -28,6 +30,9 @@ public abstract class PropertyValueExpression
    */
   private String propertyName;
 
+  /** The same name, resolved for every query language. */
+  private final PropertyName property;
+
   /**
    * The value for the expression.
    */
@@ -54,6 +59,7 @@ public abstract class PropertyValueExpression
     }
 
     this.propertyName = propertyName;
+    this.property = PropertyName.of(propertyName);
     this.value = value;
   }
 
@@ -72,4 +78,41 @@ public abstract class PropertyValueExpression
   {
     return propertyName;
   }
+
+  /**
+   * @return the property being evaluated, resolved for every query language
+   */
+  public final PropertyName getProperty()
+  {
+    return property;
+  }
+
+  /**
+   * @return Whether the other expression is of the same type, on the same
+   *         property and with the same value
+   */
+  @Override
+  public boolean equals(final Object obj)
+  {
+    if (this == obj)
+    {
+      return true;
+    }
+
+    if (null == obj || getClass() != obj.getClass())
+    {
+      return false;
+    }
+
+    final PropertyValueExpression other = (PropertyValueExpression) obj;
+
+    return propertyName.equals(other.propertyName)
+      && value.equals(other.value);
+  }
+
+  @Override
+  public int hashCode()
+  {
+    return Objects.hashCode(getClass(), propertyName, value);
+  }
 }
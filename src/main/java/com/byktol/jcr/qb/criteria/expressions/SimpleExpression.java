@@ -13,8 +13,15 @@
  */
 package com.byktol.jcr.qb.criteria.expressions;
 
+import java.util.Calendar;
+
+import org.apache.jackrabbit.util.ISO8601;
+
 import com.byktol.jcr.qb.criteria.Criterion;
+import com.byktol.jcr.qb.criteria.CriterionVisitor;
+import com.byktol.jcr.qb.criteria.PropertyName;
 import com.byktol.jcr.qb.criteria.operators.ComparisonOperator;
+import com.google.common.base.Objects;
 import com.google.common.base.Strings;
 
 /**
@@ -35,6 +42,9 @@ public class SimpleExpression
   /** The name of the property being evaluated. */
   private final String propertyName;
 
+  /** The same name, resolved for every query language. */
+  private final PropertyName property;
+
   /** The operator for the evaluation. */
   private final ComparisonOperator op;
 
@@ -64,6 +74,7 @@ public class SimpleExpression
     }
 
     this.propertyName = propertyName;
+    this.property = PropertyName.of(propertyName);
     this.value = value;
     this.op = op;
   }
@@ -84,6 +95,14 @@ public class SimpleExpression
     return propertyName;
   }
 
+  /**
+   * @return the property being compared, resolved for every query language
+   */
+  public final PropertyName getProperty()
+  {
+    return property;
+  }
+
   /**
    * @return the operator in used
    */
@@ -92,5 +111,55 @@ public class SimpleExpression
     return op;
   }
 
-}
+  @Override
+  public <R, P, X extends Exception> R accept(
+    final CriterionVisitor<R, P, X> visitor,
+    final P arg)
+    throws X
+  {
+    return visitor.visitSimple(this, arg);
+  }
+
+  @Override
+  public boolean equals(final Object obj)
+  {
+    if (this == obj)
+    {
+      return true;
+    }
+
+    if (null == obj || getClass() != obj.getClass())
+    {
+      return false;
+    }
+
+    final SimpleExpression other = (SimpleExpression) obj;
+
+    return op == other.op && propertyName.equals(other.propertyName)
+      && Objects.equal(value, other.value);
+  }
+
+  @Override
+  public int hashCode()
+  {
+    return Objects.hashCode(op, propertyName, value);
+  }
 
+  @Override
+  public String toString()
+  {
+    final String v;
+    if (value instanceof String)
+    {
+      v = "'" + value + "'";
+    } else if (value instanceof Calendar)
+    {
+      v = ISO8601.format((Calendar) value);
+    } else
+    {
+      v = String.valueOf(value);
+    }
+
+    return "@" + propertyName + " " + op + " " + v;
+  }
+}
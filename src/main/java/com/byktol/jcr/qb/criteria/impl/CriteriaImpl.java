@@ -13,13 +13,28 @@
  */
 package com.byktol.jcr.qb.criteria.impl;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 
 import com.byktol.jcr.qb.criteria.Criteria;
 import com.byktol.jcr.qb.criteria.Criterion;
 import com.byktol.jcr.qb.criteria.Order;
 import com.byktol.jcr.qb.criteria.Prop;
+import com.byktol.jcr.qb.criteria.Restrictions;
+import com.byktol.jcr.qb.criteria.builder.impl.AbstractBuilder;
+import com.byktol.jcr.qb.criteria.expressions.ContradictionExpression;
+import com.byktol.jcr.qb.criteria.expressions.Junction;
+import com.byktol.jcr.qb.criteria.expressions.LogicalExpression;
+import com.byktol.jcr.qb.criteria.expressions.NotExpression;
+import com.byktol.jcr.qb.criteria.optimizer.Canonicalizer;
+import com.byktol.jcr.qb.criteria.optimizer.CriterionOptimizer;
+import com.byktol.jcr.qb.criteria.optimizer.OptimizedProp;
+import com.byktol.jcr.qb.metrics.QueryListener;
+import com.byktol.jcr.qb.metrics.QueryMetrics;
+import com.google.common.base.Objects;
 import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
 
 /**
  * Abstract implementation of the {@link Criteria} interface. Defines common
@@ -30,7 +45,7 @@ import com.google.common.base.Strings;
  * @author Victor Alvarez
  */
 public abstract class CriteriaImpl
-  implements Criteria, Prop
+  implements ExecutableCriteria
 {
 
   private final List<Criterion> criterion;
@@ -38,8 +53,17 @@ public abstract class CriteriaImpl
   private String nodeName;
   private String nodeType;
   private String path;
+  private List<String> columns;
   private long limit;
   private long offset;
+  private boolean optimized;
+  private boolean canonical;
+
+  /**
+   * What was computed from the criteria the last time, kept for as long as
+   * the criteria is equal to the copy it was computed from.
+   */
+  private volatile Memo memo;
 
   /**
    * The constructor is only accessible to the child classes and is meant to set
@@ -60,6 +84,7 @@ public abstract class CriteriaImpl
     this.orders = orderList;
 
     this.path = this.nodeType = "";
+    this.columns = ImmutableList.of();
   }
 
   /**
@@ -163,6 +188,361 @@ public abstract class CriteriaImpl
     return this;
   }
 
+  @Override
+  public String buildQuery()
+  {
+    final QueryListener listener = QueryMetrics.getListener();
+    final long start = null == listener ? 0 : System.nanoTime();
+
+    final String query = createBuilder().buildQuery();
+
+    reportBuild(listener, start);
+    return query;
+  }
+
+  @Override
+  public <A extends Appendable> A buildQuery(final A query)
+    throws IOException
+  {
+    final QueryListener listener = QueryMetrics.getListener();
+    final long start = null == listener ? 0 : System.nanoTime();
+
+    createBuilder().buildQuery(query);
+
+    reportBuild(listener, start);
+    return query;
+  }
+
+  /**
+   * @return A new builder of the query for the specific language, fed with
+   *         {@link #toProp()}
+   */
+  protected abstract AbstractBuilder createBuilder();
+
+  /**
+   * @param restrictions
+   *          The list of {@link Criterion} of the new criteria
+   * @param orderList
+   *          The list of {@link Order} of the new criteria
+   * @return A new, empty criteria of the same language
+   */
+  protected abstract CriteriaImpl newInstance(
+    final List<Criterion> restrictions,
+    final List<Order> orderList);
+
+  /**
+   * Copies the restrictions and orders into immutable lists, the groups of
+   * restrictions included since they can still be added to, and wraps the
+   * copy so it cannot be modified.
+   *
+   * @return The frozen criteria, safe to share between threads
+   */
+  @Override
+  public FrozenCriteria freeze()
+  {
+    final ImmutableList.Builder<Criterion> restrictions =
+      ImmutableList.builder();
+    for (Criterion c : getCriterion())
+    {
+      restrictions.add(snapshot(c));
+    }
+
+    final CriteriaImpl copy =
+      newInstance(restrictions.build(), ImmutableList.copyOf(getOrders()));
+    copy.nodeName = nodeName;
+    copy.nodeType = nodeType;
+    copy.path = path;
+    copy.columns = columns;
+    copy.limit = limit;
+    copy.offset = offset;
+    copy.optimized = optimized;
+    copy.canonical = canonical;
+
+    return new FrozenCriteria(copy);
+  }
+
+  /**
+   * Copies the mutable parts of a restriction, i.e. its groups, into ones
+   * that cannot be modified.
+   *
+   * @param criterion
+   *          The restriction being copied
+   * @return The copy, or the same restriction if it cannot be modified
+   */
+  private static Criterion snapshot(final Criterion criterion)
+  {
+    if (criterion instanceof Junction)
+    {
+      final Junction junction = (Junction) criterion;
+      final List<Criterion> children = junction.getCriterionList();
+      final List<Criterion> copy = new ArrayList<Criterion>(children.size());
+      for (Criterion c : children)
+      {
+        copy.add(snapshot(c));
+      }
+      return Junction.unmodifiable(junction.getOperator(), copy);
+    }
+
+    if (criterion instanceof LogicalExpression)
+    {
+      final LogicalExpression le = (LogicalExpression) criterion;
+      final List<Criterion> children = le.getCriterionList();
+      final Criterion[] copy = new Criterion[children.size()];
+      for (int i = 0; i < copy.length; i++)
+      {
+        copy[i] = snapshot(children.get(i));
+      }
+      return new LogicalExpression(copy, le.getOp());
+    }
+
+    if (criterion instanceof NotExpression)
+    {
+      return new NotExpression(
+        snapshot(((NotExpression) criterion).getCriterion()));
+    }
+
+    return criterion;
+  }
+
+  /**
+   * Reports a query built to the listener, if any.
+   *
+   * @param listener
+   *          The listener of the metrics, possibly null
+   * @param start
+   *          When the build started, in nanoseconds
+   */
+  protected final void reportBuild(
+    final QueryListener listener,
+    final long start)
+  {
+    if (null != listener)
+    {
+      final long nanos = System.nanoTime() - start;
+      listener.onBuild(getShape(), nanos);
+    }
+  }
+
+  /**
+   * Returns the shape of the query, computed once for as long as the
+   * criteria doesn't change, so building or executing the same criteria
+   * again doesn't canonicalize and hash its restrictions again. Criteria
+   * whose restrictions can change unnoticed, i.e. with mutable values or
+   * restrictions unknown to this library, have it computed every time.
+   *
+   * @see #fingerprint(boolean)
+   * @return The fingerprint of the shape, in hexadecimal
+   */
+  @Override
+  public String getShape()
+  {
+    final Memo m = memo();
+    if (null == m)
+    {
+      return fingerprint(false);
+    }
+
+    String shape = m.shape;
+    if (null == shape)
+    {
+      shape = fingerprint(false);
+      m.shape = shape;
+    }
+
+    return shape;
+  }
+
+  /**
+   * Returns the restrictions optimized, which is done once for as long as
+   * the criteria doesn't change, so checking for a contradiction, building
+   * the query and computing its fingerprint share the same optimizer pass.
+   *
+   * @return The restrictions optimized, which cannot be modified
+   */
+  private List<Criterion> optimizedCriterion()
+  {
+    final Memo m = memo();
+    if (null == m)
+    {
+      return new CriterionOptimizer().optimize(getCriterion());
+    }
+
+    List<Criterion> optimizedCriterion = m.optimizedCriterion;
+    if (null == optimizedCriterion)
+    {
+      // the copy, so the result never refers to restrictions that can change
+      optimizedCriterion = ImmutableList.copyOf(
+        new CriterionOptimizer().optimize(m.criterion));
+      m.optimizedCriterion = optimizedCriterion;
+    }
+
+    return optimizedCriterion;
+  }
+
+  /**
+   * @return What was computed from the criteria as it is now, or null if its
+   *         restrictions can change unnoticed
+   */
+  private Memo memo()
+  {
+    final Memo m = memo;
+    if (null != m && m.matches(this))
+    {
+      return m;
+    }
+
+    final List<Criterion> current = getCriterion();
+    final ImmutableList.Builder<Criterion> copy = ImmutableList.builder();
+    for (Criterion c : current)
+    {
+      if (!isComparable(c))
+      {
+        return null;
+      }
+      copy.add(snapshot(c));
+    }
+
+    final Memo fresh = new Memo(this, copy.build());
+    memo = fresh;
+
+    return fresh;
+  }
+
+  /**
+   * @see Restrictions#isImmutable(Criterion)
+   * @param criterion
+   *          A restriction
+   * @return Whether a copy of it is equal to it for as long as it doesn't
+   *         change, i.e. whether it has no mutable values and is known to
+   *         this library, its groups included
+   */
+  private static boolean isComparable(final Criterion criterion)
+  {
+    if (criterion instanceof Junction || criterion instanceof LogicalExpression)
+    {
+      final List<Criterion> children = criterion instanceof Junction
+        ? ((Junction) criterion).getCriterionList()
+        : ((LogicalExpression) criterion).getCriterionList();
+      for (Criterion c : children)
+      {
+        if (!isComparable(c))
+        {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    if (criterion instanceof NotExpression)
+    {
+      return isComparable(((NotExpression) criterion).getCriterion());
+    }
+
+    return Restrictions.isImmutable(criterion);
+  }
+
+  @Override
+  public Criteria setOptimized(final boolean optimized)
+  {
+    this.optimized = optimized;
+
+    return this;
+  }
+
+  /**
+   * @return Whether the restrictions are optimized before building the query
+   */
+  public boolean isOptimized()
+  {
+    return optimized;
+  }
+
+  /**
+   * @return Nothing, unless the criteria builds JCR-SQL2
+   */
+  @Override
+  public Sql2Statement buildStatement()
+  {
+    return null;
+  }
+
+  /**
+   * @return Whether the criteria is optimized and its restrictions contradict
+   *         each other, so no node satisfies them
+   */
+  @Override
+  public boolean isContradiction()
+  {
+    if (!optimized)
+    {
+      return false;
+    }
+
+    final List<Criterion> optimizedCriterion = optimizedCriterion();
+
+    return 1 == optimizedCriterion.size()
+      && optimizedCriterion.get(0) instanceof ContradictionExpression;
+  }
+
+  /**
+   * @return The properties handed to the builders, with the restrictions
+   *         optimized when requested
+   */
+  protected Prop toProp()
+  {
+    if (!optimized && !canonical)
+    {
+      return this;
+    }
+
+    List<Criterion> c = optimized ? optimizedCriterion() : getCriterion();
+    if (canonical)
+    {
+      c = new Canonicalizer().canonicalize(c);
+    }
+
+    return new OptimizedProp(this, c);
+  }
+
+  @Override
+  public Criteria setCanonical(final boolean canonical)
+  {
+    this.canonical = canonical;
+
+    return this;
+  }
+
+  /**
+   * @return Whether the restrictions are canonicalized before building the
+   *         query
+   */
+  public boolean isCanonical()
+  {
+    return canonical;
+  }
+
+  /**
+   * Computes the fingerprint of the query, which is the same for logically
+   * equal queries of the same language regardless of the order their
+   * restrictions were added in.
+   *
+   * @see Canonicalizer#fingerprint(String, Prop, boolean)
+   * @param literals
+   *          Whether the literal values are part of it, otherwise only the
+   *          shape of the query is, e.g. for grouping metrics
+   * @return The fingerprint, in hexadecimal
+   */
+  @Override
+  public String fingerprint(final boolean literals)
+  {
+    final Prop prop = optimized
+      ? new OptimizedProp(this, optimizedCriterion())
+      : this;
+
+    return new Canonicalizer().fingerprint(getClass().getName(), prop,
+      literals);
+  }
+
   @Override
   public List<Criterion> getCriterion()
   {
@@ -215,4 +595,133 @@ public abstract class CriteriaImpl
     this.nodeName = Strings.nullToEmpty(nodeName);
     return this;
   }
+
+  /**
+   * @return The names of the columns selected, which cannot be modified, or
+   *         an empty list to select every column
+   */
+  @Override
+  public List<String> getColumns()
+  {
+    return columns;
+  }
+
+  /**
+   * @param columns
+   *          The names of the columns selected, none to select every column
+   * @return The current {@link Criteria} to enable chaining
+   */
+  @Override
+  public Criteria setColumns(final String... columns)
+  {
+    if (null == columns)
+    {
+      throw new IllegalArgumentException("columns cannot be null");
+    }
+
+    for (String c : columns)
+    {
+      if (Strings.isNullOrEmpty(c))
+      {
+        throw new IllegalArgumentException("a column cannot be empty");
+      }
+    }
+
+    this.columns = ImmutableList.copyOf(columns);
+    return this;
+  }
+
+  /**
+   * What was computed from a criteria, along with a copy of the criteria:
+   * its restrictions, compared by value, and its orders and columns,
+   * compared by identity since they cannot be modified.
+   */
+  private static final class Memo
+  {
+
+    /** A copy of the restrictions, which cannot be modified. */
+    private final List<Criterion> criterion;
+
+    /** The orders. */
+    private final List<Order> orders;
+
+    /** The path. */
+    private final String path;
+
+    /** The node type. */
+    private final String nodeType;
+
+    /** The node name. */
+    private final String nodeName;
+
+    /** The columns, which cannot be modified. */
+    private final List<String> columns;
+
+    /** Whether the restrictions are optimized. */
+    private final boolean optimized;
+
+    /** The restrictions optimized, null until asked for. */
+    private volatile List<Criterion> optimizedCriterion;
+
+    /** The shape, null until asked for. */
+    private volatile String shape;
+
+    /**
+     * Constructor.
+     *
+     * @param criteria
+     *          The criteria
+     * @param criterion
+     *          A copy of its restrictions, which cannot be modified
+     */
+    Memo(final CriteriaImpl criteria, final List<Criterion> criterion)
+    {
+      this.criterion = criterion;
+      this.orders = ImmutableList.copyOf(criteria.getOrders());
+      this.path = criteria.path;
+      this.nodeType = criteria.nodeType;
+      this.nodeName = criteria.nodeName;
+      this.columns = criteria.columns;
+      this.optimized = criteria.optimized;
+    }
+
+    /**
+     * @param criteria
+     *          The criteria
+     * @return Whether the criteria is still equal to the copy
+     */
+    boolean matches(final CriteriaImpl criteria)
+    {
+      return optimized == criteria.optimized
+        && Objects.equal(path, criteria.path)
+        && Objects.equal(nodeType, criteria.nodeType)
+        && Objects.equal(nodeName, criteria.nodeName)
+        && columns == criteria.columns
+        && sameOrders(criteria.getOrders())
+        && criterion.equals(criteria.getCriterion());
+    }
+
+    /**
+     * @param other
+     *          The orders of the criteria
+     * @return Whether they're the same orders, in the same order
+     */
+    private boolean sameOrders(final List<Order> other)
+    {
+      if (orders.size() != other.size())
+      {
+        return false;
+      }
+
+      for (int i = 0; i < orders.size(); i++)
+      {
+        if (orders.get(i) != other.get(i))
+        {
+          return false;
+        }
+      }
+
+      return true;
+    }
+  }
 }
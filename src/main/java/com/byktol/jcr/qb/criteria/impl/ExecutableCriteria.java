@@ -0,0 +1,59 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.byktol.jcr.qb.criteria.impl;
+
+import com.byktol.jcr.qb.criteria.Criteria;
+import com.byktol.jcr.qb.criteria.Prop;
+
+/**
+ * What the {@link com.byktol.jcr.qb.QueryBuilder} asks a criteria of this
+ * library before executing it, shared by {@link CriteriaImpl} and
+ * {@link FrozenCriteria} so neither has to be told apart from the other.
+ *
+ * @since 1.0
+ * @author Victor Alvarez
+ */
+public interface ExecutableCriteria
+  extends Criteria, Prop
+{
+
+  /**
+   * @see Sql2Criteria#buildStatement()
+   * @return The statement and its bind variables, or null if the criteria
+   *         doesn't build JCR-SQL2
+   */
+  Sql2Statement buildStatement();
+
+  /**
+   * @return Whether the criteria is optimized and its restrictions contradict
+   *         each other, so no node satisfies them
+   */
+  boolean isContradiction();
+
+  /**
+   * @see CriteriaImpl#fingerprint(boolean)
+   * @param literals
+   *          Whether the literal values are part of it, otherwise only the
+   *          shape of the query is
+   * @return The fingerprint, in hexadecimal
+   */
+  String fingerprint(boolean literals);
+
+  /**
+   * @see CriteriaImpl#getShape()
+   * @return The fingerprint of the shape of the query, in hexadecimal
+   */
+  String getShape();
+
+}
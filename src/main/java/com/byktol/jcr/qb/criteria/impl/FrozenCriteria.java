@@ -0,0 +1,330 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.byktol.jcr.qb.criteria.impl;
+
+import java.io.IOException;
+import java.util.List;
+
+import com.byktol.jcr.qb.criteria.Criteria;
+import com.byktol.jcr.qb.criteria.Criterion;
+import com.byktol.jcr.qb.criteria.Order;
+import com.byktol.jcr.qb.criteria.QueryTemplate;
+
+/**
+ * An immutable snapshot of a {@link CriteriaImpl}, meant to be built once and
+ * shared between threads, e.g. held in a static field. Its restrictions and
+ * orders are copied into array-backed immutable lists, and its query is
+ * rendered on the first {@link #buildQuery()} and reused afterwards. Every
+ * mutator throws an {@link UnsupportedOperationException}.
+ * <p>
+ * The snapshot is only reachable through a final field, so it's safely
+ * published however the frozen criteria itself is handed to other threads.
+ *
+ * @see Criteria#freeze()
+ * @since 1.0
+ * @author Victor Alvarez
+ */
+public final class FrozenCriteria
+  implements ExecutableCriteria
+{
+
+  /** The snapshot, never handed out since it's mutable. */
+  private final CriteriaImpl criteria;
+
+  /** The rendered query, null until first built. */
+  private volatile String query;
+
+  /** The JCR-SQL2 statement, null until first built. */
+  private volatile Sql2Statement statement;
+
+  /** The fingerprint of the shape of the query, null until computed. */
+  private volatile String shape;
+
+  /** The fingerprint with the literal values, null until computed. */
+  private volatile String fingerprint;
+
+  /** Whether the restrictions contradict each other, null until checked. */
+  private volatile Boolean contradiction;
+
+  /**
+   * Constructor.
+   *
+   * @param criteria
+   *          The snapshot, which nothing else may modify
+   */
+  FrozenCriteria(final CriteriaImpl criteria)
+  {
+    this.criteria = criteria;
+  }
+
+  @Override
+  public Criteria add(final Criterion criterion)
+  {
+    throw frozen();
+  }
+
+  @Override
+  public Criteria addOrder(final Order order)
+  {
+    throw frozen();
+  }
+
+  @Override
+  public Criteria setPath(final String path)
+  {
+    throw frozen();
+  }
+
+  @Override
+  public Criteria setNodeName(final String nodeName)
+  {
+    throw frozen();
+  }
+
+  @Override
+  public Criteria setNodeType(final String nodeType)
+  {
+    throw frozen();
+  }
+
+  @Override
+  public Criteria setColumns(final String... columns)
+  {
+    throw frozen();
+  }
+
+  @Override
+  public Criteria setOptimized(final boolean optimized)
+  {
+    throw frozen();
+  }
+
+  @Override
+  public Criteria setCanonical(final boolean canonical)
+  {
+    throw frozen();
+  }
+
+  @Override
+  public Criteria setLimit(final long limit)
+  {
+    throw frozen();
+  }
+
+  @Override
+  public Criteria setOffset(final long offset)
+  {
+    throw frozen();
+  }
+
+  /**
+   * @return The exception thrown by every mutator
+   */
+  private static UnsupportedOperationException frozen()
+  {
+    return new UnsupportedOperationException(
+      "a frozen criteria cannot be modified");
+  }
+
+  /**
+   * Builds the query the first time, which is then reused. Concurrent first
+   * calls may each build it, but they all build the same query.
+   *
+   * @return The query built for the specific implementation
+   */
+  @Override
+  public String buildQuery()
+  {
+    String q = query;
+
+    if (null == q)
+    {
+      q = criteria.buildQuery();
+      query = q;
+    }
+
+    return q;
+  }
+
+  @Override
+  public <A extends Appendable> A buildQuery(final A appendable)
+    throws IOException
+  {
+    appendable.append(buildQuery());
+
+    return appendable;
+  }
+
+  /**
+   * Builds the JCR-SQL2 statement the first time, which is then reused.
+   *
+   * @see Sql2Criteria#buildStatement()
+   * @return The statement and its bind variables, or null if the criteria
+   *         doesn't build JCR-SQL2
+   */
+  @Override
+  public Sql2Statement buildStatement()
+  {
+    if (!(criteria instanceof Sql2Criteria))
+    {
+      return null;
+    }
+
+    Sql2Statement s = statement;
+
+    if (null == s)
+    {
+      s = ((Sql2Criteria) criteria).buildStatement();
+      statement = s;
+    }
+
+    return s;
+  }
+
+  @Override
+  public QueryTemplate compile()
+  {
+    return criteria.compile();
+  }
+
+  /**
+   * @return This, since it's already frozen
+   */
+  @Override
+  public FrozenCriteria freeze()
+  {
+    return this;
+  }
+
+  /**
+   * @see CriteriaImpl#isContradiction()
+   * @return Whether the criteria is optimized and its restrictions contradict
+   *         each other, so no node satisfies them
+   */
+  @Override
+  public boolean isContradiction()
+  {
+    Boolean c = contradiction;
+
+    if (null == c)
+    {
+      c = Boolean.valueOf(criteria.isContradiction());
+      contradiction = c;
+    }
+
+    return c.booleanValue();
+  }
+
+  /**
+   * Computes the fingerprint the first time, which is then reused.
+   *
+   * @see CriteriaImpl#fingerprint(boolean)
+   * @param literals
+   *          Whether the literal values are part of it
+   * @return The fingerprint, in hexadecimal
+   */
+  @Override
+  public String fingerprint(final boolean literals)
+  {
+    String f = literals ? fingerprint : shape;
+
+    if (null == f)
+    {
+      f = criteria.fingerprint(literals);
+      if (literals)
+      {
+        fingerprint = f;
+      } else
+      {
+        shape = f;
+      }
+    }
+
+    return f;
+  }
+
+  /**
+   * @return The fingerprint of the shape, computed the first time
+   */
+  @Override
+  public String getShape()
+  {
+    return fingerprint(false);
+  }
+
+  @Override
+  public long getLimit()
+  {
+    return criteria.getLimit();
+  }
+
+  @Override
+  public long getOffset()
+  {
+    return criteria.getOffset();
+  }
+
+  @Override
+  public List<Criterion> getCriterion()
+  {
+    return criteria.getCriterion();
+  }
+
+  @Override
+  public List<Order> getOrders()
+  {
+    return criteria.getOrders();
+  }
+
+  @Override
+  public String getNodeName()
+  {
+    return criteria.getNodeName();
+  }
+
+  @Override
+  public String getNodeType()
+  {
+    return criteria.getNodeType();
+  }
+
+  @Override
+  public String getPath()
+  {
+    return criteria.getPath();
+  }
+
+  @Override
+  public List<String> getColumns()
+  {
+    return criteria.getColumns();
+  }
+
+  /**
+   * @return Whether the restrictions are optimized before building the query
+   */
+  public boolean isOptimized()
+  {
+    return criteria.isOptimized();
+  }
+
+  /**
+   * @return Whether the restrictions are canonicalized before building the
+   *         query
+   */
+  public boolean isCanonical()
+  {
+    return criteria.isCanonical();
+  }
+}
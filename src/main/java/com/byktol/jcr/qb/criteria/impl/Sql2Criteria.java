@@ -13,14 +13,31 @@
  */
 package com.byktol.jcr.qb.criteria.impl;
 
+import java.io.IOException;
 import java.util.List;
 
+import javax.jcr.RepositoryException;
+import javax.jcr.ValueFactory;
+import javax.jcr.query.qom.QueryObjectModel;
+import javax.jcr.query.qom.QueryObjectModelFactory;
+
 import com.byktol.jcr.qb.criteria.Criteria;
 import com.byktol.jcr.qb.criteria.Criterion;
 import com.byktol.jcr.qb.criteria.Order;
+import com.byktol.jcr.qb.criteria.QueryTemplate;
+import com.byktol.jcr.qb.criteria.builder.impl.JqomBuilder;
+import com.byktol.jcr.qb.criteria.builder.impl.Sql2Builder;
+import com.byktol.jcr.qb.criteria.builder.jqom.JqomContext;
+import com.byktol.jcr.qb.criteria.builder.sql2.Sql2Context;
+import com.byktol.jcr.qb.criteria.builder.sql2.Sql2TemplateContext;
+import com.byktol.jcr.qb.criteria.builder.utils.StringUtils;
+import com.byktol.jcr.qb.metrics.QueryListener;
+import com.byktol.jcr.qb.metrics.QueryMetrics;
 
 /**
- * Use this.
+ * A {@link Criteria} that builds JCR-SQL2 queries. Literal values are not
+ * inlined but replaced with bind variables, so use {@link #buildStatement()}
+ * to get their values too. The grammar is described in
  * http://www.h2database.com/jcr/grammar.html
  *
  * @since 1.0
@@ -41,17 +58,107 @@ public class Sql2Criteria
    *            The list of {@link Order} to order the results.
    *            An empty list is preferred.
    */
-  protected Sql2Criteria(final List<Criterion> restrictions,
+  public Sql2Criteria(final List<Criterion> restrictions,
     final List<Order> orders)
   {
     super(restrictions, orders);
   }
 
   @Override
-  public String buildQuery()
+  protected Sql2Criteria newInstance(
+    final List<Criterion> restrictions,
+    final List<Order> orders)
+  {
+    return new Sql2Criteria(restrictions, orders);
+  }
+
+  /**
+   * @return The builder of the JCR-SQL2 statement, without the values of its
+   *         variables
+   */
+  @Override
+  protected Sql2Builder createBuilder()
+  {
+    return new Sql2Builder(toProp(), new Sql2Context());
+  }
+
+  /**
+   * Builds the JCR-SQL2 statement along with the values of its variables.
+   *
+   * @return The statement and its bind variables
+   */
+  @Override
+  public Sql2Statement buildStatement()
+  {
+    final QueryListener listener = QueryMetrics.getListener();
+    final long start = null == listener ? 0 : System.nanoTime();
+
+    final Sql2Context context = new Sql2Context();
+    final String statement = new Sql2Builder(toProp(), context).buildQuery();
+
+    reportBuild(listener, start);
+
+    return new Sql2Statement(statement, context.getBindVariables(),
+      context.getParamNames());
+  }
+
+  /**
+   * Builds the JCR-JQOM equivalent of the JCR-SQL2 statement, skipping the
+   * generation and parsing of the statement altogether. A
+   * {@link com.byktol.jcr.qb.criteria.Param} becomes a bind variable of its
+   * own name, and the limit and offset are applied when set.
+   *
+   * @param factory
+   *          The factory, i.e. <code>QueryManager.getQOMFactory()</code>
+   * @param valueFactory
+   *          The value factory of the session
+   * @return The query object model, ready to be executed
+   * @throws RepositoryException
+   *           If any part of the model cannot be created
+   */
+  public QueryObjectModel buildQueryObjectModel(
+    final QueryObjectModelFactory factory,
+    final ValueFactory valueFactory)
+    throws RepositoryException
+  {
+    final QueryObjectModel qom = new JqomBuilder(toProp(),
+      new JqomContext(factory, valueFactory)).buildQueryObjectModel();
+
+    if (getLimit() > 0)
+    {
+      qom.setLimit(getLimit());
+    }
+
+    if (getOffset() > 0)
+    {
+      qom.setOffset(getOffset());
+    }
+
+    return qom;
+  }
+
+  /**
+   * Compiles the JCR-SQL2 statement into a template. Unlike
+   * {@link #buildStatement()}, the literal values are inlined and every
+   * {@link com.byktol.jcr.qb.criteria.Param} is bound with a literal, so the
+   * bound statement has no bind variables and is executed as it is.
+   *
+   * @return The compiled template, safe to share between threads
+   */
+  @Override
+  public QueryTemplate compile()
   {
-    // TODO Auto-generated method stub
-    return null;
+    final Sql2TemplateContext context = new Sql2TemplateContext();
+
+    try
+    {
+      new Sql2Builder(toProp(), context).buildQuery(context.getTemplate());
+    } catch (IOException e)
+    {
+      throw StringUtils.unexpected(e);
+    }
+
+    return context.toQueryTemplate();
   }
 
 }
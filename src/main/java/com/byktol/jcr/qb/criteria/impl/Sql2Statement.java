@@ -0,0 +1,151 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.byktol.jcr.qb.criteria.impl;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import javax.jcr.RepositoryException;
+import javax.jcr.ValueFactory;
+import javax.jcr.query.Query;
+
+import com.byktol.jcr.qb.criteria.builder.utils.Sql2Utils;
+
+/**
+ * A JCR-SQL2 statement along with the values of its bind variables. Since the
+ * values aren't part of the statement, the same criteria with different
+ * values yields the same statement, which the repository can cache.
+ *
+ * @since 1.0
+ * @author Victor Alvarez
+ */
+public final class Sql2Statement
+{
+
+  /** The JCR-SQL2 statement. */
+  private final String statement;
+
+  /** The literal values by variable name. */
+  private final Map<String, Object> bindVariables;
+
+  /** The names of the variables bound to a parameter. */
+  private final Set<String> paramNames;
+
+  /**
+   * Constructor.
+   *
+   * @param statement
+   *          The JCR-SQL2 statement
+   * @param bindVariables
+   *          The literal values by variable name
+   * @param paramNames
+   *          The names of the variables bound to a parameter
+   */
+  public Sql2Statement(
+    final String statement,
+    final Map<String, Object> bindVariables,
+    final Set<String> paramNames)
+  {
+    this.statement = statement;
+    this.bindVariables = Collections.unmodifiableMap(
+      new LinkedHashMap<String, Object>(bindVariables));
+    this.paramNames = Collections.unmodifiableSet(
+      new LinkedHashSet<String>(paramNames));
+  }
+
+  /**
+   * @return The JCR-SQL2 statement
+   */
+  public String getStatement()
+  {
+    return statement;
+  }
+
+  /**
+   * @return The literal values by variable name, without the parameters
+   */
+  public Map<String, Object> getBindVariables()
+  {
+    return bindVariables;
+  }
+
+  /**
+   * @return The names of the variables bound to a parameter
+   */
+  public Set<String> getParamNames()
+  {
+    return paramNames;
+  }
+
+  /**
+   * Binds the literal values to a query created from this statement.
+   *
+   * @param query
+   *          The query created from {@link #getStatement()}
+   * @param factory
+   *          The value factory of the session executing the query
+   * @throws RepositoryException
+   *           If a value cannot be created or bound
+   */
+  public void bind(final Query query, final ValueFactory factory)
+    throws RepositoryException
+  {
+    bind(query, factory, Collections.<String, Object>emptyMap());
+  }
+
+  /**
+   * Binds the literal values and the parameters to a query created from this
+   * statement.
+   *
+   * @param query
+   *          The query created from {@link #getStatement()}
+   * @param factory
+   *          The value factory of the session executing the query
+   * @param params
+   *          The values of the parameters by name
+   * @throws RepositoryException
+   *           If a value cannot be created or bound
+   */
+  public void bind(
+    final Query query,
+    final ValueFactory factory,
+    final Map<String, ?> params)
+    throws RepositoryException
+  {
+    for (Map.Entry<String, Object> entry : bindVariables.entrySet())
+    {
+      query.bindValue(entry.getKey(),
+        Sql2Utils.toValue(factory, entry.getValue()));
+    }
+
+    for (String name : paramNames)
+    {
+      final Object value = params.get(name);
+      if (null == value)
+      {
+        throw new IllegalArgumentException("no value bound for " + name);
+      }
+      query.bindValue(name, Sql2Utils.toValue(factory, value));
+    }
+  }
+
+  @Override
+  public String toString()
+  {
+    return statement + " " + bindVariables;
+  }
+}
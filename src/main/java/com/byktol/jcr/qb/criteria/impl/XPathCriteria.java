@@ -13,13 +13,17 @@
  */
 package com.byktol.jcr.qb.criteria.impl;
 
+import java.io.IOException;
 import java.util.List;
 
 import com.byktol.jcr.qb.criteria.Criteria;
 import com.byktol.jcr.qb.criteria.Criterion;
 import com.byktol.jcr.qb.criteria.Order;
+import com.byktol.jcr.qb.criteria.QueryTemplate;
 import com.byktol.jcr.qb.criteria.builder.impl.XPathBuilder;
+import com.byktol.jcr.qb.criteria.builder.utils.StringUtils;
 import com.byktol.jcr.qb.criteria.builder.utils.XPathUtils;
+import com.byktol.jcr.qb.criteria.builder.xpath.TemplateContext;
 
 /**
  * A {@link Criteria} that builds XPath queries.
@@ -50,11 +54,33 @@ public class XPathCriteria
   }
 
   @Override
-  public String buildQuery()
+  protected XPathCriteria newInstance(
+    final List<Criterion> restrictions,
+    final List<Order> orders)
+  {
+    return new XPathCriteria(restrictions, orders);
+  }
+
+  @Override
+  protected XPathBuilder createBuilder()
   {
-    final XPathBuilder builder = new XPathBuilder(this);
+    return new XPathBuilder(toProp());
+  }
+
+  @Override
+  public QueryTemplate compile()
+  {
+    final TemplateContext context = new TemplateContext();
+
+    try
+    {
+      new XPathBuilder(toProp(), context).buildQuery(context.getTemplate());
+    } catch (IOException e)
+    {
+      throw StringUtils.unexpected(e);
+    }
 
-    return builder.buildQuery();
+    return context.toQueryTemplate();
   }
 
   /**
@@ -0,0 +1,362 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.byktol.jcr.qb.criteria.optimizer;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TimeZone;
+
+import org.apache.jackrabbit.util.ISO8601;
+
+import com.byktol.jcr.qb.criteria.Criterion;
+import com.byktol.jcr.qb.criteria.Order;
+import com.byktol.jcr.qb.criteria.Param;
+import com.byktol.jcr.qb.criteria.Prop;
+import com.byktol.jcr.qb.criteria.expressions.ContainsExpression;
+import com.byktol.jcr.qb.criteria.expressions.ContradictionExpression;
+import com.byktol.jcr.qb.criteria.expressions.ExistExpression;
+import com.byktol.jcr.qb.criteria.expressions.LikeExpression;
+import com.byktol.jcr.qb.criteria.expressions.LogicalExpression;
+import com.byktol.jcr.qb.criteria.expressions.NotExpression;
+import com.byktol.jcr.qb.criteria.expressions.PropertyValueExpression;
+import com.byktol.jcr.qb.criteria.expressions.SimpleExpression;
+import com.byktol.jcr.qb.criteria.operators.LogicalOperator;
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
+
+/**
+ * Brings a tree of {@link Criterion} into a canonical form, so logically
+ * equal restrictions render the same query no matter the order they were
+ * added in:
+ * <ul>
+ * <li>The children of every group, and the restrictions of the query, are
+ * sorted by their shape first and their values then.</li>
+ * <li>Nested groups of the same operator are flattened and groups of a
+ * single child are replaced with that child.</li>
+ * <li>Integers become longs, floats become doubles and dates are moved to
+ * UTC, so the same value is always encoded the same way.</li>
+ * </ul>
+ * It also computes fingerprints of a query, with and without its literal
+ * values; the latter identifies the shape of a query, e.g. for grouping
+ * metrics. The given criteria are never modified, new ones are created
+ * instead.
+ *
+ * @since 1.0
+ * @author Victor Alvarez
+ */
+public class Canonicalizer
+{
+
+  /** The time zone dates are moved to. */
+  private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+  /** Sorts the children by shape first and values then. */
+  private static final Comparator<Keyed> ORDER = new Comparator<Keyed>()
+  {
+    @Override
+    public int compare(final Keyed a, final Keyed b)
+    {
+      final int c = a.shape.compareTo(b.shape);
+      return 0 != c ? c : a.full.compareTo(b.full);
+    }
+  };
+
+  /**
+   * Canonicalizes the restrictions of a query, which are implicitly joined
+   * with the {@link LogicalOperator#AND} operator.
+   *
+   * @param criterion
+   *          The restrictions of the query
+   * @return The canonical restrictions
+   */
+  public List<Criterion> canonicalize(final List<Criterion> criterion)
+  {
+    final List<Keyed> keyed = group(LogicalOperator.AND, criterion);
+    final List<Criterion> result = new ArrayList<Criterion>(keyed.size());
+
+    for (Keyed k : keyed)
+    {
+      result.add(k.criterion);
+    }
+
+    return result;
+  }
+
+  /**
+   * Computes the fingerprint of a query, which is the same for logically
+   * equal queries of the same language.
+   *
+   * @param language
+   *          The language of the query, e.g. the class of its criteria
+   * @param prop
+   *          The properties of the query
+   * @param literals
+   *          Whether the literal values are part of it, otherwise only the
+   *          shape of the query is
+   * @return The fingerprint, in hexadecimal
+   */
+  public String fingerprint(
+    final String language,
+    final Prop prop,
+    final boolean literals)
+  {
+    final StringBuilder sb = new StringBuilder(128);
+    sb.append(language).append('|').append(prop.getPath())
+      .append('|').append(prop.getNodeType()).append('|')
+      .append(prop.getNodeName()).append('|').append(prop.getColumns())
+      .append('|');
+
+    for (Keyed k : group(LogicalOperator.AND, prop.getCriterion()))
+    {
+      sb.append(literals ? k.full : k.shape).append(',');
+    }
+
+    sb.append('|');
+    for (Order o : prop.getOrders())
+    {
+      sb.append(o.getPropertyName()).append(' ').append(o.getDirection())
+        .append(',');
+    }
+
+    return Hashing.murmur3_128().hashString(sb, Charsets.UTF_8).toString();
+  }
+
+  /**
+   * Canonicalizes a single criterion.
+   *
+   * @param criterion
+   *          The criterion being canonicalized
+   * @return The canonical criterion and its keys
+   */
+  private Keyed canonicalize(final Criterion criterion)
+  {
+    if (CriterionEquivalence.isGroup(criterion))
+    {
+      final LogicalOperator operator =
+        (LogicalOperator) CriterionEquivalence.getOperator(criterion);
+      final List<Keyed> children =
+        group(operator, CriterionEquivalence.getChildren(criterion));
+
+      if (1 == children.size())
+      {
+        return children.get(0);
+      }
+
+      final Criterion[] array = new Criterion[children.size()];
+      final StringBuilder shape = new StringBuilder().append(operator)
+        .append('(');
+      final StringBuilder full = new StringBuilder(shape);
+      for (int i = 0; i < array.length; i++)
+      {
+        final Keyed k = children.get(i);
+        array[i] = k.criterion;
+        shape.append(k.shape).append(',');
+        full.append(k.full).append(',');
+      }
+
+      final Keyed keyed = new Keyed(
+        0 == array.length ? criterion : new LogicalExpression(array, operator),
+        shape.append(')').toString(), full.append(')').toString());
+      keyed.children = children;
+
+      return keyed;
+    } else if (criterion instanceof NotExpression)
+    {
+      final NotExpression not = (NotExpression) criterion;
+      final Keyed inner = canonicalize(not.getCriterion());
+
+      return new Keyed(
+        inner.criterion == not.getCriterion()
+          ? not : new NotExpression(inner.criterion),
+        "not(" + inner.shape + ")", "not(" + inner.full + ")");
+    } else if (criterion instanceof SimpleExpression)
+    {
+      final SimpleExpression s = (SimpleExpression) criterion;
+      final Object value = normalize(s.getValue());
+      final String shape = "@" + s.getPropertyName() + " " + s.getOp();
+
+      return new Keyed(
+        value == s.getValue() ? s
+          : new SimpleExpression(s.getPropertyName(), value, s.getOp()),
+        shape + (value instanceof Param ? " " + value : " ?"),
+        shape + " " + literal(value));
+    } else if (criterion instanceof PropertyValueExpression)
+    {
+      final PropertyValueExpression p = (PropertyValueExpression) criterion;
+      final String function = criterion instanceof ContainsExpression
+        ? "contains" : criterion instanceof LikeExpression
+          ? "like" : criterion.getClass().getName();
+      final String shape = function + "(@" + p.getPropertyName();
+
+      return new Keyed(criterion, shape + ", ?)",
+        shape + ", " + literal(p.getValue()) + ")");
+    } else if (criterion instanceof ExistExpression)
+    {
+      final String shape =
+        "@" + ((ExistExpression) criterion).getPropertyName();
+
+      return new Keyed(criterion, shape, shape);
+    } else if (criterion instanceof ContradictionExpression)
+    {
+      return new Keyed(criterion, "false", "false");
+    }
+
+    // unknown criteria are sorted last, by class and then by hash code when
+    // it stands for their value rather than their identity
+    final String shape = "~" + criterion.getClass().getName();
+    return new Keyed(criterion, shape, hasValueEquality(criterion.getClass())
+      ? shape + "#" + Integer.toHexString(criterion.hashCode()) : shape);
+  }
+
+  /**
+   * @param type
+   *          The class of a criterion
+   * @return Whether it overrides both {@link Object#equals(Object)} and
+   *         {@link Object#hashCode()}
+   */
+  private static boolean hasValueEquality(final Class<?> type)
+  {
+    try
+    {
+      return Object.class != type.getMethod("equals", Object.class)
+        .getDeclaringClass()
+        && Object.class != type.getMethod("hashCode").getDeclaringClass();
+    } catch (NoSuchMethodException e)
+    {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Canonicalizes the children of a group: inlines those groups of the same
+   * operator and sorts them.
+   *
+   * @param operator
+   *          The operator of the group
+   * @param children
+   *          The children of the group
+   * @return The canonical children, sorted
+   */
+  private List<Keyed> group(
+    final LogicalOperator operator,
+    final Iterable<Criterion> children)
+  {
+    final List<Keyed> result = new ArrayList<Keyed>();
+
+    for (Criterion child : children)
+    {
+      final Keyed k = canonicalize(child);
+
+      if (null != k.children
+        && operator == CriterionEquivalence.getOperator(k.criterion))
+      {
+        result.addAll(k.children);
+      } else
+      {
+        result.add(k);
+      }
+    }
+
+    Collections.sort(result, ORDER);
+
+    return result;
+  }
+
+  /**
+   * @param value
+   *          The value of a comparison
+   * @return The same value, encoded the canonical way
+   */
+  private static Object normalize(final Object value)
+  {
+    if (value instanceof Integer || value instanceof Short
+      || value instanceof Byte)
+    {
+      return ((Number) value).longValue();
+    } else if (value instanceof Float)
+    {
+      return Double.valueOf(value.toString());
+    } else if (value instanceof Calendar
+      && !UTC.hasSameRules(((Calendar) value).getTimeZone()))
+    {
+      final Calendar utc = Calendar.getInstance(UTC);
+      utc.setTimeInMillis(((Calendar) value).getTimeInMillis());
+      return utc;
+    }
+
+    return value;
+  }
+
+  /**
+   * @param value
+   *          A normalized value
+   * @return Its unambiguous representation, tagged with its type
+   */
+  private static String literal(final Object value)
+  {
+    if (value instanceof Calendar)
+    {
+      return "date:" + ISO8601.format((Calendar) value);
+    } else if (value instanceof String)
+    {
+      final String s = (String) value;
+      return "string" + s.length() + ":" + s;
+    }
+
+    return null == value ? "null"
+      : value.getClass().getSimpleName() + ":" + value;
+  }
+
+  /**
+   * A canonical criterion along with its sort keys.
+   *
+   * @since 1.0
+   * @author Victor Alvarez
+   */
+  private static final class Keyed
+  {
+
+    /** The canonical criterion. */
+    private final Criterion criterion;
+
+    /** Its shape, without literal values. */
+    private final String shape;
+
+    /** Its shape along with its literal values. */
+    private final String full;
+
+    /** The children of a group, already canonical, null otherwise. */
+    private List<Keyed> children;
+
+    /**
+     * Constructor.
+     *
+     * @param criterion
+     *          The canonical criterion
+     * @param shape
+     *          Its shape, without literal values
+     * @param full
+     *          Its shape along with its literal values
+     */
+    Keyed(final Criterion criterion, final String shape, final String full)
+    {
+      this.criterion = criterion;
+      this.shape = shape;
+      this.full = full;
+    }
+  }
+}
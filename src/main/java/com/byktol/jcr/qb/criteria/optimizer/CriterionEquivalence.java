@@ -0,0 +1,114 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.byktol.jcr.qb.criteria.optimizer;
+
+import java.util.List;
+
+import com.byktol.jcr.qb.criteria.Criterion;
+import com.byktol.jcr.qb.criteria.expressions.Junction;
+import com.byktol.jcr.qb.criteria.expressions.LogicalExpression;
+import com.byktol.jcr.qb.criteria.expressions.NotExpression;
+import com.google.common.base.Equivalence;
+import com.google.common.base.Objects;
+
+/**
+ * Compares two {@link Criterion} by their structure, i.e. two restrictions
+ * are equivalent when they render the same predicate. On top of
+ * {@link Object#equals(Object)}, a {@link Junction} and a
+ * {@link LogicalExpression} with the same operator and equivalent children
+ * are equivalent too.
+ *
+ * @since 1.0
+ * @author Victor Alvarez
+ */
+final class CriterionEquivalence
+  extends Equivalence<Criterion>
+{
+
+  /** The only instance, it's stateless. */
+  static final CriterionEquivalence INSTANCE = new CriterionEquivalence();
+
+  /** Use {@link #INSTANCE}. */
+  private CriterionEquivalence()
+  {
+    // nothing here
+  }
+
+  @Override
+  protected boolean doEquivalent(final Criterion a, final Criterion b)
+  {
+    if (isGroup(a) && isGroup(b))
+    {
+      return getOperator(a) == getOperator(b)
+        && pairwise().equivalent(getChildren(a), getChildren(b));
+    }
+
+    if (a instanceof NotExpression && b instanceof NotExpression)
+    {
+      return equivalent(((NotExpression) a).getCriterion(),
+        ((NotExpression) b).getCriterion());
+    }
+
+    return a.equals(b);
+  }
+
+  @Override
+  protected int doHash(final Criterion c)
+  {
+    if (isGroup(c))
+    {
+      return Objects.hashCode(getOperator(c),
+        pairwise().hash(getChildren(c)));
+    } else if (c instanceof NotExpression)
+    {
+      return ~hash(((NotExpression) c).getCriterion());
+    }
+
+    return c.hashCode();
+  }
+
+  /**
+   * @param c
+   *          Any criterion
+   * @return Whether it's a {@link Junction} or a {@link LogicalExpression}
+   */
+  static boolean isGroup(final Criterion c)
+  {
+    return c instanceof LogicalExpression || c instanceof Junction;
+  }
+
+  /**
+   * @param group
+   *          A {@link Junction} or a {@link LogicalExpression}
+   * @return Its operator
+   */
+  static Object getOperator(final Criterion group)
+  {
+    return group instanceof Junction
+      ? ((Junction) group).getOperator()
+      : ((LogicalExpression) group).getOp();
+  }
+
+  /**
+   * @param group
+   *          A {@link Junction} or a {@link LogicalExpression}
+   * @return Its children
+   */
+  static List<Criterion> getChildren(final Criterion group)
+  {
+    return group instanceof Junction
+      ? ((Junction) group).getCriterionList()
+      : ((LogicalExpression) group).getCriterionList();
+  }
+}
@@ -0,0 +1,251 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.byktol.jcr.qb.criteria.optimizer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.byktol.jcr.qb.criteria.Criterion;
+import com.byktol.jcr.qb.criteria.expressions.ContradictionExpression;
+import com.byktol.jcr.qb.criteria.expressions.Junction;
+import com.byktol.jcr.qb.criteria.expressions.LogicalExpression;
+import com.byktol.jcr.qb.criteria.expressions.NotExpression;
+import com.byktol.jcr.qb.criteria.operators.LogicalOperator;
+import com.google.common.base.Equivalence;
+
+/**
+ * Normalizes a tree of {@link Criterion} into a smaller and flatter one, which
+ * renders faster and is easier for the query engine to match against its
+ * indexes. The following rules are applied bottom up:
+ * <ul>
+ * <li>Nested {@link LogicalExpression}s and {@link Junction}s with the same
+ * operator are flattened, e.g. <code>(a and (b and c))</code> becomes
+ * <code>(a and b and c)</code>.</li>
+ * <li>Identical children of the same group are removed, keeping the first.</li>
+ * <li>Empty groups are dropped and groups of a single child are replaced with
+ * that child.</li>
+ * <li>Double negations are removed. A negated equality is left as it is,
+ * since <code>not(@a = x)</code> also matches the nodes without the property,
+ * or with a multi-valued one holding x among others, whereas
+ * <code>@a != x</code> doesn't.</li>
+ * <li>The comparisons on the same property are merged into the tightest
+ * range of a conjunction, or the loosest one of a disjunction, see
+ * {@link RangeMerger}.</li>
+ * <li>Subsumed terms are absorbed, e.g. <code>a and (a or b)</code> becomes
+ * <code>a</code> and <code>a or (a and b)</code> becomes <code>a</code>
+ * too.</li>
+ * <li>Contradictions, e.g. <code>@a = 1 and @a = 2</code>, become a
+ * {@link ContradictionExpression}, which spreads up through conjunctions
+ * and is dropped from disjunctions. A query whose restrictions contradict
+ * each other isn't executed at all.</li>
+ * </ul>
+ * Contradictions are detected assuming the properties are single-valued,
+ * since a multi-valued property may well hold both 1 and 2, and so are the
+ * merged ranges. Hence, the optimized query may return fewer nodes than the
+ * verbatim one when multi-valued properties are restricted. The given
+ * criteria are never modified, new ones are created instead.
+ *
+ * @since 1.0
+ * @author Victor Alvarez
+ */
+public class CriterionOptimizer
+{
+
+  /** The restrictions of a query nothing satisfies. */
+  private static final List<Criterion> CONTRADICTION =
+    Collections.<Criterion>singletonList(ContradictionExpression.INSTANCE);
+
+  /**
+   * Optimizes the restrictions of a query, which are implicitly joined with
+   * the {@link LogicalOperator#AND} operator.
+   *
+   * @param criterion
+   *          The restrictions of the query
+   * @return The optimized restrictions, possibly fewer, or a single
+   *         {@link ContradictionExpression} if nothing satisfies them
+   */
+  public List<Criterion> optimize(final List<Criterion> criterion)
+  {
+    return simplify(LogicalOperator.AND, criterion);
+  }
+
+  /**
+   * Optimizes a single criterion.
+   *
+   * @param criterion
+   *          The criterion being optimized
+   * @return The optimized criterion, a {@link ContradictionExpression} if
+   *         nothing satisfies it, or null when it doesn't restrict anything
+   *         at all, e.g. an empty junction
+   */
+  public Criterion optimize(final Criterion criterion)
+  {
+    if (CriterionEquivalence.isGroup(criterion))
+    {
+      final LogicalOperator operator =
+        (LogicalOperator) CriterionEquivalence.getOperator(criterion);
+      final List<Criterion> children =
+        simplify(operator, CriterionEquivalence.getChildren(criterion));
+
+      if (children.isEmpty())
+      {
+        return null;
+      } else if (1 == children.size())
+      {
+        return children.get(0);
+      }
+
+      return new LogicalExpression(
+        children.toArray(new Criterion[children.size()]), operator);
+    } else if (criterion instanceof NotExpression)
+    {
+      return optimizeNot((NotExpression) criterion);
+    }
+
+    return criterion;
+  }
+
+  /**
+   * @param not
+   *          The negation being optimized
+   * @return The optimized negation, a {@link ContradictionExpression} when its
+   *         child doesn't restrict anything, or null when its child is a
+   *         contradiction
+   */
+  private Criterion optimizeNot(final NotExpression not)
+  {
+    // The double negation is removed before optimizing the child, otherwise
+    // the rewrites of the child would end up negated too
+    if (not.getCriterion() instanceof NotExpression)
+    {
+      return optimize(((NotExpression) not.getCriterion()).getCriterion());
+    }
+
+    final Criterion inner = optimize(not.getCriterion());
+
+    if (null == inner)
+    {
+      // The child restricts nothing, so its negation is satisfied by nothing
+      return ContradictionExpression.INSTANCE;
+    } else if (inner instanceof ContradictionExpression)
+    {
+      return null;
+    } else if (inner instanceof NotExpression)
+    {
+      return ((NotExpression) inner).getCriterion();
+    } else if (inner == not.getCriterion())
+    {
+      return not;
+    }
+
+    return new NotExpression(inner);
+  }
+
+  /**
+   * Optimizes the children of a group: inlines those groups of the same
+   * operator, removes the duplicates and the absorbed terms, and merges the
+   * comparisons on the same property.
+   *
+   * @param operator
+   *          The operator of the group
+   * @param children
+   *          The children of the group
+   * @return The optimized children, or a single
+   *         {@link ContradictionExpression} if nothing satisfies them
+   */
+  private List<Criterion> simplify(
+    final LogicalOperator operator,
+    final Iterable<Criterion> children)
+  {
+    final Set<Equivalence.Wrapper<Criterion>> flat =
+      new LinkedHashSet<Equivalence.Wrapper<Criterion>>();
+    boolean contradiction = false;
+
+    for (Criterion child : children)
+    {
+      final Criterion c = optimize(child);
+
+      if (null == c)
+      {
+        continue;
+      } else if (c instanceof ContradictionExpression)
+      {
+        if (LogicalOperator.AND == operator)
+        {
+          return CONTRADICTION;
+        }
+        contradiction = true;
+      } else if (CriterionEquivalence.isGroup(c)
+        && operator == CriterionEquivalence.getOperator(c))
+      {
+        for (Criterion grandchild : CriterionEquivalence.getChildren(c))
+        {
+          flat.add(CriterionEquivalence.INSTANCE.wrap(grandchild));
+        }
+      } else
+      {
+        flat.add(CriterionEquivalence.INSTANCE.wrap(c));
+      }
+    }
+
+    if (flat.isEmpty())
+    {
+      return contradiction ? CONTRADICTION : Collections.<Criterion>emptyList();
+    }
+
+    final List<Criterion> absorbed = absorb(flat);
+    final List<Criterion> merged = RangeMerger.merge(operator, absorbed);
+
+    return null == merged ? CONTRADICTION : merged;
+  }
+
+  /**
+   * Removes the children absorbed by their siblings: a group of the other
+   * operator having a sibling as one of its own children is redundant.
+   *
+   * @param flat
+   *          The children of a flattened group
+   * @return The children left
+   */
+  private List<Criterion> absorb(final Set<Equivalence.Wrapper<Criterion>> flat)
+  {
+    final List<Criterion> result = new ArrayList<Criterion>(flat.size());
+
+    for (Equivalence.Wrapper<Criterion> w : flat)
+    {
+      final Criterion c = w.get();
+      boolean absorbed = false;
+
+      // a group of the same operator would have been inlined already
+      if (CriterionEquivalence.isGroup(c))
+      {
+        for (Criterion grandchild : CriterionEquivalence.getChildren(c))
+        {
+          absorbed |= flat.contains(CriterionEquivalence.INSTANCE.wrap(
+            grandchild));
+        }
+      }
+
+      if (!absorbed)
+      {
+        result.add(c);
+      }
+    }
+
+    return result;
+  }
+}
@@ -0,0 +1,93 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.byktol.jcr.qb.criteria.optimizer;
+
+import java.util.List;
+
+import com.byktol.jcr.qb.criteria.Criterion;
+import com.byktol.jcr.qb.criteria.Order;
+import com.byktol.jcr.qb.criteria.Prop;
+
+/**
+ * A view of a {@link Prop} whose restrictions have been optimized or
+ * canonicalized, handed to the builders instead of the original one.
+ *
+ * @since 1.0
+ * @author Victor Alvarez
+ */
+public class OptimizedProp
+  implements Prop
+{
+
+  /** The properties being optimized. */
+  private final Prop prop;
+
+  /** The optimized restrictions. */
+  private final List<Criterion> criterion;
+
+  /**
+   * Constructor.
+   *
+   * @param prop
+   *          The properties of the query
+   * @param criterion
+   *          The restrictions replacing those of the query
+   */
+  public OptimizedProp(final Prop prop, final List<Criterion> criterion)
+  {
+    if (null == prop)
+    {
+      throw new IllegalArgumentException("prop cannot be null");
+    }
+
+    this.prop = prop;
+    this.criterion = criterion;
+  }
+
+  @Override
+  public List<Criterion> getCriterion()
+  {
+    return criterion;
+  }
+
+  @Override
+  public List<Order> getOrders()
+  {
+    return prop.getOrders();
+  }
+
+  @Override
+  public String getNodeName()
+  {
+    return prop.getNodeName();
+  }
+
+  @Override
+  public String getNodeType()
+  {
+    return prop.getNodeType();
+  }
+
+  @Override
+  public String getPath()
+  {
+    return prop.getPath();
+  }
+
+  @Override
+  public List<String> getColumns()
+  {
+    return prop.getColumns();
+  }
+}
@@ -0,0 +1,452 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.byktol.jcr.qb.criteria.optimizer;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.byktol.jcr.qb.criteria.Criterion;
+import com.byktol.jcr.qb.criteria.expressions.SimpleExpression;
+import com.byktol.jcr.qb.criteria.operators.ComparisonOperator;
+import com.byktol.jcr.qb.criteria.operators.LogicalOperator;
+import com.google.common.collect.Sets;
+
+/**
+ * Merges the comparisons on the same property of a group into the tightest
+ * range (for {@link LogicalOperator#AND}) or the loosest one (for
+ * {@link LogicalOperator#OR}), e.g. <code>@a &gt;= 10 and @a &gt; 5</code>
+ * becomes <code>@a &gt;= 10</code>. Only numbers, strings, dates and booleans
+ * are merged, and only with values of the same kind; anything else, such as
+ * a {@link com.byktol.jcr.qb.criteria.Param}, is left alone.
+ *
+ * @since 1.0
+ * @author Victor Alvarez
+ */
+final class RangeMerger
+{
+
+  /** The kinds of values that can be compared to each other. */
+  private enum Kind
+  {
+    /** Any finite number. */
+    NUMBER,
+    /** A string. */
+    STRING,
+    /** A calendar. */
+    DATE,
+    /** A boolean, which can only be compared for equality. */
+    BOOLEAN
+  }
+
+  /** Utility class. Private constructor. */
+  private RangeMerger()
+  {
+    // nothing here
+  }
+
+  /**
+   * Merges the comparisons of a group.
+   *
+   * @param operator
+   *          The operator of the group
+   * @param children
+   *          The children of the group
+   * @return The surviving children, in the same order, or null when the
+   *         children of a conjunction contradict each other
+   */
+  static List<Criterion> merge(
+    final LogicalOperator operator,
+    final List<Criterion> children)
+  {
+    final Map<String, Range> ranges = new LinkedHashMap<String, Range>();
+
+    for (Criterion c : children)
+    {
+      if (!(c instanceof SimpleExpression))
+      {
+        continue;
+      }
+
+      final SimpleExpression s = (SimpleExpression) c;
+      final Kind kind = kindOf(s.getValue());
+      if (null == kind)
+      {
+        continue;
+      }
+
+      Range range = ranges.get(s.getPropertyName());
+      if (null == range)
+      {
+        range = new Range(kind);
+        ranges.put(s.getPropertyName(), range);
+      }
+      range.add(s, kind);
+    }
+
+    final Set<Criterion> dropped = Sets.newIdentityHashSet();
+    for (Range range : ranges.values())
+    {
+      if (LogicalOperator.AND == operator)
+      {
+        if (!range.intersect(dropped))
+        {
+          return null;
+        }
+      } else
+      {
+        range.union(dropped);
+      }
+    }
+
+    if (dropped.isEmpty())
+    {
+      return children;
+    }
+
+    final List<Criterion> result = new ArrayList<Criterion>(children.size());
+    for (Criterion c : children)
+    {
+      if (!dropped.contains(c))
+      {
+        result.add(c);
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * @param value
+   *          The value of a comparison
+   * @return Its kind, or null when it cannot be merged
+   */
+  private static Kind kindOf(final Object value)
+  {
+    if (value instanceof Double || value instanceof Float)
+    {
+      final double d = ((Number) value).doubleValue();
+      return Double.isNaN(d) || Double.isInfinite(d) ? null : Kind.NUMBER;
+    } else if (value instanceof Long || value instanceof Integer
+      || value instanceof Short || value instanceof Byte
+      || value instanceof BigDecimal)
+    {
+      return Kind.NUMBER;
+    } else if (value instanceof String)
+    {
+      return Kind.STRING;
+    } else if (value instanceof Calendar)
+    {
+      return Kind.DATE;
+    } else if (value instanceof Boolean)
+    {
+      return Kind.BOOLEAN;
+    }
+
+    return null;
+  }
+
+  /**
+   * @param a
+   *          A comparison
+   * @param b
+   *          A comparison on a value of the same kind
+   * @return The comparison of their values
+   */
+  private static int compare(final SimpleExpression a, final SimpleExpression b)
+  {
+    final Object x = a.getValue();
+    final Object y = b.getValue();
+
+    if (x instanceof Number)
+    {
+      return new BigDecimal(x.toString()).compareTo(
+        new BigDecimal(y.toString()));
+    } else if (x instanceof String)
+    {
+      return ((String) x).compareTo((String) y);
+    } else if (x instanceof Calendar)
+    {
+      return ((Calendar) x).compareTo((Calendar) y);
+    }
+
+    return ((Boolean) x).compareTo((Boolean) y);
+  }
+
+  /**
+   * @param s
+   *          A comparison
+   * @return Whether the comparison includes its value
+   */
+  private static boolean isInclusive(final SimpleExpression s)
+  {
+    return ComparisonOperator.GREATER_THAN_OR_EQUALS == s.getOp()
+      || ComparisonOperator.LESS_THAN_OR_EQUALS == s.getOp();
+  }
+
+  /**
+   * @param s
+   *          A comparison
+   * @param lower
+   *          A lower bound
+   * @return Whether the value of the comparison satisfies the bound
+   */
+  private static boolean isAbove(
+    final SimpleExpression s,
+    final SimpleExpression lower)
+  {
+    final int c = compare(s, lower);
+    return c > 0 || (0 == c && isInclusive(lower));
+  }
+
+  /**
+   * @param s
+   *          A comparison
+   * @param upper
+   *          An upper bound
+   * @return Whether the value of the comparison satisfies the bound
+   */
+  private static boolean isBelow(
+    final SimpleExpression s,
+    final SimpleExpression upper)
+  {
+    final int c = compare(s, upper);
+    return c < 0 || (0 == c && isInclusive(upper));
+  }
+
+  /**
+   * The comparisons on a single property.
+   *
+   * @since 1.0
+   * @author Victor Alvarez
+   */
+  private static final class Range
+  {
+
+    /** The kind of the values. */
+    private final Kind kind;
+
+    /** Whether the values are of several kinds, so they aren't merged. */
+    private boolean mixed;
+
+    /** The greater than comparisons. */
+    private final List<SimpleExpression> lower =
+      new ArrayList<SimpleExpression>();
+
+    /** The less than comparisons. */
+    private final List<SimpleExpression> upper =
+      new ArrayList<SimpleExpression>();
+
+    /** The equality comparisons. */
+    private final List<SimpleExpression> eq =
+      new ArrayList<SimpleExpression>();
+
+    /** The inequality comparisons. */
+    private final List<SimpleExpression> ne =
+      new ArrayList<SimpleExpression>();
+
+    /**
+     * Constructor.
+     *
+     * @param kind
+     *          The kind of the values
+     */
+    Range(final Kind kind)
+    {
+      this.kind = kind;
+    }
+
+    /**
+     * @param s
+     *          A comparison on the property
+     * @param k
+     *          The kind of its value
+     */
+    void add(final SimpleExpression s, final Kind k)
+    {
+      mixed |= kind != k;
+
+      switch (s.getOp())
+      {
+        case EQUALS:
+          eq.add(s);
+          break;
+        case NOT_EQUALS:
+          ne.add(s);
+          break;
+        case GREATER_THAN:
+        case GREATER_THAN_OR_EQUALS:
+          mixed |= Kind.BOOLEAN == k;
+          lower.add(s);
+          break;
+        default:
+          mixed |= Kind.BOOLEAN == k;
+          upper.add(s);
+          break;
+      }
+    }
+
+    /**
+     * Keeps the tightest range of a conjunction.
+     *
+     * @param dropped
+     *          Where the redundant comparisons are added to
+     * @return False when the comparisons contradict each other
+     */
+    boolean intersect(final Set<Criterion> dropped)
+    {
+      if (mixed)
+      {
+        return true;
+      }
+
+      final SimpleExpression lo = pick(lower, 1, true, dropped);
+      final SimpleExpression hi = pick(upper, -1, true, dropped);
+
+      if (!eq.isEmpty())
+      {
+        final SimpleExpression first = eq.get(0);
+        for (SimpleExpression e : eq.subList(1, eq.size()))
+        {
+          if (0 != compare(first, e))
+          {
+            return false;
+          }
+          dropped.add(e);
+        }
+
+        if ((null != lo && !isAbove(first, lo))
+          || (null != hi && !isBelow(first, hi)))
+        {
+          return false;
+        }
+
+        for (SimpleExpression n : ne)
+        {
+          if (0 == compare(first, n))
+          {
+            return false;
+          }
+        }
+
+        dropped.addAll(ne);
+        if (null != lo)
+        {
+          dropped.add(lo);
+        }
+        if (null != hi)
+        {
+          dropped.add(hi);
+        }
+
+        return true;
+      }
+
+      if (null != lo && null != hi)
+      {
+        final int c = compare(lo, hi);
+        if (c > 0 || (0 == c && !(isInclusive(lo) && isInclusive(hi))))
+        {
+          return false;
+        }
+      }
+
+      for (SimpleExpression n : ne)
+      {
+        if ((null != lo && !isAbove(n, lo)) || (null != hi && !isBelow(n, hi)))
+        {
+          dropped.add(n);
+        }
+      }
+
+      return true;
+    }
+
+    /**
+     * Keeps the loosest range of a disjunction.
+     *
+     * @param dropped
+     *          Where the redundant comparisons are added to
+     */
+    void union(final Set<Criterion> dropped)
+    {
+      if (mixed)
+      {
+        return;
+      }
+
+      final SimpleExpression lo = pick(lower, -1, false, dropped);
+      final SimpleExpression hi = pick(upper, 1, false, dropped);
+
+      for (SimpleExpression e : eq)
+      {
+        if ((null != lo && isAbove(e, lo)) || (null != hi && isBelow(e, hi)))
+        {
+          dropped.add(e);
+        }
+      }
+    }
+
+    /**
+     * Picks a single bound, dropping the rest.
+     *
+     * @param bounds
+     *          The bounds in the same direction
+     * @param sign
+     *          1 to pick the greatest value, -1 for the least
+     * @param tightest
+     *          Whether an exclusive bound wins a tie, otherwise the inclusive
+     *          one does
+     * @param dropped
+     *          Where the rest of bounds are added to
+     * @return The bound picked, or null if there are none
+     */
+    private static SimpleExpression pick(
+      final List<SimpleExpression> bounds,
+      final int sign,
+      final boolean tightest,
+      final Set<Criterion> dropped)
+    {
+      SimpleExpression best = null;
+
+      for (SimpleExpression b : bounds)
+      {
+        if (null == best)
+        {
+          best = b;
+          continue;
+        }
+
+        final int c = sign * compare(b, best);
+        final boolean wins = tightest
+          ? isInclusive(best) && !isInclusive(b)
+          : !isInclusive(best) && isInclusive(b);
+        if (c > 0 || (0 == c && wins))
+        {
+          dropped.add(best);
+          best = b;
+        } else
+        {
+          dropped.add(b);
+        }
+      }
+
+      return best;
+    }
+  }
+}
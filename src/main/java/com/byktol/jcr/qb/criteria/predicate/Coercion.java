@@ -0,0 +1,337 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.byktol.jcr.qb.criteria.predicate;
+
+import java.math.BigDecimal;
+import java.util.Calendar;
+import java.util.Date;
+
+import javax.jcr.PropertyType;
+import javax.jcr.RepositoryException;
+import javax.jcr.Value;
+import javax.jcr.ValueFormatException;
+
+import org.apache.jackrabbit.util.ISO8601;
+
+/**
+ * The types a value can be compared as, after converting it the way
+ * {@link Value} does. As in a JCR query, the type of the property decides,
+ * and the value of the restriction is converted to it, e.g. a long property
+ * holding 10 isn't less than "9". Dates are compared as the milliseconds
+ * since the epoch.
+ *
+ * @since 1.0
+ * @author Victor Alvarez
+ */
+enum Coercion
+{
+
+  /** Strings, dates as ISO8601. */
+  STRING
+  {
+    @Override
+    Comparable<?> fromValue(final Value value)
+      throws RepositoryException
+    {
+      return value.getString();
+    }
+
+    @Override
+    Comparable<?> fromObject(final Object value)
+    {
+      if (value instanceof Calendar)
+      {
+        return ISO8601.format((Calendar) value);
+      }
+
+      return value.toString();
+    }
+  },
+
+  /** Integers, dates as milliseconds. */
+  LONG
+  {
+    @Override
+    Comparable<?> fromValue(final Value value)
+      throws RepositoryException
+    {
+      return value.getLong();
+    }
+
+    @Override
+    Comparable<?> fromObject(final Object value)
+    {
+      if (value instanceof Number)
+      {
+        return ((Number) value).longValue();
+      }
+
+      final Long millis = millis(value);
+      if (null != millis)
+      {
+        return millis;
+      }
+
+      return value instanceof String ? Long.valueOf((String) value) : null;
+    }
+  },
+
+  /** Doubles, dates as milliseconds. */
+  DOUBLE
+  {
+    @Override
+    Comparable<?> fromValue(final Value value)
+      throws RepositoryException
+    {
+      return value.getDouble();
+    }
+
+    @Override
+    Comparable<?> fromObject(final Object value)
+    {
+      if (value instanceof Number)
+      {
+        return ((Number) value).doubleValue();
+      }
+
+      final Long millis = millis(value);
+      if (null != millis)
+      {
+        return millis.doubleValue();
+      }
+
+      return value instanceof String ? Double.valueOf((String) value) : null;
+    }
+  },
+
+  /** Decimals, dates as milliseconds. */
+  DECIMAL
+  {
+    @Override
+    Comparable<?> fromValue(final Value value)
+      throws RepositoryException
+    {
+      return value.getDecimal();
+    }
+
+    @Override
+    Comparable<?> fromObject(final Object value)
+    {
+      if (value instanceof BigDecimal)
+      {
+        return (BigDecimal) value;
+      } else if (value instanceof Double || value instanceof Float)
+      {
+        return BigDecimal.valueOf(((Number) value).doubleValue());
+      } else if (value instanceof Number)
+      {
+        return new BigDecimal(value.toString());
+      }
+
+      final Long millis = millis(value);
+      if (null != millis)
+      {
+        return BigDecimal.valueOf(millis);
+      }
+
+      return value instanceof String ? new BigDecimal((String) value) : null;
+    }
+  },
+
+  /** Booleans, from "true" ignoring the case. */
+  BOOLEAN
+  {
+    @Override
+    Comparable<?> fromValue(final Value value)
+      throws RepositoryException
+    {
+      return value.getBoolean();
+    }
+
+    @Override
+    Comparable<?> fromObject(final Object value)
+    {
+      if (value instanceof Boolean)
+      {
+        return (Boolean) value;
+      }
+
+      return value instanceof String ? Boolean.valueOf((String) value) : null;
+    }
+  },
+
+  /** Dates as milliseconds, from ISO8601 strings and numbers too. */
+  DATE
+  {
+    @Override
+    Comparable<?> fromValue(final Value value)
+      throws RepositoryException
+    {
+      return value.getDate().getTimeInMillis();
+    }
+
+    @Override
+    Comparable<?> fromObject(final Object value)
+    {
+      final Long millis = millis(value);
+      if (null != millis)
+      {
+        return millis;
+      } else if (value instanceof Number)
+      {
+        return ((Number) value).longValue();
+      } else if (value instanceof String)
+      {
+        final Calendar calendar = ISO8601.parse((String) value);
+        return null == calendar ? null : calendar.getTimeInMillis();
+      }
+
+      return null;
+    }
+  };
+
+  /**
+   * @param value
+   *          The value of a restriction
+   * @return The type it's compared as, or null if it cannot be
+   */
+  static Coercion of(final Object value)
+  {
+    if (value instanceof String)
+    {
+      return STRING;
+    } else if (value instanceof Long || value instanceof Integer
+      || value instanceof Short || value instanceof Byte)
+    {
+      return LONG;
+    } else if (value instanceof Double || value instanceof Float)
+    {
+      return DOUBLE;
+    } else if (value instanceof BigDecimal)
+    {
+      return DECIMAL;
+    } else if (value instanceof Boolean)
+    {
+      return BOOLEAN;
+    } else if (value instanceof Calendar || value instanceof Date)
+    {
+      return DATE;
+    }
+
+    return null;
+  }
+
+  /**
+   * @param type
+   *          A {@link PropertyType}
+   * @return The type a property of that type is compared as, or null if it's
+   *         undefined
+   */
+  static Coercion of(final int type)
+  {
+    switch (type)
+    {
+      case PropertyType.LONG:
+        return LONG;
+      case PropertyType.DOUBLE:
+        return DOUBLE;
+      case PropertyType.DECIMAL:
+        return DECIMAL;
+      case PropertyType.BOOLEAN:
+        return BOOLEAN;
+      case PropertyType.DATE:
+        return DATE;
+      case PropertyType.UNDEFINED:
+        return null;
+      default:
+        return STRING;
+    }
+  }
+
+  /**
+   * @param value
+   *          A value of a property, either a JCR value or a plain object
+   * @return The type it's compared as, or null if it cannot be told
+   */
+  static Coercion ofProperty(final Object value)
+  {
+    return value instanceof Value ? of(((Value) value).getType()) : of(value);
+  }
+
+  /**
+   * Converts a value of a property, or of a restriction.
+   *
+   * @param value
+   *          A JCR value or a plain object
+   * @return The value as this type, or null if it cannot be converted
+   * @throws RepositoryException
+   *           If the value cannot be read
+   */
+  final Comparable<?> convert(final Object value)
+    throws RepositoryException
+  {
+    try
+    {
+      if (value instanceof Value)
+      {
+        return fromValue((Value) value);
+      }
+
+      return fromObject(value);
+    } catch (ValueFormatException e)
+    {
+      return null;
+    } catch (NumberFormatException e)
+    {
+      return null;
+    }
+  }
+
+  /**
+   * @param value
+   *          A JCR value
+   * @return The value as this type
+   * @throws RepositoryException
+   *           If the value cannot be read or converted
+   */
+  abstract Comparable<?> fromValue(Value value)
+    throws RepositoryException;
+
+  /**
+   * @param value
+   *          A plain object
+   * @return The value as this type, or null if it cannot be converted
+   */
+  abstract Comparable<?> fromObject(Object value);
+
+  /**
+   * @param value
+   *          A plain object
+   * @return The milliseconds since the epoch of a date, or null if it isn't
+   *         one
+   */
+  private static Long millis(final Object value)
+  {
+    if (value instanceof Calendar)
+    {
+      return ((Calendar) value).getTimeInMillis();
+    } else if (value instanceof Date)
+    {
+      return ((Date) value).getTime();
+    }
+
+    return null;
+  }
+
+}
@@ -0,0 +1,126 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.byktol.jcr.qb.criteria.predicate;
+
+import javax.jcr.RepositoryException;
+
+import com.byktol.jcr.qb.criteria.PropertyName;
+import com.byktol.jcr.qb.criteria.operators.ComparisonOperator;
+
+/**
+ * Compares the values of a property with the value of a restriction. The
+ * latter is converted beforehand to every type a property can have, and each
+ * value of the property is compared with the conversion to its own type. The
+ * operator is reduced to which outcomes of the comparison it accepts.
+ *
+ * @since 1.0
+ * @author Victor Alvarez
+ */
+final class Comparison
+  extends CriterionPredicate
+{
+
+  /** The property. */
+  private final PropertyName property;
+
+  /** The type the values are compared as when theirs cannot be told. */
+  private final Coercion coercion;
+
+  /**
+   * The value compared with, converted to each {@link Coercion} by ordinal,
+   * null where it cannot be.
+   */
+  private final Comparable<Object>[] values;
+
+  /** Whether a lesser value holds. */
+  private final boolean less;
+
+  /** Whether an equal value holds. */
+  private final boolean equal;
+
+  /** Whether a greater value holds. */
+  private final boolean greater;
+
+  /**
+   * Constructor.
+   *
+   * @param property
+   *          The property
+   * @param coercion
+   *          The type the values are compared as when theirs cannot be told,
+   *          usually that of the value
+   * @param value
+   *          The value compared with
+   * @param op
+   *          The operator
+   */
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  Comparison(
+    final PropertyName property,
+    final Coercion coercion,
+    final Object value,
+    final ComparisonOperator op)
+  {
+    this.property = property;
+    this.coercion = coercion;
+    final Coercion[] coercions = Coercion.values();
+    this.values = new Comparable[coercions.length];
+    for (int i = 0; i < coercions.length; i++)
+    {
+      try
+      {
+        values[i] = (Comparable<Object>) coercions[i].fromObject(value);
+      } catch (NumberFormatException e)
+      {
+        values[i] = null;
+      }
+    }
+    this.less = ComparisonOperator.LESS_THAN == op
+      || ComparisonOperator.LESS_THAN_OR_EQUALS == op
+      || ComparisonOperator.NOT_EQUALS == op;
+    this.equal = ComparisonOperator.EQUALS == op
+      || ComparisonOperator.LESS_THAN_OR_EQUALS == op
+      || ComparisonOperator.GREATER_THAN_OR_EQUALS == op;
+    this.greater = ComparisonOperator.GREATER_THAN == op
+      || ComparisonOperator.GREATER_THAN_OR_EQUALS == op
+      || ComparisonOperator.NOT_EQUALS == op;
+  }
+
+  @Override
+  boolean test(final Source source)
+    throws RepositoryException
+  {
+    for (Object v : source.values(property))
+    {
+      final Coercion type = Coercion.ofProperty(v);
+      final Coercion c = null == type ? coercion : type;
+      final Comparable<Object> value = values[c.ordinal()];
+      final Comparable<?> converted = null == value ? null : c.convert(v);
+      if (null == converted)
+      {
+        continue;
+      }
+
+      // the value is greater when the property is lesser, and vice versa
+      final int cmp = value.compareTo(converted);
+      if (cmp > 0 ? less : cmp < 0 ? greater : equal)
+      {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+}
@@ -0,0 +1,186 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.byktol.jcr.qb.criteria.predicate;
+
+import java.util.List;
+
+import com.byktol.jcr.qb.criteria.Criterion;
+import com.byktol.jcr.qb.criteria.CriterionVisitor;
+import com.byktol.jcr.qb.criteria.PropertyName;
+import com.byktol.jcr.qb.criteria.expressions.ContainsExpression;
+import com.byktol.jcr.qb.criteria.expressions.ContradictionExpression;
+import com.byktol.jcr.qb.criteria.expressions.ExistExpression;
+import com.byktol.jcr.qb.criteria.expressions.Junction;
+import com.byktol.jcr.qb.criteria.expressions.LikeExpression;
+import com.byktol.jcr.qb.criteria.expressions.LogicalExpression;
+import com.byktol.jcr.qb.criteria.expressions.NotExpression;
+import com.byktol.jcr.qb.criteria.expressions.SimpleExpression;
+import com.byktol.jcr.qb.criteria.operators.LogicalOperator;
+
+/**
+ * Compiles every type of restriction into its predicate, or null when it
+ * cannot be evaluated in memory.
+ *
+ * @since 1.0
+ * @author Victor Alvarez
+ */
+final class Compiler
+  implements CriterionVisitor<CriterionPredicate, Void, RuntimeException>
+{
+
+  /** The only instance, since it has no state. */
+  static final Compiler COMPILER = new Compiler();
+
+  /** Not instantiable, use {@link #COMPILER}. */
+  private Compiler()
+  {
+    // nothing here
+  }
+
+  @Override
+  public CriterionPredicate visitSimple(
+    final SimpleExpression criterion,
+    final Void arg)
+  {
+    final Object value = criterion.getValue();
+    final Coercion coercion = Coercion.of(value);
+    if (null == coercion || !isSupported(criterion.getProperty()))
+    {
+      return null;
+    }
+
+    return new Comparison(criterion.getProperty(), coercion, value,
+      criterion.getOp());
+  }
+
+  @Override
+  public CriterionPredicate visitLogical(
+    final LogicalExpression criterion,
+    final Void arg)
+  {
+    final List<Criterion> children = criterion.getCriterionList();
+    final CriterionPredicate[] predicates =
+      new CriterionPredicate[children.size()];
+    for (int i = 0; i < predicates.length; i++)
+    {
+      predicates[i] = children.get(i).accept(this, arg);
+      if (null == predicates[i])
+      {
+        return null;
+      }
+    }
+
+    return LogicalOperator.AND == criterion.getOp()
+      ? LogicalPredicate.and(predicates) : LogicalPredicate.or(predicates);
+  }
+
+  @Override
+  public CriterionPredicate visitJunction(
+    final Junction criterion,
+    final Void arg)
+  {
+    final List<Criterion> children = criterion.getCriterionList();
+    final CriterionPredicate[] predicates =
+      new CriterionPredicate[children.size()];
+    for (int i = 0; i < predicates.length; i++)
+    {
+      predicates[i] = children.get(i).accept(this, arg);
+      if (null == predicates[i])
+      {
+        return null;
+      }
+    }
+
+    return LogicalOperator.AND == criterion.getOperator()
+      ? LogicalPredicate.and(predicates) : LogicalPredicate.or(predicates);
+  }
+
+  @Override
+  public CriterionPredicate visitNot(
+    final NotExpression criterion,
+    final Void arg)
+  {
+    final CriterionPredicate predicate =
+      criterion.getCriterion().accept(this, arg);
+
+    return null == predicate ? null : new NotPredicate(predicate);
+  }
+
+  @Override
+  public CriterionPredicate visitContains(
+    final ContainsExpression criterion,
+    final Void arg)
+  {
+    // the full-text index of the repository cannot be reproduced
+    return null;
+  }
+
+  @Override
+  public CriterionPredicate visitLike(
+    final LikeExpression criterion,
+    final Void arg)
+  {
+    return isSupported(criterion.getProperty())
+      ? new LikePredicate(criterion.getProperty(), criterion.getValue())
+      : null;
+  }
+
+  @Override
+  public CriterionPredicate visitExist(
+    final ExistExpression criterion,
+    final Void arg)
+  {
+    return isSupported(criterion.getProperty())
+      ? new ExistsPredicate(criterion.getProperty()) : null;
+  }
+
+  @Override
+  public CriterionPredicate visitContradiction(
+    final ContradictionExpression criterion,
+    final Void arg)
+  {
+    return ConstantPredicate.FALSE;
+  }
+
+  @Override
+  public CriterionPredicate visitOther(
+    final Criterion criterion,
+    final Void arg)
+  {
+    return null;
+  }
+
+  /**
+   * @param property
+   *          The property of a restriction
+   * @return Whether it's a plain relative path, without wildcards,
+   *         predicates or functions
+   */
+  private static boolean isSupported(final PropertyName property)
+  {
+    final String relative = property.getRelative();
+    for (int i = 0; i < relative.length(); i++)
+    {
+      final char c = relative.charAt(i);
+      if ('*' == c || '[' == c || '(' == c || ' ' == c)
+      {
+        return false;
+      }
+    }
+
+    return relative.length() > 0 && '.' != relative.charAt(0)
+      && '/' != relative.charAt(0);
+  }
+
+}
@@ -0,0 +1,52 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.byktol.jcr.qb.criteria.predicate;
+
+/**
+ * A predicate that always, or never, holds.
+ *
+ * @since 1.0
+ * @author Victor Alvarez
+ */
+final class ConstantPredicate
+  extends CriterionPredicate
+{
+
+  /** Always holds, e.g. no restrictions at all. */
+  static final ConstantPredicate TRUE = new ConstantPredicate(true);
+
+  /** Never holds, e.g. a contradiction. */
+  static final ConstantPredicate FALSE = new ConstantPredicate(false);
+
+  /** Whether it holds. */
+  private final boolean value;
+
+  /**
+   * Not instantiable, use the constants.
+   *
+   * @param value
+   *          Whether it holds
+   */
+  private ConstantPredicate(final boolean value)
+  {
+    this.value = value;
+  }
+
+  @Override
+  boolean test(final Source source)
+  {
+    return value;
+  }
+
+}
@@ -0,0 +1,225 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.byktol.jcr.qb.criteria.predicate;
+
+import java.util.List;
+import java.util.Map;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+
+import com.byktol.jcr.qb.criteria.Criterion;
+import com.google.common.base.Predicate;
+
+/**
+ * Restrictions compiled into a tree of predicates, which tells whether a node,
+ * or a map of properties, meets them without querying the repository, e.g.
+ * to filter results, revalidate a cached result, or filter events.
+ * <p>
+ * The predicates evaluate the way the repository does: a comparison holds
+ * when any value of the property holds, and never when the property is
+ * missing or its value cannot be converted to the type of the value of the
+ * restriction, e.g. a string that isn't a number. Like patterns are
+ * compiled once. Full-text searches, {@link com.byktol.jcr.qb.criteria.Param}
+ * values, values other than strings, numbers, booleans and dates,
+ * restrictions unknown to this library, and properties other than plain
+ * relative paths cannot be compiled, see {@link #isSupported(Criterion)}.
+ * <p>
+ * A compiled predicate is immutable and thread-safe, and doesn't change if
+ * the groups of restrictions it was compiled from are added to.
+ *
+ * @since 1.0
+ * @author Victor Alvarez
+ */
+public abstract class CriterionPredicate
+{
+
+  /** Only the predicates of this package can be compiled. */
+  CriterionPredicate()
+  {
+    // nothing here
+  }
+
+  /**
+   * Compiles a restriction.
+   *
+   * @param criterion
+   *          The restriction
+   * @return The predicate
+   */
+  public static CriterionPredicate compile(final Criterion criterion)
+  {
+    if (null == criterion)
+    {
+      throw new IllegalArgumentException("criterion cannot be null");
+    }
+
+    final CriterionPredicate predicate = criterion.accept(Compiler.COMPILER,
+      null);
+    if (null == predicate)
+    {
+      throw new IllegalArgumentException(criterion
+        + " cannot be evaluated in memory");
+    }
+
+    return predicate;
+  }
+
+  /**
+   * Compiles the restrictions of a criteria, all of which must be met.
+   *
+   * @see com.byktol.jcr.qb.criteria.Prop#getCriterion()
+   * @param restrictions
+   *          The restrictions
+   * @return The predicate
+   */
+  public static CriterionPredicate compile(final List<Criterion> restrictions)
+  {
+    if (null == restrictions)
+    {
+      throw new IllegalArgumentException("restrictions cannot be null");
+    }
+
+    if (1 == restrictions.size())
+    {
+      return compile(restrictions.get(0));
+    }
+
+    final CriterionPredicate[] all =
+      new CriterionPredicate[restrictions.size()];
+    for (int i = 0; i < all.length; i++)
+    {
+      all[i] = compile(restrictions.get(i));
+    }
+
+    return LogicalPredicate.and(all);
+  }
+
+  /**
+   * @param criterion
+   *          A restriction
+   * @return Whether it can be compiled
+   */
+  public static boolean isSupported(final Criterion criterion)
+  {
+    return null != criterion.accept(Compiler.COMPILER, null);
+  }
+
+  /**
+   * @param restrictions
+   *          The restrictions of a criteria
+   * @return Whether all of them can be compiled
+   */
+  public static boolean isSupported(final List<Criterion> restrictions)
+  {
+    for (Criterion c : restrictions)
+    {
+      if (!isSupported(c))
+      {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * @param node
+   *          The node being evaluated
+   * @return Whether the node meets the restrictions
+   * @throws RepositoryException
+   *           If the properties of the node cannot be read
+   */
+  public final boolean apply(final Node node)
+    throws RepositoryException
+  {
+    if (null == node)
+    {
+      throw new IllegalArgumentException("node cannot be null");
+    }
+
+    return test(new NodeSource(node));
+  }
+
+  /**
+   * @param properties
+   *          The properties being evaluated, keyed by relative path; a
+   *          collection or an array is a multi-valued property
+   * @return Whether the properties meet the restrictions
+   */
+  public final boolean apply(final Map<String, ?> properties)
+  {
+    if (null == properties)
+    {
+      throw new IllegalArgumentException("properties cannot be null");
+    }
+
+    try
+    {
+      return test(new MapSource(properties));
+    } catch (RepositoryException e)
+    {
+      // only JCR values in the map can throw it
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * @return This predicate for nodes, rethrowing a
+   *         {@link RepositoryException} as an {@link IllegalStateException}
+   */
+  public final Predicate<Node> forNodes()
+  {
+    return new Predicate<Node>()
+    {
+      @Override
+      public boolean apply(final Node node)
+      {
+        try
+        {
+          return CriterionPredicate.this.apply(node);
+        } catch (RepositoryException e)
+        {
+          throw new IllegalStateException(e);
+        }
+      }
+    };
+  }
+
+  /**
+   * @return This predicate for maps of properties
+   */
+  public final Predicate<Map<String, ?>> forMaps()
+  {
+    return new Predicate<Map<String, ?>>()
+    {
+      @Override
+      public boolean apply(final Map<String, ?> properties)
+      {
+        return CriterionPredicate.this.apply(properties);
+      }
+    };
+  }
+
+  /**
+   * @param source
+   *          Where the values of the properties come from
+   * @return Whether the values meet the restriction
+   * @throws RepositoryException
+   *           If the values cannot be read
+   */
+  abstract boolean test(Source source)
+    throws RepositoryException;
+
+}
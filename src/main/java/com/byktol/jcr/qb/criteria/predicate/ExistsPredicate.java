@@ -0,0 +1,51 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.byktol.jcr.qb.criteria.predicate;
+
+import javax.jcr.RepositoryException;
+
+import com.byktol.jcr.qb.criteria.PropertyName;
+
+/**
+ * Whether a property exists.
+ *
+ * @since 1.0
+ * @author Victor Alvarez
+ */
+final class ExistsPredicate
+  extends CriterionPredicate
+{
+
+  /** The property. */
+  private final PropertyName property;
+
+  /**
+   * Constructor.
+   *
+   * @param property
+   *          The property
+   */
+  ExistsPredicate(final PropertyName property)
+  {
+    this.property = property;
+  }
+
+  @Override
+  boolean test(final Source source)
+    throws RepositoryException
+  {
+    return source.exists(property);
+  }
+
+}
@@ -0,0 +1,174 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.byktol.jcr.qb.criteria.predicate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import javax.jcr.RepositoryException;
+
+import com.byktol.jcr.qb.criteria.PropertyName;
+
+/**
+ * Matches the values of a property against a jcr:like pattern, in which "%"
+ * stands for any characters, "_" for a single one, and a backslash escapes
+ * the next. The pattern is compiled once: the usual ones, an exact string,
+ * a prefix, a suffix or a substring, are matched with the methods of
+ * {@link String}, and the rest with a regular expression.
+ *
+ * @since 1.0
+ * @author Victor Alvarez
+ */
+final class LikePredicate
+  extends CriterionPredicate
+{
+
+  /** How the strings are matched. */
+  private enum Kind
+  {
+    /** Equals the text. */
+    EXACT,
+    /** Starts with the text. */
+    PREFIX,
+    /** Ends with the text. */
+    SUFFIX,
+    /** Contains the text. */
+    SUBSTRING,
+    /** Matches the regular expression. */
+    REGEX
+  }
+
+  /** The property. */
+  private final PropertyName property;
+
+  /** How the strings are matched. */
+  private final Kind kind;
+
+  /** The text without wildcards, null for a regular expression. */
+  private final String text;
+
+  /** The regular expression, null for the rest. */
+  private final Pattern regex;
+
+  /**
+   * Constructor, which compiles the pattern.
+   *
+   * @param property
+   *          The property
+   * @param pattern
+   *          The jcr:like pattern
+   */
+  LikePredicate(final PropertyName property, final String pattern)
+  {
+    this.property = property;
+
+    // the texts between the wildcards, and the wildcards
+    final List<String> parts = new ArrayList<String>();
+    final StringBuilder wildcards = new StringBuilder();
+    StringBuilder part = new StringBuilder();
+    for (int i = 0; i < pattern.length(); i++)
+    {
+      final char c = pattern.charAt(i);
+      if ('\\' == c && i + 1 < pattern.length())
+      {
+        part.append(pattern.charAt(++i));
+      } else if ('%' == c || '_' == c)
+      {
+        parts.add(part.toString());
+        wildcards.append(c);
+        part = new StringBuilder();
+      } else
+      {
+        part.append(c);
+      }
+    }
+    parts.add(part.toString());
+
+    final String w = wildcards.toString();
+    final boolean leading = parts.get(0).isEmpty();
+    final boolean trailing = parts.get(parts.size() - 1).isEmpty();
+    if (w.isEmpty())
+    {
+      this.kind = Kind.EXACT;
+      this.text = parts.get(0);
+    } else if ("%".equals(w) && (leading || trailing))
+    {
+      this.kind = leading ? Kind.SUFFIX : Kind.PREFIX;
+      this.text = parts.get(leading ? 1 : 0);
+    } else if ("%%".equals(w) && leading && trailing)
+    {
+      this.kind = Kind.SUBSTRING;
+      this.text = parts.get(1);
+    } else
+    {
+      this.kind = Kind.REGEX;
+      this.text = null;
+    }
+
+    if (Kind.REGEX != kind)
+    {
+      this.regex = null;
+      return;
+    }
+
+    final StringBuilder expression = new StringBuilder();
+    for (int i = 0; i < w.length(); i++)
+    {
+      expression.append(Pattern.quote(parts.get(i)))
+        .append('%' == w.charAt(i) ? ".*" : ".");
+    }
+    expression.append(Pattern.quote(parts.get(w.length())));
+    this.regex = Pattern.compile(expression.toString(), Pattern.DOTALL);
+  }
+
+  @Override
+  boolean test(final Source source)
+    throws RepositoryException
+  {
+    for (Object v : source.values(property))
+    {
+      final String s = (String) Coercion.STRING.convert(v);
+      if (null != s && matches(s))
+      {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * @param s
+   *          A value of the property
+   * @return Whether it matches the pattern
+   */
+  private boolean matches(final String s)
+  {
+    switch (kind)
+    {
+      case EXACT:
+        return s.equals(text);
+      case PREFIX:
+        return s.startsWith(text);
+      case SUFFIX:
+        return s.endsWith(text);
+      case SUBSTRING:
+        return s.contains(text);
+      default:
+        return regex.matcher(s).matches();
+    }
+  }
+
+}
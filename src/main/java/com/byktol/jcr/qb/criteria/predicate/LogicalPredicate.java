@@ -0,0 +1,107 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.byktol.jcr.qb.criteria.predicate;
+
+import javax.jcr.RepositoryException;
+
+/**
+ * A conjunction or disjunction of predicates, which stops at the first one
+ * deciding the outcome.
+ *
+ * @since 1.0
+ * @author Victor Alvarez
+ */
+final class LogicalPredicate
+  extends CriterionPredicate
+{
+
+  /** The predicates. */
+  private final CriterionPredicate[] predicates;
+
+  /** Whether all of them must hold, or any of them. */
+  private final boolean all;
+
+  /**
+   * Not instantiable, use the factories.
+   *
+   * @param predicates
+   *          The predicates
+   * @param all
+   *          Whether all of them must hold, or any of them
+   */
+  private LogicalPredicate(
+    final CriterionPredicate[] predicates,
+    final boolean all)
+  {
+    this.predicates = predicates;
+    this.all = all;
+  }
+
+  /**
+   * @param predicates
+   *          The predicates, owned by the conjunction from now on
+   * @return The conjunction, or the only predicate
+   */
+  static CriterionPredicate and(final CriterionPredicate... predicates)
+  {
+    return of(predicates, true);
+  }
+
+  /**
+   * @param predicates
+   *          The predicates, owned by the disjunction from now on
+   * @return The disjunction, or the only predicate
+   */
+  static CriterionPredicate or(final CriterionPredicate... predicates)
+  {
+    return of(predicates, false);
+  }
+
+  /**
+   * @param predicates
+   *          The predicates
+   * @param all
+   *          Whether all of them must hold, or any of them
+   * @return The predicate
+   */
+  private static CriterionPredicate of(
+    final CriterionPredicate[] predicates,
+    final boolean all)
+  {
+    if (0 == predicates.length)
+    {
+      // as the query would, no restrictions are no restrictions at all
+      return ConstantPredicate.TRUE;
+    }
+
+    return 1 == predicates.length ? predicates[0]
+      : new LogicalPredicate(predicates, all);
+  }
+
+  @Override
+  boolean test(final Source source)
+    throws RepositoryException
+  {
+    for (CriterionPredicate p : predicates)
+    {
+      if (p.test(source) != all)
+      {
+        return !all;
+      }
+    }
+
+    return all;
+  }
+
+}
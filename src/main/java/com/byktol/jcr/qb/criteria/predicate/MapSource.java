@@ -0,0 +1,75 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.byktol.jcr.qb.criteria.predicate;
+
+import java.util.Collection;
+import java.util.Map;
+
+import com.byktol.jcr.qb.criteria.PropertyName;
+
+/**
+ * The properties in a map, keyed by their relative path, e.g. "jcr:title" or
+ * "jcr:content/jcr:title". A collection or an array is a multi-valued
+ * property, and a null is a missing one. The class of a value stands for the
+ * type of the property, e.g. a {@link Long} for a long property.
+ *
+ * @since 1.0
+ * @author Victor Alvarez
+ */
+final class MapSource
+  implements Source
+{
+
+  /** The values of a missing property. */
+  static final Object[] NONE = new Object[0];
+
+  /** The properties. */
+  private final Map<String, ?> properties;
+
+  /**
+   * Constructor.
+   *
+   * @param properties
+   *          The properties
+   */
+  MapSource(final Map<String, ?> properties)
+  {
+    this.properties = properties;
+  }
+
+  @Override
+  public boolean exists(final PropertyName property)
+  {
+    return null != properties.get(property.getRelative());
+  }
+
+  @Override
+  public Object[] values(final PropertyName property)
+  {
+    final Object value = properties.get(property.getRelative());
+    if (null == value)
+    {
+      return NONE;
+    } else if (value instanceof Collection)
+    {
+      return ((Collection<?>) value).toArray();
+    } else if (value instanceof Object[])
+    {
+      return (Object[]) value;
+    }
+
+    return new Object[] {value};
+  }
+
+}
@@ -0,0 +1,68 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.byktol.jcr.qb.criteria.predicate;
+
+import javax.jcr.Node;
+import javax.jcr.Property;
+import javax.jcr.RepositoryException;
+
+import com.byktol.jcr.qb.criteria.PropertyName;
+
+/**
+ * The properties of a node, relative paths included.
+ *
+ * @since 1.0
+ * @author Victor Alvarez
+ */
+final class NodeSource
+  implements Source
+{
+
+  /** The node. */
+  private final Node node;
+
+  /**
+   * Constructor.
+   *
+   * @param node
+   *          The node
+   */
+  NodeSource(final Node node)
+  {
+    this.node = node;
+  }
+
+  @Override
+  public boolean exists(final PropertyName property)
+    throws RepositoryException
+  {
+    return node.hasProperty(property.getRelative());
+  }
+
+  @Override
+  public Object[] values(final PropertyName property)
+    throws RepositoryException
+  {
+    final String relative = property.getRelative();
+    if (!node.hasProperty(relative))
+    {
+      return MapSource.NONE;
+    }
+
+    final Property p = node.getProperty(relative);
+
+    return p.isMultiple() ? p.getValues() : new Object[] {p.getValue()};
+  }
+
+}
@@ -0,0 +1,49 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.byktol.jcr.qb.criteria.predicate;
+
+import javax.jcr.RepositoryException;
+
+/**
+ * The negation of a predicate.
+ *
+ * @since 1.0
+ * @author Victor Alvarez
+ */
+final class NotPredicate
+  extends CriterionPredicate
+{
+
+  /** The predicate negated. */
+  private final CriterionPredicate predicate;
+
+  /**
+   * Constructor.
+   *
+   * @param predicate
+   *          The predicate negated
+   */
+  NotPredicate(final CriterionPredicate predicate)
+  {
+    this.predicate = predicate;
+  }
+
+  @Override
+  boolean test(final Source source)
+    throws RepositoryException
+  {
+    return !predicate.test(source);
+  }
+
+}
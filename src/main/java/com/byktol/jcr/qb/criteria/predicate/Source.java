@@ -0,0 +1,50 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.byktol.jcr.qb.criteria.predicate;
+
+import javax.jcr.RepositoryException;
+
+import com.byktol.jcr.qb.criteria.PropertyName;
+
+/**
+ * Where the values of the properties a predicate evaluates come from.
+ *
+ * @since 1.0
+ * @author Victor Alvarez
+ */
+interface Source
+{
+
+  /**
+   * @param property
+   *          A property
+   * @return Whether the property exists
+   * @throws RepositoryException
+   *           If the property cannot be read
+   */
+  boolean exists(PropertyName property)
+    throws RepositoryException;
+
+  /**
+   * @param property
+   *          A property
+   * @return Its values, either JCR values or plain objects, none if it's
+   *         missing
+   * @throws RepositoryException
+   *           If the property cannot be read
+   */
+  Object[] values(PropertyName property)
+    throws RepositoryException;
+
+}
@@ -0,0 +1,50 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.byktol.jcr.qb.impl;
+
+import java.util.LinkedList;
+
+import javax.jcr.Session;
+
+import com.byktol.jcr.qb.QueryBuilder;
+import com.byktol.jcr.qb.QueryLanguage;
+import com.byktol.jcr.qb.criteria.Criteria;
+import com.byktol.jcr.qb.criteria.Criterion;
+import com.byktol.jcr.qb.criteria.Order;
+import com.byktol.jcr.qb.criteria.impl.Sql2Criteria;
+
+/**
+ * A specific implementation of {@link QueryBuilder}. The purpose is to create
+ * JCR-SQL2 related queries, whose values are bound rather than inlined.
+ *
+ * @since 1.0
+ * @author Victor Alvarez
+ */
+public class Sql2QueryBuilder
+  extends QueryBuilder
+{
+
+  public Sql2QueryBuilder(final Session session)
+  {
+    super(session, QueryLanguage.SQL2);
+  }
+
+  @Override
+  public Criteria createCriteria()
+  {
+    return new Sql2Criteria(new LinkedList<Criterion>(),
+      new LinkedList<Order>());
+  }
+
+}
@@ -0,0 +1,78 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.byktol.jcr.qb.metrics;
+
+import java.util.Map;
+
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.Value;
+import javax.jcr.ValueFactory;
+import javax.jcr.query.Query;
+import javax.jcr.query.QueryResult;
+import javax.jcr.query.RowIterator;
+
+import com.byktol.jcr.qb.criteria.builder.utils.Sql2Utils;
+
+/**
+ * Captures the plan by executing the statement prefixed with
+ * <code>explain</code>, as supported by Apache Jackrabbit Oak, with the
+ * variables of a JCR-SQL2 statement bound to their values. Any other
+ * repository fails to parse it and no plan is captured.
+ *
+ * @since 1.0
+ * @author Victor Alvarez
+ */
+public class ExplainPlanCapture
+  implements PlanCapture
+{
+
+  @Override
+  public String capture(
+    final Session session,
+    final String statement,
+    final Map<String, ?> bindVariables,
+    final String language)
+  {
+    try
+    {
+      final Query query = session.getWorkspace().getQueryManager()
+        .createQuery("explain " + statement, language);
+      if (!bindVariables.isEmpty())
+      {
+        final ValueFactory factory = session.getValueFactory();
+        for (Map.Entry<String, ?> entry : bindVariables.entrySet())
+        {
+          query.bindValue(entry.getKey(),
+            Sql2Utils.toValue(factory, entry.getValue()));
+        }
+      }
+
+      final QueryResult result = query.execute();
+      final RowIterator rows = result.getRows();
+
+      if (!rows.hasNext())
+      {
+        return null;
+      }
+
+      final Value plan = rows.nextRow().getValue("plan");
+
+      return null == plan ? null : plan.getString();
+    } catch (RepositoryException e)
+    {
+      return null;
+    }
+  }
+}
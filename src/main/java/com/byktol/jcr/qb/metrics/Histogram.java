@@ -0,0 +1,118 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.byktol.jcr.qb.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of non-negative values, e.g. nanoseconds, with a
+ * bucket per power of two. Recording a value costs a couple of atomic
+ * increments and no allocation; the percentiles are approximate, within a
+ * factor of two.
+ *
+ * @since 1.0
+ * @author Victor Alvarez
+ */
+public final class Histogram
+{
+
+  /** The number of buckets, one per bit length of a non-negative long. */
+  private static final int BUCKETS = Long.SIZE;
+
+  /** The bucket i counts the values of bit length i. */
+  private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+  /** The sum of the values. */
+  private final AtomicLong sum = new AtomicLong();
+
+  /**
+   * Records a value, negatives count as zero.
+   *
+   * @param value
+   *          The value
+   */
+  public void record(final long value)
+  {
+    final long v = Math.max(0, value);
+    buckets.incrementAndGet(Long.SIZE - Long.numberOfLeadingZeros(v));
+    sum.addAndGet(v);
+  }
+
+  /**
+   * @return The number of values recorded
+   */
+  public long getCount()
+  {
+    long count = 0;
+    for (int i = 0; i < BUCKETS; i++)
+    {
+      count += buckets.get(i);
+    }
+
+    return count;
+  }
+
+  /**
+   * @return The mean of the values recorded, zero if none
+   */
+  public double getMean()
+  {
+    final long count = getCount();
+
+    return 0 == count ? 0 : (double) sum.get() / count;
+  }
+
+  /**
+   * @param percentile
+   *          The percentile, between 0 and 100
+   * @return The upper bound of the bucket the percentile falls in, zero if
+   *         nothing was recorded
+   */
+  public long getPercentile(final double percentile)
+  {
+    final long[] counts = new long[BUCKETS];
+    long count = 0;
+    for (int i = 0; i < BUCKETS; i++)
+    {
+      counts[i] = buckets.get(i);
+      count += counts[i];
+    }
+
+    final long rank = (long) Math.ceil(count * percentile / 100);
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++)
+    {
+      seen += counts[i];
+      if (seen > 0 && seen >= rank)
+      {
+        return 0 == i ? 0 : (1L << i) - 1;
+      }
+    }
+
+    return 0;
+  }
+
+  /**
+   * Discards every value recorded.
+   */
+  public void reset()
+  {
+    for (int i = 0; i < BUCKETS; i++)
+    {
+      buckets.set(i, 0);
+    }
+    sum.set(0);
+  }
+}
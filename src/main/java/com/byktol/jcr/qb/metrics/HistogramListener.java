@@ -0,0 +1,277 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.byktol.jcr.qb.metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link QueryListener} aggregating the measures in a {@link Histogram}
+ * per query shape, exposed through JMX, e.g.
+ *
+ * <pre>
+ * HistogramListener metrics = new HistogramListener();
+ * ManagementFactory.getPlatformMBeanServer().registerMBean(metrics,
+ *   new ObjectName(HistogramListener.OBJECT_NAME));
+ * QueryMetrics.setListener(metrics);
+ * </pre>
+ *
+ * The number of shapes is bounded, the measures of any further shape are
+ * aggregated under {@link #OTHER}.
+ *
+ * @since 1.0
+ * @author Victor Alvarez
+ */
+public class HistogramListener
+  implements QueryListener, HistogramListenerMBean
+{
+
+  /** The suggested JMX object name. */
+  public static final String OBJECT_NAME =
+    "com.byktol.jcr.qb:type=QueryMetrics";
+
+  /** The number of shapes kept by default. */
+  public static final int DEFAULT_MAXIMUM_SHAPES = 1000;
+
+  /** The shape the measures go to when there are too many shapes. */
+  public static final String OTHER = "other";
+
+  /** The maximum number of shapes. */
+  private final int maximumShapes;
+
+  /** The measures of every shape. */
+  private final ConcurrentMap<String, Stats> shapes =
+    new ConcurrentHashMap<String, Stats>();
+
+  /**
+   * Constructor.
+   */
+  public HistogramListener()
+  {
+    this(DEFAULT_MAXIMUM_SHAPES);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param maximumShapes
+   *          The maximum number of shapes kept apart
+   */
+  public HistogramListener(final int maximumShapes)
+  {
+    this.maximumShapes = maximumShapes;
+  }
+
+  @Override
+  public void onBuild(final String fingerprint, final long nanos)
+  {
+    stats(fingerprint).build.record(nanos);
+  }
+
+  @Override
+  public void onExecute(final String fingerprint, final long nanos)
+  {
+    stats(fingerprint).execute.record(nanos);
+  }
+
+  @Override
+  public void onFirstRow(final String fingerprint, final long nanos)
+  {
+    stats(fingerprint).firstRow.record(nanos);
+  }
+
+  @Override
+  public void onResult(final String fingerprint, final long count)
+  {
+    stats(fingerprint).rows.record(count);
+  }
+
+  /**
+   * @param fingerprint
+   *          The shape of a query
+   * @return Its measures, null if it wasn't seen
+   */
+  public Stats getStats(final String fingerprint)
+  {
+    return shapes.get(fingerprint);
+  }
+
+  @Override
+  public String[] getFingerprints()
+  {
+    return shapes.keySet().toArray(new String[0]);
+  }
+
+  @Override
+  public long getExecutions(final String fingerprint)
+  {
+    final Stats stats = shapes.get(fingerprint);
+
+    return null == stats ? 0 : stats.execute.getCount();
+  }
+
+  @Override
+  public long getBuildMicros(final String fingerprint, final double percentile)
+  {
+    final Stats stats = shapes.get(fingerprint);
+
+    return null == stats ? 0 : micros(stats.build.getPercentile(percentile));
+  }
+
+  @Override
+  public long getExecuteMicros(
+    final String fingerprint,
+    final double percentile)
+  {
+    final Stats stats = shapes.get(fingerprint);
+
+    return null == stats ? 0 : micros(stats.execute.getPercentile(percentile));
+  }
+
+  @Override
+  public long getFirstRowMicros(
+    final String fingerprint,
+    final double percentile)
+  {
+    final Stats stats = shapes.get(fingerprint);
+
+    return null == stats ? 0
+      : micros(stats.firstRow.getPercentile(percentile));
+  }
+
+  @Override
+  public double getMeanRows(final String fingerprint)
+  {
+    final Stats stats = shapes.get(fingerprint);
+
+    return null == stats ? 0 : stats.rows.getMean();
+  }
+
+  @Override
+  public String report()
+  {
+    final StringBuilder sb = new StringBuilder(
+      "fingerprint builds p50/p99us executions p50/p99us first-row p50us"
+      + " rows\n");
+
+    for (Map.Entry<String, Stats> e : shapes.entrySet())
+    {
+      final Stats s = e.getValue();
+      sb.append(e.getKey())
+        .append(' ').append(s.build.getCount())
+        .append(' ').append(micros(s.build.getPercentile(50)))
+        .append('/').append(micros(s.build.getPercentile(99)))
+        .append(' ').append(s.execute.getCount())
+        .append(' ').append(micros(s.execute.getPercentile(50)))
+        .append('/').append(micros(s.execute.getPercentile(99)))
+        .append(' ').append(micros(s.firstRow.getPercentile(50)))
+        .append(' ').append(s.rows.getMean())
+        .append('\n');
+    }
+
+    return sb.toString();
+  }
+
+  @Override
+  public void reset()
+  {
+    shapes.clear();
+  }
+
+  /**
+   * @param fingerprint
+   *          The shape of a query
+   * @return Its measures, created on the first use
+   */
+  private Stats stats(final String fingerprint)
+  {
+    final Stats stats = shapes.get(fingerprint);
+    if (null != stats)
+    {
+      return stats;
+    }
+
+    final String key = shapes.size() < maximumShapes ? fingerprint : OTHER;
+    final Stats created = new Stats();
+    final Stats raced = shapes.putIfAbsent(key, created);
+
+    return null == raced ? created : raced;
+  }
+
+  /**
+   * @param nanos
+   *          A time in nanoseconds
+   * @return The time in microseconds
+   */
+  private static long micros(final long nanos)
+  {
+    return TimeUnit.NANOSECONDS.toMicros(nanos);
+  }
+
+  /**
+   * The measures of a query shape.
+   *
+   * @since 1.0
+   * @author Victor Alvarez
+   */
+  public static final class Stats
+  {
+
+    /** The build times, in nanoseconds. */
+    private final Histogram build = new Histogram();
+
+    /** The execution times, in nanoseconds. */
+    private final Histogram execute = new Histogram();
+
+    /** The latencies of the first row, in nanoseconds. */
+    private final Histogram firstRow = new Histogram();
+
+    /** The number of rows of the results. */
+    private final Histogram rows = new Histogram();
+
+    /**
+     * @return The build times, in nanoseconds
+     */
+    public Histogram getBuild()
+    {
+      return build;
+    }
+
+    /**
+     * @return The execution times, in nanoseconds
+     */
+    public Histogram getExecute()
+    {
+      return execute;
+    }
+
+    /**
+     * @return The latencies of the first row, in nanoseconds
+     */
+    public Histogram getFirstRow()
+    {
+      return firstRow;
+    }
+
+    /**
+     * @return The number of rows of the results
+     */
+    public Histogram getRows()
+    {
+      return rows;
+    }
+  }
+}
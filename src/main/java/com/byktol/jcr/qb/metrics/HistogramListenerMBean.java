@@ -0,0 +1,81 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.byktol.jcr.qb.metrics;
+
+/**
+ * The management interface of {@link HistogramListener}. Times are in
+ * microseconds.
+ *
+ * @since 1.0
+ * @author Victor Alvarez
+ */
+public interface HistogramListenerMBean
+{
+
+  /**
+   * @return The fingerprints of the query shapes seen so far
+   */
+  String[] getFingerprints();
+
+  /**
+   * @param fingerprint
+   *          The shape of a query
+   * @return The number of executions of the shape
+   */
+  long getExecutions(String fingerprint);
+
+  /**
+   * @param fingerprint
+   *          The shape of a query
+   * @param percentile
+   *          The percentile, between 0 and 100
+   * @return The build time at that percentile
+   */
+  long getBuildMicros(String fingerprint, double percentile);
+
+  /**
+   * @param fingerprint
+   *          The shape of a query
+   * @param percentile
+   *          The percentile, between 0 and 100
+   * @return The execution time at that percentile
+   */
+  long getExecuteMicros(String fingerprint, double percentile);
+
+  /**
+   * @param fingerprint
+   *          The shape of a query
+   * @param percentile
+   *          The percentile, between 0 and 100
+   * @return The latency of the first row at that percentile
+   */
+  long getFirstRowMicros(String fingerprint, double percentile);
+
+  /**
+   * @param fingerprint
+   *          The shape of a query
+   * @return The mean number of rows of the results fetched completely
+   */
+  double getMeanRows(String fingerprint);
+
+  /**
+   * @return A table of every shape, for a quick look
+   */
+  String report();
+
+  /**
+   * Discards every value recorded.
+   */
+  void reset();
+}
@@ -0,0 +1,225 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.byktol.jcr.qb.metrics;
+
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.RangeIterator;
+import javax.jcr.RepositoryException;
+import javax.jcr.query.QueryResult;
+import javax.jcr.query.Row;
+import javax.jcr.query.RowIterator;
+
+/**
+ * Reports the first row of a result and its size, once fetched, to a
+ * {@link QueryListener}. The report happens once, for the first iterator
+ * asked for.
+ *
+ * @since 1.0
+ * @author Victor Alvarez
+ */
+final class InstrumentedQueryResult
+  implements QueryResult
+{
+
+  /** The result being instrumented. */
+  private final QueryResult result;
+
+  /** The listener being reported to. */
+  private final QueryListener listener;
+
+  /** The shape of the query. */
+  private final String fingerprint;
+
+  /** When the execution started, in nanoseconds. */
+  private final long start;
+
+  /** Whether an iterator is already reporting. */
+  private boolean reporting;
+
+  /**
+   * Constructor.
+   *
+   * @param result
+   *          The result being instrumented
+   * @param listener
+   *          The listener being reported to
+   * @param fingerprint
+   *          The shape of the query
+   * @param start
+   *          When the execution started, in nanoseconds
+   */
+  InstrumentedQueryResult(
+    final QueryResult result,
+    final QueryListener listener,
+    final String fingerprint,
+    final long start)
+  {
+    this.result = result;
+    this.listener = listener;
+    this.fingerprint = fingerprint;
+    this.start = start;
+  }
+
+  @Override
+  public String[] getColumnNames()
+    throws RepositoryException
+  {
+    return result.getColumnNames();
+  }
+
+  @Override
+  public RowIterator getRows()
+    throws RepositoryException
+  {
+    final RowIterator rows = result.getRows();
+
+    return report() ? new InstrumentedIterator(rows) : rows;
+  }
+
+  @Override
+  public NodeIterator getNodes()
+    throws RepositoryException
+  {
+    final NodeIterator nodes = result.getNodes();
+
+    return report() ? new InstrumentedIterator(nodes) : nodes;
+  }
+
+  @Override
+  public String[] getSelectorNames()
+    throws RepositoryException
+  {
+    return result.getSelectorNames();
+  }
+
+  /**
+   * @return Whether the next iterator has to report
+   */
+  private boolean report()
+  {
+    final boolean report = !reporting;
+    reporting = true;
+
+    return report;
+  }
+
+  /**
+   * Iterates over the rows or nodes, reporting the first one and the size.
+   *
+   * @since 1.0
+   * @author Victor Alvarez
+   */
+  private final class InstrumentedIterator
+    implements RowIterator, NodeIterator
+  {
+
+    /** The rows or nodes. */
+    private final RangeIterator iterator;
+
+    /** The number of rows fetched or skipped. */
+    private long count;
+
+    /** Whether the size was reported. */
+    private boolean done;
+
+    /**
+     * Constructor.
+     *
+     * @param iterator
+     *          The rows or nodes
+     */
+    InstrumentedIterator(final RangeIterator iterator)
+    {
+      this.iterator = iterator;
+    }
+
+    @Override
+    public boolean hasNext()
+    {
+      final boolean hasNext = iterator.hasNext();
+
+      if (!hasNext && !done)
+      {
+        done = true;
+        listener.onResult(fingerprint, count);
+      }
+
+      return hasNext;
+    }
+
+    @Override
+    public Object next()
+    {
+      final Object next = iterator.next();
+      fetched();
+
+      return next;
+    }
+
+    @Override
+    public Row nextRow()
+    {
+      final Row row = ((RowIterator) iterator).nextRow();
+      fetched();
+
+      return row;
+    }
+
+    @Override
+    public Node nextNode()
+    {
+      final Node node = ((NodeIterator) iterator).nextNode();
+      fetched();
+
+      return node;
+    }
+
+    @Override
+    public void skip(final long skipNum)
+    {
+      iterator.skip(skipNum);
+      count += skipNum;
+    }
+
+    @Override
+    public long getSize()
+    {
+      return iterator.getSize();
+    }
+
+    @Override
+    public long getPosition()
+    {
+      return iterator.getPosition();
+    }
+
+    @Override
+    public void remove()
+    {
+      iterator.remove();
+    }
+
+    /**
+     * Counts a row, reporting the first one.
+     */
+    private void fetched()
+    {
+      if (0 == count++)
+      {
+        listener.onFirstRow(fingerprint, System.nanoTime() - start);
+      }
+    }
+  }
+}
@@ -0,0 +1,49 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.byktol.jcr.qb.metrics;
+
+import java.util.Map;
+
+import javax.jcr.Session;
+
+/**
+ * Captures the execution plan of a slow query, where the repository
+ * supports it. It runs on the thread executing the query, since sessions
+ * aren't thread-safe, but only for the queries above the threshold.
+ *
+ * @see SlowQueryLog#setPlanCapture(PlanCapture)
+ * @since 1.0
+ * @author Victor Alvarez
+ */
+public interface PlanCapture
+{
+
+  /**
+   * @param session
+   *          The session the query was executed with
+   * @param statement
+   *          The statement of the query
+   * @param bindVariables
+   *          The values of the variables of the statement, by name, empty if
+   *          it has none
+   * @param language
+   *          The language of the statement
+   * @return The plan, or null if it cannot be captured
+   */
+  String capture(
+    Session session,
+    String statement,
+    Map<String, ?> bindVariables,
+    String language);
+}
@@ -0,0 +1,69 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.byktol.jcr.qb.metrics;
+
+/**
+ * Listens to the building and execution of every query, identified by the
+ * fingerprint of its shape, i.e. without its literal values. Implementations
+ * are called on the hot path of every request, so they must be fast and
+ * thread-safe.
+ *
+ * @see QueryMetrics#setListener(QueryListener)
+ * @see com.byktol.jcr.qb.criteria.impl.CriteriaImpl#fingerprint(boolean)
+ * @since 1.0
+ * @author Victor Alvarez
+ */
+public interface QueryListener
+{
+
+  /**
+   * A query was built.
+   *
+   * @param fingerprint
+   *          The shape of the query
+   * @param nanos
+   *          How long it took to build it
+   */
+  void onBuild(String fingerprint, long nanos);
+
+  /**
+   * A query was executed, although its rows may not have been fetched yet.
+   *
+   * @param fingerprint
+   *          The shape of the query
+   * @param nanos
+   *          How long it took to execute it
+   */
+  void onExecute(String fingerprint, long nanos);
+
+  /**
+   * The first row of a result was fetched.
+   *
+   * @param fingerprint
+   *          The shape of the query
+   * @param nanos
+   *          How long it took since the execution started
+   */
+  void onFirstRow(String fingerprint, long nanos);
+
+  /**
+   * Every row of a result was fetched.
+   *
+   * @param fingerprint
+   *          The shape of the query
+   * @param count
+   *          The number of rows
+   */
+  void onResult(String fingerprint, long count);
+}
@@ -0,0 +1,77 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.byktol.jcr.qb.metrics;
+
+import javax.jcr.query.QueryResult;
+
+/**
+ * Holds the {@link QueryListener}, if any. Without one, the instrumentation
+ * costs a single volatile read per query.
+ *
+ * @since 1.0
+ * @author Victor Alvarez
+ */
+public final class QueryMetrics
+{
+
+  /** The listener, null when disabled. */
+  private static volatile QueryListener listener;
+
+  /** Utility class. Private constructor. */
+  private QueryMetrics()
+  {
+    // nothing here
+  }
+
+  /**
+   * @return The listener, or null when the instrumentation is disabled
+   */
+  public static QueryListener getListener()
+  {
+    return listener;
+  }
+
+  /**
+   * @param queryListener
+   *          The listener of every query, null to disable the
+   *          instrumentation
+   */
+  public static void setListener(final QueryListener queryListener)
+  {
+    listener = queryListener;
+  }
+
+  /**
+   * Wraps a result to report its first row and its size when fetched.
+   *
+   * @param result
+   *          The result of a query
+   * @param queryListener
+   *          The listener to report to
+   * @param fingerprint
+   *          The shape of the query
+   * @param start
+   *          When the execution started, in nanoseconds
+   * @return The instrumented result
+   */
+  public static QueryResult instrument(
+    final QueryResult result,
+    final QueryListener queryListener,
+    final String fingerprint,
+    final long start)
+  {
+    return new InstrumentedQueryResult(result, queryListener, fingerprint,
+      start);
+  }
+}
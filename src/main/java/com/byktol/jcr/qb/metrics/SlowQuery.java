@@ -0,0 +1,182 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.byktol.jcr.qb.metrics;
+
+import java.util.Map;
+
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * A query recorded by the {@link SlowQueryLog}.
+ *
+ * @since 1.0
+ * @author Victor Alvarez
+ */
+public final class SlowQuery
+{
+
+  /** When the query was recorded, in milliseconds since the epoch. */
+  private final long timestamp;
+
+  /** The rendered statement. */
+  private final String statement;
+
+  /** The values of the variables of the statement, by name. */
+  private final Map<String, Object> bindVariables;
+
+  /** The shape of the query. */
+  private final String fingerprint;
+
+  /** The restrictions and orders of the query. */
+  private final String criteria;
+
+  /** How long the execution took, in nanoseconds. */
+  private final long nanos;
+
+  /** The plan of the query, null if not captured. */
+  private final String plan;
+
+  /** The number of rows, -1 until they're fetched. */
+  private volatile long size = -1;
+
+  /**
+   * Constructor.
+   *
+   * @param statement
+   *          The rendered statement
+   * @param bindVariables
+   *          The values of the variables of the statement, by name
+   * @param fingerprint
+   *          The shape of the query
+   * @param criteria
+   *          The restrictions and orders of the query
+   * @param nanos
+   *          How long the execution took, in nanoseconds
+   * @param plan
+   *          The plan of the query, null if not captured
+   */
+  SlowQuery(
+    final String statement,
+    final Map<String, ?> bindVariables,
+    final String fingerprint,
+    final String criteria,
+    final long nanos,
+    final String plan)
+  {
+    this.timestamp = System.currentTimeMillis();
+    this.statement = statement;
+    this.bindVariables = ImmutableMap.<String, Object>copyOf(bindVariables);
+    this.fingerprint = fingerprint;
+    this.criteria = criteria;
+    this.nanos = nanos;
+    this.plan = plan;
+  }
+
+  /**
+   * @return When the query was recorded, in milliseconds since the epoch
+   */
+  public long getTimestamp()
+  {
+    return timestamp;
+  }
+
+  /**
+   * @return The rendered statement
+   */
+  public String getStatement()
+  {
+    return statement;
+  }
+
+  /**
+   * @return The values of the variables of the statement, by name, empty if
+   *         it has none
+   */
+  public Map<String, Object> getBindVariables()
+  {
+    return bindVariables;
+  }
+
+  /**
+   * @return The shape of the query
+   */
+  public String getFingerprint()
+  {
+    return fingerprint;
+  }
+
+  /**
+   * @return The restrictions and orders of the query
+   */
+  public String getCriteria()
+  {
+    return criteria;
+  }
+
+  /**
+   * @return How long the execution took, in nanoseconds
+   */
+  public long getNanos()
+  {
+    return nanos;
+  }
+
+  /**
+   * @return The plan of the query, null if not captured
+   */
+  public String getPlan()
+  {
+    return plan;
+  }
+
+  /**
+   * @return The number of rows, -1 until they're fetched
+   */
+  public long getSize()
+  {
+    return size;
+  }
+
+  /**
+   * @param size
+   *          The number of rows
+   */
+  void setSize(final long size)
+  {
+    this.size = size;
+  }
+
+  @Override
+  public String toString()
+  {
+    final StringBuilder sb = new StringBuilder(256)
+      .append(nanos / 1000000).append("ms ").append(fingerprint)
+      .append(" rows=").append(-1 == size ? "?" : String.valueOf(size))
+      .append(' ').append(statement);
+
+    if (!bindVariables.isEmpty())
+    {
+      sb.append(' ').append(bindVariables);
+    }
+
+    sb.append(" criteria=").append(criteria);
+
+    if (null != plan)
+    {
+      sb.append(" plan=").append(plan);
+    }
+
+    return sb.toString();
+  }
+}
@@ -0,0 +1,276 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.byktol.jcr.qb.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.jcr.query.QueryResult;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Records the queries whose execution takes longer than a threshold: their
+ * rendered statement, fingerprint, criteria, number of rows and, optionally,
+ * their plan. The latest ones are kept in a bounded ring buffer, and every
+ * one is logged by a background thread, so the executing thread never waits
+ * for the log; when the log falls behind, records are dropped from the log
+ * rather than queued without bound. The number of rows is only known once
+ * they're fetched, so it may be missing from the log but not from the ring
+ * buffer.
+ *
+ * @see com.byktol.jcr.qb.QueryBuilder#setSlowQueryLog(SlowQueryLog)
+ * @since 1.0
+ * @author Victor Alvarez
+ */
+public class SlowQueryLog
+{
+
+  /** The name of the logger the queries are logged to. */
+  public static final String LOGGER = "com.byktol.jcr.qb.slow";
+
+  /** The threshold, in nanoseconds. */
+  private final long threshold;
+
+  /** The latest slow queries. */
+  private final AtomicReferenceArray<SlowQuery> ring;
+
+  /** The number of slow queries recorded. */
+  private final AtomicLong recorded = new AtomicLong();
+
+  /** The number of slow queries dropped from the log. */
+  private final AtomicLong dropped = new AtomicLong();
+
+  /** The logger the queries are logged to. */
+  private final Logger logger;
+
+  /** The background thread logging the queries. */
+  private final ThreadPoolExecutor executor;
+
+  /** Captures the plan of the queries, null if it isn't captured. */
+  private volatile PlanCapture planCapture;
+
+  /**
+   * Constructor.
+   *
+   * @param threshold
+   *          The execution time above which a query is slow
+   * @param unit
+   *          The unit of the threshold
+   * @param capacity
+   *          The number of slow queries kept, and waiting to be logged
+   */
+  public SlowQueryLog(
+    final long threshold,
+    final TimeUnit unit,
+    final int capacity)
+  {
+    this(threshold, unit, capacity, Logger.getLogger(LOGGER));
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param threshold
+   *          The execution time above which a query is slow
+   * @param unit
+   *          The unit of the threshold
+   * @param capacity
+   *          The number of slow queries kept, and waiting to be logged
+   * @param logger
+   *          The logger the queries are logged to
+   */
+  public SlowQueryLog(
+    final long threshold,
+    final TimeUnit unit,
+    final int capacity,
+    final Logger logger)
+  {
+    if (capacity <= 0)
+    {
+      throw new IllegalArgumentException("capacity must be positive");
+    }
+
+    this.threshold = unit.toNanos(threshold);
+    this.ring = new AtomicReferenceArray<SlowQuery>(capacity);
+    this.logger = logger;
+    this.executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+      new ArrayBlockingQueue<Runnable>(capacity),
+      new ThreadFactoryBuilder().setDaemon(true)
+        .setNameFormat("jcr-qb-slow-query-log-%d").build());
+  }
+
+  /**
+   * @param nanos
+   *          The execution time of a query
+   * @return Whether the query is slow
+   */
+  public boolean isSlow(final long nanos)
+  {
+    return nanos >= threshold;
+  }
+
+  /**
+   * Records a slow query.
+   *
+   * @param statement
+   *          The rendered statement
+   * @param bindVariables
+   *          The values of the variables of the statement, by name, empty if
+   *          it has none
+   * @param fingerprint
+   *          The shape of the query
+   * @param criteria
+   *          The restrictions and orders of the query
+   * @param nanos
+   *          How long the execution took, in nanoseconds
+   * @param plan
+   *          The plan of the query, null if not captured
+   * @return The record, whose number of rows is set once they're fetched
+   */
+  public SlowQuery record(
+    final String statement,
+    final Map<String, ?> bindVariables,
+    final String fingerprint,
+    final String criteria,
+    final long nanos,
+    final String plan)
+  {
+    final SlowQuery query =
+      new SlowQuery(statement, bindVariables, fingerprint, criteria, nanos,
+        plan);
+
+    ring.set((int) (recorded.getAndIncrement() % ring.length()), query);
+
+    try
+    {
+      executor.execute(new Runnable()
+      {
+        @Override
+        public void run()
+        {
+          logger.log(Level.WARNING, "slow query: {0}", query);
+        }
+      });
+    } catch (RejectedExecutionException e)
+    {
+      dropped.incrementAndGet();
+    }
+
+    return query;
+  }
+
+  /**
+   * Wraps the result of a slow query to set its number of rows once they're
+   * fetched.
+   *
+   * @param result
+   *          The result of the query
+   * @param query
+   *          The record of the query
+   * @return The wrapped result
+   */
+  public QueryResult track(final QueryResult result, final SlowQuery query)
+  {
+    return new InstrumentedQueryResult(result, new QueryListener()
+    {
+      @Override
+      public void onBuild(final String fingerprint, final long nanos)
+      {
+        // not reported
+      }
+
+      @Override
+      public void onExecute(final String fingerprint, final long nanos)
+      {
+        // not reported
+      }
+
+      @Override
+      public void onFirstRow(final String fingerprint, final long nanos)
+      {
+        // not recorded
+      }
+
+      @Override
+      public void onResult(final String fingerprint, final long count)
+      {
+        query.setSize(count);
+      }
+    }, query.getFingerprint(), 0);
+  }
+
+  /**
+   * @return The latest slow queries, the newest first
+   */
+  public List<SlowQuery> getEntries()
+  {
+    final long last = recorded.get();
+    final int length = ring.length();
+    final List<SlowQuery> entries = new ArrayList<SlowQuery>(length);
+
+    for (long i = last - 1; i >= 0 && i >= last - length; i--)
+    {
+      final SlowQuery query = ring.get((int) (i % length));
+      if (null != query)
+      {
+        entries.add(query);
+      }
+    }
+
+    return entries;
+  }
+
+  /**
+   * @return The number of slow queries dropped from the log
+   */
+  public long getDropped()
+  {
+    return dropped.get();
+  }
+
+  /**
+   * @return Captures the plan of the queries, null if it isn't captured
+   */
+  public PlanCapture getPlanCapture()
+  {
+    return planCapture;
+  }
+
+  /**
+   * @param planCapture
+   *          Captures the plan of the queries, null not to capture it
+   */
+  public void setPlanCapture(final PlanCapture planCapture)
+  {
+    this.planCapture = planCapture;
+  }
+
+  /**
+   * Stops the background thread once the pending queries are logged.
+   */
+  public void close()
+  {
+    executor.shutdown();
+  }
+}
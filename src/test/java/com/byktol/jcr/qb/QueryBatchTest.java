@@ -0,0 +1,191 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.byktol.jcr.qb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.List;
+
+import javax.jcr.Node;
+import javax.jcr.Property;
+import javax.jcr.PropertyType;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.Value;
+import javax.jcr.Workspace;
+import javax.jcr.query.Query;
+import javax.jcr.query.QueryManager;
+import javax.jcr.query.QueryResult;
+import javax.jcr.query.Row;
+import javax.jcr.query.RowIterator;
+
+import org.apache.jackrabbit.commons.iterator.RowIteratorAdapter;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.byktol.jcr.qb.criteria.Criteria;
+import com.byktol.jcr.qb.criteria.Order;
+import com.byktol.jcr.qb.criteria.Restrictions;
+import com.byktol.jcr.qb.impl.XPathQueryBuilder;
+
+/**
+ * Unit tests for {@link QueryBuilder#executeAll(List)}.
+ *
+ * @since 1.0
+ * @author Victor Alvarez
+ */
+public class QueryBatchTest
+{
+
+  /** The query manager of the mocked session. */
+  private QueryManager manager;
+
+  /** The builder being tested. */
+  private QueryBuilder builder;
+
+  /**
+   * Executes at the beginning of every test case. Mocks the session.
+   *
+   * @throws RepositoryException
+   *           Never, it's a mock
+   */
+  @Before
+  public final void setUp()
+    throws RepositoryException
+  {
+    final Session session = mock(Session.class);
+    final Workspace workspace = mock(Workspace.class);
+    manager = mock(QueryManager.class);
+    when(session.getWorkspace()).thenReturn(workspace);
+    when(workspace.getQueryManager()).thenReturn(manager);
+
+    builder = new XPathQueryBuilder(session);
+  }
+
+  /**
+   * Criteria of the same shape are coalesced into one query whose rows are
+   * routed back, the offset included, while a full-text search and a
+   * criteria with a limit are executed on their own.
+   *
+   * @throws RepositoryException
+   *           Never, unless the test fails
+   */
+  @Test
+  public final void testExecuteAll()
+    throws RepositoryException
+  {
+    final Row a1 = row("a");
+    final Row b1 = row("b");
+    final Row a2 = row("a");
+    final Row c1 = row("c");
+
+    final Query coalesced = mock(Query.class);
+    final QueryResult result = mock(QueryResult.class);
+    when(manager.createQuery("/jcr:root/content//element(*,cq:Page)"
+      + "[(@type = 'a' or @type = 'b')] order by @title ascending",
+      Query.XPATH)).thenReturn(coalesced);
+    when(coalesced.execute()).thenReturn(result);
+    when(result.getColumnNames()).thenReturn(new String[0]);
+    when(result.getSelectorNames()).thenReturn(new String[0]);
+    when(result.getRows()).thenReturn(
+      new RowIteratorAdapter(Arrays.asList(a1, b1, a2, c1)));
+
+    final Query search = mock(Query.class);
+    final QueryResult found = mock(QueryResult.class);
+    when(manager.createQuery(
+      "/jcr:root/content//element(*,cq:Page)[jcr:contains(@title, 'x')]"
+      + " order by @title ascending", Query.XPATH)).thenReturn(search);
+    when(search.execute()).thenReturn(found);
+
+    final Query limited = mock(Query.class);
+    final QueryResult first = mock(QueryResult.class);
+    when(manager.createQuery("/jcr:root/content//element(*,cq:Page)"
+      + "[@type = 'c'] order by @title ascending", Query.XPATH))
+      .thenReturn(limited);
+    when(limited.execute()).thenReturn(first);
+
+    final List<QueryResult> results = builder.executeAll(Arrays.asList(
+      page().add(Restrictions.eq("type", "a")).setOffset(1),
+      page().add(Restrictions.contains("title", "x")),
+      page().add(Restrictions.eq("type", "b")),
+      page().add(Restrictions.eq("type", "c")).setLimit(1)));
+
+    assertEquals(4, results.size());
+    assertRows(results.get(0), a2);
+    assertSame(found, results.get(1));
+    assertRows(results.get(2), b1);
+    assertSame(first, results.get(3));
+    verify(coalesced, times(1)).execute();
+    verify(limited).setLimit(1);
+  }
+
+  /**
+   * @return A new criteria of the shape being coalesced
+   */
+  private Criteria page()
+  {
+    return builder.createCriteria().setPath("/content")
+      .setNodeType("cq:Page").addOrder(Order.asc("title"));
+  }
+
+  /**
+   * @param type
+   *          The value of the "type" property of the node
+   * @return A row of the node
+   * @throws RepositoryException
+   *           Never, they're mocks
+   */
+  private static Row row(final String type)
+    throws RepositoryException
+  {
+    final Value value = mock(Value.class);
+    when(value.getType()).thenReturn(PropertyType.STRING);
+    when(value.getString()).thenReturn(type);
+    final Property property = mock(Property.class);
+    when(property.getValue()).thenReturn(value);
+    final Node node = mock(Node.class);
+    when(node.hasProperty("type")).thenReturn(true);
+    when(node.getProperty("type")).thenReturn(property);
+    final Row row = mock(Row.class);
+    when(row.getNode()).thenReturn(node);
+
+    return row;
+  }
+
+  /**
+   * @param result
+   *          A routed result
+   * @param rows
+   *          The rows it must have, in order
+   * @throws RepositoryException
+   *           Never, they're mocks
+   */
+  private static void assertRows(final QueryResult result, final Row... rows)
+    throws RepositoryException
+  {
+    final RowIterator it = result.getRows();
+    assertEquals(rows.length, it.getSize());
+    for (Row row : rows)
+    {
+      assertSame(row, it.nextRow());
+    }
+  }
+
+}
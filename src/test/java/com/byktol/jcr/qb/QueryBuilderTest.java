@@ -0,0 +1,222 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.byktol.jcr.qb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.Value;
+import javax.jcr.ValueFactory;
+import javax.jcr.Workspace;
+import javax.jcr.query.Query;
+import javax.jcr.query.QueryManager;
+import javax.jcr.query.QueryResult;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.byktol.jcr.qb.criteria.Criteria;
+import com.byktol.jcr.qb.criteria.Restrictions;
+import com.byktol.jcr.qb.impl.Sql2QueryBuilder;
+import com.byktol.jcr.qb.impl.XPathQueryBuilder;
+
+/**
+ * Unit tests for the execution path of {@link QueryBuilder}.
+ *
+ * @since 1.0
+ * @author Victor Alvarez
+ */
+public class QueryBuilderTest
+{
+
+  /** The mocked session. */
+  private Session session;
+
+  /** The query manager of the mocked session. */
+  private QueryManager manager;
+
+  /** The builder being tested. */
+  private QueryBuilder builder;
+
+  /**
+   * Executes at the beginning of every test case. Mocks the session.
+   *
+   * @throws RepositoryException
+   *           Never, it's a mock
+   */
+  @Before
+  public final void setUp()
+    throws RepositoryException
+  {
+    session = mock(Session.class);
+    final Workspace workspace = mock(Workspace.class);
+    manager = mock(QueryManager.class);
+    when(session.getWorkspace()).thenReturn(workspace);
+    when(workspace.getQueryManager()).thenReturn(manager);
+
+    builder = new XPathQueryBuilder(session);
+  }
+
+  /**
+   * The limit and offset are applied to the query, which is executed.
+   *
+   * @throws RepositoryException
+   *           Never, unless the test fails
+   */
+  @Test
+  public final void testExecute()
+    throws RepositoryException
+  {
+    final Query query = mock(Query.class);
+    final QueryResult result = mock(QueryResult.class);
+    when(manager.createQuery("/jcr:root//element(*)[@prop = 'value']",
+      Query.XPATH)).thenReturn(query);
+    when(query.execute()).thenReturn(result);
+
+    final Criteria criteria = builder.createCriteria()
+      .add(Restrictions.eq("prop", "value")).setLimit(10).setOffset(20);
+
+    assertSame(result, builder.execute(criteria));
+    verify(query).setLimit(10);
+    verify(query).setOffset(20);
+  }
+
+  /**
+   * Executing the same statement reuses the prepared query, but a different
+   * limit doesn't, and no limit means the query isn't limited at all.
+   *
+   * @throws RepositoryException
+   *           Never, unless the test fails
+   */
+  @Test
+  public final void testStatementCache()
+    throws RepositoryException
+  {
+    final Query query = mock(Query.class);
+    final Query limited = mock(Query.class);
+    when(manager.createQuery("/jcr:root//element(*)", Query.XPATH))
+      .thenReturn(query, limited);
+
+    final Criteria criteria = builder.createCriteria();
+    builder.execute(criteria);
+    builder.execute(builder.createCriteria());
+    verify(query, times(2)).execute();
+    verify(query, never()).setLimit(anyLong());
+    verify(query, never()).setOffset(anyLong());
+
+    builder.execute(criteria.setLimit(5));
+    verify(limited).setLimit(5);
+    verify(limited).execute();
+    verify(manager, times(2)).createQuery("/jcr:root//element(*)",
+      Query.XPATH);
+
+    builder.clearStatementCache();
+    builder.execute(criteria);
+    verify(manager, times(3)).createQuery("/jcr:root//element(*)",
+      Query.XPATH);
+  }
+
+  /**
+   * The queries handed out aren't the prepared ones, so two criteria with the
+   * same statement keep their own values, while the prepared query is bound
+   * again on every execution.
+   *
+   * @throws RepositoryException
+   *           Never, unless the test fails
+   */
+  @Test
+  public final void testBindings()
+    throws RepositoryException
+  {
+    final ValueFactory factory = mock(ValueFactory.class);
+    final Value one = mock(Value.class);
+    final Value two = mock(Value.class);
+    when(session.getValueFactory()).thenReturn(factory);
+    when(factory.createValue("one")).thenReturn(one);
+    when(factory.createValue("two")).thenReturn(two);
+    final List<Query> created = new ArrayList<Query>();
+    when(manager.createQuery(anyString(), anyString())).thenAnswer(
+      new Answer<Query>()
+      {
+        @Override
+        public Query answer(final InvocationOnMock invocation)
+        {
+          final Query query = mock(Query.class);
+          created.add(query);
+          return query;
+        }
+      });
+
+    final QueryBuilder sql2 = new Sql2QueryBuilder(session);
+    final Criteria first =
+      sql2.createCriteria().add(Restrictions.eq("prop", "one"));
+    final Criteria second =
+      sql2.createCriteria().add(Restrictions.eq("prop", "two"));
+
+    final Query q1 = sql2.createQuery(first);
+    final Query q2 = sql2.createQuery(second);
+    assertNotSame(q1, q2);
+    verify(q1).bindValue("v1", one);
+    verify(q1, never()).bindValue("v1", two);
+    verify(q2).bindValue("v1", two);
+
+    sql2.execute(first);
+    sql2.execute(second);
+    assertEquals(3, created.size());
+    final Query prepared = created.get(2);
+    final InOrder order = inOrder(prepared);
+    order.verify(prepared).bindValue("v1", one);
+    order.verify(prepared).execute();
+    order.verify(prepared).bindValue("v1", two);
+    order.verify(prepared).execute();
+  }
+
+  /**
+   * Contradictory restrictions aren't sent to the repository.
+   *
+   * @throws RepositoryException
+   *           Never, unless the test fails
+   */
+  @Test
+  public final void testContradiction()
+    throws RepositoryException
+  {
+    final Criteria criteria = builder.createCriteria().setOptimized(true);
+    criteria.add(Restrictions.gt("price", 10));
+    criteria.add(Restrictions.lt("price", 5));
+
+    final QueryResult result = builder.execute(criteria);
+
+    assertFalse(result.getNodes().hasNext());
+    verify(manager, never()).createQuery(anyString(), anyString());
+  }
+}
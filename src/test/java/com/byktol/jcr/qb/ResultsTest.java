@@ -0,0 +1,137 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.byktol.jcr.qb;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Iterator;
+
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.RepositoryException;
+import javax.jcr.Value;
+import javax.jcr.query.QueryResult;
+import javax.jcr.query.Row;
+import javax.jcr.query.RowIterator;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link Results}.
+ *
+ * @since 1.0
+ * @author Victor Alvarez
+ */
+public class ResultsTest
+{
+
+  /** The mocked result. */
+  private QueryResult result;
+
+  /** The views being tested. */
+  private Results results;
+
+  /**
+   * Executes at the beginning of every test case. Mocks the result.
+   */
+  @Before
+  public final void setUp()
+  {
+    result = mock(QueryResult.class);
+    results = new Results(result);
+  }
+
+  /**
+   * Nodes are pulled from the repository one at a time.
+   *
+   * @throws RepositoryException
+   *           Never, it's a mock
+   */
+  @Test
+  public final void testNodes()
+    throws RepositoryException
+  {
+    final Node first = mock(Node.class);
+    final NodeIterator nodes = mock(NodeIterator.class);
+    when(result.getNodes()).thenReturn(nodes);
+    when(nodes.hasNext()).thenReturn(true, true, false);
+    when(nodes.nextNode()).thenReturn(first);
+
+    final Iterator<Node> iterator = results.nodes().iterator();
+    assertSame(first, iterator.next());
+    assertSame(first, iterator.next());
+    assertFalse(iterator.hasNext());
+  }
+
+  /**
+   * Paths and projections are read from the rows, not from the nodes.
+   *
+   * @throws RepositoryException
+   *           Never, it's a mock
+   */
+  @Test
+  public final void testPathsAndProjection()
+    throws RepositoryException
+  {
+    final Row row = mock(Row.class);
+    final Value title = mock(Value.class);
+    when(row.getPath()).thenReturn("/content/a");
+    when(row.getValue("jcr:title")).thenReturn(title);
+
+    final RowIterator rows = mock(RowIterator.class);
+    when(result.getRows()).thenReturn(rows);
+    when(rows.hasNext()).thenReturn(true, false, true, false);
+    when(rows.nextRow()).thenReturn(row);
+
+    final Iterator<String> paths = results.paths().iterator();
+    assertEquals("/content/a", paths.next());
+    assertFalse(paths.hasNext());
+
+    final Iterator<Value[]> values =
+      results.project("jcr:title", "missing").iterator();
+    assertArrayEquals(new Value[] {title, null}, values.next());
+    assertFalse(values.hasNext());
+
+    verify(row, never()).getNode();
+    verify(result, never()).getNodes();
+  }
+
+  /**
+   * Repository errors surface as unchecked exceptions while iterating.
+   *
+   * @throws RepositoryException
+   *           Never, it's a mock
+   */
+  @Test(expected = IllegalStateException.class)
+  public final void testRepositoryException()
+    throws RepositoryException
+  {
+    final RowIterator rows = mock(RowIterator.class);
+    final Row row = mock(Row.class);
+    when(result.getRows()).thenReturn(rows);
+    when(rows.hasNext()).thenReturn(true);
+    when(rows.nextRow()).thenReturn(row);
+    when(row.getPath()).thenThrow(new RepositoryException());
+
+    results.paths().iterator().next();
+  }
+}
@@ -0,0 +1,304 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.byktol.jcr.qb.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.Workspace;
+import javax.jcr.observation.EventIterator;
+import javax.jcr.observation.EventListener;
+import javax.jcr.observation.ObservationManager;
+import javax.jcr.query.Query;
+import javax.jcr.query.QueryManager;
+import javax.jcr.query.QueryResult;
+import javax.jcr.query.Row;
+import javax.jcr.query.RowIterator;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.byktol.jcr.qb.QueryBuilder;
+import com.byktol.jcr.qb.criteria.Criteria;
+import com.byktol.jcr.qb.criteria.Restrictions;
+import com.byktol.jcr.qb.impl.XPathQueryBuilder;
+
+/**
+ * Unit tests for {@link ResultCache} through {@link QueryBuilder}.
+ *
+ * @since 1.0
+ * @author Victor Alvarez
+ */
+public class ResultCacheTest
+{
+
+  /** The query manager of the mocked session. */
+  private QueryManager manager;
+
+  /** The observation manager of the mocked session. */
+  private ObservationManager observation;
+
+  /** The query being executed. */
+  private Query query;
+
+  /** The session of the caller. */
+  private Session session;
+
+  /** The builder being tested. */
+  private QueryBuilder builder;
+
+  /**
+   * Executes at the beginning of every test case. Mocks the session, whose
+   * queries return a single row.
+   *
+   * @throws RepositoryException
+   *           Never, it's a mock
+   */
+  @Before
+  public final void setUp()
+    throws RepositoryException
+  {
+    session = mock(Session.class);
+    final Workspace workspace = mock(Workspace.class);
+    manager = mock(QueryManager.class);
+    observation = mock(ObservationManager.class);
+    when(session.getWorkspace()).thenReturn(workspace);
+    when(workspace.getName()).thenReturn("default");
+    when(workspace.getQueryManager()).thenReturn(manager);
+    when(workspace.getObservationManager()).thenReturn(observation);
+
+    query = mock(Query.class);
+    when(manager.createQuery(anyString(), anyString())).thenReturn(query);
+    when(query.execute()).thenAnswer(new Answer<Object>()
+    {
+      @Override
+      public Object answer(final InvocationOnMock i)
+        throws RepositoryException
+      {
+        return result("/content/x/a");
+      }
+    });
+
+    final Node node = mock(Node.class);
+    when(node.getPath()).thenReturn("/content/x/a");
+    when(session.nodeExists("/content/x/a")).thenReturn(true);
+    when(session.getNode("/content/x/a")).thenReturn(node);
+
+    builder = new XPathQueryBuilder(session);
+    builder.setResultCache(new ResultCache(session, 10, 1, TimeUnit.MINUTES));
+  }
+
+  /**
+   * A second execution reads the paths from the cache, until something
+   * changes in the scope of the query.
+   *
+   * @throws RepositoryException
+   *           Never, unless the test fails
+   */
+  @Test
+  public final void testHitAndInvalidation()
+    throws RepositoryException
+  {
+    final Criteria criteria = builder.createCriteria().setPath("/content/x")
+      .add(Restrictions.eq("prop", "value")).setLimit(10);
+
+    assertEquals("/content/x/a", firstPath(builder.execute(criteria)));
+    assertEquals("/content/x/a", firstPath(builder.execute(criteria)));
+    verify(query, times(1)).execute();
+
+    final ArgumentCaptor<EventListener> listener =
+      ArgumentCaptor.forClass(EventListener.class);
+    verify(observation).addEventListener(listener.capture(), anyInt(),
+      eq("/content/x"), eq(true), (String[]) isNull(), (String[]) isNull(),
+      eq(false));
+
+    listener.getValue().onEvent(mock(EventIterator.class));
+    builder.execute(criteria);
+    verify(query, times(2)).execute();
+  }
+
+  /**
+   * The results aren't shared between users, who may read different nodes.
+   *
+   * @throws RepositoryException
+   *           Never, unless the test fails
+   */
+  @Test
+  public final void testUsers()
+    throws RepositoryException
+  {
+    final Criteria criteria = builder.createCriteria().setLimit(10);
+
+    when(session.getUserID()).thenReturn("admin");
+    builder.execute(criteria);
+    builder.execute(criteria);
+    verify(query, times(1)).execute();
+
+    when(session.getUserID()).thenReturn("anonymous");
+    builder.execute(criteria);
+    verify(query, times(2)).execute();
+  }
+
+  /**
+   * A scope stops being observed once its last result is evicted.
+   *
+   * @throws RepositoryException
+   *           Never, unless the test fails
+   */
+  @Test
+  public final void testRelease()
+    throws RepositoryException
+  {
+    builder.setResultCache(new ResultCache(session, 1, 1, TimeUnit.MINUTES));
+    builder.execute(builder.createCriteria().setPath("/content/x")
+      .setLimit(10));
+
+    final ArgumentCaptor<EventListener> listener =
+      ArgumentCaptor.forClass(EventListener.class);
+    verify(observation).addEventListener(listener.capture(), anyInt(),
+      eq("/content/x"), eq(true), (String[]) isNull(), (String[]) isNull(),
+      eq(false));
+
+    builder.execute(builder.createCriteria().setPath("/content/y")
+      .setLimit(10));
+    verify(observation, never()).removeEventListener(listener.getValue());
+
+    builder.execute(builder.createCriteria().setPath("/content/y")
+      .setLimit(10));
+    verify(observation).removeEventListener(listener.getValue());
+  }
+
+  /**
+   * Property changes are only observed on the node type of the query when
+   * every restriction is on the node itself.
+   *
+   * @throws RepositoryException
+   *           Never, unless the test fails
+   */
+  @Test
+  public final void testNodeTypeScope()
+    throws RepositoryException
+  {
+    builder.execute(builder.createCriteria().setNodeType("cq:Page")
+      .add(Restrictions.exists("title")).setLimit(1));
+    verify(observation).addEventListener(any(EventListener.class), anyInt(),
+      eq("/"), eq(true), (String[]) isNull(), eq(new String[] {"cq:Page"}),
+      eq(false));
+
+    builder.execute(builder.createCriteria().setNodeType("cq:Page")
+      .add(Restrictions.exists("jcr:content/title")).setLimit(1));
+    verify(observation, times(2)).addEventListener(any(EventListener.class),
+      anyInt(), eq("/"), eq(true), (String[]) isNull(), (String[]) isNull(),
+      anyBoolean());
+  }
+
+  /**
+   * The scope of a frozen XPath criteria is on the decoded path too.
+   *
+   * @throws RepositoryException
+   *           Never, unless the test fails
+   */
+  @Test
+  public final void testFrozenScope()
+    throws RepositoryException
+  {
+    builder.execute(builder.createCriteria().setPath("/content/10")
+      .add(Restrictions.exists("title")).setLimit(1).freeze());
+    verify(observation).addEventListener(any(EventListener.class), anyInt(),
+      eq("/content/10"), eq(true), (String[]) isNull(), (String[]) isNull(),
+      eq(false));
+  }
+
+  /**
+   * Queries without a limit aren't cached, and the nodes the caller cannot
+   * read are skipped.
+   *
+   * @throws RepositoryException
+   *           Never, unless the test fails
+   */
+  @Test
+  public final void testUncached()
+    throws RepositoryException
+  {
+    final Criteria criteria = builder.createCriteria();
+    builder.execute(criteria);
+    builder.execute(criteria);
+    verify(query, times(2)).execute();
+
+    when(session.nodeExists("/content/x/a")).thenReturn(false);
+    final NodeIterator nodes = builder.execute(criteria.setLimit(5))
+      .getNodes();
+    assertFalse(nodes.hasNext());
+  }
+
+  /**
+   * @param path
+   *          The path of the only row
+   * @return A result of a single row
+   * @throws RepositoryException
+   *           Never, it's a mock
+   */
+  private static QueryResult result(final String path)
+    throws RepositoryException
+  {
+    final Row row = mock(Row.class);
+    when(row.getPath()).thenReturn(path);
+    final RowIterator rows = mock(RowIterator.class);
+    when(rows.hasNext()).thenReturn(true, false);
+    when(rows.nextRow()).thenReturn(row);
+    final QueryResult result = mock(QueryResult.class);
+    when(result.getRows()).thenReturn(rows);
+    when(result.getColumnNames()).thenReturn(new String[] {"jcr:path"});
+
+    return result;
+  }
+
+  /**
+   * @param result
+   *          A result
+   * @return The path of its first row
+   * @throws RepositoryException
+   *           If it cannot be read
+   */
+  private static String firstPath(final QueryResult result)
+    throws RepositoryException
+  {
+    final RowIterator rows = result.getRows();
+    final Row row = rows.nextRow();
+    assertSame(row.getNode(), row.getNode("s"));
+
+    return row.getPath();
+  }
+}
@@ -0,0 +1,211 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.byktol.jcr.qb.criteria;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.LinkedList;
+
+import javax.jcr.Node;
+import javax.jcr.Property;
+import javax.jcr.PropertyType;
+import javax.jcr.Value;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.byktol.jcr.qb.criteria.impl.XPathCriteria;
+
+/**
+ * Unit tests for {@link Keyset}.
+ *
+ * @since 1.0
+ * @author Victor Alvarez
+ */
+public class KeysetTest
+{
+
+  /** The criteria being paginated. */
+  private XPathCriteria criteria;
+
+  /**
+   * Executes at the beginning of every test case. Initiates variables.
+   */
+  @Before
+  public final void setUp()
+  {
+    criteria = new XPathCriteria(new LinkedList<Criterion>(),
+      new LinkedList<Order>());
+    criteria.addOrder(Order.desc("published"));
+    criteria.setLimit(10);
+    criteria.setOffset(30);
+  }
+
+  /**
+   * The first page only gets the tie-breaker and loses the offset.
+   */
+  @Test
+  public final void testFirstPage()
+  {
+    Keyset.seek(criteria, null);
+
+    assertEquals(0, criteria.getOffset());
+    assertEquals("/jcr:root//element(*)"
+      + " order by @published descending, @jcr:path ascending",
+      criteria.buildQuery());
+  }
+
+  /**
+   * The next page starts after the last row in the order's direction.
+   */
+  @Test
+  public final void testNextPage()
+  {
+    Keyset.seek(criteria, null);
+    final String token = Keyset.token(criteria.getOrders(), 5L, "/a/b");
+
+    Keyset.seek(criteria, token);
+
+    assertEquals(2, criteria.getOrders().size());
+    assertEquals("/jcr:root//element(*)[(@published < 5 or (@published = 5"
+      + " and @jcr:path > '/a/b'))]"
+      + " order by @published descending, @jcr:path ascending",
+      criteria.buildQuery());
+  }
+
+  /**
+   * The token is read from the last node of the page.
+   *
+   * @throws Exception
+   *           If something goes wrong
+   */
+  @Test
+  public final void testTokenFromNode() throws Exception
+  {
+    Keyset.seek(criteria, null);
+
+    final Value value = mock(Value.class);
+    when(value.getType()).thenReturn(PropertyType.LONG);
+    when(value.getLong()).thenReturn(5L);
+    final Property property = mock(Property.class);
+    when(property.getValue()).thenReturn(value);
+    final Node node = mock(Node.class);
+    when(node.getPath()).thenReturn("/a/b");
+    when(node.hasProperty("published")).thenReturn(true);
+    when(node.getProperty("published")).thenReturn(property);
+
+    assertEquals(Keyset.token(criteria.getOrders(), 5L, "/a/b"),
+      Keyset.token(criteria, node));
+  }
+
+  /**
+   * The properties of descendants are read through their relative path.
+   *
+   * @throws Exception
+   *           If something goes wrong
+   */
+  @Test
+  public final void testTokenFromChildNode() throws Exception
+  {
+    criteria.getOrders().clear();
+    criteria.addOrder(Order.asc("jcr:content/@rank"));
+    Keyset.seek(criteria, null);
+
+    final Value value = mock(Value.class);
+    when(value.getType()).thenReturn(PropertyType.LONG);
+    when(value.getLong()).thenReturn(5L);
+    final Property property = mock(Property.class);
+    when(property.getValue()).thenReturn(value);
+    final Node node = mock(Node.class);
+    when(node.getPath()).thenReturn("/a/b");
+    when(node.hasProperty("jcr:content/rank")).thenReturn(true);
+    when(node.getProperty("jcr:content/rank")).thenReturn(property);
+
+    assertEquals(Keyset.token(criteria.getOrders(), 5L, "/a/b"),
+      Keyset.token(criteria, node));
+  }
+
+  /**
+   * Multi-valued properties cannot be paginated on.
+   *
+   * @throws Exception
+   *           If something goes wrong
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public final void testMultiValuedToken() throws Exception
+  {
+    Keyset.seek(criteria, null);
+
+    final Property property = mock(Property.class);
+    when(property.isMultiple()).thenReturn(true);
+    final Node node = mock(Node.class);
+    when(node.hasProperty("published")).thenReturn(true);
+    when(node.getProperty("published")).thenReturn(property);
+
+    Keyset.token(criteria, node);
+  }
+
+  /**
+   * Nor can jcr:score, which cannot be restricted.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public final void testScore()
+  {
+    criteria.addOrder(Order.desc("jcr:score"));
+    Keyset.seek(criteria, null);
+  }
+
+  /**
+   * Tokens are opaque and survive any character.
+   */
+  @Test
+  public final void testOpaqueToken()
+  {
+    criteria.addOrder(Order.asc("title"));
+    Keyset.seek(criteria, null);
+    final String token = Keyset.token(criteria.getOrders(), 1.5, "it's: 10",
+      "/a");
+
+    assertFalse(token.contains("it"));
+    Keyset.seek(criteria, token);
+    assertEquals("/jcr:root//element(*)[(@published < 1.5"
+      + " or (@published = 1.5"
+      + " and @title > 'it''s: 10') or (@published = 1.5"
+      + " and @title = 'it''s: 10' and @jcr:path > '/a'))]"
+      + " order by @published descending, @title ascending,"
+      + " @jcr:path ascending", criteria.buildQuery());
+  }
+
+  /**
+   * A token from other orders is rejected.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public final void testForeignToken()
+  {
+    final String token = Keyset.token(criteria.getOrders(), 5L);
+    Keyset.seek(criteria, token);
+  }
+
+  /**
+   * A tampered token is rejected.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public final void testMalformedToken()
+  {
+    Keyset.seek(criteria, "zz");
+  }
+}
@@ -0,0 +1,72 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.byktol.jcr.qb.criteria;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import com.byktol.jcr.qb.criteria.expressions.SimpleExpression;
+
+/**
+ * Unit tests for {@link PropertyName}.
+ *
+ * @since 1.0
+ * @author Victor Alvarez
+ */
+public class PropertyNameTest
+{
+
+  /**
+   * A name is resolved into the form of every query language.
+   */
+  @Test
+  public final void testForms()
+  {
+    PropertyName property = PropertyName.of("jcr:title");
+    assertEquals("jcr:title", property.getName());
+    assertEquals("@jcr:title", property.getXPath());
+    assertEquals("jcr:title", property.getRelative());
+    assertEquals("s.[jcr:title]", property.getSql2());
+
+    property = PropertyName.of("jcr:content/@jcr:title");
+    assertEquals("jcr:content/@jcr:title", property.getXPath());
+    assertEquals("jcr:content/jcr:title", property.getRelative());
+    assertEquals("s.[jcr:content/jcr:title]", property.getSql2());
+  }
+
+  /**
+   * Restrictions and orders on the same name share it.
+   */
+  @Test
+  public final void testShared()
+  {
+    final SimpleExpression se =
+      (SimpleExpression) Restrictions.eq("published", 1);
+
+    assertSame(se.getProperty(), Order.desc("published").getProperty());
+    assertSame(PropertyName.of("published"), se.getProperty());
+  }
+
+  /**
+   * A name is required.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public final void testNull()
+  {
+    PropertyName.of(null);
+  }
+
+}
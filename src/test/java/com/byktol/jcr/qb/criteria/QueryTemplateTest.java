@@ -0,0 +1,144 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.byktol.jcr.qb.criteria;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+
+import org.apache.jackrabbit.util.ISO8601;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.byktol.jcr.qb.criteria.impl.XPathCriteria;
+
+/**
+ * Unit tests for {@link QueryTemplate} compiled from an {@link XPathCriteria}.
+ *
+ * @since 1.0
+ * @author Victor Alvarez
+ */
+public class QueryTemplateTest
+{
+
+  /** The criteria being compiled. */
+  private XPathCriteria criteria;
+
+  /**
+   * Executes at the beginning of every test case. Initiates variables.
+   */
+  @Before
+  public final void setUp()
+  {
+    criteria = new XPathCriteria(new LinkedList<Criterion>(),
+      new LinkedList<Order>());
+  }
+
+  /**
+   * A template without parameters renders the same query as the criteria.
+   */
+  @Test
+  public final void testNoParams()
+  {
+    criteria.add(Restrictions.eq("prop", "value"));
+    final QueryTemplate template = criteria.compile();
+
+    assertEquals(0, template.getParams().length);
+    assertEquals(criteria.buildQuery(),
+      template.bind(Collections.<String, Object>emptyMap()));
+  }
+
+  /**
+   * Binding escapes the values and renders them according to their type.
+   */
+  @Test
+  public final void testBind()
+  {
+    criteria.setPath("/content");
+    criteria.add(Restrictions.eq("sling:resourceType",
+      Restrictions.param("type", String.class)));
+    criteria.add(Restrictions.or(
+      Restrictions.ge("published", Restrictions.param("from")),
+      Restrictions.exists("pinned")));
+    criteria.addOrder(Order.desc("published"));
+
+    final QueryTemplate template = criteria.compile();
+    assertEquals("/jcr:root/content//element(*)[@sling:resourceType = :type"
+      + " and (@published >= :from or @pinned)] order by @published descending",
+      template.toString());
+
+    final Calendar from = Calendar.getInstance();
+    final Map<String, Object> values = new HashMap<String, Object>();
+    values.put("type", "it's");
+    values.put("from", from);
+    assertEquals("/jcr:root/content//element(*)[@sling:resourceType = 'it''s'"
+      + " and (@published >= xs:dateTime('" + ISO8601.format(from) + "')"
+      + " or @pinned)] order by @published descending",
+      template.bind(values));
+
+    // the same parameter can be bound to another value later on
+    values.put("from", 5L);
+    assertEquals("/jcr:root/content//element(*)[@sling:resourceType = 'it''s'"
+      + " and (@published >= 5 or @pinned)] order by @published descending",
+      template.bind(values));
+  }
+
+  /**
+   * Changing the criteria after compiling doesn't change the template.
+   */
+  @Test
+  public final void testTemplateIsImmutable()
+  {
+    criteria.add(Restrictions.eq("prop", Restrictions.param("p")));
+    final QueryTemplate template = criteria.compile();
+    criteria.add(Restrictions.exists("other"));
+
+    assertEquals("/jcr:root//element(*)[@prop = 1]",
+      template.bind(Collections.singletonMap("p", 1)));
+  }
+
+  /**
+   * Values of the wrong type are rejected.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public final void testBindWrongType()
+  {
+    criteria.add(Restrictions.eq("prop", Restrictions.param("p", Long.class)));
+    criteria.compile().bind(Collections.singletonMap("p", "1"));
+  }
+
+  /**
+   * Missing values are rejected.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public final void testBindMissingValue()
+  {
+    criteria.add(Restrictions.eq("prop", Restrictions.param("p")));
+    criteria.compile().bind(Collections.<String, Object>emptyMap());
+  }
+
+  /**
+   * A criteria with parameters cannot be built without binding them.
+   */
+  @Test(expected = IllegalStateException.class)
+  public final void testBuildQueryWithParam()
+  {
+    criteria.add(Restrictions.eq("prop", Restrictions.param("p")));
+    criteria.buildQuery();
+  }
+}
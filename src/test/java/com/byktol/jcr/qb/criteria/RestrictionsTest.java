@@ -0,0 +1,101 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.byktol.jcr.qb.criteria;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Calendar;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.byktol.jcr.qb.criteria.expressions.LogicalExpression;
+
+/**
+ * Unit tests for the interning of {@link Restrictions}.
+ *
+ * @since 1.0
+ * @author Victor Alvarez
+ */
+public class RestrictionsTest
+{
+
+  /**
+   * Executes at the end of every test case. Stops interning.
+   */
+  @After
+  public final void tearDown()
+  {
+    Restrictions.setInterning(false);
+  }
+
+  /**
+   * Nothing is interned by default.
+   */
+  @Test
+  public final void testDefault()
+  {
+    assertFalse(Restrictions.isInterning());
+    assertNotSame(Restrictions.eq("a", 1), Restrictions.eq("a", 1));
+  }
+
+  /**
+   * Equal immutable restrictions are the same object, and so are the groups
+   * of them.
+   */
+  @Test
+  public final void testInterning()
+  {
+    Restrictions.setInterning(true);
+
+    assertSame(Restrictions.eq("a", 1), Restrictions.eq("a", 1));
+    assertSame(Restrictions.exists("a"), Restrictions.exists("a"));
+    assertSame(Restrictions.contains("a", "v"),
+      Restrictions.contains("a", "v"));
+    assertNotSame(Restrictions.eq("a", 1), Restrictions.eq("a", 2));
+
+    final Criterion[] children =
+      {Restrictions.eq("a", 1), Restrictions.not(Restrictions.exists("b"))};
+    final Criterion and = Restrictions.and(children);
+    assertSame(and, Restrictions.and(Restrictions.eq("a", 1),
+      Restrictions.not(Restrictions.exists("b"))));
+
+    // the caller's array isn't shared
+    children[0] = Restrictions.exists("c");
+    assertSame(Restrictions.eq("a", 1),
+      ((LogicalExpression) and).getCriterion()[0]);
+  }
+
+  /**
+   * Mutable restrictions, or restrictions on mutable values, aren't
+   * interned.
+   */
+  @Test
+  public final void testMutable()
+  {
+    Restrictions.setInterning(true);
+
+    final Calendar date = Calendar.getInstance();
+    assertEquals(Restrictions.gt("a", date), Restrictions.gt("a", date));
+    assertNotSame(Restrictions.gt("a", date), Restrictions.gt("a", date));
+    assertNotSame(Restrictions.not(Restrictions.conjunction()),
+      Restrictions.not(Restrictions.conjunction()));
+    assertTrue(Restrictions.isImmutable(Restrictions.eq("a", "v")));
+    assertFalse(Restrictions.isImmutable(Restrictions.disjunction()));
+  }
+}
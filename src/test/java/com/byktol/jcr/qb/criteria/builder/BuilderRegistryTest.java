@@ -0,0 +1,213 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.byktol.jcr.qb.criteria.builder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+import java.util.LinkedList;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.byktol.jcr.qb.criteria.Criterion;
+import com.byktol.jcr.qb.criteria.CriterionVisitor;
+import com.byktol.jcr.qb.criteria.Order;
+import com.byktol.jcr.qb.criteria.Restrictions;
+import com.byktol.jcr.qb.criteria.builder.xpath.JackrabbitContext;
+import com.byktol.jcr.qb.criteria.expressions.ExistExpression;
+import com.byktol.jcr.qb.criteria.impl.XPathCriteria;
+
+/**
+ * Unit tests for {@link BuilderRegistry} and {@link BuilderDispatcher}.
+ *
+ * @since 1.0
+ * @author Victor Alvarez
+ */
+public class BuilderRegistryTest
+{
+
+  /** The default builder of {@link ExistExpression}s in XPath. */
+  private static final XPathCriterionBuilder EXISTS =
+    JackrabbitContext.getRegistry().get(ExistExpression.class);
+
+  /**
+   * Executes at the end of every test case. Restores the XPath builders.
+   */
+  @After
+  public final void tearDown()
+  {
+    JackrabbitContext.getRegistry().unregister(Flag.class);
+    JackrabbitContext.getRegistry().unregister(Raw.class);
+    JackrabbitContext.getRegistry().register(ExistExpression.class, EXISTS);
+  }
+
+  /**
+   * A subclass is built by the builder of its superclass, unless it has a
+   * builder of its own.
+   */
+  @Test
+  public final void testSubclass()
+  {
+    assertEquals("/jcr:root//element(*)[@hidden]",
+      criteria().add(new Flag("hidden")).buildQuery());
+
+    JackrabbitContext.getRegistry().register(Flag.class, new FlagBuilder());
+    assertEquals("/jcr:root//element(*)[@hidden = true]",
+      criteria().add(new Flag("hidden")).buildQuery());
+    assertEquals("/jcr:root//element(*)[@hidden]",
+      criteria().add(Restrictions.exists("hidden")).buildQuery());
+  }
+
+  /**
+   * A registration replaces the previous builder, and an unregistered type
+   * falls back to its superclass or to nothing at all.
+   */
+  @Test
+  public final void testRegister()
+  {
+    final BuilderRegistry<XPathCriterionBuilder> registry =
+      new BuilderRegistry<XPathCriterionBuilder>();
+    assertNull(registry.get(Flag.class));
+
+    final FlagBuilder builder = new FlagBuilder();
+    registry.register(ExistExpression.class, EXISTS);
+    assertSame(EXISTS, registry.get(Flag.class));
+
+    registry.register(Flag.class, builder);
+    assertSame(builder, registry.get(Flag.class));
+    assertSame(EXISTS, registry.get(ExistExpression.class));
+
+    assertSame(builder, registry.unregister(Flag.class));
+    assertSame(EXISTS, registry.get(Flag.class));
+  }
+
+  /**
+   * A criterion defined outside the library is visited as such, and built
+   * once its builder is registered.
+   */
+  @Test
+  public final void testCustom()
+  {
+    final Criterion raw = new Raw("fn:name() = 'a'");
+    assertEquals("/jcr:root//element(*)", criteria().add(raw).buildQuery());
+
+    JackrabbitContext.getRegistry().register(Raw.class,
+      new XPathCriterionBuilder()
+      {
+        @Override
+        public void buildXPath(
+          final Criterion criterion,
+          final Context context,
+          final Appendable xpath)
+          throws IOException
+        {
+          xpath.append(((Raw) criterion).predicate);
+        }
+      });
+    assertEquals("/jcr:root//element(*)[fn:name() = 'a' and @b]",
+      criteria().add(raw).add(Restrictions.exists("b")).buildQuery());
+  }
+
+  /**
+   * Junctions are built in XPath too.
+   */
+  @Test
+  public final void testJunction()
+  {
+    assertEquals("/jcr:root//element(*)[(@a or @b)]",
+      criteria().add(Restrictions.disjunction().add(Restrictions.exists("a"))
+        .add(Restrictions.exists("b"))).buildQuery());
+  }
+
+  /**
+   * @return A new, empty criteria
+   */
+  private static XPathCriteria criteria()
+  {
+    return new XPathCriteria(new LinkedList<Criterion>(),
+      new LinkedList<Order>());
+  }
+
+  /**
+   * A custom criterion, a boolean property that is set.
+   */
+  private static final class Flag
+    extends ExistExpression
+  {
+
+    /**
+     * Constructor.
+     *
+     * @param propertyName
+     *          The name of the flag
+     */
+    Flag(final String propertyName)
+    {
+      super(propertyName);
+    }
+  }
+
+  /**
+   * A custom criterion, a predicate written by hand.
+   */
+  private static final class Raw
+    implements Criterion
+  {
+
+    /** The predicate. */
+    private final String predicate;
+
+    /**
+     * Constructor.
+     *
+     * @param predicate
+     *          The predicate
+     */
+    Raw(final String predicate)
+    {
+      this.predicate = predicate;
+    }
+
+    @Override
+    public <R, P, X extends Exception> R accept(
+      final CriterionVisitor<R, P, X> visitor,
+      final P arg)
+      throws X
+    {
+      return visitor.visitOther(this, arg);
+    }
+  }
+
+  /**
+   * Builds a {@link Flag}.
+   */
+  private static final class FlagBuilder
+    implements XPathCriterionBuilder
+  {
+
+    @Override
+    public void buildXPath(
+      final Criterion criterion,
+      final Context context,
+      final Appendable xpath)
+      throws IOException
+    {
+      xpath.append('@').append(((Flag) criterion).getPropertyName())
+        .append(" = true");
+    }
+  }
+}
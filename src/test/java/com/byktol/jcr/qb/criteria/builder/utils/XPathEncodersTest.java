@@ -0,0 +1,169 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.byktol.jcr.qb.criteria.builder.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+
+import javax.jcr.Node;
+import javax.jcr.PropertyType;
+import javax.jcr.RepositoryException;
+import javax.jcr.Value;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link XPathEncoders} and {@link ValueEncoders}.
+ *
+ * @since 1.0
+ * @author Victor Alvarez
+ */
+public class XPathEncodersTest
+{
+
+  /**
+   * Quotation marks and apostrophes are doubled.
+   */
+  @Test
+  public final void testEscape()
+  {
+    assertEquals("'it''s a \"\"test\"\"'",
+      StringUtils.escapeString("it's a \"test\""));
+  }
+
+  /**
+   * Numbers, booleans and decimals.
+   */
+  @Test
+  public final void testNumbers()
+  {
+    assertEquals("42", XPathUtils.typedValue(42L));
+    assertEquals("7", XPathUtils.typedValue((short) 7));
+    assertEquals("1.5", XPathUtils.typedValue(1.5d));
+    assertEquals("1000", XPathUtils.typedValue(new BigDecimal("1E+3")));
+    assertEquals("true", XPathUtils.typedValue(Boolean.TRUE));
+  }
+
+  /**
+   * Infinite numbers have no literal.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public final void testNaN()
+  {
+    XPathUtils.typedValue(Double.NaN);
+  }
+
+  /**
+   * Calendars keep their time zone, dates take the default one, and the
+   * timestamps are cached.
+   */
+  @Test
+  public final void testDates()
+  {
+    final Calendar calendar =
+      new GregorianCalendar(TimeZone.getTimeZone("GMT-05:00"));
+    calendar.clear();
+    calendar.set(2012, Calendar.FEBRUARY, 2, 10, 0, 0);
+
+    final String expected = "xs:dateTime('2012-02-02T10:00:00.000-05:00')";
+    assertEquals(expected, XPathUtils.typedValue(calendar));
+    assertEquals(expected, XPathUtils.typedValue(calendar.clone()));
+
+    final TimeZone zone = TimeZone.getDefault();
+    try
+    {
+      TimeZone.setDefault(TimeZone.getTimeZone("UTC"));
+      assertEquals("xs:dateTime('2012-02-02T15:00:00.000Z')",
+        XPathUtils.typedValue(new Date(calendar.getTimeInMillis())));
+    } finally
+    {
+      TimeZone.setDefault(zone);
+    }
+
+    final TimestampCache cache = new TimestampCache();
+    final String first = cache.format(calendar);
+    assertSame(first, cache.format(calendar));
+    assertSame(first, cache.format(calendar.getTimeInMillis(), -18000000));
+  }
+
+  /**
+   * JCR values are written by their type, and nodes by their identifier.
+   *
+   * @throws RepositoryException
+   *           Never, they're mocks
+   */
+  @Test
+  public final void testJcr()
+    throws RepositoryException
+  {
+    final Value reference = mock(Value.class);
+    when(reference.getType()).thenReturn(PropertyType.REFERENCE);
+    when(reference.getString()).thenReturn("abc-123");
+    assertEquals("'abc-123'", XPathUtils.typedValue(reference));
+
+    final Value number = mock(Value.class);
+    when(number.getType()).thenReturn(PropertyType.LONG);
+    when(number.getLong()).thenReturn(5L);
+    assertEquals("5", XPathUtils.typedValue(number));
+
+    final Node node = mock(Node.class);
+    when(node.getIdentifier()).thenReturn("o'neil");
+    assertEquals("'o''neil'", XPathUtils.typedValue(node));
+  }
+
+  /**
+   * Other types are written by the encoder of their superclass or
+   * interface, or as they are.
+   *
+   * @throws IOException
+   *           Never, it's a StringBuilder
+   */
+  @Test
+  public final void testRegistry()
+    throws IOException
+  {
+    final ValueEncoders encoders = new ValueEncoders();
+    final StringBuilder sb = new StringBuilder();
+    encoders.encode(sb, new StringBuilder("raw"));
+    assertEquals("raw", sb.toString());
+
+    final ValueEncoder quoted = new ValueEncoder()
+    {
+      @Override
+      public void encode(final Appendable query, final Object value)
+        throws IOException
+      {
+        StringUtils.appendEscaped(query, value.toString());
+      }
+    };
+    encoders.register(CharSequence.class, quoted);
+    sb.setLength(0);
+    encoders.encode(sb, new StringBuilder("raw"));
+    assertEquals("'raw'", sb.toString());
+
+    assertSame(quoted, encoders.unregister(CharSequence.class));
+    assertNull(encoders.get(StringBuilder.class));
+  }
+
+}
@@ -14,10 +14,13 @@
 package com.byktol.jcr.qb.criteria.builder.utils;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 
 import java.util.Calendar;
+import java.util.Random;
 
 import org.apache.jackrabbit.util.ISO8601;
+import org.apache.jackrabbit.util.ISO9075;
 import org.junit.Test;
 
 import com.byktol.jcr.qb.criteria.builder.utils.XPathUtils;
@@ -61,6 +64,41 @@ public class XPathUtilsTest
     assertEquals(path, XPathUtils.encodePath(path));
   }
 
+  /**
+   * Tests the method {@link XPathUtils#encodePath(String)} encodes like
+   * JackRabbit does, and returns the same path when there's nothing to
+   * encode.
+   */
+  @Test
+  public final void testEncodePathParity()
+  {
+    final String valid = "/jcr:root/content/my-site/en_GB/page.html";
+    assertSame(valid, XPathUtils.encodePath(valid));
+
+    final String[] paths = {"/2010/11", "/a b/c[2]", "/_x0032_/_x00",
+      "/a/_x003g_", "/a[@b/c d]/e", "//-a/.b", "/ü/1", "/", "x_x0032_y",
+      "/a/b/", "[1]/2"};
+    for (String path : paths)
+    {
+      assertEquals(path, ISO9075.encodePath(path),
+        XPathUtils.encodePath(path));
+    }
+
+    final String alphabet = "/[]_x0aF:.-9 z\u00e9";
+    final Random random = new Random(9075);
+    for (int i = 0; i < 10000; i++)
+    {
+      final char[] chars = new char[random.nextInt(12)];
+      for (int j = 0; j < chars.length; j++)
+      {
+        chars[j] = alphabet.charAt(random.nextInt(alphabet.length()));
+      }
+      final String path = new String(chars);
+      assertEquals(path, ISO9075.encodePath(path),
+        XPathUtils.encodePath(path));
+    }
+  }
+
   /**
    * Tests the method {@link XPathUtils#prependSymbol(String)} with a null.
    * <strong>The method is not able to handle nulls.</strong>
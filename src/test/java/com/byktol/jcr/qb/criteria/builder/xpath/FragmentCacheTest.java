@@ -0,0 +1,169 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.byktol.jcr.qb.criteria.builder.xpath;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Calendar;
+import java.util.LinkedList;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.byktol.jcr.qb.criteria.Criterion;
+import com.byktol.jcr.qb.criteria.Order;
+import com.byktol.jcr.qb.criteria.Restrictions;
+import com.byktol.jcr.qb.criteria.builder.utils.ValueEncoder;
+import com.byktol.jcr.qb.criteria.builder.utils.ValueEncoders;
+import com.byktol.jcr.qb.criteria.builder.utils.XPathUtils;
+import com.byktol.jcr.qb.criteria.impl.XPathCriteria;
+
+/**
+ * Unit tests for {@link FragmentCache} and the value semantics of the
+ * restrictions it relies on.
+ *
+ * @since 1.0
+ * @author Victor Alvarez
+ */
+public class FragmentCacheTest
+{
+
+  /**
+   * Executes at the end of every test case. Disables the cache.
+   */
+  @After
+  public final void tearDown()
+  {
+    JackrabbitContext.setFragmentCache(null);
+  }
+
+  /**
+   * Restrictions built alike are equal, and have the same hash code.
+   */
+  @Test
+  public final void testEquals()
+  {
+    assertEquals(published(), published());
+    assertEquals(published().hashCode(), published().hashCode());
+    assertEquals(Restrictions.contains("a", "v"),
+      Restrictions.contains("a", "v"));
+    assertEquals(Restrictions.conjunction().add(Restrictions.exists("a")),
+      Restrictions.conjunction().add(Restrictions.exists("a")));
+
+    assertFalse(Restrictions.contains("a", "v")
+      .equals(Restrictions.like("a", "v")));
+    assertFalse(Restrictions.eq("a", 1).equals(Restrictions.notEq("a", 1)));
+    assertFalse(Restrictions.eq("a", 1).equals(Restrictions.eq("a", 2)));
+    assertFalse(Restrictions.not(Restrictions.exists("a"))
+      .equals(Restrictions.exists("a")));
+  }
+
+  /**
+   * A restriction reused across queries is rendered once.
+   */
+  @Test
+  public final void testCache()
+  {
+    final FragmentCache cache = new FragmentCache(100);
+    JackrabbitContext.setFragmentCache(cache);
+
+    final String query = criteria().add(published()).buildQuery();
+    final long size = cache.size();
+    assertTrue(size > 0);
+
+    assertEquals(query, criteria().add(published()).buildQuery());
+    assertEquals(size, cache.size());
+
+    JackrabbitContext.setFragmentCache(null);
+    assertEquals(query, criteria().add(published()).buildQuery());
+  }
+
+  /**
+   * Fragments rendered before an encoder is registered aren't served after.
+   */
+  @Test
+  public final void testRegistration()
+  {
+    JackrabbitContext.setFragmentCache(new FragmentCache(100));
+    final ValueEncoders encoders = XPathUtils.getValueEncoders();
+
+    assertTrue(criteria().add(Restrictions.eq("a", Color.RED)).buildQuery()
+      .contains("@a = RED"));
+
+    encoders.register(Color.class, new ValueEncoder()
+    {
+      @Override
+      public void encode(final Appendable query, final Object value)
+        throws IOException
+      {
+        query.append("'red'");
+      }
+    });
+    try
+    {
+      assertTrue(criteria().add(Restrictions.eq("a", Color.RED))
+        .buildQuery().contains("@a = 'red'"));
+    } finally
+    {
+      encoders.unregister(Color.class);
+    }
+
+    assertTrue(criteria().add(Restrictions.eq("a", Color.RED)).buildQuery()
+      .contains("@a = RED"));
+  }
+
+  /**
+   * Groups that can still be added to, mutable values and parameters aren't
+   * cached.
+   */
+  @Test
+  public final void testCacheable()
+  {
+    assertTrue(FragmentCache.isCacheable(published()));
+    assertFalse(FragmentCache.isCacheable(Restrictions.conjunction()));
+    assertFalse(FragmentCache.isCacheable(
+      Restrictions.gt("date", Calendar.getInstance())));
+    assertFalse(FragmentCache.isCacheable(Restrictions.not(
+      Restrictions.eq("a", Restrictions.param("a")))));
+  }
+
+  /**
+   * @return A new restriction on published, visible nodes
+   */
+  private static Criterion published()
+  {
+    return Restrictions.and(Restrictions.eq("published", true),
+      Restrictions.not(Restrictions.exists("hidden")));
+  }
+
+  /**
+   * @return A new, empty criteria
+   */
+  private static XPathCriteria criteria()
+  {
+    return new XPathCriteria(new LinkedList<Criterion>(),
+      new LinkedList<Order>());
+  }
+
+  /**
+   * A value the encoders know nothing about, until told.
+   */
+  private enum Color
+  {
+    RED
+  }
+}
@@ -0,0 +1,152 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.byktol.jcr.qb.criteria.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.LinkedList;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.byktol.jcr.qb.criteria.Criterion;
+import com.byktol.jcr.qb.criteria.Order;
+import com.byktol.jcr.qb.criteria.Restrictions;
+import com.byktol.jcr.qb.criteria.expressions.Junction;
+import com.byktol.jcr.qb.criteria.expressions.LogicalExpression;
+
+/**
+ * Unit tests for {@link FrozenCriteria}.
+ *
+ * @since 1.0
+ * @author Victor Alvarez
+ */
+public class FrozenCriteriaTest
+{
+
+  /** The query of the criteria being frozen. */
+  private static final String QUERY = "/jcr:root/content/_x0031_0//element(*"
+    + ",cq:Page)[@a = 1 and (@b or @c)] order by @d descending";
+
+  /** The criteria being frozen. */
+  private XPathCriteria criteria;
+
+  /** A group of restrictions of the criteria. */
+  private Junction junction;
+
+  /**
+   * Executes at the beginning of every test case. Initiates variables.
+   */
+  @Before
+  public final void setUp()
+  {
+    criteria = new XPathCriteria(new LinkedList<Criterion>(),
+      new LinkedList<Order>());
+    junction = Restrictions.disjunction();
+    junction.add(Restrictions.exists("b")).add(Restrictions.exists("c"));
+
+    criteria.setPath("/content/10").setNodeType("cq:Page").setLimit(5);
+    criteria.add(Restrictions.eq("a", 1)).add(junction);
+    criteria.addOrder(Order.desc("d"));
+  }
+
+  /**
+   * The frozen criteria builds the same query, once, and later changes to
+   * the original one don't affect it.
+   */
+  @Test
+  public final void testFreeze()
+  {
+    final FrozenCriteria frozen = criteria.freeze();
+
+    assertEquals(QUERY, frozen.buildQuery());
+    assertSame(frozen.buildQuery(), frozen.buildQuery());
+    assertEquals(5, frozen.getLimit());
+    assertSame(frozen, frozen.freeze());
+    assertEquals(criteria.fingerprint(true), frozen.fingerprint(true));
+    assertNull(frozen.buildStatement());
+
+    criteria.add(Restrictions.exists("e")).setLimit(10);
+    junction.add(Restrictions.exists("f"));
+
+    assertEquals(QUERY, frozen.buildQuery());
+    assertEquals(5, frozen.getLimit());
+    assertEquals(2, frozen.getCriterion().size());
+    assertEquals(2, ((Junction) frozen.getCriterion().get(1))
+      .getCriterionList().size());
+  }
+
+  /**
+   * A frozen criteria cannot be modified.
+   */
+  @Test(expected = UnsupportedOperationException.class)
+  public final void testAdd()
+  {
+    criteria.freeze().add(Restrictions.exists("e"));
+  }
+
+  /**
+   * Nor its lists.
+   */
+  @Test(expected = UnsupportedOperationException.class)
+  public final void testOrders()
+  {
+    criteria.freeze().getOrders().clear();
+  }
+
+  /**
+   * Nor its groups.
+   */
+  @Test(expected = UnsupportedOperationException.class)
+  public final void testGroups()
+  {
+    final FrozenCriteria frozen = criteria.freeze();
+    ((Junction) frozen.getCriterion().get(1)).add(Restrictions.exists("e"));
+  }
+
+  /**
+   * Nor the arrays of its logical expressions.
+   */
+  @Test
+  public final void testLogicalExpressions()
+  {
+    criteria.getCriterion().set(1,
+      Restrictions.or(Restrictions.exists("b"), Restrictions.exists("c")));
+    final FrozenCriteria frozen = criteria.freeze();
+
+    final LogicalExpression or =
+      (LogicalExpression) frozen.getCriterion().get(1);
+    or.getCriterion()[0] = Restrictions.exists("e");
+    assertEquals(Restrictions.exists("b"), or.getCriterionList().get(0));
+    assertEquals(QUERY, frozen.buildQuery());
+  }
+
+  /**
+   * The statement of a JCR-SQL2 criteria is built once too.
+   */
+  @Test
+  public final void testStatement()
+  {
+    final Sql2Criteria sql2 = new Sql2Criteria(new LinkedList<Criterion>(),
+      new LinkedList<Order>());
+    sql2.add(Restrictions.eq("a", "v"));
+    final FrozenCriteria frozen = sql2.freeze();
+
+    assertSame(frozen.buildStatement(), frozen.buildStatement());
+    assertEquals(sql2.buildStatement().getStatement(),
+      frozen.buildStatement().getStatement());
+  }
+}
@@ -0,0 +1,319 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.byktol.jcr.qb.criteria.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.RETURNS_MOCKS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.LinkedList;
+
+import javax.jcr.RepositoryException;
+import javax.jcr.Value;
+import javax.jcr.ValueFactory;
+import javax.jcr.query.Query;
+import javax.jcr.query.qom.And;
+import javax.jcr.query.qom.Column;
+import javax.jcr.query.qom.Comparison;
+import javax.jcr.query.qom.Constraint;
+import javax.jcr.query.qom.DescendantNode;
+import javax.jcr.query.qom.Literal;
+import javax.jcr.query.qom.Ordering;
+import javax.jcr.query.qom.PropertyExistence;
+import javax.jcr.query.qom.PropertyValue;
+import javax.jcr.query.qom.QueryObjectModel;
+import javax.jcr.query.qom.QueryObjectModelConstants;
+import javax.jcr.query.qom.QueryObjectModelFactory;
+import javax.jcr.query.qom.Selector;
+import javax.jcr.query.qom.Source;
+
+import org.apache.jackrabbit.util.ISO8601;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.byktol.jcr.qb.criteria.Criterion;
+import com.byktol.jcr.qb.criteria.Order;
+import com.byktol.jcr.qb.criteria.QueryTemplate;
+import com.byktol.jcr.qb.criteria.Restrictions;
+
+/**
+ * Unit tests for {@link Sql2Criteria}.
+ *
+ * @since 1.0
+ * @author Victor Alvarez
+ */
+public class Sql2CriteriaTest
+{
+
+  /** The criteria being tested. */
+  private Sql2Criteria criteria;
+
+  /**
+   * Executes at the beginning of every test case. Initiates variables.
+   */
+  @Before
+  public final void setUp()
+  {
+    criteria = new Sql2Criteria(new LinkedList<Criterion>(),
+      new LinkedList<Order>());
+  }
+
+  /**
+   * Tests the creation of a query with no parameters.
+   */
+  @Test
+  public final void testDefaultQuery()
+  {
+    assertEquals("SELECT * FROM ['nt:base'] AS s", criteria.buildQuery());
+  }
+
+  /**
+   * Paths with same-name siblings and apostrophes are quoted.
+   */
+  @Test
+  public final void testQuotedPath()
+  {
+    criteria.setPath("/content/a[2]/it's");
+    criteria.setNodeType("nt:unstructured");
+
+    assertEquals("SELECT * FROM ['nt:unstructured'] AS s"
+      + " WHERE ISDESCENDANTNODE(s, ['/content/a[2]/it''s'])",
+      criteria.buildQuery());
+  }
+
+  /**
+   * The columns selected replace the star, relative properties included.
+   */
+  @Test
+  public final void testColumns()
+  {
+    criteria.setColumns("jcr:title", "jcr:content/@jcr:created");
+
+    assertEquals("SELECT s.[jcr:title], s.[jcr:content/jcr:created]"
+      + " FROM ['nt:base'] AS s", criteria.buildQuery());
+
+    criteria.setColumns();
+    assertEquals("SELECT * FROM ['nt:base'] AS s", criteria.buildQuery());
+  }
+
+  /**
+   * Tests a query using every kind of criterion.
+   */
+  @Test
+  public final void testBuildStatement()
+  {
+    criteria.setPath("/content/2012");
+    criteria.setNodeType("cq:PageContent");
+    criteria.add(Restrictions.eq("sling:resourceType", "site/article"));
+    criteria.add(Restrictions.exists("jcr:content/@jcr:title"));
+    criteria.add(Restrictions.not(Restrictions.notEq("hidden", true)));
+    criteria.add(Restrictions.or(Restrictions.contains("jcr:title", "JCR"),
+      Restrictions.like("author", "Vic%")));
+    criteria.addOrder(Order.desc("published"));
+    criteria.addOrder(Order.asc("jcr:title"));
+
+    final Sql2Statement statement = criteria.buildStatement();
+    assertEquals("SELECT * FROM ['cq:PageContent'] AS s"
+      + " WHERE ISDESCENDANTNODE(s, ['/content/2012'])"
+      + " AND s.[sling:resourceType] = $v1"
+      + " AND s.[jcr:content/jcr:title] IS NOT NULL"
+      + " AND NOT (s.[hidden] <> $v2)"
+      + " AND (CONTAINS(s.[jcr:title], $v3) OR s.[author] LIKE $v4)"
+      + " ORDER BY s.[published] DESC, s.[jcr:title] ASC",
+      statement.getStatement());
+    assertEquals(statement.getStatement(), criteria.buildQuery());
+
+    assertEquals("[v1, v2, v3, v4]",
+      statement.getBindVariables().keySet().toString());
+    assertEquals("[site/article, true, JCR, Vic%]",
+      statement.getBindVariables().values().toString());
+    assertTrue(statement.getParamNames().isEmpty());
+  }
+
+  /**
+   * The statement doesn't change with the values.
+   */
+  @Test
+  public final void testStatementIsStable()
+  {
+    criteria.add(Restrictions.eq("prop", "one"));
+    final String first = criteria.buildQuery();
+
+    setUp();
+    criteria.add(Restrictions.eq("prop", 2L));
+    assertEquals(first, criteria.buildQuery());
+  }
+
+  /**
+   * Tests that literal values and parameters are bound to the query.
+   *
+   * @throws RepositoryException
+   *           Never, unless the test fails
+   */
+  @Test
+  public final void testBind()
+    throws RepositoryException
+  {
+    criteria.add(Restrictions.eq("prop", "value"));
+    criteria.add(Restrictions.gt("count", Restrictions.param("min")));
+
+    final Sql2Statement statement = criteria.buildStatement();
+    assertEquals("SELECT * FROM ['nt:base'] AS s WHERE s.[prop] = $v1"
+      + " AND s.[count] > $min", statement.getStatement());
+
+    final ValueFactory factory = mock(ValueFactory.class);
+    final Value string = mock(Value.class);
+    final Value number = mock(Value.class);
+    when(factory.createValue("value")).thenReturn(string);
+    when(factory.createValue(3L)).thenReturn(number);
+
+    final Query query = mock(Query.class);
+    statement.bind(query, factory, Collections.singletonMap("min", 3));
+    verify(query).bindValue("v1", string);
+    verify(query).bindValue("min", number);
+  }
+
+  /**
+   * Parameters must be given a value.
+   *
+   * @throws RepositoryException
+   *           Never, unless the test fails
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public final void testBindMissingParam()
+    throws RepositoryException
+  {
+    criteria.add(Restrictions.gt("count", Restrictions.param("min")));
+    criteria.buildStatement().bind(mock(Query.class),
+      mock(ValueFactory.class));
+  }
+
+  /**
+   * Tests that the query object model is built from the criteria, with the
+   * limit applied and no offset.
+   *
+   * @throws RepositoryException
+   *           Never, unless the test fails
+   */
+  @Test
+  public final void testBuildQueryObjectModel()
+    throws RepositoryException
+  {
+    criteria.setPath("/content");
+    criteria.setNodeType("cq:Page");
+    criteria.add(Restrictions.eq("prop", "value"));
+    criteria.add(Restrictions.exists("other"));
+    criteria.setLimit(10);
+
+    final QueryObjectModelFactory qf =
+      mock(QueryObjectModelFactory.class, RETURNS_MOCKS);
+    final ValueFactory vf = mock(ValueFactory.class);
+    final Value value = mock(Value.class);
+    when(vf.createValue("value")).thenReturn(value);
+
+    final Selector selector = mock(Selector.class);
+    when(qf.selector("cq:Page", "s")).thenReturn(selector);
+    final DescendantNode path = mock(DescendantNode.class);
+    when(qf.descendantNode("s", "/content")).thenReturn(path);
+    final PropertyValue prop = mock(PropertyValue.class);
+    when(qf.propertyValue("s", "prop")).thenReturn(prop);
+    final Literal literal = mock(Literal.class);
+    when(qf.literal(value)).thenReturn(literal);
+    final Comparison eq = mock(Comparison.class);
+    when(qf.comparison(prop, QueryObjectModelConstants.JCR_OPERATOR_EQUAL_TO,
+      literal)).thenReturn(eq);
+    final PropertyExistence exists = mock(PropertyExistence.class);
+    when(qf.propertyExistence("s", "other")).thenReturn(exists);
+    final And and = mock(And.class);
+    final And and2 = mock(And.class);
+    when(qf.and(eq, exists)).thenReturn(and);
+    when(qf.and(path, and)).thenReturn(and2);
+    final QueryObjectModel qom = mock(QueryObjectModel.class);
+    when(qf.createQuery(any(Source.class), any(Constraint.class),
+      any(Ordering[].class), any(Column[].class))).thenReturn(qom);
+
+    assertEquals(qom, criteria.buildQueryObjectModel(qf, vf));
+    verify(qf).createQuery(selector, and2, new Ordering[0], new Column[0]);
+    verify(qom).setLimit(10);
+    verify(qom, never()).setOffset(0);
+  }
+
+  /**
+   * A compiled statement inlines the literals and binds the parameters as
+   * literals too.
+   */
+  @Test
+  public final void testCompile()
+  {
+    criteria.setPath("/content");
+    criteria.add(Restrictions.eq("jcr:title", "it's"));
+    criteria.add(Restrictions.ge("published", Restrictions.param("from")));
+    criteria.add(Restrictions.lt("rank", 1.5));
+
+    final QueryTemplate template = criteria.compile();
+    assertEquals("SELECT * FROM ['nt:base'] AS s"
+      + " WHERE ISDESCENDANTNODE(s, ['/content'])"
+      + " AND s.[jcr:title] = 'it''s' AND s.[published] >= :from"
+      + " AND s.[rank] < CAST('1.5' AS DOUBLE)", template.toString());
+
+    final Calendar from = Calendar.getInstance();
+    assertEquals("SELECT * FROM ['nt:base'] AS s"
+      + " WHERE ISDESCENDANTNODE(s, ['/content'])"
+      + " AND s.[jcr:title] = 'it''s'"
+      + " AND s.[published] >= CAST('" + ISO8601.format(from) + "' AS DATE)"
+      + " AND s.[rank] < CAST('1.5' AS DOUBLE)",
+      template.bind(Collections.singletonMap("from", from)));
+    assertEquals("SELECT * FROM ['nt:base'] AS s"
+      + " WHERE ISDESCENDANTNODE(s, ['/content'])"
+      + " AND s.[jcr:title] = 'it''s' AND s.[published] >= 5"
+      + " AND s.[rank] < CAST('1.5' AS DOUBLE)",
+      template.bind(Collections.singletonMap("from", 5L)));
+  }
+
+  /**
+   * Integers too big for a long are kept whole, as decimals.
+   *
+   * @throws RepositoryException
+   *           Never, unless the test fails
+   */
+  @Test
+  public final void testBigInteger()
+    throws RepositoryException
+  {
+    final BigInteger big = BigInteger.valueOf(Long.MAX_VALUE).add(
+      BigInteger.ONE);
+    criteria.add(Restrictions.eq("count", big));
+
+    assertEquals("SELECT * FROM ['nt:base'] AS s"
+      + " WHERE s.[count] = CAST('9223372036854775808' AS DECIMAL)",
+      criteria.compile().toString());
+
+    final ValueFactory factory = mock(ValueFactory.class);
+    final Value decimal = mock(Value.class);
+    when(factory.createValue(new BigDecimal(big))).thenReturn(decimal);
+
+    final Query query = mock(Query.class);
+    criteria.buildStatement().bind(query, factory);
+    verify(query).bindValue("v1", decimal);
+  }
+}
@@ -20,6 +20,9 @@ import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.CharBuffer;
 import java.util.Calendar;
 import java.util.LinkedList;
 import java.util.List;
@@ -339,6 +342,84 @@ public class XPathCriteriaBuilderTest
     assertEquals("/jcr:root//element(*)", criteria.buildQuery());
   }
 
+  /**
+   * Unsupported {@link Criterion} are skipped without leaving a dangling
+   * operator behind.
+   */
+  @Test
+  public final void testBuildUnsupportedAmongSupportedCriterion()
+  {
+    criteria.add(mock(Criterion.class));
+    criteria.add(Restrictions.exists("title"));
+    criteria.add(mock(Criterion.class));
+
+    assertEquals("/jcr:root//element(*)[@title]", criteria.buildQuery());
+  }
+
+  /**
+   * Test method {@link XPathCriteria#buildQuery(Appendable)} with different
+   * kinds of {@link Appendable}.
+   *
+   * @throws IOException
+   *           Never, unless the test fails
+   */
+  @Test
+  public final void testBuildQueryIntoAppendable()
+    throws IOException
+  {
+    criteria.setPath("/content");
+    criteria.add(Restrictions.eq("count", 5));
+    criteria.add(Restrictions.eq("flag", true));
+    criteria.addOrder(Order.asc("count"));
+    final String expected = criteria.buildQuery();
+    assertEquals("/jcr:root/content//element(*)[@count = 5 and @flag = true]"
+      + " order by @count ascending", expected);
+
+    final StringBuilder sb = new StringBuilder("query: ");
+    assertSame(sb, criteria.buildQuery(sb));
+    assertEquals("query: " + expected, sb.toString());
+
+    final StringWriter writer = criteria.buildQuery(new StringWriter());
+    assertEquals(expected, writer.toString());
+
+    final CharBuffer buffer = CharBuffer.allocate(expected.length());
+    criteria.buildQuery(buffer).flip();
+    assertEquals(expected, buffer.toString());
+  }
+
+  /**
+   * The restrictions are optimized once for as long as the criteria doesn't
+   * change, and again once it does.
+   */
+  @Test
+  public final void testOptimizedOnce()
+  {
+    criteria.setOptimized(true);
+    criteria.add(Restrictions.eq("a", 1));
+
+    final List<Criterion> optimized = criteria.toProp().getCriterion();
+    assertFalse(criteria.isContradiction());
+    criteria.buildQuery();
+    assertSame(optimized, criteria.toProp().getCriterion());
+
+    criteria.add(Restrictions.eq("a", 2));
+    assertTrue(criteria.isContradiction());
+  }
+
+  /**
+   * The columns selected are a trailing step, before the orders.
+   */
+  @Test
+  public final void testColumns()
+  {
+    criteria.add(Restrictions.exists("title"));
+    criteria.addOrder(Order.asc("title"));
+    criteria.setColumns("title", "jcr:created");
+
+    assertEquals("/jcr:root//element(*)[@title]/(@title | @jcr:created)"
+      + " order by @title ascending", criteria.buildQuery());
+  }
+
   /**
    * Test method {@link XPathCriteria#addOrder(Order)}.
    */
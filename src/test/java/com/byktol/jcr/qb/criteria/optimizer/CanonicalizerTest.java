@@ -0,0 +1,206 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.byktol.jcr.qb.criteria.optimizer;
+
+import static com.byktol.jcr.qb.criteria.Restrictions.and;
+import static com.byktol.jcr.qb.criteria.Restrictions.eq;
+import static com.byktol.jcr.qb.criteria.Restrictions.exists;
+import static com.byktol.jcr.qb.criteria.Restrictions.gt;
+import static com.byktol.jcr.qb.criteria.Restrictions.or;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.Calendar;
+import java.util.LinkedList;
+import java.util.TimeZone;
+
+import org.junit.Test;
+
+import com.byktol.jcr.qb.criteria.Criterion;
+import com.byktol.jcr.qb.criteria.CriterionVisitor;
+import com.byktol.jcr.qb.criteria.Order;
+import com.byktol.jcr.qb.criteria.impl.Sql2Criteria;
+import com.byktol.jcr.qb.criteria.impl.XPathCriteria;
+
+/**
+ * Unit tests for {@link Canonicalizer}.
+ *
+ * @since 1.0
+ * @author Victor Alvarez
+ */
+public class CanonicalizerTest
+{
+
+  /**
+   * The order restrictions are added in doesn't matter.
+   */
+  @Test
+  public final void testOrderIndependent()
+  {
+    final XPathCriteria a = criteria();
+    a.add(or(eq("b", 2), and(exists("c"), gt("a", 1))));
+    a.add(eq("a", 1));
+
+    final XPathCriteria b = criteria();
+    b.add(eq("a", 1L));
+    b.add(or(and(gt("a", 1), exists("c")), eq("b", 2)));
+
+    assertEquals(a.buildQuery(), b.buildQuery());
+    assertEquals("/jcr:root//element(*)[@a = 1 and"
+      + " (@b = 2 or (@a > 1 and @c))]", a.buildQuery());
+    assertEquals(a.fingerprint(true), b.fingerprint(true));
+  }
+
+  /**
+   * Nested groups of the same operator are flattened.
+   */
+  @Test
+  public final void testFlatten()
+  {
+    final XPathCriteria a = criteria();
+    a.add(and(exists("b"), and(exists("c"), exists("a"))));
+
+    assertEquals("/jcr:root//element(*)[@a and @b and @c]", a.buildQuery());
+  }
+
+  /**
+   * Dates are moved to UTC.
+   */
+  @Test
+  public final void testDates()
+  {
+    final Calendar date = Calendar.getInstance(TimeZone.getTimeZone("GMT+2"));
+    date.setTimeInMillis(0);
+
+    final XPathCriteria a = criteria();
+    a.add(gt("published", date));
+
+    assertEquals("/jcr:root//element(*)[@published > xs:dateTime("
+      + "'1970-01-01T00:00:00.000Z')]", a.buildQuery());
+  }
+
+  /**
+   * The shape fingerprint ignores the values, but not the language nor the
+   * structure.
+   */
+  @Test
+  public final void testFingerprints()
+  {
+    final XPathCriteria a = criteria();
+    a.add(eq("a", 1)).add(exists("b"));
+    final XPathCriteria b = criteria();
+    b.add(exists("b")).add(eq("a", 2));
+    final Sql2Criteria c = new Sql2Criteria(new LinkedList<Criterion>(),
+      new LinkedList<Order>());
+    c.add(eq("a", 1)).add(exists("b"));
+
+    assertEquals(a.fingerprint(false), b.fingerprint(false));
+    assertFalse(a.fingerprint(true).equals(b.fingerprint(true)));
+    assertFalse(a.fingerprint(false).equals(c.fingerprint(false)));
+
+    b.addOrder(Order.asc("a"));
+    assertFalse(a.fingerprint(false).equals(b.fingerprint(false)));
+  }
+
+  /**
+   * Unknown criteria are keyed by class, and by hash code only when it
+   * stands for their value, never by identity.
+   */
+  @Test
+  public final void testUnknownCriteria()
+  {
+    final XPathCriteria a = criteria();
+    a.add(new Opaque());
+    final XPathCriteria b = criteria();
+    b.add(new Opaque());
+    assertEquals(a.fingerprint(true), b.fingerprint(true));
+
+    final XPathCriteria c = criteria();
+    c.add(new Valued(1));
+    final XPathCriteria d = criteria();
+    d.add(new Valued(1));
+    final XPathCriteria e = criteria();
+    e.add(new Valued(2));
+    assertEquals(c.fingerprint(true), d.fingerprint(true));
+    assertFalse(c.fingerprint(true).equals(e.fingerprint(true)));
+  }
+
+  /**
+   * @return A canonical criteria
+   */
+  private static XPathCriteria criteria()
+  {
+    final XPathCriteria criteria = new XPathCriteria(
+      new LinkedList<Criterion>(), new LinkedList<Order>());
+    criteria.setCanonical(true);
+
+    return criteria;
+  }
+
+  /**
+   * A criterion unknown to the library, equal only to itself.
+   */
+  private static final class Opaque
+    implements Criterion
+  {
+    @Override
+    public <R, P, X extends Exception> R accept(
+      final CriterionVisitor<R, P, X> visitor,
+      final P arg)
+      throws X
+    {
+      return visitor.visitOther(this, arg);
+    }
+  }
+
+  /**
+   * A criterion unknown to the library, equal to those of the same value.
+   */
+  private static final class Valued
+    implements Criterion
+  {
+    /** The value. */
+    private final int value;
+
+    /**
+     * @param value
+     *          The value
+     */
+    Valued(final int value)
+    {
+      this.value = value;
+    }
+
+    @Override
+    public <R, P, X extends Exception> R accept(
+      final CriterionVisitor<R, P, X> visitor,
+      final P arg)
+      throws X
+    {
+      return visitor.visitOther(this, arg);
+    }
+
+    @Override
+    public boolean equals(final Object obj)
+    {
+      return obj instanceof Valued && value == ((Valued) obj).value;
+    }
+
+    @Override
+    public int hashCode()
+    {
+      return value;
+    }
+  }
+}
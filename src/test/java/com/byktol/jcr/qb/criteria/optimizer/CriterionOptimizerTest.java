@@ -0,0 +1,305 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.byktol.jcr.qb.criteria.optimizer;
+
+import static com.byktol.jcr.qb.criteria.Restrictions.and;
+import static com.byktol.jcr.qb.criteria.Restrictions.conjunction;
+import static com.byktol.jcr.qb.criteria.Restrictions.disjunction;
+import static com.byktol.jcr.qb.criteria.Restrictions.eq;
+import static com.byktol.jcr.qb.criteria.Restrictions.exists;
+import static com.byktol.jcr.qb.criteria.Restrictions.ge;
+import static com.byktol.jcr.qb.criteria.Restrictions.gt;
+import static com.byktol.jcr.qb.criteria.Restrictions.le;
+import static com.byktol.jcr.qb.criteria.Restrictions.lt;
+import static com.byktol.jcr.qb.criteria.Restrictions.not;
+import static com.byktol.jcr.qb.criteria.Restrictions.notEq;
+import static com.byktol.jcr.qb.criteria.Restrictions.or;
+import static com.byktol.jcr.qb.criteria.Restrictions.param;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Calendar;
+import java.util.LinkedList;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.byktol.jcr.qb.criteria.Criterion;
+import com.byktol.jcr.qb.criteria.Order;
+import com.byktol.jcr.qb.criteria.expressions.Junction;
+import com.byktol.jcr.qb.criteria.impl.XPathCriteria;
+
+/**
+ * Unit tests for {@link CriterionOptimizer}, through the XPath rendering of an
+ * optimized {@link XPathCriteria}.
+ *
+ * @since 1.0
+ * @author Victor Alvarez
+ */
+public class CriterionOptimizerTest
+{
+
+  /** The prefix of every query. */
+  private static final String ROOT = "/jcr:root//element(*)";
+
+  /** The criteria being optimized. */
+  private XPathCriteria criteria;
+
+  /**
+   * Executes at the beginning of every test case. Initiates variables.
+   */
+  @Before
+  public final void setUp()
+  {
+    criteria = new XPathCriteria(new LinkedList<Criterion>(),
+      new LinkedList<Order>());
+    criteria.setOptimized(true);
+  }
+
+  /**
+   * Nested groups of the same operator are flattened, top level ones too.
+   */
+  @Test
+  public final void testFlatten()
+  {
+    criteria.add(and(eq("a", 1), and(eq("b", 2), and(eq("c", 3)))));
+    criteria.add(or(eq("d", 4), or(eq("e", 5), eq("f", 6))));
+
+    assertEquals(ROOT + "[@a = 1 and @b = 2 and @c = 3"
+      + " and (@d = 4 or @e = 5 or @f = 6)]", criteria.buildQuery());
+  }
+
+  /**
+   * Groups of a different operator are kept.
+   */
+  @Test
+  public final void testMixedOperators()
+  {
+    criteria.add(or(eq("a", 1), and(eq("b", 2), eq("c", 3))));
+
+    assertEquals(ROOT + "[(@a = 1 or (@b = 2 and @c = 3))]",
+      criteria.buildQuery());
+  }
+
+  /**
+   * Double negations are removed, but negated equalities are kept as they
+   * are, since they also match the nodes without the property.
+   */
+  @Test
+  public final void testNegations()
+  {
+    criteria.add(not(not(exists("a"))));
+    criteria.add(not(eq("b", "x")));
+    criteria.add(not(not(not(exists("c")))));
+
+    assertEquals(ROOT + "[@a and not(@b = 'x') and not(@c)]",
+      criteria.buildQuery());
+  }
+
+  /**
+   * A double negation is removed before its child is optimized.
+   */
+  @Test
+  public final void testDoubleNegation()
+  {
+    criteria.add(not(not(eq("a", 1))));
+    criteria.add(not(not(and(eq("b", 2), eq("b", 2)))));
+
+    assertEquals(ROOT + "[@a = 1 and @b = 2]", criteria.buildQuery());
+  }
+
+  /**
+   * Identical children are removed, keeping the first.
+   */
+  @Test
+  public final void testDuplicates()
+  {
+    criteria.add(eq("a", 1));
+    criteria.add(or(exists("b"), exists("c"), exists("b")));
+    criteria.add(and(eq("a", 1), or(exists("b"), exists("c"))));
+
+    assertEquals(ROOT + "[@a = 1 and (@b or @c)]", criteria.buildQuery());
+  }
+
+  /**
+   * Empty junctions are dropped, and those of a single child unwrapped.
+   */
+  @Test
+  public final void testJunctions()
+  {
+    criteria.add(conjunction());
+    criteria.add(disjunction().add(eq("a", 1)));
+
+    assertEquals(ROOT + "[@a = 1]", criteria.buildQuery());
+  }
+
+  /**
+   * The optimizer is off by default and never modifies the criteria.
+   */
+  @Test
+  public final void testVerbatim()
+  {
+    final Criterion nested = and(eq("a", 1), and(eq("b", 2)));
+    criteria.add(nested);
+    criteria.buildQuery();
+
+    assertSame(nested, criteria.getCriterion().get(0));
+    criteria.setOptimized(false);
+    assertEquals(ROOT + "[(@a = 1 and (@b = 2))]", criteria.buildQuery());
+  }
+
+  /**
+   * Changes to a group already added are seen by the next build, even though
+   * the optimized restrictions are reused while the criteria is unchanged.
+   */
+  @Test
+  public final void testChangedGroup()
+  {
+    final Junction group = disjunction();
+    group.add(eq("a", 1));
+    criteria.add(group);
+    assertEquals(ROOT + "[@a = 1]", criteria.buildQuery());
+
+    group.add(eq("b", 2));
+    assertEquals(ROOT + "[(@a = 1 or @b = 2)]", criteria.buildQuery());
+  }
+
+  /**
+   * Bounds on the same property collapse into the tightest range.
+   */
+  @Test
+  public final void testRange()
+  {
+    criteria.add(ge("price", 10));
+    criteria.add(gt("price", 5));
+    criteria.add(lt("price", 99));
+    criteria.add(le("price", 99.0));
+    criteria.add(notEq("price", 100));
+    criteria.add(gt("title", 5));
+
+    assertEquals(ROOT + "[@price >= 10 and @price < 99 and @title > 5]",
+      criteria.buildQuery());
+  }
+
+  /**
+   * An equality makes the bounds it satisfies redundant.
+   */
+  @Test
+  public final void testEqualityWithinRange()
+  {
+    criteria.add(and(gt("price", 5), eq("price", 7), le("price", 7)));
+
+    assertEquals(ROOT + "[@price = 7]", criteria.buildQuery());
+  }
+
+  /**
+   * Disjunctions keep the loosest range and drop the equalities within.
+   */
+  @Test
+  public final void testDisjunctionRange()
+  {
+    criteria.add(or(eq("a", 1), eq("a", 2), ge("a", 2), gt("a", 2),
+      eq("b", 2)));
+
+    assertEquals(ROOT + "[(@a = 1 or @a >= 2 or @b = 2)]",
+      criteria.buildQuery());
+  }
+
+  /**
+   * Values of different kinds, or parameters, aren't merged.
+   */
+  @Test
+  public final void testMixedKinds()
+  {
+    criteria.add(gt("a", 5));
+    criteria.add(gt("a", "10"));
+    assertEquals(ROOT + "[@a > 5 and @a > '10']", criteria.buildQuery());
+
+    criteria.add(gt("b", 5));
+    criteria.add(gt("b", param("b")));
+    assertEquals(4,
+      new CriterionOptimizer().optimize(criteria.getCriterion()).size());
+  }
+
+  /**
+   * Subsumed terms are absorbed.
+   */
+  @Test
+  public final void testAbsorption()
+  {
+    criteria.add(exists("a"));
+    criteria.add(or(exists("a"), exists("b")));
+    criteria.add(or(exists("c"), and(exists("c"), exists("d"))));
+
+    assertEquals(ROOT + "[@a and @c]", criteria.buildQuery());
+  }
+
+  /**
+   * Contradictions spread through conjunctions and are dropped from
+   * disjunctions.
+   */
+  @Test
+  public final void testContradiction()
+  {
+    criteria.add(or(and(eq("a", 1), eq("a", 2)), exists("b")));
+    assertEquals(ROOT + "[@b]", criteria.buildQuery());
+    assertFalse(criteria.isContradiction());
+
+    criteria.add(and(gt("c", 5), le("c", 5.0)));
+    assertEquals(ROOT + "[not(@jcr:primaryType)]", criteria.buildQuery());
+    assertTrue(criteria.isContradiction());
+  }
+
+  /**
+   * An equality contradicts an inequality of the same value or a bound.
+   */
+  @Test
+  public final void testEqualityContradiction()
+  {
+    final Calendar now = Calendar.getInstance();
+    final Calendar later = (Calendar) now.clone();
+    later.add(Calendar.HOUR, 1);
+
+    criteria.add(eq("d", later));
+    criteria.add(lt("d", now));
+    assertTrue(criteria.isContradiction());
+
+    criteria.getCriterion().clear();
+    criteria.add(eq("b", true));
+    criteria.add(notEq("b", true));
+    assertTrue(criteria.isContradiction());
+  }
+
+  /**
+   * The negation of what restricts nothing is satisfied by nothing, and the
+   * negation of a contradiction restricts nothing.
+   */
+  @Test
+  public final void testNegatedContradiction()
+  {
+    criteria.add(not(and(eq("a", 1), eq("a", 2))));
+    assertEquals(ROOT, criteria.buildQuery());
+    assertFalse(criteria.isContradiction());
+
+    criteria.add(not(not(and(eq("a", 1), eq("a", 2)))));
+    assertEquals(ROOT + "[not(@jcr:primaryType)]", criteria.buildQuery());
+    assertTrue(criteria.isContradiction());
+
+    criteria.getCriterion().clear();
+    criteria.add(not(disjunction()));
+    assertTrue(criteria.isContradiction());
+  }
+}
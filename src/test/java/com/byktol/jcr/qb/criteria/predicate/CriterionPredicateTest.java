@@ -0,0 +1,245 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.byktol.jcr.qb.criteria.predicate;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TimeZone;
+
+import javax.jcr.Node;
+import javax.jcr.Property;
+import javax.jcr.PropertyType;
+import javax.jcr.RepositoryException;
+import javax.jcr.Value;
+import javax.jcr.ValueFormatException;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.byktol.jcr.qb.criteria.Criterion;
+import com.byktol.jcr.qb.criteria.Restrictions;
+
+/**
+ * Unit tests for {@link CriterionPredicate}.
+ *
+ * @since 1.0
+ * @author Victor Alvarez
+ */
+public class CriterionPredicateTest
+{
+
+  /** The properties being evaluated. */
+  private Map<String, Object> page;
+
+  /**
+   * Executes at the beginning of every test case. Creates the properties.
+   */
+  @Before
+  public final void setUp()
+  {
+    final Calendar published =
+      new GregorianCalendar(TimeZone.getTimeZone("UTC"));
+    published.clear();
+    published.set(2012, Calendar.FEBRUARY, 2);
+
+    page = new HashMap<String, Object>();
+    page.put("jcr:title", "Query builder");
+    page.put("rank", "42");
+    page.put("tags", Arrays.asList("jcr", "xpath"));
+    page.put("published", published);
+    page.put("jcr:content/hidden", Boolean.FALSE);
+  }
+
+  /**
+   * Comparisons convert the value of the restriction to the type of the
+   * values of the property.
+   */
+  @Test
+  public final void testComparisons()
+  {
+    assertTrue(apply(Restrictions.eq("jcr:title", "Query builder")));
+    assertTrue(apply(Restrictions.gt("rank", 41)));
+    assertFalse(apply(Restrictions.ge("rank", 42.5)));
+    assertTrue(apply(Restrictions.eq("tags", "xpath")));
+    assertTrue(apply(Restrictions.notEq("tags", "jcr")));
+    assertFalse(apply(Restrictions.notEq("missing", "jcr")));
+    assertFalse(apply(Restrictions.eq("jcr:title", 1)));
+
+    final Calendar before = Calendar.getInstance();
+    before.setTimeInMillis(0);
+    assertTrue(apply(Restrictions.gt("published", before)));
+    assertTrue(apply(Restrictions.eq("published",
+      "2012-02-02T00:00:00.000Z")));
+    assertTrue(apply(Restrictions.eq("jcr:content/@hidden", false)));
+  }
+
+  /**
+   * Like patterns, existence, negations and groups.
+   */
+  @Test
+  public final void testOthers()
+  {
+    assertTrue(apply(Restrictions.like("jcr:title", "Query%")));
+    assertTrue(apply(Restrictions.like("jcr:title", "%builder")));
+    assertTrue(apply(Restrictions.like("jcr:title", "%y b%")));
+    assertTrue(apply(Restrictions.like("jcr:title", "Qu_ry%r")));
+    assertFalse(apply(Restrictions.like("jcr:title", "query%")));
+    assertTrue(apply(Restrictions.like("rank", "4\\2")));
+
+    assertTrue(apply(Restrictions.exists("tags")));
+    assertTrue(apply(Restrictions.not(Restrictions.exists("missing"))));
+    assertTrue(apply(Restrictions.or(Restrictions.exists("missing"),
+      Restrictions.eq("rank", 42L))));
+    assertFalse(apply(Restrictions.and(Restrictions.exists("missing"),
+      Restrictions.eq("rank", 42L))));
+  }
+
+  /**
+   * Nodes are evaluated through their JCR values.
+   *
+   * @throws RepositoryException
+   *           Never, they're mocks
+   */
+  @Test
+  public final void testNode()
+    throws RepositoryException
+  {
+    final Value value = mock(Value.class);
+    when(value.getType()).thenReturn(PropertyType.STRING);
+    when(value.getString()).thenReturn("abc");
+    when(value.getLong()).thenThrow(new ValueFormatException());
+    final Property property = mock(Property.class);
+    when(property.getValue()).thenReturn(value);
+    final Node node = mock(Node.class);
+    when(node.hasProperty("code")).thenReturn(true);
+    when(node.getProperty("code")).thenReturn(property);
+
+    assertTrue(CriterionPredicate.compile(Restrictions.like("code", "a%"))
+      .apply(node));
+    assertFalse(CriterionPredicate.compile(Restrictions.lt("code", 5))
+      .apply(node));
+    assertFalse(CriterionPredicate.compile(Restrictions.exists("other"))
+      .forNodes().apply(node));
+  }
+
+  /**
+   * The value of the restriction is converted to the type of each value of
+   * the property, as a JCR query does.
+   *
+   * @throws RepositoryException
+   *           Never, they're mocks
+   */
+  @Test
+  public final void testMixedTypes()
+    throws RepositoryException
+  {
+    final Node node = mock(Node.class);
+    final Value rank = value(node, "rank", PropertyType.LONG);
+    when(rank.getLong()).thenReturn(10L);
+    when(rank.getString()).thenReturn("10");
+    final Value code = value(node, "code", PropertyType.STRING);
+    when(code.getString()).thenReturn("10");
+    final Value score = value(node, "score", PropertyType.DOUBLE);
+    when(score.getDouble()).thenReturn(1.0);
+    final Value date = value(node, "date", PropertyType.DATE);
+    final Calendar epoch = new GregorianCalendar(TimeZone.getTimeZone("UTC"));
+    epoch.setTimeInMillis(0);
+    when(date.getDate()).thenReturn(epoch);
+
+    assertFalse(apply(node, Restrictions.lt("rank", "9")));
+    assertTrue(apply(node, Restrictions.gt("rank", "9")));
+    assertTrue(apply(node, Restrictions.eq("rank", 10.0)));
+    assertFalse(apply(node, Restrictions.eq("rank", "ten")));
+    assertTrue(apply(node, Restrictions.lt("code", 9)));
+    assertFalse(apply(node, Restrictions.eq("code", 10.0)));
+    assertTrue(apply(node, Restrictions.eq("score", 1)));
+    assertTrue(apply(node, Restrictions.eq("date",
+      "1970-01-01T00:00:00.000Z")));
+    assertTrue(apply(node, Restrictions.lt("date", 1L)));
+  }
+
+  /**
+   * Full-text searches and parameters cannot be evaluated.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public final void testUnsupported()
+  {
+    assertFalse(CriterionPredicate.isSupported(
+      Restrictions.contains("jcr:title", "query")));
+    assertFalse(CriterionPredicate.isSupported(
+      Restrictions.eq("rank", Restrictions.param("rank"))));
+    CriterionPredicate.compile(Restrictions.contains("jcr:title", "query"));
+  }
+
+  /**
+   * @param criterion
+   *          A restriction
+   * @return Whether the properties meet it
+   */
+  private boolean apply(final Criterion criterion)
+  {
+    return CriterionPredicate.compile(criterion).apply(page);
+  }
+
+  /**
+   * Mocks a single-valued property of a node.
+   *
+   * @param node
+   *          The node
+   * @param name
+   *          The name of the property
+   * @param type
+   *          The type of the property
+   * @return The mocked value of the property
+   * @throws RepositoryException
+   *           Never, they're mocks
+   */
+  private static Value value(
+    final Node node,
+    final String name,
+    final int type)
+    throws RepositoryException
+  {
+    final Value value = mock(Value.class);
+    when(value.getType()).thenReturn(type);
+    final Property property = mock(Property.class);
+    when(property.getValue()).thenReturn(value);
+    when(node.hasProperty(name)).thenReturn(true);
+    when(node.getProperty(name)).thenReturn(property);
+    return value;
+  }
+
+  /**
+   * @param node
+   *          The node being evaluated
+   * @param criterion
+   *          A restriction
+   * @return Whether the node meets it
+   * @throws RepositoryException
+   *           Never, they're mocks
+   */
+  private static boolean apply(final Node node, final Criterion criterion)
+    throws RepositoryException
+  {
+    return CriterionPredicate.compile(criterion).apply(node);
+  }
+}
@@ -0,0 +1,187 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.byktol.jcr.qb.metrics;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.Workspace;
+import javax.jcr.query.Query;
+import javax.jcr.query.QueryManager;
+import javax.jcr.query.QueryResult;
+import javax.jcr.query.Row;
+import javax.jcr.query.RowIterator;
+
+import org.apache.jackrabbit.commons.iterator.RowIteratorAdapter;
+import org.junit.After;
+import org.junit.Test;
+
+import com.byktol.jcr.qb.QueryBuilder;
+import com.byktol.jcr.qb.criteria.Criteria;
+import com.byktol.jcr.qb.criteria.Criterion;
+import com.byktol.jcr.qb.criteria.Order;
+import com.byktol.jcr.qb.criteria.Restrictions;
+import com.byktol.jcr.qb.criteria.impl.CriteriaImpl;
+import com.byktol.jcr.qb.criteria.impl.XPathCriteria;
+import com.byktol.jcr.qb.impl.XPathQueryBuilder;
+
+/**
+ * Unit tests for {@link QueryMetrics}, {@link HistogramListener} and
+ * {@link Histogram}.
+ *
+ * @since 1.0
+ * @author Victor Alvarez
+ */
+public class QueryMetricsTest
+{
+
+  /**
+   * Executes at the end of every test case. Disables the metrics.
+   */
+  @After
+  public final void tearDown()
+  {
+    QueryMetrics.setListener(null);
+  }
+
+  /**
+   * The percentiles are the upper bounds of the power of two buckets.
+   */
+  @Test
+  public final void testHistogram()
+  {
+    final Histogram histogram = new Histogram();
+    assertEquals(0, histogram.getPercentile(50));
+
+    for (long v = 1; v <= 100; v++)
+    {
+      histogram.record(v);
+    }
+    histogram.record(-5);
+
+    assertEquals(101, histogram.getCount());
+    assertEquals(50, histogram.getMean(), 0.001);
+    assertEquals(63, histogram.getPercentile(50));
+    assertEquals(127, histogram.getPercentile(99));
+    assertEquals(0, histogram.getPercentile(0));
+
+    histogram.reset();
+    assertEquals(0, histogram.getCount());
+  }
+
+  /**
+   * The build, execution, first row and size of a query are recorded under
+   * its shape.
+   *
+   * @throws RepositoryException
+   *           Never, unless the test fails
+   */
+  @Test
+  public final void testListener()
+    throws RepositoryException
+  {
+    final Session session = mock(Session.class);
+    final Workspace workspace = mock(Workspace.class);
+    final QueryManager manager = mock(QueryManager.class);
+    final Query query = mock(Query.class);
+    final QueryResult result = mock(QueryResult.class);
+    when(session.getWorkspace()).thenReturn(workspace);
+    when(workspace.getQueryManager()).thenReturn(manager);
+    when(manager.createQuery("/jcr:root//element(*)[@a = 1]", Query.XPATH))
+      .thenReturn(query);
+    when(query.execute()).thenReturn(result);
+    when(result.getRows()).thenReturn(new RowIteratorAdapter(Arrays.asList(
+      mock(Row.class), mock(Row.class))));
+
+    final HistogramListener listener = new HistogramListener();
+    QueryMetrics.setListener(listener);
+
+    final QueryBuilder builder = new XPathQueryBuilder(session);
+    final Criteria criteria =
+      builder.createCriteria().add(Restrictions.eq("a", 1));
+    final RowIterator rows = builder.execute(criteria).getRows();
+    while (rows.hasNext())
+    {
+      rows.nextRow();
+    }
+
+    final String shape = ((CriteriaImpl) criteria).fingerprint(false);
+    assertArrayEquals(new String[] {shape}, listener.getFingerprints());
+    assertEquals(1, listener.getExecutions(shape));
+    assertEquals(1, listener.getStats(shape).getBuild().getCount());
+    assertEquals(1, listener.getStats(shape).getFirstRow().getCount());
+    assertEquals(2, listener.getMeanRows(shape), 0.001);
+    assertTrue(listener.report().startsWith("fingerprint"));
+
+    // another restriction, another shape
+    criteria.add(Restrictions.eq("a", 2)).buildQuery();
+    criteria.buildQuery();
+    assertEquals(2, listener.getFingerprints().length);
+  }
+
+  /**
+   * The shape is computed once per statement built, and again once the
+   * criteria changes.
+   *
+   * @throws IOException
+   *           Never, unless the test fails
+   */
+  @Test
+  public final void testShape()
+    throws IOException
+  {
+    QueryMetrics.setListener(new HistogramListener());
+
+    final CriteriaImpl criteria = new XPathCriteria(
+      new ArrayList<Criterion>(), new ArrayList<Order>());
+    criteria.add(Restrictions.eq("a", 1));
+    criteria.buildQuery();
+    final String shape = criteria.getShape();
+    assertEquals(criteria.fingerprint(false), shape);
+
+    criteria.buildQuery(new StringBuilder());
+    assertSame(shape, criteria.getShape());
+
+    criteria.add(Restrictions.eq("b", 2)).buildQuery();
+    assertEquals(criteria.fingerprint(false), criteria.getShape());
+    assertFalse(shape.equals(criteria.getShape()));
+  }
+
+  /**
+   * The number of shapes is bounded.
+   */
+  @Test
+  public final void testMaximumShapes()
+  {
+    final HistogramListener listener = new HistogramListener(1);
+    listener.onBuild("a", 1);
+    listener.onBuild("b", 1);
+    listener.onBuild("a", 1);
+
+    assertEquals(2, listener.getStats("a").getBuild().getCount());
+    assertEquals(1, listener.getStats(HistogramListener.OTHER).getBuild()
+      .getCount());
+  }
+}
@@ -0,0 +1,224 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.byktol.jcr.qb.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.Value;
+import javax.jcr.ValueFactory;
+import javax.jcr.Workspace;
+import javax.jcr.query.Query;
+import javax.jcr.query.QueryManager;
+import javax.jcr.query.QueryResult;
+import javax.jcr.query.Row;
+import javax.jcr.query.RowIterator;
+
+import org.apache.jackrabbit.commons.iterator.RowIteratorAdapter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.byktol.jcr.qb.QueryBuilder;
+import com.byktol.jcr.qb.criteria.Criteria;
+import com.byktol.jcr.qb.criteria.Order;
+import com.byktol.jcr.qb.criteria.Restrictions;
+import com.byktol.jcr.qb.criteria.impl.CriteriaImpl;
+import com.byktol.jcr.qb.impl.Sql2QueryBuilder;
+import com.byktol.jcr.qb.impl.XPathQueryBuilder;
+
+/**
+ * Unit tests for {@link SlowQueryLog}.
+ *
+ * @since 1.0
+ * @author Victor Alvarez
+ */
+public class SlowQueryLogTest
+{
+
+  /** The log being tested, every query is slow. */
+  private SlowQueryLog log;
+
+  /** The builder executing the queries. */
+  private QueryBuilder builder;
+
+  /**
+   * Executes at the beginning of every test case. Mocks the session, whose
+   * queries return two rows.
+   *
+   * @throws RepositoryException
+   *           Never, it's a mock
+   */
+  @Before
+  public final void setUp()
+    throws RepositoryException
+  {
+    final Session session = mock(Session.class);
+    final Workspace workspace = mock(Workspace.class);
+    final QueryManager manager = mock(QueryManager.class);
+    final Query query = mock(Query.class);
+    final QueryResult result = mock(QueryResult.class);
+    when(session.getWorkspace()).thenReturn(workspace);
+    when(workspace.getQueryManager()).thenReturn(manager);
+    when(manager.createQuery("/jcr:root//element(*)[@a = 1] order by @b "
+      + "descending", Query.XPATH)).thenReturn(query);
+    when(query.execute()).thenReturn(result);
+    when(result.getRows()).thenReturn(new RowIteratorAdapter(Arrays.asList(
+      mock(Row.class), mock(Row.class))));
+
+    log = new SlowQueryLog(0, TimeUnit.MILLISECONDS, 2);
+    builder = new XPathQueryBuilder(session);
+    builder.setSlowQueryLog(log);
+  }
+
+  /**
+   * Executes at the end of every test case. Stops the log.
+   */
+  @After
+  public final void tearDown()
+  {
+    log.close();
+  }
+
+  /**
+   * A slow query is recorded with its statement, shape, criteria and, once
+   * fetched, its number of rows.
+   *
+   * @throws RepositoryException
+   *           Never, unless the test fails
+   */
+  @Test
+  public final void testRecord()
+    throws RepositoryException
+  {
+    log.setPlanCapture(new PlanCapture()
+    {
+      @Override
+      public String capture(
+        final Session session,
+        final String statement,
+        final Map<String, ?> bindVariables,
+        final String language)
+      {
+        return language + " plan";
+      }
+    });
+
+    final Criteria criteria = builder.createCriteria()
+      .add(Restrictions.eq("a", 1)).addOrder(Order.desc("b"));
+    final RowIterator rows = builder.execute(criteria).getRows();
+
+    final SlowQuery query = log.getEntries().get(0);
+    assertEquals(criteria.buildQuery(), query.getStatement());
+    assertEquals(((CriteriaImpl) criteria).fingerprint(false),
+      query.getFingerprint());
+    assertEquals("[@a = 1] order by [b descending]", query.getCriteria());
+    assertEquals("xpath plan", query.getPlan());
+    assertTrue(query.getBindVariables().isEmpty());
+    assertEquals(-1, query.getSize());
+    assertTrue(query.toString().contains("rows=?"));
+
+    while (rows.hasNext())
+    {
+      rows.nextRow();
+    }
+    assertEquals(2, query.getSize());
+  }
+
+  /**
+   * The plan of a JCR-SQL2 query is explained with its variables bound, and
+   * their values are recorded.
+   *
+   * @throws RepositoryException
+   *           Never, unless the test fails
+   */
+  @Test
+  public final void testSql2Plan()
+    throws RepositoryException
+  {
+    final Session session = mock(Session.class);
+    final Workspace workspace = mock(Workspace.class);
+    final QueryManager manager = mock(QueryManager.class);
+    final ValueFactory factory = mock(ValueFactory.class);
+    final Value one = mock(Value.class);
+    final Value plan = mock(Value.class);
+    final Row row = mock(Row.class);
+    final Query query = mock(Query.class);
+    final Query explain = mock(Query.class);
+    final QueryResult result = mock(QueryResult.class);
+    final QueryResult explained = mock(QueryResult.class);
+    final String statement = "SELECT * FROM ['nt:base'] AS s WHERE s.[a] = $v1";
+    when(session.getWorkspace()).thenReturn(workspace);
+    when(session.getValueFactory()).thenReturn(factory);
+    when(workspace.getQueryManager()).thenReturn(manager);
+    when(factory.createValue(1L)).thenReturn(one);
+    when(manager.createQuery(statement, Query.JCR_SQL2)).thenReturn(query);
+    when(manager.createQuery("explain " + statement, Query.JCR_SQL2))
+      .thenReturn(explain);
+    when(query.execute()).thenReturn(result);
+    when(explain.execute()).thenReturn(explained);
+    when(explained.getRows())
+      .thenReturn(new RowIteratorAdapter(Arrays.asList(row)));
+    when(row.getValue("plan")).thenReturn(plan);
+    when(plan.getString()).thenReturn("[nt:base] as [s] /* traverse */");
+
+    log.setPlanCapture(new ExplainPlanCapture());
+    final QueryBuilder sql2 = new Sql2QueryBuilder(session);
+    sql2.setSlowQueryLog(log);
+    sql2.execute(sql2.createCriteria().add(Restrictions.eq("a", 1)));
+
+    verify(explain).bindValue("v1", one);
+    final SlowQuery slow = log.getEntries().get(0);
+    assertEquals(statement, slow.getStatement());
+    assertEquals(Collections.singletonMap("v1", 1), slow.getBindVariables());
+    assertEquals("[nt:base] as [s] /* traverse */", slow.getPlan());
+  }
+
+  /**
+   * Only the latest queries are kept, the newest first, and no plan is
+   * captured by default.
+   *
+   * @throws RepositoryException
+   *           Never, unless the test fails
+   */
+  @Test
+  public final void testCapacity()
+    throws RepositoryException
+  {
+    final Criteria criteria = builder.createCriteria()
+      .add(Restrictions.eq("a", 1)).addOrder(Order.desc("b"));
+    builder.execute(criteria);
+    builder.execute(criteria);
+    builder.execute(criteria);
+
+    final List<SlowQuery> entries = log.getEntries();
+    assertEquals(2, entries.size());
+    assertTrue(entries.get(0).getTimestamp()
+      >= entries.get(1).getTimestamp());
+    assertNull(entries.get(0).getPlan());
+    assertTrue(log.isSlow(0));
+  }
+}